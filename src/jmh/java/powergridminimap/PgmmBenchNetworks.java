@@ -0,0 +1,170 @@
+package powergridminimap;
+
+import arc.math.geom.Point2;
+import arc.struct.IntSeq;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Deterministic power networks for the PGMM analysis benchmarks.
+ *
+ * 基准测试用的确定性电网：同一 (buildings, grids, seed) 总是生成同一网络。
+ * - 建筑按 6x6 的“区块”排布（间距 2 格，多数为 2x2，少数 1x1），区块随机偏移地放在 32 格的槽位里，
+ *   因此区块间距在 0 ~ 40 格之间，聚类划分时既有合并也有拆分
+ * - 区块内相邻建筑互相连接；每个区块的第一个建筑是电力节点，激光连到本区块最后一个建筑、
+ *   同一电网的上一个区块节点，并每隔两个区块多连一条形成环
+ * - 约四分之一的区块以发电为主，其余以用电为主，整体略微缺电，断开部分连线可以让一侧恢复
+ * - 区块按行优先顺序平均分给 {@code grids} 个电网；每个区块下方有一排非电力建筑（叠加层认领用）
+ */
+final class PgmmBenchNetworks{
+    static final int chunkCells = 6, cellPitch = 2, slotSize = 32;
+
+    final int width, height;
+    final PgmmGridAnalysis.Network net = new PgmmGridAnalysis.Network();
+    /** Building indices per grid (graph id = array index). 每个电网的建筑下标。 */
+    final IntSeq[] members;
+    /** Non-power buildings: Point2 position, size 1. 非电力建筑（1x1）。 */
+    final IntSeq others = new IntSeq();
+    /** Footprint of each chunk (x0, y0, x1, y1, inclusive). 每个区块的占地矩形。 */
+    final IntSeq chunkRects = new IntSeq();
+    private final int[] otherAt;
+
+    private PgmmBenchNetworks(int width, int height, int grids){
+        this.width = width;
+        this.height = height;
+        members = new IntSeq[grids];
+        for(int i = 0; i < grids; i++){
+            members[i] = new IntSeq();
+        }
+        otherAt = new int[width * height];
+        Arrays.fill(otherAt, -1);
+    }
+
+    static PgmmBenchNetworks generate(int buildings, int grids, long seed){
+        Random rand = new Random(seed);
+        int perChunk = chunkCells * chunkCells;
+        int chunks = Math.max(1, (buildings + perChunk - 1) / perChunk);
+        grids = Math.max(1, Math.min(grids, chunks));
+        int slotsPerRow = (int)Math.ceil(Math.sqrt(chunks));
+        int side = slotsPerRow * slotSize + slotSize;
+        PgmmBenchNetworks out = new PgmmBenchNetworks(side, side, grids);
+
+        //layout first, so links can point at buildings emitted later
+        int footprint = chunkCells * cellPitch;
+        int[] originX = new int[chunks], originY = new int[chunks], count = new int[chunks], graph = new int[chunks];
+        boolean[] occupied = new boolean[side * side];
+        for(int k = 0; k < chunks; k++){
+            originX[k] = (k % slotsPerRow) * slotSize + slotSize / 2 + rand.nextInt(slotSize - footprint);
+            originY[k] = (k / slotsPerRow) * slotSize + slotSize / 2 + rand.nextInt(slotSize - footprint);
+            count[k] = Math.min(perChunk, buildings - k * perChunk);
+            graph[k] = (int)((long)k * grids / chunks);
+            out.chunkRects.add(originX[k], originY[k], originX[k] + footprint - 1, originY[k] + footprint - 1);
+            for(int y = originY[k]; y < originY[k] + footprint; y++){
+                for(int x = originX[k]; x < originX[k] + footprint; x++){
+                    occupied[x + y * side] = true;
+                }
+            }
+        }
+
+        PgmmGridAnalysis.Network net = out.net;
+        net.clear(side, side);
+        for(int k = 0; k < chunks; k++){
+            int n = count[k];
+            int node = pos(originX[k], originY[k], 0);
+            //the last building is laser-linked unless it already touches the node
+            int inner = n > chunkCells + 1 ? pos(originX[k], originY[k], n - 1) : -1;
+            //about one chunk in four is a power plant; grids end up slightly short of power overall
+            int producerShare = rand.nextInt(4) == 0 ? 8 : 2;
+            for(int c = 0; c < n; c++){
+                int p = pos(originX[k], originY[k], c);
+                boolean small = c != 0 && rand.nextInt(4) == 0;
+                float produced = 0f, needed = 0f;
+                if(c != 0){
+                    if(rand.nextInt(10) < producerShare){
+                        produced = 0.5f + rand.nextFloat() * 2.7f;
+                    }else{
+                        needed = 0.3f + rand.nextFloat() * 1.5f;
+                    }
+                }
+                out.members[graph[k]].add(net.add(p, small ? 1 : 2, graph[k], produced, needed));
+
+                int cx = c % chunkCells, cy = c / chunkCells;
+                if(c == 0){
+                    if(inner != -1) net.link(inner);
+                    for(int j = k - 2; j <= k + 2; j++){
+                        if(j == k || j < 0 || j >= chunks || graph[j] != graph[k]) continue;
+                        if(Math.abs(j - k) == 2 && Math.max(j, k) % 3 != 0) continue;
+                        net.link(pos(originX[j], originY[j], 0));
+                    }
+                }
+                if(cx > 0) net.connect(pos(originX[k], originY[k], c - 1));
+                if(cx + 1 < chunkCells && c + 1 < n) net.connect(pos(originX[k], originY[k], c + 1));
+                if(cy > 0) net.connect(pos(originX[k], originY[k], c - chunkCells));
+                if(c + chunkCells < n) net.connect(pos(originX[k], originY[k], c + chunkCells));
+                if(c == 0){
+                    for(int li = net.linkStart.peek(), end = net.links.size; li < end; li++){
+                        net.connect(net.links.items[li]);
+                    }
+                }else if(p == inner){
+                    net.connect(node);
+                }
+            }
+
+            //a row of conveyors one to three tiles below the chunk
+            int oy = originY[k] - 1 - rand.nextInt(3);
+            for(int x = originX[k]; x < originX[k] + footprint && oy >= 0; x++){
+                int idx = x + oy * side;
+                if(occupied[idx]) continue;
+                occupied[idx] = true;
+                out.otherAt[idx] = out.others.size;
+                out.others.add(Point2.pack(x, oy));
+            }
+        }
+        return out;
+    }
+
+    private static int pos(int originX, int originY, int cell){
+        return Point2.pack(originX + (cell % chunkCells) * cellPitch, originY + (cell / chunkCells) * cellPitch);
+    }
+
+    /** Power tiles of one grid as x + y * width. 某个电网的用电格子。 */
+    void powerTiles(int graphId, IntSeq out){
+        out.clear();
+        IntSeq list = members[graphId];
+        for(int i = 0; i < list.size; i++){
+            int b = list.items[i];
+            int p = net.pos.items[b];
+            int size = net.blockSize.items[b];
+            int o = -(size - 1) / 2;
+            for(int dx = 0; dx < size; dx++){
+                for(int dy = 0; dy < size; dy++){
+                    out.add(Point2.x(p) + dx + o + (Point2.y(p) + dy + o) * width);
+                }
+            }
+        }
+    }
+
+    /** Same snapshot as PowerGridCache.collectOverlayBuildings (every generated building is team 1). 认领区域内的非电力建筑。 */
+    void collectOthers(int x0, int y0, int x1, int y1, PgmmClaimOverlay.Buildings out){
+        out.clear();
+        for(int y = y0; y <= y1; y++){
+            for(int x = x0; x <= x1; x++){
+                int idx = x + y * width;
+                if(otherAt[idx] == -1) continue;
+                out.begin(1, idx);
+                out.tile(idx);
+            }
+        }
+    }
+
+    /** Seeds one slot per grid into a freshly reset overlay. 为每个电网登记槽位。 */
+    void addSlots(PgmmClaimOverlay overlay, IntSeq tmp){
+        overlay.reset(width, height);
+        for(int g = 0; g < members.length; g++){
+            powerTiles(g, tmp);
+            int rgba = g * 0x9e3779b1 | 0x66;
+            overlay.addSlot(1, rgba, rgba, rgba, tmp);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package powergridminimap;
+
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PGMM grid analysis on generated networks: cluster-marker partitioning of every grid, the rescue-cut search on the
+ * largest grid, and the claim-overlay BFS (full rebuild and one chunk-sized dirty rectangle).
+ * {@code grids=1} puts every building into one grid, which is the worst case for partitioning and the cut search.
+ *
+ * PGMM 电网分析基准：所有电网的聚类划分、最大电网的断线救援搜索、叠加层认领 BFS（整图重建 / 单个区块大小的脏矩形）。
+ * grids=1 时全部建筑属于同一电网，是划分与断线搜索的最坏情况。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PgmmGridAnalysisBenchmark{
+    static final int clusterDistance = 15, claimDistance = 5, topk = 2;
+
+    @Param({"1000", "10000", "50000"})
+    public int buildings;
+
+    @Param({"1", "16"})
+    public int grids;
+
+    private PgmmBenchNetworks networks;
+    private int largest;
+    private int dirtyChunk;
+    private final PgmmGridAnalysis analysis = new PgmmGridAnalysis();
+    private final PgmmGridAnalysis.Partition partition = new PgmmGridAnalysis.Partition();
+    private final Seq<PgmmGridAnalysis.Cut> cuts = new Seq<>();
+    private final PgmmClaimOverlay fullOverlay = new PgmmClaimOverlay();
+    private final PgmmClaimOverlay overlay = new PgmmClaimOverlay();
+    private final PgmmClaimOverlay.Buildings snapshot = new PgmmClaimOverlay.Buildings();
+    private final IntSeq tmpTiles = new IntSeq();
+    private final int[] region = new int[4];
+
+    @Setup
+    public void setup(){
+        networks = PgmmBenchNetworks.generate(buildings, grids, 0x9e7d5L + buildings * 31L + grids);
+        largest = 0;
+        for(int g = 1; g < networks.members.length; g++){
+            if(networks.members[g].size > networks.members[largest].size) largest = g;
+        }
+
+        networks.addSlots(overlay, tmpTiles);
+        update(overlay);
+    }
+
+    private boolean update(PgmmClaimOverlay target){
+        snapshot.clear();
+        if(target.claimRegion(claimDistance, region)){
+            networks.collectOthers(region[0], region[1], region[2], region[3], snapshot);
+        }
+        return target.update(claimDistance, snapshot);
+    }
+
+    @Benchmark
+    public int partitionClusters(){
+        int rects = 0;
+        for(int g = 0; g < networks.members.length; g++){
+            analysis.partition(networks.net, networks.members[g], clusterDistance, partition);
+            rects += partition.rectCount();
+        }
+        return rects;
+    }
+
+    @Benchmark
+    public int rescueCuts(){
+        cuts.clear();
+        analysis.rescueCuts(networks.net, networks.members[largest], true, topk, cuts);
+        return cuts.size;
+    }
+
+    /** Reset, seed every grid and recompute the whole map. 整图重建。 */
+    @Benchmark
+    public boolean claimFull(){
+        networks.addSlots(fullOverlay, tmpTiles);
+        return update(fullOverlay);
+    }
+
+    /** A building changed inside one chunk (cycling through the chunks). 单个区块内的建筑变化。 */
+    @Benchmark
+    public boolean claimIncremental(){
+        IntSeq rects = networks.chunkRects;
+        int i = dirtyChunk * 4;
+        dirtyChunk = (dirtyChunk + 1) % (rects.size / 4);
+        overlay.markDirty(rects.items[i], rects.items[i + 1], rects.items[i + 2], rects.items[i + 3]);
+        return update(overlay);
+    }
+}
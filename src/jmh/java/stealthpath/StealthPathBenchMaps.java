@@ -0,0 +1,150 @@
+package stealthpath;
+
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+import static mindustry.Vars.tilesize;
+
+/**
+ * Deterministic ThreatMaps for the planner benchmarks.
+ *
+ * 基准测试用的确定性 ThreatMap：同一 (size, seed) 总是生成同一张地图，
+ * 包含随机墙体块、若干炮塔覆盖圆以及少量地板伤害区域，起点/终点位于对角。
+ * 也可以从游戏内录制的 {@link StealthPathMapFixture} 文件加载（见 {@link #load(String)}）。
+ */
+final class StealthPathBenchMaps{
+    final ThreatMap map;
+    final int startX, startY;
+    final IntSeq goals;
+    final boolean[] goalMask;
+    /** Threat circles that make up {@code map.risk} (before floor hazards). 构成 risk 的威胁圆。 */
+    final Seq<Threat> threats;
+    final float threatInflate;
+
+    private StealthPathBenchMaps(ThreatMap map, int startX, int startY, IntSeq goals, Seq<Threat> threats, float threatInflate){
+        this.map = map;
+        this.startX = startX;
+        this.startY = startY;
+        this.goals = goals;
+        this.goalMask = StealthPathPlanner.buildGoalMask(map, goals);
+        this.threats = threats;
+        this.threatInflate = threatInflate;
+    }
+
+    /**
+     * {@code gen:<size>} generates a map (round-tripped through the fixture format); anything else is a fixture file path.
+     * gen:&lt;尺寸&gt; 生成地图（经过一次 fixture 序列化往返），否则按 fixture 文件路径加载。
+     */
+    static StealthPathBenchMaps load(String source){
+        try{
+            if(source.startsWith("gen:")){
+                int size = Integer.parseInt(source.substring(4));
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                generate(size, 0x5eed3L + size).toFixture().write(bytes);
+                return fromFixture(StealthPathMapFixture.read(new ByteArrayInputStream(bytes.toByteArray())));
+            }
+            try(InputStream in = new FileInputStream(source)){
+                return fromFixture(StealthPathMapFixture.read(in));
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException("Cannot load fixture " + source, e);
+        }
+    }
+
+    static StealthPathBenchMaps fromFixture(StealthPathMapFixture fixture){
+        if(fixture.starts.isEmpty() || fixture.goals.isEmpty()) throw new IllegalArgumentException("Fixture has no start or goal tiles.");
+        int start = fixture.starts.first();
+        return new StealthPathBenchMaps(fixture.map, start % fixture.map.width, start / fixture.map.width, fixture.goals, fixture.threats, fixture.threatInflate);
+    }
+
+    StealthPathMapFixture toFixture(){
+        IntSeq starts = new IntSeq();
+        starts.add(startX + startY * map.width);
+        return new StealthPathMapFixture(map, starts, goals, threats, threatInflate);
+    }
+
+    static StealthPathBenchMaps generate(int size, long seed){
+        Random rand = new Random(seed);
+        ThreatMap map = new ThreatMap(size, size);
+        java.util.Arrays.fill(map.passable, true);
+
+        int walls = size * size / 900;
+        for(int i = 0; i < walls; i++){
+            int wx = rand.nextInt(size);
+            int wy = rand.nextInt(size);
+            int ww = 2 + rand.nextInt(12);
+            int wh = 2 + rand.nextInt(12);
+            for(int y = wy; y < Math.min(size, wy + wh); y++){
+                for(int x = wx; x < Math.min(size, wx + ww); x++){
+                    map.passable[x + y * size] = false;
+                }
+            }
+        }
+
+        int turrets = Math.max(4, size * size / 2500);
+        Seq<Threat> threats = new Seq<>(turrets);
+        for(int i = 0; i < turrets; i++){
+            float tx = rand.nextInt(size) * tilesize;
+            float ty = rand.nextInt(size) * tilesize;
+            float range = (8 + rand.nextInt(24)) * tilesize;
+            float dps = 10f + rand.nextFloat() * 200f;
+            addDisc(map, tx, ty, range, dps);
+            threats.add(new Threat(tx, ty, range, 0f, dps));
+        }
+
+        int hazards = Math.max(1, size / 50);
+        for(int i = 0; i < hazards; i++){
+            int hx = rand.nextInt(size);
+            int hy = rand.nextInt(size);
+            int hr = 3 + rand.nextInt(8);
+            for(int y = Math.max(0, hy - hr); y < Math.min(size, hy + hr); y++){
+                for(int x = Math.max(0, hx - hr); x < Math.min(size, hx + hr); x++){
+                    map.floorRisk[x + y * size] = 0.5f;
+                }
+            }
+        }
+
+        int margin = Math.max(2, size / 20);
+        int sx = margin, sy = margin;
+        int gx = size - 1 - margin, gy = size - 1 - margin;
+        clearArea(map, sx, sy, 2);
+        clearArea(map, gx, gy, 2);
+
+        IntSeq goals = StealthPathPlanner.buildNearestGoalCandidates(map, gx, gy, 4, false);
+        return new StealthPathBenchMaps(map, sx, sy, goals, threats, 0f);
+    }
+
+    private static void addDisc(ThreatMap map, float cx, float cy, float range, float dps){
+        float r2 = range * range;
+        int minX = Math.max(0, (int)((cx - range) / tilesize) - 1);
+        int maxX = Math.min(map.width - 1, (int)((cx + range) / tilesize) + 1);
+        int minY = Math.max(0, (int)((cy - range) / tilesize) - 1);
+        int maxY = Math.min(map.height - 1, (int)((cy + range) / tilesize) + 1);
+        for(int y = minY; y <= maxY; y++){
+            for(int x = minX; x <= maxX; x++){
+                float dx = x * tilesize + tilesize / 2f - cx;
+                float dy = y * tilesize + tilesize / 2f - cy;
+                if(dx * dx + dy * dy <= r2) map.risk[x + y * map.width] += dps;
+            }
+        }
+    }
+
+    private static void clearArea(ThreatMap map, int cx, int cy, int r){
+        for(int y = Math.max(0, cy - r); y <= Math.min(map.height - 1, cy + r); y++){
+            for(int x = Math.max(0, cx - r); x <= Math.min(map.width - 1, cx + r); x++){
+                int idx = x + y * map.width;
+                map.passable[idx] = true;
+                map.risk[idx] = 0f;
+                map.floorRisk[idx] = 0f;
+            }
+        }
+    }
+}
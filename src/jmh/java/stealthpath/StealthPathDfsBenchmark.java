@@ -0,0 +1,48 @@
+package stealthpath;
+
+import arc.struct.IntSeq;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DFS pathfinder on small maps. It is label-correcting (a tile is re-expanded whenever a cheaper route reaches it),
+ * so it grows much faster than A* on open maps and gets its own sizes and single-shot timing.
+ * Sizes stay at 60 or below so the default {@code jmh} run finishes in seconds: from about 80 tiles up, one generated
+ * minDamage search can take close to a minute. Larger maps can still be measured with {@code -p fixture=gen:<size>}.
+ *
+ * DFS 寻路基准：DFS 为标签修正式搜索（更便宜的路线到达时重新展开），在开阔地图上耗时增长远快于 A*，
+ * 因此单独使用较小地图与单次计时。地图边长不超过 60，保证默认 jmh 任务数秒内完成（80 格以上单次 minDamage
+ * 搜索可能接近一分钟）；需要时可用 -p fixture=gen:<size> 手动指定更大的地图。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StealthPathDfsBenchmark{
+    @Param({"gen:40", "gen:60"})
+    public String fixture;
+
+    @Param({"nearest", "minDamage"})
+    public String mode;
+
+    private StealthPathBenchMaps maps;
+    private PathMode pathMode;
+    private UnitCostGroup units;
+    private final StealthPathPlanner dfs = new StealthPathPlanner();
+
+    @Setup
+    public void setup(){
+        maps = StealthPathBenchMaps.load(fixture);
+        pathMode = PathMode.valueOf(mode);
+        units = StealthPathPlannerBenchmark.untypedGroundUnit(StealthPathPlannerBenchmark.speed);
+        dfs.begin(new PlanSettings(StealthPathPlanner.pathfinderDfs, true, false, 0.35f, 24), null);
+    }
+
+    @Benchmark
+    public IntSeq findPathDfs(){
+        return StealthPathPlannerBenchmark.pathOf(dfs.findPath(maps.map, maps.startX, maps.startY, maps.goals, maps.goalMask, pathMode, units, StealthPathPlannerBenchmark.speed));
+    }
+}
@@ -0,0 +1,141 @@
+package stealthpath;
+
+import arc.math.Mathf;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old {@code PriorityQueue<Node>} open set (lazy deletion) with {@link StealthPathOpenSet}
+ * (decrease-key) on the same A* loop and cost function.
+ *
+ * 对比旧的 PriorityQueue&lt;Node&gt;（惰性删除）与新的索引堆（decrease-key）：
+ * 两个版本的 A* 循环与代价函数完全相同，只替换开放集。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StealthPathOpenSetBenchmark{
+    @Param({"200", "500", "1000"})
+    public int size;
+
+    private StealthPathBenchMaps fixture;
+    private int goalX, goalY;
+    private float[] best;
+    private int[] bestStamp, parent, closedStamp;
+    private int stamp;
+    private final PriorityQueue<Node> queue = new PriorityQueue<>();
+    private final StealthPathOpenSet heap = new StealthPathOpenSet();
+
+    @Setup
+    public void setup(){
+        fixture = StealthPathBenchMaps.generate(size, 0x5eed1L + size);
+        int goal = fixture.goals.first();
+        goalX = goal % size;
+        goalY = goal / size;
+        int tiles = size * size;
+        best = new float[tiles];
+        bestStamp = new int[tiles];
+        parent = new int[tiles];
+        closedStamp = new int[tiles];
+        heap.reset(tiles);
+    }
+
+    @Benchmark
+    public int priorityQueue(){
+        ThreatMap map = fixture.map;
+        int s = ++stamp;
+        int startIdx = fixture.startX + fixture.startY * map.width;
+        queue.clear();
+        bestStamp[startIdx] = s;
+        best[startIdx] = 0f;
+        queue.add(new Node(startIdx, heuristic(fixture.startX, fixture.startY), 0f));
+
+        while(!queue.isEmpty()){
+            Node cur = queue.poll();
+            int idx = cur.idx;
+            if(closedStamp[idx] == s) continue;
+            if(bestStamp[idx] != s || cur.g != best[idx]) continue;
+            closedStamp[idx] = s;
+            if(fixture.goalMask[idx]) return idx;
+
+            int x = idx % map.width, y = idx / map.width;
+            for(int dy = -1; dy <= 1; dy++){
+                for(int dx = -1; dx <= 1; dx++){
+                    int nidx = relax(map, s, idx, x, y, dx, dy);
+                    if(nidx >= 0) queue.add(new Node(nidx, best[nidx] + heuristic(nidx % map.width, nidx / map.width), best[nidx]));
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int indexedHeap(){
+        ThreatMap map = fixture.map;
+        int s = ++stamp;
+        int startIdx = fixture.startX + fixture.startY * map.width;
+        heap.clear();
+        bestStamp[startIdx] = s;
+        best[startIdx] = 0f;
+        heap.push(startIdx, heuristic(fixture.startX, fixture.startY));
+
+        while(!heap.isEmpty()){
+            int idx = heap.poll();
+            closedStamp[idx] = s;
+            if(fixture.goalMask[idx]) return idx;
+
+            int x = idx % map.width, y = idx / map.width;
+            for(int dy = -1; dy <= 1; dy++){
+                for(int dx = -1; dx <= 1; dx++){
+                    int nidx = relax(map, s, idx, x, y, dx, dy);
+                    if(nidx >= 0) heap.push(nidx, best[nidx] + heuristic(nidx % map.width, nidx / map.width));
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the neighbour index when its cost improved, otherwise -1. 邻居代价变小时返回其下标，否则 -1。 */
+    private int relax(ThreatMap map, int s, int idx, int x, int y, int dx, int dy){
+        if(dx == 0 && dy == 0) return -1;
+        int nx = x + dx, ny = y + dy;
+        if(nx < 0 || ny < 0 || nx >= map.width || ny >= map.height) return -1;
+        int nidx = nx + ny * map.width;
+        if(closedStamp[nidx] == s || !map.passable[nidx]) return -1;
+        if(dx != 0 && dy != 0 && (!map.passable[nx + y * map.width] || !map.passable[x + ny * map.width])) return -1;
+
+        float step = (dx == 0 || dy == 0) ? 1f : Mathf.sqrt2;
+        float ng = best[idx] + step * (1f + (map.risk[nidx] + map.floorRisk[nidx]) * 0.01f);
+        if(bestStamp[nidx] == s && ng >= best[nidx]) return -1;
+        bestStamp[nidx] = s;
+        best[nidx] = ng;
+        parent[nidx] = idx;
+        return nidx;
+    }
+
+    private float heuristic(int x, int y){
+        int dx = Math.abs(x - goalX), dy = Math.abs(y - goalY);
+        return Math.max(dx, dy) + (Mathf.sqrt2 - 1f) * Math.min(dx, dy);
+    }
+
+    private static final class Node implements Comparable<Node>{
+        final int idx;
+        final float f, g;
+
+        Node(int idx, float f, float g){
+            this.idx = idx;
+            this.f = f;
+            this.g = g;
+        }
+
+        @Override
+        public int compareTo(Node other){
+            return Float.compare(f, other.f);
+        }
+    }
+}
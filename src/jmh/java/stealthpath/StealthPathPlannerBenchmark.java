@@ -0,0 +1,92 @@
+package stealthpath;
+
+import arc.struct.IntSeq;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planner hot paths on generated or recorded maps.
+ * Recorded fixtures (sp-debug-record-fixtures) are passed as paths, e.g. {@code -p fixture=/path/a.spfx}.
+ *
+ * 规划器热点的基准测试：A*、安全距离场、威胁栅格化、路径压缩（DFS 见 {@link StealthPathDfsBenchmark}）。
+ * fixture 参数为 gen:&lt;尺寸&gt;（生成地图）或游戏内录制的 .spfx 文件路径。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StealthPathPlannerBenchmark{
+    static final float speed = 0.55f;
+
+    @Param({"gen:200", "gen:500", "gen:1000"})
+    public String fixture;
+
+    @Param({"minDamage"})
+    public String mode;
+
+    private StealthPathBenchMaps maps;
+    private PathMode pathMode;
+    private UnitCostGroup units;
+    private final StealthPathPlanner astar = new StealthPathPlanner();
+    private final StealthPathSafeDistance safeDistance = new StealthPathSafeDistance();
+    private ThreatMap rasterMap;
+    private float[] emptyRisk;
+    private IntSeq path;
+
+    @Setup
+    public void setup(){
+        maps = StealthPathBenchMaps.load(fixture);
+        pathMode = PathMode.valueOf(mode);
+
+        units = untypedGroundUnit(speed);
+
+        astar.begin(new PlanSettings(StealthPathPlanner.pathfinderAStar, true, false, 0.35f, 24), null);
+
+        rasterMap = new ThreatMap(maps.map.width, maps.map.height);
+        emptyRisk = new float[maps.map.size];
+
+        PathResult result = astar.findPath(maps.map, maps.startX, maps.startY, maps.goals, maps.goalMask, pathMode, units, speed);
+        path = pathOf(result);
+        if(path == null) path = new IntSeq();
+    }
+
+    // The generated harness lives in another package and cannot see PathResult.
+    static IntSeq pathOf(PathResult result){
+        return result == null ? null : result.path;
+    }
+
+    /** Fixtures carry no floor slots, so floor speed / damage tables stay empty. 无地板槽位的地面单位。 */
+    static UnitCostGroup untypedGroundUnit(float speed){
+        UnitCostProfile unit = new UnitCostProfile(true, true, false, false, false, false, speed, speed, new float[0], new float[0], new float[0]);
+        return new UnitCostGroup(unit, new UnitCostProfile[]{unit});
+    }
+
+    @Benchmark
+    public IntSeq findPathAStar(){
+        return pathOf(astar.findPath(maps.map, maps.startX, maps.startY, maps.goals, maps.goalMask, pathMode, units, speed));
+    }
+
+    /** Full rebuild (the empty update drops the cached field first). 整图重算。 */
+    @Benchmark
+    public short[] computeSafeDistance(){
+        safeDistance.update(emptyRisk, maps.map.width, maps.map.height);
+        return safeDistance.update(maps.map.risk, maps.map.width, maps.map.height);
+    }
+
+    /** Scalar kernel; the Vector API source set is not on the benchmark classpath. 标量内核。 */
+    @Benchmark
+    public float[] applyThreatsToRisk(){
+        Arrays.fill(rasterMap.risk, 0f);
+        StealthPathRiskRaster.applyThreats(StealthPathRiskRaster.scalar, rasterMap, maps.threats, maps.threatInflate);
+        return rasterMap.risk;
+    }
+
+    @Benchmark
+    public IntSeq compactPath(){
+        return StealthPathPathUtil.compactPath(path, maps.map.width);
+    }
+}
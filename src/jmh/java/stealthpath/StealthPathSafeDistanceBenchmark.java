@@ -0,0 +1,82 @@
+package stealthpath;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Safe-distance field: the old full-map BFS vs {@link StealthPathSafeDistance} (full two-pass sweep and incremental patch).
+ *
+ * 安全距离场对比：旧的整图 BFS、两遍扫描整图重算、单个炮塔增删后的增量更新。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StealthPathSafeDistanceBenchmark{
+    @Param({"200", "500", "1000"})
+    public int size;
+
+    private float[] risk, toggled, empty;
+    private short[] bfsDist;
+    private int[] bfsQueue;
+    private final StealthPathSafeDistance field = new StealthPathSafeDistance();
+    private boolean flip;
+
+    @Setup
+    public void setup(){
+        risk = StealthPathBenchMaps.generate(size, 0x5eed2L + size).map.risk;
+        empty = new float[risk.length];
+        toggled = Arrays.copyOf(risk, risk.length);
+        // One extra 12-tile turret disc in the middle of the map.
+        int c = size / 2, r = 12;
+        for(int y = c - r; y <= c + r; y++){
+            for(int x = c - r; x <= c + r; x++){
+                if((x - c) * (x - c) + (y - c) * (y - c) <= r * r) toggled[x + y * size] += 50f;
+            }
+        }
+        bfsDist = new short[risk.length];
+        bfsQueue = new int[risk.length];
+        field.update(risk, size, size);
+    }
+
+    @Benchmark
+    public short[] bfs(){
+        short[] dist = bfsDist;
+        Arrays.fill(dist, (short)-1);
+        int head = 0, tail = 0;
+        for(int i = 0; i < risk.length; i++){
+            if(risk[i] > StealthPathSafeDistance.seedRisk){
+                dist[i] = 0;
+                bfsQueue[tail++] = i;
+            }
+        }
+        while(head < tail){
+            int idx = bfsQueue[head++];
+            short nd = (short)(dist[idx] + 1);
+            int x = idx % size, y = idx / size;
+            if(x > 0 && dist[idx - 1] == -1){ dist[idx - 1] = nd; bfsQueue[tail++] = idx - 1; }
+            if(x < size - 1 && dist[idx + 1] == -1){ dist[idx + 1] = nd; bfsQueue[tail++] = idx + 1; }
+            if(y > 0 && dist[idx - size] == -1){ dist[idx - size] = nd; bfsQueue[tail++] = idx - size; }
+            if(y < size - 1 && dist[idx + size] == -1){ dist[idx + size] = nd; bfsQueue[tail++] = idx + size; }
+        }
+        return dist;
+    }
+
+    /** Full rebuild (the empty update drops the cached field first). 整图重算。 */
+    @Benchmark
+    public short[] chamferFull(){
+        field.update(empty, size, size);
+        return field.update(risk, size, size);
+    }
+
+    /** One turret disc added or removed since the previous call. 增删一个炮塔后的增量更新。 */
+    @Benchmark
+    public short[] incrementalTurret(){
+        flip = !flip;
+        return field.update(flip ? toggled : risk, size, size);
+    }
+}
@@ -118,6 +118,11 @@ public final class NeonProfiler{
         recordInternal(module, category, operation, normalizeThread(threadGroup), elapsedNanos, 1L, rollup, false);
     }
 
+    public static void count(String module, String category, String operation, String threadGroup, long calls){
+        if(!enabled || calls <= 0L) return;
+        recordInternal(module, category, operation, normalizeThread(threadGroup), 0L, calls, false, false);
+    }
+
     public static synchronized void addSelfUiRefresh(long elapsedNanos){
         if(elapsedNanos > 0L) selfUiRefreshNanos += elapsedNanos;
     }
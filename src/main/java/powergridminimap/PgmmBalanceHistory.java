@@ -0,0 +1,128 @@
+package powergridminimap;
+
+/**
+ * Rolling balance history of one power grid: the recent samples behind the power table's min column and the rescue
+ * clear window, plus bucket means over a longer window for trend sparklines.
+ *
+ * 单个电网的盈亏历史（纯 float 环形缓冲，容量固定）：
+ * - {@link #recent}：最近 N 次采样，min 对应电力表的 min 列与救援提示的清除窗口
+ * - {@link #trend}：每 samplesPerBucket 次采样取一次均值，保存 5~10 分钟，用于趋势折线
+ * - 两个环都维护单调队列，min / max 查询为 O(1)，追加为均摊 O(1)
+ * - 电网消失后对象回收到池中复用（见 {@link #matches}），不随电网 id 变化产生垃圾
+ */
+final class PgmmBalanceHistory{
+    final Ring recent;
+    final Ring trend;
+    final int samplesPerBucket;
+    private float bucketSum;
+    private int bucketCount;
+
+    PgmmBalanceHistory(int recentSamples, int trendBuckets, int samplesPerBucket){
+        recent = new Ring(recentSamples);
+        trend = new Ring(trendBuckets);
+        this.samplesPerBucket = Math.max(1, samplesPerBucket);
+    }
+
+    boolean matches(int recentSamples, int trendBuckets, int samplesPerBucket){
+        return recent.capacity == Math.max(1, recentSamples) && trend.capacity == Math.max(1, trendBuckets)
+            && this.samplesPerBucket == Math.max(1, samplesPerBucket);
+    }
+
+    void add(float balance){
+        recent.add(balance);
+        bucketSum += balance;
+        if(++bucketCount >= samplesPerBucket){
+            trend.add(bucketSum / bucketCount);
+            bucketSum = 0f;
+            bucketCount = 0;
+        }
+    }
+
+    void clear(){
+        recent.clear();
+        trend.clear();
+        bucketSum = 0f;
+        bucketCount = 0;
+    }
+
+    /**
+     * Fixed-capacity ring of floats; the oldest value is overwritten once full.
+     * Each deque holds ring slots in age order with monotonic values, so its front is the window min / max;
+     * the only slot that can leave the window is the one being overwritten, which is then the deque front.
+     *
+     * 固定容量的 float 环形缓冲：写满后覆盖最旧的值。
+     * 两个单调队列按时间顺序保存槽位下标，队首即窗口最小 / 最大值；离开窗口的只可能是被覆盖的最旧槽位，它若在队列中必在队首。
+     */
+    static final class Ring{
+        final int capacity;
+        private final float[] values;
+        private final int[] minSlots, maxSlots;
+        private int next, size;
+        private int minHead, minSize, maxHead, maxSize;
+
+        Ring(int capacity){
+            this.capacity = Math.max(1, capacity);
+            values = new float[this.capacity];
+            minSlots = new int[this.capacity];
+            maxSlots = new int[this.capacity];
+        }
+
+        void add(float v){
+            int slot = next;
+            if(size == capacity){
+                if(minSize > 0 && minSlots[minHead] == slot){
+                    minHead = wrap(minHead + 1);
+                    minSize--;
+                }
+                if(maxSize > 0 && maxSlots[maxHead] == slot){
+                    maxHead = wrap(maxHead + 1);
+                    maxSize--;
+                }
+            }else{
+                size++;
+            }
+            values[slot] = v;
+            next = wrap(slot + 1);
+
+            while(minSize > 0 && values[minSlots[wrap(minHead + minSize - 1)]] >= v) minSize--;
+            minSlots[wrap(minHead + minSize)] = slot;
+            minSize++;
+
+            while(maxSize > 0 && values[maxSlots[wrap(maxHead + maxSize - 1)]] <= v) maxSize--;
+            maxSlots[wrap(maxHead + maxSize)] = slot;
+            maxSize++;
+        }
+
+        void clear(){
+            next = size = 0;
+            minHead = minSize = maxHead = maxSize = 0;
+        }
+
+        int size(){
+            return size;
+        }
+
+        /** Value {@code i} samples after the oldest one. 第 i 个值（0 为最旧）。 */
+        float get(int i){
+            return values[wrap(next - size + i + capacity)];
+        }
+
+        float last(){
+            return size == 0 ? 0f : get(size - 1);
+        }
+
+        /** Minimum over the window; 0 when empty. 窗口最小值，空时为 0。 */
+        float min(){
+            return minSize == 0 ? 0f : values[minSlots[minHead]];
+        }
+
+        /** Maximum over the window; 0 when empty. 窗口最大值，空时为 0。 */
+        float max(){
+            return maxSize == 0 ? 0f : values[maxSlots[maxHead]];
+        }
+
+        private int wrap(int i){
+            return i >= capacity ? i - capacity : i;
+        }
+    }
+}
@@ -0,0 +1,625 @@
+package powergridminimap;
+
+import arc.struct.IntQueue;
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Ownership / claim state of the PGMM full-map grid overlay, kept between rebuilds and updated one dirty rectangle at a time.
+ *
+ * PGMM 全屏电网叠加层的归属状态（纯数组运算，不访问 world）：
+ * - 每个电网占一个槽位（slot），记录用电建筑格子、队伍与颜色；距离相同时按槽位号小者优先
+ * - 电网增删 / 非电力建筑变化只扩大脏矩形；更新时只在“脏矩形 + claimDistance”内重算认领（邻接认领 + 距离 BFS）
+ * - 认领连通块及其外扩矩形持久保存；重绘时把与变化区域相交的矩形按原扫描顺序（连通块最小格索引）重画并裁剪，
+ *   因此结果与整图重建一致
+ * - 输出为按世界坐标排列的 RGBA 数组和本次变化的矩形，调用方只需写入并上传该子矩形
+ */
+final class PgmmClaimOverlay{
+    private static final Comparator<Comp> scanOrder = (a, b) -> Integer.compare(a.minIdx, b.minIdx);
+
+    private int width, height;
+    private int[] ownerPower = new int[0];
+    private int[] ownerClaim = new int[0];
+    private boolean[] claimedBuild = new boolean[0];
+    private int[] overlayOwner = new int[0];
+    private int[] tileComp = new int[0];
+    private int[] stamp = new int[0];
+    private short[] dist = new short[0];
+    private int[] ownerNear = new int[0];
+    private int[] rgba = new int[0];
+    private int pass;
+
+    private final Seq<Slot> slots = new Seq<>();
+    private final IntSeq freeSlots = new IntSeq();
+    private final IntSeq pendingFreeSlots = new IntSeq();
+    private final Seq<Comp> comps = new Seq<>();
+    private final IntSeq freeComps = new IntSeq();
+
+    //tiles whose ownership inputs changed since the last update (inclusive, -1 = none)
+    private int dirtyX0 = -1, dirtyY0, dirtyX1, dirtyY1;
+    private boolean changedAll;
+    //result of the last update (inclusive)
+    private int changedX0, changedY0, changedX1, changedY1;
+
+    //scratch
+    private final IntQueue queue = new IntQueue();
+    private final IntSeq reseed = new IntSeq();
+    private final Seq<Comp> paint = new Seq<>();
+    private boolean[] assigned = new boolean[0];
+    private final int[] neighborSlots = new int[8];
+    private final int[] region = new int[4];
+    private int rtX0, rtY0, rtX1, rtY1;
+    private int rpX0, rpY0, rpX1, rpY1;
+
+    /** Non-power buildings near the dirty rectangle (snapshot taken by the caller). 脏矩形附近的非电力建筑快照。 */
+    static final class Buildings{
+        final IntSeq team = new IntSeq();
+        final IntSeq center = new IntSeq();
+        final IntSeq tileStart = new IntSeq();
+        final IntSeq tiles = new IntSeq();
+
+        void clear(){
+            team.clear();
+            center.clear();
+            tileStart.clear();
+            tiles.clear();
+        }
+
+        void begin(int teamId, int centerIdx){
+            team.add(teamId);
+            center.add(centerIdx);
+            tileStart.add(tiles.size);
+        }
+
+        void tile(int idx){
+            tiles.add(idx);
+        }
+
+        int size(){
+            return team.size;
+        }
+
+        int tileEnd(int i){
+            return i + 1 < tileStart.size ? tileStart.get(i + 1) : tiles.size;
+        }
+    }
+
+    private static final class Slot{
+        boolean alive;
+        int team;
+        int baseRgba, darkRgba, lightRgba;
+        final IntSeq tiles = new IntSeq();
+    }
+
+    private static final class Comp{
+        boolean alive;
+        int slot;
+        int minIdx;
+        //expanded bounding box (inclusive, clamped to the map)
+        int x0, y0, x1, y1;
+        int createdPass;
+    }
+
+    int width(){
+        return width;
+    }
+
+    int height(){
+        return height;
+    }
+
+    /** Drops all state; the next update repaints (and the caller re-uploads) the whole map. 清空全部状态。 */
+    void reset(int w, int h){
+        int tileCount = w * h;
+        if(ownerPower.length != tileCount){
+            ownerPower = new int[tileCount];
+            ownerClaim = new int[tileCount];
+            claimedBuild = new boolean[tileCount];
+            overlayOwner = new int[tileCount];
+            tileComp = new int[tileCount];
+            stamp = new int[tileCount];
+            dist = new short[tileCount];
+            ownerNear = new int[tileCount];
+            rgba = new int[tileCount];
+        }else{
+            Arrays.fill(claimedBuild, false);
+            Arrays.fill(stamp, 0);
+            Arrays.fill(rgba, 0);
+        }
+        Arrays.fill(ownerPower, -1);
+        Arrays.fill(ownerClaim, -1);
+        Arrays.fill(overlayOwner, -1);
+        Arrays.fill(tileComp, -1);
+        width = w;
+        height = h;
+        pass = 0;
+        slots.clear();
+        freeSlots.clear();
+        pendingFreeSlots.clear();
+        comps.clear();
+        freeComps.clear();
+        dirtyX0 = -1;
+        changedAll = true;
+    }
+
+    /** Seeds one grid's power tiles; returns its slot. 登记一个电网的用电建筑格子，返回槽位。 */
+    int addSlot(int team, int baseRgba, int darkRgba, int lightRgba, IntSeq powerTiles){
+        int id = freeSlots.isEmpty() ? slots.size : freeSlots.pop();
+        Slot slot;
+        if(id == slots.size){
+            slot = new Slot();
+            slots.add(slot);
+        }else{
+            slot = slots.get(id);
+        }
+        slot.alive = true;
+        slot.team = team;
+        slot.baseRgba = baseRgba;
+        slot.darkRgba = darkRgba;
+        slot.lightRgba = lightRgba;
+        slot.tiles.clear();
+
+        int tileCount = width * height;
+        for(int i = 0; i < powerTiles.size; i++){
+            int idx = powerTiles.get(i);
+            if(idx < 0 || idx >= tileCount) continue;
+            ownerPower[idx] = id;
+            slot.tiles.add(idx);
+            markDirtyTile(idx % width, idx / width);
+        }
+        return id;
+    }
+
+    /** Clears one grid's power tiles; the slot id is reused only after the next update. 移除一个电网的用电格子。 */
+    void removeSlot(int id){
+        if(id < 0 || id >= slots.size) return;
+        Slot slot = slots.get(id);
+        if(!slot.alive) return;
+        slot.alive = false;
+        for(int i = 0; i < slot.tiles.size; i++){
+            int idx = slot.tiles.get(i);
+            if(ownerPower[idx] == id) ownerPower[idx] = -1;
+            markDirtyTile(idx % width, idx / width);
+        }
+        slot.tiles.clear();
+        pendingFreeSlots.add(id);
+    }
+
+    /** Marks tiles whose buildings changed without a grid change (e.g. a conveyor placed next to a grid). 标记非电力建筑变化。 */
+    void markDirty(int x0, int y0, int x1, int y1){
+        if(width <= 0 || height <= 0) return;
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(width - 1, x1);
+        y1 = Math.min(height - 1, y1);
+        if(x0 > x1 || y0 > y1) return;
+        if(dirtyX0 == -1){
+            dirtyX0 = x0;
+            dirtyY0 = y0;
+            dirtyX1 = x1;
+            dirtyY1 = y1;
+        }else{
+            dirtyX0 = Math.min(dirtyX0, x0);
+            dirtyY0 = Math.min(dirtyY0, y0);
+            dirtyX1 = Math.max(dirtyX1, x1);
+            dirtyY1 = Math.max(dirtyY1, y1);
+        }
+    }
+
+    private void markDirtyTile(int x, int y){
+        markDirty(x, y, x, y);
+    }
+
+    boolean hasWork(){
+        return dirtyX0 != -1 || changedAll;
+    }
+
+    /**
+     * Tiles whose claims are recomputed by the next update: the dirty rectangle expanded by {@code claimDistance + 1}.
+     * Every non-power building with a tile in this rectangle must be passed to {@link #update}.
+     * 下次更新重算认领的区域；该区域内有格子的非电力建筑都要放进快照。
+     */
+    boolean claimRegion(int claimDistance, int[] out){
+        if(dirtyX0 == -1) return false;
+        int pad = Math.max(0, claimDistance) + 1;
+        out[0] = Math.max(0, dirtyX0 - pad);
+        out[1] = Math.max(0, dirtyY0 - pad);
+        out[2] = Math.min(width - 1, dirtyX1 + pad);
+        out[3] = Math.min(height - 1, dirtyY1 + pad);
+        return true;
+    }
+
+    /**
+     * Recomputes claims inside the claim region, then components and pixels of the affected rectangle.
+     * Returns false when nothing had to be repainted.
+     * 重算认领、连通块与像素；没有需要重画的区域时返回 false。
+     */
+    boolean update(int claimDistance, Buildings buildings){
+        if(!hasWork()) return false;
+        pass++;
+
+        if(dirtyX0 != -1){
+            int[] region = this.region;
+            claimRegion(claimDistance, region);
+            recomputeClaims(claimDistance, buildings, region[0], region[1], region[2], region[3]);
+            rebuildComponents();
+            repaint(rpX0, rpY0, rpX1, rpY1);
+            changedX0 = rpX0;
+            changedY0 = rpY0;
+            changedX1 = rpX1;
+            changedY1 = rpY1;
+        }
+        if(changedAll){
+            changedX0 = 0;
+            changedY0 = 0;
+            changedX1 = width - 1;
+            changedY1 = height - 1;
+        }
+
+        for(int i = 0; i < pendingFreeSlots.size; i++){
+            freeSlots.add(pendingFreeSlots.get(i));
+        }
+        pendingFreeSlots.clear();
+        dirtyX0 = -1;
+        changedAll = false;
+        return true;
+    }
+
+    int changedX0(){
+        return changedX0;
+    }
+
+    int changedY0(){
+        return changedY0;
+    }
+
+    int changedX1(){
+        return changedX1;
+    }
+
+    int changedY1(){
+        return changedY1;
+    }
+
+    /** Overlay color of one tile (RGBA8888, 0 = transparent), in world orientation. 某格的叠加颜色。 */
+    int rgba(int idx){
+        return rgba[idx];
+    }
+
+    /** Slot whose claim covers the tile (power tile or claimed building), -1 if none. 认领该格的槽位，无则为 -1。 */
+    int claimOwner(int idx){
+        return ownerClaim[idx];
+    }
+
+    /** Slot whose rectangle painted this empty tile, -1 if none. 填充该空格的槽位，无则为 -1。 */
+    int paintOwner(int idx){
+        return overlayOwner[idx];
+    }
+
+    private void recomputeClaims(int claimDistance, Buildings buildings, int x0, int y0, int x1, int y1){
+        int w = width, h = height;
+
+        //Step 1) claims inside the region start from the power ownership.
+        for(int y = y0; y <= y1; y++){
+            int row = y * w;
+            for(int x = x0; x <= x1; x++){
+                int idx = row + x;
+                ownerClaim[idx] = ownerPower[idx];
+                claimedBuild[idx] = ownerPower[idx] >= 0;
+            }
+        }
+
+        //Buildings crossing the region border are recomputed as a whole, so the touched rectangle can grow.
+        rtX0 = x0;
+        rtY0 = y0;
+        rtX1 = x1;
+        rtY1 = y1;
+        int count = buildings.size();
+        for(int bi = 0; bi < count; bi++){
+            for(int ti = buildings.tileStart.get(bi), end = buildings.tileEnd(bi); ti < end; ti++){
+                int idx = buildings.tiles.get(ti);
+                int x = idx % w, y = idx / w;
+                ownerClaim[idx] = ownerPower[idx];
+                claimedBuild[idx] = ownerPower[idx] >= 0;
+                if(x < rtX0) rtX0 = x;
+                if(y < rtY0) rtY0 = y;
+                if(x > rtX1) rtX1 = x;
+                if(y > rtY1) rtY1 = y;
+            }
+        }
+
+        if(assigned.length < count) assigned = new boolean[count];
+        Arrays.fill(assigned, 0, count, false);
+
+        //Step 2) non-power buildings that touch exactly one grid of their team.
+        for(int bi = 0; bi < count; bi++){
+            int team = buildings.team.get(bi);
+            int start = buildings.tileStart.get(bi), end = buildings.tileEnd(bi);
+            int ncount = 0;
+            Arrays.fill(neighborSlots, -1);
+            for(int ti = start; ti < end; ti++){
+                int idx = buildings.tiles.get(ti);
+                int tx = idx % w;
+                int ty = idx / w;
+                ncount = addNeighborSlot(team, tx + 1, ty, ncount);
+                ncount = addNeighborSlot(team, tx - 1, ty, ncount);
+                ncount = addNeighborSlot(team, tx, ty + 1, ncount);
+                ncount = addNeighborSlot(team, tx, ty - 1, ncount);
+                if(ncount > 1) break;
+            }
+            if(ncount == 1){
+                claimTiles(buildings, start, end, neighborSlots[0]);
+                assigned[bi] = true;
+            }
+        }
+
+        //Step 3) distance BFS from power tiles: remaining buildings within the threshold join the nearest grid.
+        if(claimDistance > 0){
+            //Shortest 4-neighbor paths stay inside the bounding box, so sources within claimDistance of the touched rectangle suffice.
+            int bx0 = Math.max(0, rtX0 - claimDistance), by0 = Math.max(0, rtY0 - claimDistance);
+            int bx1 = Math.min(w - 1, rtX1 + claimDistance), by1 = Math.min(h - 1, rtY1 + claimDistance);
+            queue.clear();
+            for(int y = by0; y <= by1; y++){
+                int row = y * w;
+                for(int x = bx0; x <= bx1; x++){
+                    int idx = row + x;
+                    int g = ownerPower[idx];
+                    if(g >= 0){
+                        dist[idx] = 0;
+                        ownerNear[idx] = g;
+                        queue.addLast(idx);
+                    }else{
+                        dist[idx] = -1;
+                        ownerNear[idx] = -1;
+                    }
+                }
+            }
+
+            while(queue.size > 0){
+                int idx = queue.removeFirst();
+                int d = dist[idx];
+                if(d >= claimDistance) continue;
+                int x = idx % w;
+                int y = idx / w;
+                int g = ownerNear[idx];
+
+                spread(bx0, by0, bx1, by1, x + 1, y, d + 1, g);
+                spread(bx0, by0, bx1, by1, x - 1, y, d + 1, g);
+                spread(bx0, by0, bx1, by1, x, y + 1, d + 1, g);
+                spread(bx0, by0, bx1, by1, x, y - 1, d + 1, g);
+            }
+
+            for(int bi = 0; bi < count; bi++){
+                if(assigned[bi]) continue;
+                int cidx = buildings.center.get(bi);
+                if(cidx < 0 || cidx >= w * h) continue;
+                int cx = cidx % w, cy = cidx / w;
+                if(cx < bx0 || cy < by0 || cx > bx1 || cy > by1) continue;
+                int d = dist[cidx];
+                int g = ownerNear[cidx];
+                if(d >= 0 && d < claimDistance && g >= 0 && g < slots.size && slots.get(g).alive && slots.get(g).team == buildings.team.get(bi)){
+                    claimTiles(buildings, buildings.tileStart.get(bi), buildings.tileEnd(bi), g);
+                    assigned[bi] = true;
+                }
+            }
+        }
+    }
+
+    private void claimTiles(Buildings buildings, int start, int end, int slot){
+        for(int ti = start; ti < end; ti++){
+            int idx = buildings.tiles.get(ti);
+            ownerClaim[idx] = slot;
+            claimedBuild[idx] = true;
+        }
+    }
+
+    private int addNeighborSlot(int team, int x, int y, int count){
+        if(x < 0 || y < 0 || x >= width || y >= height) return count;
+        int g = ownerPower[x + y * width];
+        if(g < 0) return count;
+        if(g >= slots.size || slots.get(g).team != team) return count;
+        for(int i = 0; i < count; i++){
+            if(neighborSlots[i] == g) return count;
+        }
+        neighborSlots[count] = g;
+        return count + 1;
+    }
+
+    private void spread(int bx0, int by0, int bx1, int by1, int x, int y, int nd, int g){
+        if(x < bx0 || y < by0 || x > bx1 || y > by1) return;
+        int idx = x + y * width;
+        int cd = dist[idx];
+        if(cd == -1){
+            dist[idx] = (short)nd;
+            ownerNear[idx] = g;
+            queue.addLast(idx);
+        }else if(cd == nd){
+            //tie-break: keep deterministic smallest slot
+            if(ownerNear[idx] > g){
+                ownerNear[idx] = g;
+            }
+        }
+    }
+
+    /**
+     * Drops components that touch the recomputed rectangle (or merge with one) and rebuilds them.
+     * 丢弃与重算区域相交（或与之合并）的连通块并重建。
+     */
+    private void rebuildComponents(){
+        int w = width;
+        rpX0 = rtX0;
+        rpY0 = rtY0;
+        rpX1 = rtX1;
+        rpY1 = rtY1;
+        reseed.clear();
+
+        for(int y = rtY0; y <= rtY1; y++){
+            int row = y * w;
+            for(int x = rtX0; x <= rtX1; x++){
+                int c = tileComp[row + x];
+                if(c >= 0) dropComp(c, row + x);
+            }
+        }
+
+        for(int y = rtY0; y <= rtY1; y++){
+            int row = y * w;
+            for(int x = rtX0; x <= rtX1; x++){
+                buildComp(row + x);
+            }
+        }
+        for(int i = 0; i < reseed.size; i++){
+            buildComp(reseed.get(i));
+        }
+        reseed.clear();
+    }
+
+    /** Forgets a component; its tiles outside the recomputed rectangle are queued so they are regrouped. */
+    private void dropComp(int id, int from){
+        Comp comp = comps.get(id);
+        addRepaint(comp);
+        comp.alive = false;
+        freeComps.add(id);
+
+        queue.clear();
+        tileComp[from] = -1;
+        queue.addLast(from);
+        int w = width, h = height;
+        while(queue.size > 0){
+            int cur = queue.removeFirst();
+            reseed.add(cur);
+            int x = cur % w;
+            int y = cur / w;
+            int n;
+            if(x + 1 < w && tileComp[n = cur + 1] == id){ tileComp[n] = -1; queue.addLast(n); }
+            if(x - 1 >= 0 && tileComp[n = cur - 1] == id){ tileComp[n] = -1; queue.addLast(n); }
+            if(y + 1 < h && tileComp[n = cur + w] == id){ tileComp[n] = -1; queue.addLast(n); }
+            if(y - 1 >= 0 && tileComp[n = cur - w] == id){ tileComp[n] = -1; queue.addLast(n); }
+        }
+    }
+
+    private void buildComp(int start){
+        int gi = ownerClaim[start];
+        if(gi < 0 || stamp[start] == pass) return;
+
+        int id = freeComps.isEmpty() ? comps.size : freeComps.pop();
+        Comp comp;
+        if(id == comps.size){
+            comp = new Comp();
+            comps.add(comp);
+        }else{
+            comp = comps.get(id);
+        }
+
+        int w = width, h = height;
+        int minx = w, miny = h, maxx = -1, maxy = -1;
+        int minIdx = start;
+        queue.clear();
+        stamp[start] = pass;
+        queue.addLast(start);
+        while(queue.size > 0){
+            int cur = queue.removeFirst();
+            int old = tileComp[cur];
+            if(old >= 0 && old != id){
+                //an untouched component that now connects to a recomputed one
+                Comp merged = comps.get(old);
+                if(merged.alive && merged.createdPass != pass){
+                    addRepaint(merged);
+                    merged.alive = false;
+                    freeComps.add(old);
+                }
+            }
+            tileComp[cur] = id;
+            if(cur < minIdx) minIdx = cur;
+            int x = cur % w;
+            int y = cur / w;
+            if(x < minx) minx = x;
+            if(y < miny) miny = y;
+            if(x > maxx) maxx = x;
+            if(y > maxy) maxy = y;
+
+            int n;
+            if(x + 1 < w && stamp[n = cur + 1] != pass && ownerClaim[n] == gi){ stamp[n] = pass; queue.addLast(n); }
+            if(x - 1 >= 0 && stamp[n = cur - 1] != pass && ownerClaim[n] == gi){ stamp[n] = pass; queue.addLast(n); }
+            if(y + 1 < h && stamp[n = cur + w] != pass && ownerClaim[n] == gi){ stamp[n] = pass; queue.addLast(n); }
+            if(y - 1 >= 0 && stamp[n = cur - w] != pass && ownerClaim[n] == gi){ stamp[n] = pass; queue.addLast(n); }
+        }
+
+        comp.alive = true;
+        comp.slot = gi;
+        comp.minIdx = minIdx;
+        comp.createdPass = pass;
+        //expand bbox by 1 to allow outside fill
+        comp.x0 = Math.max(0, minx - 1);
+        comp.y0 = Math.max(0, miny - 1);
+        comp.x1 = Math.min(w - 1, maxx + 1);
+        comp.y1 = Math.min(h - 1, maxy + 1);
+        addRepaint(comp);
+    }
+
+    private void addRepaint(Comp comp){
+        if(comp.x0 < rpX0) rpX0 = comp.x0;
+        if(comp.y0 < rpY0) rpY0 = comp.y0;
+        if(comp.x1 > rpX1) rpX1 = comp.x1;
+        if(comp.y1 > rpY1) rpY1 = comp.y1;
+    }
+
+    /**
+     * Repaints one rectangle: every component rectangle that overlaps it is drawn again in scan order, clipped.
+     * 重画一个矩形：与之相交的连通块矩形按扫描顺序重画并裁剪。
+     */
+    private void repaint(int x0, int y0, int x1, int y1){
+        int w = width;
+        for(int y = y0; y <= y1; y++){
+            int row = y * w;
+            Arrays.fill(rgba, row + x0, row + x1 + 1, 0);
+            Arrays.fill(overlayOwner, row + x0, row + x1 + 1, -1);
+        }
+
+        paint.clear();
+        for(int i = 0; i < comps.size; i++){
+            Comp c = comps.get(i);
+            if(!c.alive || c.x1 < x0 || c.x0 > x1 || c.y1 < y0 || c.y0 > y1) continue;
+            paint.add(c);
+        }
+        paint.sort(scanOrder);
+
+        //rectangular-biased render:
+        //- fill the whole (expanded) bounding box area with light color
+        //- draw a dark border around the rectangle (closed shape)
+        //- draw claimed building tiles with base color; border tiles with dark color
+        for(int i = 0; i < paint.size; i++){
+            Comp c = paint.get(i);
+            int gi = c.slot;
+            Slot slot = slots.get(gi);
+            int px0 = Math.max(x0, c.x0), px1 = Math.min(x1, c.x1);
+            int py0 = Math.max(y0, c.y0), py1 = Math.min(y1, c.y1);
+            for(int wy = py0; wy <= py1; wy++){
+                int yOff = wy * w;
+                boolean edgeY = wy == c.y0 || wy == c.y1;
+                for(int wx = px0; wx <= px1; wx++){
+                    int widx = wx + yOff;
+
+                    //don't overwrite other grids' claimed buildings
+                    if(claimedBuild[widx] && ownerClaim[widx] != gi) continue;
+
+                    boolean edge = edgeY || wx == c.x0 || wx == c.x1;
+                    boolean isBuild = claimedBuild[widx] && ownerClaim[widx] == gi;
+
+                    //avoid messy overlaps between rectangles: only paint empty tiles if unowned yet
+                    if(!isBuild && overlayOwner[widx] != -1 && overlayOwner[widx] != gi) continue;
+
+                    if(isBuild){
+                        rgba[widx] = edge ? slot.darkRgba : slot.baseRgba;
+                    }else{
+                        rgba[widx] = edge ? slot.darkRgba : slot.lightRgba;
+                        overlayOwner[widx] = gi;
+                    }
+                }
+            }
+        }
+        paint.clear();
+    }
+}
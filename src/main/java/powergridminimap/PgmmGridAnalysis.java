@@ -0,0 +1,662 @@
+package powergridminimap;
+
+import arc.math.Mathf;
+import arc.math.geom.Point2;
+import arc.struct.FloatSeq;
+import arc.struct.IntIntMap;
+import arc.struct.IntQueue;
+import arc.struct.IntSeq;
+import arc.struct.IntSet;
+import arc.struct.LongSeq;
+import arc.struct.Seq;
+
+import java.util.Arrays;
+
+import static mindustry.Vars.tilesize;
+
+/**
+ * Headless power-grid analysis over building snapshots: cluster-marker partitioning and rescue-cut search.
+ *
+ * 电网分析核心（纯数组，不访问 world / PowerGraph）：
+ * - 输入是 {@link Network}：建筑中心格（Point2 打包）、尺寸、电网 id、每 tick 发电 / 需求、激光连线与电力连接
+ * - 游戏内由 PowerGridCache / RescueAdvisor 从 graph.all 采集快照后调用；JMH 基准用生成的网络调用同一份代码
+ * - 遍历顺序与浮点累加顺序与原先直接遍历 Building 的实现相同，结果一致
+ * - 实例持有复用的临时结构，只能在一个线程上使用
+ */
+final class PgmmGridAnalysis{
+    /** Cap on clusters and marker rectangles per grid (UI spam / perf on extreme maps). 每个电网的簇 / 矩形上限。 */
+    static final int maxMarkersPerGraph = 64;
+
+    /**
+     * Building snapshot; the links and connections of a building are added right after it.
+     * 建筑快照：连线 / 连接紧跟在所属建筑之后添加。
+     */
+    static final class Network{
+        int worldWidth, worldHeight;
+        final IntSeq pos = new IntSeq();
+        final IntSeq blockSize = new IntSeq();
+        final IntSeq graph = new IntSeq();
+        /** Power per tick, already multiplied by the building's delta. 每 tick 发电 / 需求。 */
+        final FloatSeq produced = new FloatSeq(), needed = new FloatSeq();
+        /** Laser links of power nodes (positions). 电力节点的激光连线（坐标）。 */
+        final IntSeq linkStart = new IntSeq(), links = new IntSeq();
+        /** Building.getPowerConnections within the same grid (positions). 同一电网内的电力连接（坐标）。 */
+        final IntSeq connStart = new IntSeq(), conns = new IntSeq();
+        final IntIntMap indexOf = new IntIntMap();
+
+        void clear(int worldWidth, int worldHeight){
+            this.worldWidth = worldWidth;
+            this.worldHeight = worldHeight;
+            pos.clear();
+            blockSize.clear();
+            graph.clear();
+            produced.clear();
+            needed.clear();
+            linkStart.clear();
+            links.clear();
+            connStart.clear();
+            conns.clear();
+            indexOf.clear();
+        }
+
+        int add(int buildPos, int size, int graphId, float producedPerTick, float neededPerTick){
+            int index = pos.size;
+            pos.add(buildPos);
+            blockSize.add(size);
+            graph.add(graphId);
+            produced.add(producedPerTick);
+            needed.add(neededPerTick);
+            linkStart.add(links.size);
+            connStart.add(conns.size);
+            indexOf.put(buildPos, index);
+            return index;
+        }
+
+        void link(int otherPos){
+            links.add(otherPos);
+        }
+
+        void connect(int otherPos){
+            conns.add(otherPos);
+        }
+
+        int size(){
+            return pos.size;
+        }
+
+        int linkEnd(int i){
+            return i + 1 < linkStart.size ? linkStart.get(i + 1) : links.size;
+        }
+
+        int connEnd(int i){
+            return i + 1 < connStart.size ? connStart.get(i + 1) : conns.size;
+        }
+
+        /** Indices of one grid's buildings, in snapshot order. 某个电网的建筑下标。 */
+        void members(int graphId, IntSeq out){
+            out.clear();
+            for(int i = 0; i < graph.size; i++){
+                if(graph.items[i] == graphId) out.add(i);
+            }
+        }
+
+        /** Tiles covered by building i (Tile.getLinkedTiles order, clipped to the world) not yet in {@code seen}. */
+        void addTiles(int i, IntSet seen, IntSeq out){
+            int p = pos.items[i];
+            int size = Math.max(1, blockSize.items[i]);
+            if(size == 1){
+                if(seen.add(p)) out.add(p);
+                return;
+            }
+            int x = Point2.x(p), y = Point2.y(p);
+            int o = -(size - 1) / 2;
+            for(int dx = 0; dx < size; dx++){
+                for(int dy = 0; dy < size; dy++){
+                    int tx = x + dx + o, ty = y + dy + o;
+                    if(tx < 0 || ty < 0 || tx >= worldWidth || ty >= worldHeight) continue;
+                    int t = Point2.pack(tx, ty);
+                    if(seen.add(t)) out.add(t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marker rectangles of one grid (tile coordinates, inclusive) and its tile-weighted center (world units).
+     * 电网的标记矩形（格坐标，闭区间）与按格加权的中心（世界坐标）。
+     */
+    static final class Partition{
+        /** minx, miny, maxx, maxy per rectangle. 每个矩形四个整数。 */
+        final IntSeq rects = new IntSeq();
+        boolean hasTiles;
+        /** Smallest occupied tile position; stable color key across minimap opens. 最小格坐标，用作稳定颜色键。 */
+        int minPos;
+        boolean hasCenter;
+        float centerX, centerY;
+
+        int rectCount(){
+            return rects.size / 4;
+        }
+
+        void clear(){
+            rects.clear();
+            hasTiles = false;
+            minPos = Integer.MAX_VALUE;
+            hasCenter = false;
+            centerX = centerY = 0f;
+        }
+    }
+
+    /** One candidate link cut (positions are Point2-packed) and the hull of the rescued island. 断开一条连线的候选方案。 */
+    static final class Cut{
+        int aPos, bPos;
+        int islandStartPos;
+        float rescueNetPerTick;
+        float[] hull;
+        float minX, minY, maxX, maxY;
+        float centerX, centerY;
+    }
+
+    private static final class Cluster{
+        float sumX, sumY;
+        int count;
+        int minx, miny, maxx, maxy;
+    }
+
+    //clustering scratch
+    private final Seq<Cluster> clusterPool = new Seq<>();
+    private final Seq<Cluster> clusters = new Seq<>();
+    private final IntSet occupied = new IntSet();
+    private final IntSeq occupiedList = new IntSeq();
+    private final IntSet visited = new IntSet();
+    private final IntQueue queue = new IntQueue();
+    private final int[] mstParent = new int[maxMarkersPerGraph];
+    private final float[] mstParentW = new float[maxMarkersPerGraph];
+    private final boolean[] mstUsed = new boolean[maxMarkersPerGraph];
+    private final float[] mstBest = new float[maxMarkersPerGraph];
+    private final boolean[] mstCompVisited = new boolean[maxMarkersPerGraph];
+    private final IntSeq[] mstAdj = new IntSeq[maxMarkersPerGraph];
+    {
+        for(int i = 0; i < mstAdj.length; i++){
+            mstAdj[i] = new IntSeq();
+        }
+    }
+
+    //rescue-cut scratch
+    private final IntSeq edgeA = new IntSeq();
+    private final IntSeq edgeB = new IntSeq();
+    private final Seq<Cut> best = new Seq<>(false, 8, Cut.class);
+    private int[] seenStamp = new int[0];
+    private int stamp;
+    private final IntSet hullTiles = new IntSet();
+    private final IntSeq hullTileList = new IntSeq();
+    private final LongSeq hullCorners = new LongSeq();
+    private final LongSeq hullUnique = new LongSeq();
+    private final LongSeq hull = new LongSeq();
+    private int compCount;
+    private float compProduced, compNeeded;
+
+    /**
+     * Splits a grid into marker rectangles:
+     * 4-neighbor tile clusters, an MST over the clusters weighted by bounding-box gap, and every MST edge longer than
+     * {@code thresholdTiles} cut (none when it is &lt;= 0). Each remaining component becomes one rectangle.
+     *
+     * 把电网划分为标记矩形：先按四邻域求格子连通簇，再以包围盒间距为权做簇的最小生成树，
+     * 剪掉长于 thresholdTiles 的边（&lt;= 0 时不剪），每个剩余连通分量合并为一个矩形。
+     */
+    void partition(Network net, IntSeq members, int thresholdTiles, Partition out){
+        out.clear();
+
+        //Collect occupied tiles (all linked tiles for each building) for this graph.
+        occupied.clear();
+        occupiedList.clear();
+        for(int i = 0; i < members.size; i++){
+            net.addTiles(members.items[i], occupied, occupiedList);
+        }
+        if(occupiedList.isEmpty()) return;
+
+        out.hasTiles = true;
+        for(int i = 0; i < occupiedList.size; i++){
+            int p = occupiedList.items[i];
+            if(p < out.minPos) out.minPos = p;
+        }
+
+        //Flood-fill connected components on the tile grid, using 4-neighbor adjacency.
+        visited.clear();
+        queue.clear();
+        clusters.clear();
+        int clusterPoolUsed = 0;
+        float totalSumX = 0f, totalSumY = 0f;
+        int totalCount = 0;
+        int w = net.worldWidth, h = net.worldHeight;
+
+        for(int i = 0; i < occupiedList.size; i++){
+            int start = occupiedList.items[i];
+            if(visited.contains(start)) continue;
+
+            Cluster cluster = clusterPoolUsed < clusterPool.size ? clusterPool.get(clusterPoolUsed) : new Cluster();
+            if(clusterPoolUsed >= clusterPool.size) clusterPool.add(cluster);
+            clusterPoolUsed++;
+            cluster.minx = Integer.MAX_VALUE;
+            cluster.miny = Integer.MAX_VALUE;
+            cluster.maxx = Integer.MIN_VALUE;
+            cluster.maxy = Integer.MIN_VALUE;
+            cluster.sumX = 0f;
+            cluster.sumY = 0f;
+            cluster.count = 0;
+
+            visited.add(start);
+            queue.addLast(start);
+
+            while(queue.size > 0){
+                int cur = queue.removeFirst();
+                int x = Point2.x(cur);
+                int y = Point2.y(cur);
+
+                cluster.sumX += (x + 0.5f) * tilesize;
+                cluster.sumY += (y + 0.5f) * tilesize;
+                cluster.count++;
+
+                if(x < cluster.minx) cluster.minx = x;
+                if(y < cluster.miny) cluster.miny = y;
+                if(x > cluster.maxx) cluster.maxx = x;
+                if(y > cluster.maxy) cluster.maxy = y;
+
+                int n;
+                n = Point2.pack(x + 1, y);
+                if(x + 1 < w && occupied.contains(n) && !visited.contains(n)){ visited.add(n); queue.addLast(n); }
+                n = Point2.pack(x - 1, y);
+                if(x - 1 >= 0 && occupied.contains(n) && !visited.contains(n)){ visited.add(n); queue.addLast(n); }
+                n = Point2.pack(x, y + 1);
+                if(y + 1 < h && occupied.contains(n) && !visited.contains(n)){ visited.add(n); queue.addLast(n); }
+                n = Point2.pack(x, y - 1);
+                if(y - 1 >= 0 && occupied.contains(n) && !visited.contains(n)){ visited.add(n); queue.addLast(n); }
+            }
+
+            if(cluster.count <= 0) continue;
+
+            totalSumX += cluster.sumX;
+            totalSumY += cluster.sumY;
+            totalCount += cluster.count;
+
+            clusters.add(cluster);
+            if(clusters.size >= maxMarkersPerGraph) break;
+        }
+
+        if(clusters.isEmpty() || totalCount <= 0) return;
+
+        out.centerX = totalSumX / totalCount;
+        out.centerY = totalSumY / totalCount;
+        out.hasCenter = true;
+
+        //Prim's MST over clusters with bbox-gap as edge weight
+        int n = clusters.size;
+        int[] parent = mstParent;
+        float[] parentW = mstParentW;
+        boolean[] used = mstUsed;
+        float[] bestW = mstBest;
+        Arrays.fill(parent, 0, n, -1);
+        Arrays.fill(parentW, 0, n, 0f);
+        Arrays.fill(used, 0, n, false);
+        Arrays.fill(bestW, 0, n, Float.POSITIVE_INFINITY);
+        bestW[0] = 0f;
+
+        for(int iter = 0; iter < n; iter++){
+            int v = -1;
+            float vBest = Float.POSITIVE_INFINITY;
+            for(int i = 0; i < n; i++){
+                if(used[i]) continue;
+                float d = bestW[i];
+                if(d < vBest){
+                    vBest = d;
+                    v = i;
+                }
+            }
+            if(v == -1) break;
+            used[v] = true;
+            if(iter != 0){
+                parentW[v] = vBest;
+            }
+
+            Cluster a = clusters.get(v);
+            for(int u = 0; u < n; u++){
+                if(used[u]) continue;
+                float gap = clusterGap(a, clusters.get(u));
+                if(gap < bestW[u]){
+                    bestW[u] = gap;
+                    parent[u] = v;
+                }
+            }
+        }
+
+        //adjacency from MST edges that pass the threshold (or all edges if threshold <= 0)
+        IntSeq[] adj = mstAdj;
+        for(int i = 0; i < n; i++){
+            adj[i].clear();
+        }
+        for(int i = 1; i < n; i++){
+            int p = parent[i];
+            if(p < 0) continue;
+            if(thresholdTiles > 0 && parentW[i] > thresholdTiles) continue;
+            adj[i].add(p);
+            adj[p].add(i);
+        }
+
+        boolean[] compVisited = mstCompVisited;
+        Arrays.fill(compVisited, 0, n, false);
+
+        for(int si = 0; si < n; si++){
+            if(compVisited[si]) continue;
+            compVisited[si] = true;
+            queue.clear();
+            queue.addLast(si);
+
+            int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE, maxx = Integer.MIN_VALUE, maxy = Integer.MIN_VALUE;
+
+            while(queue.size > 0){
+                int v = queue.removeFirst();
+                Cluster c = clusters.get(v);
+                if(c.minx < minx) minx = c.minx;
+                if(c.miny < miny) miny = c.miny;
+                if(c.maxx > maxx) maxx = c.maxx;
+                if(c.maxy > maxy) maxy = c.maxy;
+
+                IntSeq nei = adj[v];
+                for(int ni = 0; ni < nei.size; ni++){
+                    int to = nei.get(ni);
+                    if(compVisited[to]) continue;
+                    compVisited[to] = true;
+                    queue.addLast(to);
+                }
+            }
+
+            if(minx == Integer.MAX_VALUE || miny == Integer.MAX_VALUE) continue;
+
+            out.rects.add(minx, miny, maxx, maxy);
+            if(out.rectCount() >= maxMarkersPerGraph) break;
+        }
+    }
+
+    private static float clusterGap(Cluster a, Cluster b){
+        int dx = 0;
+        if(a.maxx < b.minx) dx = b.minx - a.maxx - 1;
+        else if(b.maxx < a.minx) dx = a.minx - b.maxx - 1;
+
+        int dy = 0;
+        if(a.maxy < b.miny) dy = b.miny - a.maxy - 1;
+        else if(b.maxy < a.miny) dy = a.miny - b.maxy - 1;
+
+        return Mathf.dst(0f, 0f, dx, dy);
+    }
+
+    /**
+     * Best single laser-link cuts of one grid, ranked by the net surplus of the better side; at most {@code topk},
+     * each with the convex hull of the side that keeps running. Only the first 30 (60 when aggressive) links are tried.
+     *
+     * 找出断开后能让一侧恢复正收支的激光连线（按该侧净发电降序，最多 topk 条），并计算该侧的凸包。
+     * 只尝试前 30 条连线（激进模式 60 条）。
+     */
+    void rescueCuts(Network net, IntSeq members, boolean aggressive, int topk, Seq<Cut> out){
+        if(members.isEmpty()) return;
+
+        //collect candidate link edges (PowerNode laser links); dedupe in a small list
+        edgeA.clear();
+        edgeB.clear();
+        for(int i = 0; i < members.size; i++){
+            int b = members.items[i];
+            int bPos = net.pos.items[b];
+            for(int li = net.linkStart.items[b], end = net.linkEnd(b); li < end; li++){
+                int otherPos = net.links.items[li];
+                if(otherPos == bPos) continue;
+                int a = Math.min(bPos, otherPos);
+                int c = Math.max(bPos, otherPos);
+                boolean exists = false;
+                for(int ei = 0; ei < edgeA.size; ei++){
+                    if(edgeA.items[ei] == a && edgeB.items[ei] == c){
+                        exists = true;
+                        break;
+                    }
+                }
+                if(!exists){
+                    edgeA.add(a);
+                    edgeB.add(c);
+                }
+            }
+        }
+
+        if(edgeA.isEmpty()) return;
+
+        //graph totals once (steady-state only)
+        float totalProduced = 0f;
+        float totalNeeded = 0f;
+        for(int i = 0; i < members.size; i++){
+            int b = members.items[i];
+            totalProduced += net.produced.items[b];
+            totalNeeded += net.needed.items[b];
+        }
+
+        int graphId = net.graph.items[members.items[0]];
+        best.clear();
+
+        int maxEdges = aggressive ? 60 : 30;
+        for(int ei = 0; ei < edgeA.size && ei < maxEdges; ei++){
+            int a = net.indexOf.get(edgeA.items[ei], -1);
+            int b = net.indexOf.get(edgeB.items[ei], -1);
+            if(a < 0 || b < 0) continue;
+            if(net.graph.items[a] != graphId || net.graph.items[b] != graphId) continue;
+
+            component(net, a, a, b, false);
+            if(compCount <= 0) continue;
+
+            float netA = compProduced - compNeeded;
+            float netB = (totalProduced - compProduced) - (totalNeeded - compNeeded);
+
+            float rescueNet = Math.max(netA, netB);
+            if(rescueNet <= 0.01f) continue;
+
+            Cut cut = new Cut();
+            cut.aPos = net.pos.items[a];
+            cut.bPos = net.pos.items[b];
+            cut.islandStartPos = netA >= netB ? cut.aPos : cut.bPos;
+            cut.rescueNetPerTick = rescueNet;
+            insertTopK(cut, topk);
+        }
+
+        for(int i = 0; i < best.size; i++){
+            Cut cut = best.get(i);
+            if(!islandHull(net, cut)) continue;
+            out.add(cut);
+        }
+        best.clear();
+    }
+
+    private void insertTopK(Cut cut, int k){
+        //sort descending by rescue net
+        int idx = 0;
+        for(; idx < best.size; idx++){
+            if(cut.rescueNetPerTick > best.get(idx).rescueNetPerTick){
+                break;
+            }
+        }
+        best.insert(idx, cut);
+        if(best.size > k){
+            best.truncate(k);
+        }
+    }
+
+    /** BFS over power connections from {@code start}, skipping the a-b link in both directions. 跳过被测连线的连通分量。 */
+    private void component(Network net, int start, int cutA, int cutB, boolean collectTiles){
+        int n = net.size();
+        if(seenStamp.length < n) seenStamp = new int[Math.max(n, seenStamp.length * 2)];
+        if(++stamp == Integer.MAX_VALUE){
+            Arrays.fill(seenStamp, 0);
+            stamp = 1;
+        }
+        compCount = 0;
+        compProduced = 0f;
+        compNeeded = 0f;
+
+        int graphId = net.graph.items[start];
+        queue.clear();
+        seenStamp[start] = stamp;
+        queue.addLast(start);
+
+        while(queue.size > 0){
+            int cur = queue.removeFirst();
+            compCount++;
+            compProduced += net.produced.items[cur];
+            compNeeded += net.needed.items[cur];
+            if(collectTiles) net.addTiles(cur, hullTiles, hullTileList);
+
+            for(int ci = net.connStart.items[cur], end = net.connEnd(cur); ci < end; ci++){
+                int next = net.indexOf.get(net.conns.items[ci], -1);
+                if(next < 0 || net.graph.items[next] != graphId) continue;
+
+                //skip the tested link cut (in both directions)
+                if((cur == cutA && next == cutB) || (cur == cutB && next == cutA)) continue;
+
+                if(seenStamp[next] != stamp){
+                    seenStamp[next] = stamp;
+                    queue.addLast(next);
+                }
+            }
+        }
+    }
+
+    private boolean islandHull(Network net, Cut cut){
+        int start = net.indexOf.get(cut.islandStartPos, -1);
+        int a = net.indexOf.get(cut.aPos, -1);
+        int b = net.indexOf.get(cut.bPos, -1);
+        if(start < 0) return false;
+
+        hullTiles.clear();
+        hullTileList.clear();
+        component(net, start, a, b, true);
+        if(hullTileList.isEmpty()) return false;
+
+        //collect corner points in tile-coordinates, then compute a convex hull
+        hullCorners.clear();
+        for(int i = 0; i < hullTileList.size; i++){
+            int tpos = hullTileList.items[i];
+            int tx = Point2.x(tpos);
+            int ty = Point2.y(tpos);
+            addCorner(tx, ty);
+            addCorner(tx + 1, ty);
+            addCorner(tx, ty + 1);
+            addCorner(tx + 1, ty + 1);
+        }
+
+        if(hullCorners.size < 3) return false;
+
+        Arrays.sort(hullCorners.items, 0, hullCorners.size);
+
+        hullUnique.clear();
+        long last = Long.MIN_VALUE;
+        for(int i = 0; i < hullCorners.size; i++){
+            long p = hullCorners.items[i];
+            if(p != last){
+                hullUnique.add(p);
+                last = p;
+            }
+        }
+        if(hullUnique.size < 3) return false;
+
+        hull.clear();
+
+        //lower hull
+        for(int i = 0; i < hullUnique.size; i++){
+            long p = hullUnique.items[i];
+            while(hull.size >= 2 && cross(hull.items[hull.size - 2], hull.items[hull.size - 1], p) <= 0){
+                hull.size--;
+            }
+            hull.add(p);
+        }
+
+        //upper hull
+        int lowerSize = hull.size;
+        for(int i = hullUnique.size - 2; i >= 0; i--){
+            long p = hullUnique.items[i];
+            while(hull.size > lowerSize && cross(hull.items[hull.size - 2], hull.items[hull.size - 1], p) <= 0){
+                hull.size--;
+            }
+            hull.add(p);
+        }
+
+        //remove duplicate start
+        if(hull.size > 1){
+            hull.size--;
+        }
+        if(hull.size < 3) return false;
+
+        int n = hull.size;
+        float[] points = cut.hull;
+        if(points == null || points.length != n * 2){
+            points = new float[n * 2];
+            cut.hull = points;
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+
+        for(int i = 0; i < n; i++){
+            long p = hull.items[i];
+            float wx = (int)(p >> 32) * tilesize;
+            float wy = (int)p * tilesize;
+
+            points[i * 2] = wx;
+            points[i * 2 + 1] = wy;
+
+            if(wx < minX) minX = wx;
+            if(wy < minY) minY = wy;
+            if(wx > maxX) maxX = wx;
+            if(wy > maxY) maxY = wy;
+        }
+
+        cut.minX = minX;
+        cut.minY = minY;
+        cut.maxX = maxX;
+        cut.maxY = maxY;
+
+        //polygon centroid (world coords); fallback to bbox center if degenerate
+        double area2 = 0.0;
+        double cx = 0.0;
+        double cy = 0.0;
+        for(int i = 0; i < n; i++){
+            int j = (i + 1) % n;
+            double x0 = points[i * 2];
+            double y0 = points[i * 2 + 1];
+            double x1 = points[j * 2];
+            double y1 = points[j * 2 + 1];
+            double cross = x0 * y1 - x1 * y0;
+            area2 += cross;
+            cx += (x0 + x1) * cross;
+            cy += (y0 + y1) * cross;
+        }
+
+        if(Math.abs(area2) < 0.0001){
+            cut.centerX = (minX + maxX) / 2f;
+            cut.centerY = (minY + maxY) / 2f;
+        }else{
+            double area6 = area2 * 3.0;
+            cut.centerX = (float)(cx / area6);
+            cut.centerY = (float)(cy / area6);
+        }
+
+        return true;
+    }
+
+    private void addCorner(int x, int y){
+        hullCorners.add((((long)x) << 32) | (y & 0xffffffffL));
+    }
+
+    private static long cross(long o, long a, long b){
+        long ox = (int)(o >> 32);
+        long oy = (int)o;
+        long ax = (int)(a >> 32);
+        long ay = (int)a;
+        long bx = (int)(b >> 32);
+        long by = (int)b;
+
+        return (ax - ox) * (by - oy) - (ay - oy) * (bx - ox);
+    }
+}
@@ -0,0 +1,80 @@
+package powergridminimap;
+
+import arc.graphics.Pixmap;
+
+/**
+ * One claim-overlay update executed on the PGMM worker thread.
+ *
+ * 在后台线程执行的一次电网叠加层更新：
+ * - 输入是主线程采集的快照（脏矩形附近的非电力建筑格子 / 队伍 / 中心格），槽位增删也已在主线程登记
+ * - 工作线程重算认领、连通块与像素，并把变化的矩形写入后备 Pixmap
+ * - 结果通过 {@link #finished} 发布，由主线程轮询并上传该子矩形；完成前纹理保持上一次的结果
+ * - 同一时间只有一个任务持有 {@link PgmmClaimOverlay}；{@link #cancel()} 只是标记，结果会被丢弃
+ */
+final class PgmmOverlayJob implements Runnable{
+    final PgmmClaimOverlay overlay;
+    final PgmmClaimOverlay.Buildings buildings;
+    final int claimDistance;
+
+    volatile boolean cancelled;
+    volatile boolean finished;
+    /** Buffer handed in by the main thread, reused when the size matches. 主线程交给任务的备用缓冲。 */
+    final Pixmap spare;
+    /** The changed rectangle (y flipped); the spare or a new buffer. 变化矩形（y 翻转）。 */
+    Pixmap pixmap;
+    boolean changed;
+    int x0, y0, x1, y1;
+    Throwable error;
+    long elapsedNanos;
+
+    PgmmOverlayJob(PgmmClaimOverlay overlay, PgmmClaimOverlay.Buildings buildings, int claimDistance, Pixmap spare){
+        this.overlay = overlay;
+        this.buildings = buildings;
+        this.claimDistance = claimDistance;
+        this.spare = spare;
+        this.pixmap = spare;
+    }
+
+    void submit(){
+        PgmmWorker.execute(this);
+    }
+
+    void cancel(){
+        cancelled = true;
+    }
+
+    @Override
+    public void run(){
+        long started = System.nanoTime();
+        try{
+            if(cancelled) return;
+            changed = overlay.update(claimDistance, buildings);
+            if(!changed || cancelled) return;
+
+            x0 = overlay.changedX0();
+            y0 = overlay.changedY0();
+            x1 = overlay.changedX1();
+            y1 = overlay.changedY1();
+            int rw = x1 - x0 + 1;
+            int rh = y1 - y0 + 1;
+            if(pixmap == null || pixmap.width != rw || pixmap.height != rh){
+                //the main thread disposes the spare when it is not reused
+                pixmap = new Pixmap(rw, rh);
+            }
+
+            int w = overlay.width();
+            for(int y = y0; y <= y1; y++){
+                int row = y * w;
+                int py = y1 - y;
+                for(int x = x0; x <= x1; x++){
+                    pixmap.set(x - x0, py, overlay.rgba(row + x));
+                }
+            }
+        }catch(Throwable t){
+            error = t;
+        }finally{
+            elapsedNanos = System.nanoTime() - started;
+            finished = true;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package powergridminimap;
+
+import arc.math.geom.Point2;
+import arc.struct.IntSeq;
+import arc.struct.IntSet;
+import arc.struct.Seq;
+
+/**
+ * Closest tile pair between a split-off grid and its candidate partners, searched on the PGMM worker thread.
+ *
+ * 断网重连点搜索（后台线程）：
+ * - 输入是主线程采集的格子快照（Point2 打包坐标）：负电网 A 与若干候选电网（按优先级排列）
+ * - 只保留边界格（四邻域有不属于本电网的格子）；最近点对一定出现在边界格之间
+ * - 候选电网的边界格按 {@link #cellSize} 分桶；A 的每个边界格按环形向外查桶，下界超过当前最优时停止
+ * - 距离为曼哈顿距离，与原先在包围盒内做多源 BFS 的结果相同（同距离时可能选中另一对）
+ * - 按候选顺序返回第一个找到点对的电网；结果通过 {@link #finished} 发布
+ */
+final class PgmmReconnectSearch implements Runnable{
+    static final int cellSize = 8;
+
+    final int graphA;
+    private final IntSeq tilesA;
+    private final IntSeq candidateIds = new IntSeq();
+    private final Seq<IntSeq> candidateTiles = new Seq<>();
+
+    volatile boolean finished;
+    boolean found;
+    int graphB = -1;
+    int posA, posB;
+    Throwable error;
+
+    PgmmReconnectSearch(int graphA, IntSeq tilesA){
+        this.graphA = graphA;
+        this.tilesA = tilesA;
+    }
+
+    /** Candidates are tried in the order they are added. 按添加顺序尝试候选电网。 */
+    void addCandidate(int graphId, IntSeq tiles){
+        candidateIds.add(graphId);
+        candidateTiles.add(tiles);
+    }
+
+    void submit(){
+        PgmmWorker.execute(this);
+    }
+
+    @Override
+    public void run(){
+        try{
+            IntSeq boundaryA = boundary(tilesA);
+            for(int i = 0; i < candidateIds.size; i++){
+                long pair = nearestPair(boundaryA, boundary(candidateTiles.get(i)));
+                if(pair == -1L) continue;
+                graphB = candidateIds.get(i);
+                posA = (int)(pair >>> 32);
+                posB = (int)pair;
+                found = true;
+                return;
+            }
+        }catch(Throwable t){
+            error = t;
+        }finally{
+            finished = true;
+        }
+    }
+
+    /** Tiles with at least one 4-neighbor outside the set. 边界格。 */
+    static IntSeq boundary(IntSeq tiles){
+        IntSet set = new IntSet(tiles.size);
+        for(int i = 0; i < tiles.size; i++){
+            set.add(tiles.items[i]);
+        }
+        IntSeq out = new IntSeq();
+        for(int i = 0; i < tiles.size; i++){
+            int pos = tiles.items[i];
+            int x = Point2.x(pos);
+            int y = Point2.y(pos);
+            if(!set.contains(Point2.pack(x + 1, y)) || !set.contains(Point2.pack(x - 1, y))
+                || !set.contains(Point2.pack(x, y + 1)) || !set.contains(Point2.pack(x, y - 1))){
+                out.add(pos);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Closest pair (Manhattan) between two tile lists, packed as {@code posA << 32 | posB}; -1 if either list is empty.
+     * 两组格子间的最近点对（曼哈顿距离）。
+     */
+    static long nearestPair(IntSeq a, IntSeq b){
+        if(a.isEmpty() || b.isEmpty()) return -1L;
+
+        int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE, maxx = Integer.MIN_VALUE, maxy = Integer.MIN_VALUE;
+        for(int i = 0; i < b.size; i++){
+            int pos = b.items[i];
+            int x = Point2.x(pos), y = Point2.y(pos);
+            if(x < minx) minx = x;
+            if(y < miny) miny = y;
+            if(x > maxx) maxx = x;
+            if(y > maxy) maxy = y;
+        }
+
+        //bucket b by cell (counting sort)
+        int cw = (maxx - minx) / cellSize + 1;
+        int ch = (maxy - miny) / cellSize + 1;
+        int[] cellStart = new int[cw * ch + 1];
+        for(int i = 0; i < b.size; i++){
+            int pos = b.items[i];
+            cellStart[cellOf(Point2.x(pos), Point2.y(pos), minx, miny, cw) + 1]++;
+        }
+        for(int c = 0; c < cw * ch; c++){
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = new int[cw * ch];
+        System.arraycopy(cellStart, 0, fill, 0, fill.length);
+        int[] cellItems = new int[b.size];
+        for(int i = 0; i < b.size; i++){
+            int pos = b.items[i];
+            cellItems[fill[cellOf(Point2.x(pos), Point2.y(pos), minx, miny, cw)]++] = pos;
+        }
+
+        int best = Integer.MAX_VALUE;
+        int bestA = 0, bestB = 0;
+        int maxRing = Math.max(cw, ch);
+        for(int i = 0; i < a.size; i++){
+            int pa = a.items[i];
+            int ax = Point2.x(pa), ay = Point2.y(pa);
+            int dx = ax < minx ? minx - ax : ax > maxx ? ax - maxx : 0;
+            int dy = ay < miny ? miny - ay : ay > maxy ? ay - maxy : 0;
+            if(dx + dy >= best) continue;
+
+            int cx = Math.max(0, Math.min(cw - 1, (ax - minx) / cellSize));
+            int cy = Math.max(0, Math.min(ch - 1, (ay - miny) / cellSize));
+
+            for(int r = 0; r <= maxRing; r++){
+                //every tile in ring r is at least (r - 1) cells away along one axis
+                if(r > 0 && (r - 1) * cellSize + 1 >= best) break;
+                int gy0 = Math.max(0, cy - r), gy1 = Math.min(ch - 1, cy + r);
+                for(int gy = gy0; gy <= gy1; gy++){
+                    boolean fullRow = gy == cy - r || gy == cy + r;
+                    int step = fullRow || r == 0 ? 1 : 2 * r;
+                    for(int gx = cx - r; gx <= cx + r; gx += step){
+                        if(gx < 0 || gx >= cw) continue;
+                        int c = gx + gy * cw;
+                        for(int k = cellStart[c], end = cellStart[c + 1]; k < end; k++){
+                            int pb = cellItems[k];
+                            int d = Math.abs(Point2.x(pb) - ax) + Math.abs(Point2.y(pb) - ay);
+                            if(d < best){
+                                best = d;
+                                bestA = pa;
+                                bestB = pb;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return ((long)bestA << 32) | (bestB & 0xffffffffL);
+    }
+
+    private static int cellOf(int x, int y, int minx, int miny, int cw){
+        return (x - minx) / cellSize + (y - miny) / cellSize * cw;
+    }
+}
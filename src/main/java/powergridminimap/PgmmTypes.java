@@ -1,7 +1,13 @@
 package powergridminimap;
 
 import arc.util.Log;
+import arc.graphics.Color;
+import arc.graphics.g2d.Font;
+import arc.graphics.g2d.GlyphLayout;
 import arc.math.geom.Rect;
+import arc.util.Align;
+import mindustry.core.UI;
+import arc.struct.Seq;
 import mindustry.game.Team;
 import mindustry.world.blocks.power.PowerGraph;
 
@@ -20,11 +26,47 @@ final class GridInfo{
     int colorKey;
     float centerX, centerY;
     boolean hasCenter;
+    /** Claim overlay slot (PgmmClaimOverlay), -1 until the overlay seeds this grid. */
+    int overlaySlot = -1;
+    /** Markers / rectangles of this grid; returned to the cache pools when the grid is recomputed. */
+    final Seq<MarkerInfo> markers = new Seq<>();
+    final Seq<MarkerRectInfo> rects = new Seq<>();
 }
 
 final class MarkerInfo{
     PowerGraph graph;
     float x, y;
+
+    //balance label cache: text changes only with the printed integer, the layout also with font scale / color
+    private long labelKey = Long.MIN_VALUE;
+    private boolean labelNegative;
+    private String labelText;
+    private float labelScale = -1f;
+    private int labelColor;
+    final GlyphLayout labelLayout = new GlyphLayout();
+
+    /**
+     * Centered "+1.2k" style label for a balance per second; re-laid out only when the text, font scale or color changes.
+     * 余额标签（居中）；只有文本、字体缩放或颜色变化时才重新排版。
+     */
+    GlyphLayout balanceLabel(Font font, float balance, Color color){
+        long key = (long)balance;
+        boolean negative = balance < 0f;
+        if(labelText == null || key != labelKey || negative != labelNegative){
+            labelKey = key;
+            labelNegative = negative;
+            labelText = (negative ? "" : "+") + UI.formatAmount(key);
+            labelScale = -1f;
+        }
+        float scale = font.getData().scaleX;
+        int rgba = color.rgba();
+        if(scale != labelScale || rgba != labelColor){
+            labelScale = scale;
+            labelColor = rgba;
+            labelLayout.setText(font, labelText, color, 0f, Align.center, false);
+        }
+        return labelLayout;
+    }
 }
 
 final class MarkerRectInfo{
@@ -0,0 +1,34 @@
+package powergridminimap;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared background thread for PGMM jobs (overlay updates, reconnect searches).
+ *
+ * PGMM 后台任务共用的单个工作线程（电网叠加层更新、断网重连点搜索）：
+ * - 任务只读主线程采集的快照，结果通过任务对象上的 volatile 标记发布，由主线程轮询
+ * - 守护线程、略低于普通优先级，不阻止游戏退出
+ */
+final class PgmmWorker{
+    private static ExecutorService executor;
+
+    private PgmmWorker(){
+    }
+
+    static void execute(Runnable job){
+        executor().execute(job);
+    }
+
+    private static synchronized ExecutorService executor(){
+        if(executor == null){
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "pgmm-worker");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
@@ -34,12 +34,11 @@ import arc.graphics.Pixmap;
 import arc.graphics.Texture;
 import arc.graphics.g2d.TextureRegion;
 import arc.math.geom.Vec2;
+import arc.struct.IntFloatMap;
 import arc.struct.IntIntMap;
 import arc.struct.IntMap;
-import arc.struct.IntQueue;
 import arc.struct.IntSeq;
 import arc.struct.IntSet;
-import arc.struct.LongSeq;
 import arc.util.Structs;
 import arc.util.Strings;
 import mdtxcompat.LegacyMindustryXGuard;
@@ -48,11 +47,14 @@ import mdtxcompat.OverlayUiBridge;
 import mindustry.content.Blocks;
 import mindustry.core.UI;
 import mindustry.game.EventType.ClientLoadEvent;
+import mindustry.game.EventType.BlockBuildBeginEvent;
 import mindustry.game.EventType.BlockBuildEndEvent;
 import mindustry.game.EventType.BlockDestroyEvent;
 import mindustry.game.EventType.BuildRotateEvent;
 import mindustry.game.EventType.BuildTeamChangeEvent;
 import mindustry.game.EventType.ConfigEvent;
+import mindustry.game.EventType.PayloadDropEvent;
+import mindustry.game.EventType.PickupEvent;
 import mindustry.game.EventType.WorldLoadEvent;
 import mindustry.game.EventType.Trigger;
 import mindustry.game.MapObjectives;
@@ -73,7 +75,6 @@ import mindustry.mod.Mods;
 import rhino.ScriptableObject;
 
 import java.lang.reflect.Field;
-import java.util.Arrays;
 import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -122,6 +123,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
     private static final String keyPowerTableEnabled = "pgmm-power-table";
     private static final String keyPowerTableThreshold = "pgmm-power-table-threshold";
     private static final String keyPowerTableBgAlpha = "pgmm-power-table-bgalpha";
+    private static final String keyPowerTableTrendMinutes = "pgmm-power-table-trend";
     private static final String markerCompatType = "PGMM";
     //debounce cache rebuilds after block changes (tenths of a second)
     private static final String keyUpdateWaitTenths = "pgmm-updatewait";
@@ -193,6 +195,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             Core.settings.defaults(keyPowerTableEnabled, false);
             Core.settings.defaults(keyPowerTableThreshold, 10000);
             Core.settings.defaults(keyPowerTableBgAlpha, 70);
+            Core.settings.defaults(keyPowerTableTrendMinutes, 5);
             Core.settings.defaults(keyUpdateWaitTenths, 10);
             Core.settings.defaults(keyIgnoreAreaTiles, 0);
             if(!bekBundled) GithubUpdateCheck.applyDefaults();
@@ -211,6 +214,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
 
         Events.on(WorldLoadEvent.class, e -> {
             cache.clear();
+            splitWatcher.reset();
             rescueAlert.clear();
             rescueAdvisor.reset();
             nextSplitAlertMultiplayerChatAt = 0f;
@@ -218,11 +222,42 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             Time.runTask(10f, this::ensurePowerTableAttached);
         });
 
-        Events.on(BlockBuildEndEvent.class, e -> cache.invalidateAll());
-        Events.on(BlockDestroyEvent.class, e -> cache.invalidateAll());
-        Events.on(BuildRotateEvent.class, e -> cache.invalidateAll());
-        Events.on(BuildTeamChangeEvent.class, e -> cache.invalidateAll());
-        Events.on(ConfigEvent.class, e -> cache.invalidateAll());
+        //Only graphs the changed building belonged to (before or after the event) are recomputed; see PowerGridCache.invalidateBuild
+        //and SplitWatcher.refreshDirty.
+        //Deconstruction and replacement swap the block out for a construct site as soon as they begin.
+        Events.on(BlockBuildBeginEvent.class, e -> {
+            cache.invalidateTile(e.tile);
+            splitWatcher.invalidateTile(e.tile);
+        });
+        Events.on(BlockBuildEndEvent.class, e -> {
+            cache.invalidateTile(e.tile);
+            splitWatcher.invalidateTile(e.tile);
+        });
+        Events.on(BlockDestroyEvent.class, e -> {
+            cache.invalidateTile(e.tile);
+            splitWatcher.invalidateTile(e.tile);
+        });
+        Events.on(BuildRotateEvent.class, e -> {
+            cache.invalidateBuild(e.build);
+            splitWatcher.invalidateBuild(e.build);
+        });
+        Events.on(BuildTeamChangeEvent.class, e -> {
+            cache.invalidateBuild(e.build);
+            splitWatcher.invalidateBuild(e.build);
+        });
+        Events.on(ConfigEvent.class, e -> {
+            cache.invalidateBuild(e.tile);
+            splitWatcher.invalidateBuild(e.tile);
+        });
+        //Payload units and blocks lift buildings out of (and drop them into) the world without a build or destroy event.
+        Events.on(PickupEvent.class, e -> {
+            cache.invalidateBuild(e.build);
+            splitWatcher.invalidateBuild(e.build);
+        });
+        Events.on(PayloadDropEvent.class, e -> {
+            cache.invalidateBuild(e.build);
+            splitWatcher.invalidateBuild(e.build);
+        });
 
         Events.run(Trigger.update, () -> {
             if(!Core.settings.getBool(keyEnabled, true)) return;
@@ -486,6 +521,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             table.pref(new PgmmSettingsWidgets.IconCheckSetting(keyPowerTableEnabled, false, Icon.listSmall, null));
             table.pref(new PgmmSettingsWidgets.IconSliderSetting(keyPowerTableThreshold, 10000, 0, 200000, 1000, Icon.powerSmall, v -> v + "/s", null));
             table.pref(new PgmmSettingsWidgets.IconSliderSetting(keyPowerTableBgAlpha, 70, 0, 100, 5, Icon.imageSmall, v -> v + "%", null));
+            table.pref(new PgmmSettingsWidgets.IconSliderSetting(keyPowerTableTrendMinutes, 5, 5, 10, 1, Icon.refreshSmall, v -> v + "min", null));
 
             table.pref(new PgmmSettingsWidgets.HeaderSetting(Core.bundle.get("pgmm.section.performance", "Performance"), Icon.wrenchSmall));
             table.pref(new PgmmSettingsWidgets.IconSliderSetting(keyUpdateWaitTenths, 10, 0, 50, 1, Icon.refreshSmall, v -> Strings.autoFixed(v / 10f, 1) + "s", null));
@@ -760,7 +796,6 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
         if(markerScale <= 0.001f) return;
 
         Font font = Fonts.outline;
-        GlyphLayout layout = Pools.obtain(GlyphLayout.class, GlyphLayout::new);
 
         boolean ints = font.usesIntegerPositions();
         font.setUseIntegerPositions(false);
@@ -770,32 +805,34 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
 
         Color textColor = Tmp.c2.set(markerColor);
 
+        //backgrounds first, then every label: two state switches per frame instead of two per marker
+        float margin = 3f * invScale * markerScale;
+        Draw.color(0f, 0f, 0f, 0.35f);
         for(int i = 0; i < cache.markers.size; i++){
             MarkerInfo info = cache.markers.get(i);
             PowerGraph graph = info.graph;
             if(graph == null) continue;
             if(!viewRect.contains(info.x, info.y)) continue;
 
-            float balance = graph.getPowerBalance() * 60f;
-            String text = (balance >= 0f ? "+" : "") + UI.formatAmount((long)balance);
-
-            layout.setText(font, text);
-
-            float margin = 3f * invScale * markerScale;
-
-            Draw.color(0f, 0f, 0f, 0.35f);
+            GlyphLayout layout = info.balanceLabel(font, graph.getPowerBalance() * 60f, textColor);
             Fill.rect(info.x, info.y, layout.width + margin * 2f, layout.height + margin * 2f);
-            Draw.color();
+        }
+        Draw.color();
+
+        for(int i = 0; i < cache.markers.size; i++){
+            MarkerInfo info = cache.markers.get(i);
+            PowerGraph graph = info.graph;
+            if(graph == null) continue;
+            if(!viewRect.contains(info.x, info.y)) continue;
 
-            font.setColor(textColor);
-            font.draw(text, info.x, info.y + layout.height / 2f, 0, Align.center, false);
+            GlyphLayout layout = info.labelLayout;
+            font.draw(layout, info.x, info.y + layout.height / 2f);
         }
 
         Draw.reset();
         font.getData().setScale(1f);
         font.setColor(Color.white);
         font.setUseIntegerPositions(ints);
-        Pools.free(layout);
     }
 
     private static boolean tryParseHexColor(String text, Color out){
@@ -944,7 +981,6 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             float invScalePow = Mathf.pow(invScale, 1f - follow);
 
             Font font = Fonts.outline;
-            GlyphLayout layout = Pools.obtain(GlyphLayout.class, GlyphLayout::new);
 
             boolean ints = font.usesIntegerPositions();
             font.setUseIntegerPositions(false);
@@ -955,32 +991,33 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             Color textColor = Tmp.c2.set(markerColor);
             textColor.a *= parentAlpha;
 
+            float margin = 3f * invScalePow * markerScale;
+            Draw.color(0f, 0f, 0f, 0.35f * parentAlpha);
             for(int i = 0; i < cache.markers.size; i++){
                 MarkerInfo info = cache.markers.get(i);
                 PowerGraph graph = info.graph;
                 if(graph == null) continue;
                 if(!viewRect.contains(info.x, info.y)) continue;
 
-                float balance = graph.getPowerBalance() * 60f;
-                String text = (balance >= 0f ? "+" : "") + UI.formatAmount((long)balance);
-
-                layout.setText(font, text);
-
-                float margin = 3f * invScalePow * markerScale;
-
-                Draw.color(0f, 0f, 0f, 0.35f * parentAlpha);
+                GlyphLayout layout = info.balanceLabel(font, graph.getPowerBalance() * 60f, textColor);
                 Fill.rect(info.x, info.y, layout.width + margin * 2f, layout.height + margin * 2f);
-                Draw.color();
+            }
+            Draw.color();
+
+            for(int i = 0; i < cache.markers.size; i++){
+                MarkerInfo info = cache.markers.get(i);
+                PowerGraph graph = info.graph;
+                if(graph == null) continue;
+                if(!viewRect.contains(info.x, info.y)) continue;
 
-                font.setColor(textColor);
-                font.draw(text, info.x, info.y + layout.height / 2f, 0, Align.center, false);
+                GlyphLayout layout = info.labelLayout;
+                font.draw(layout, info.x, info.y + layout.height / 2f);
             }
 
             Draw.reset();
             font.getData().setScale(1f);
             font.setColor(Color.white);
             font.setUseIntegerPositions(ints);
-            Pools.free(layout);
         }
 
         private static Color colorForGraph(int key, Color out){
@@ -1372,7 +1409,6 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             float invScalePow = Mathf.pow(invScale, 1f - follow);
 
             Font font = Fonts.outline;
-            GlyphLayout layout = Pools.obtain(GlyphLayout.class, GlyphLayout::new);
 
             boolean ints = font.usesIntegerPositions();
             font.setUseIntegerPositions(false);
@@ -1385,35 +1421,37 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             Color textColor = Tmp.c2.set(markerColor);
             textColor.a *= parentAlpha;
 
+            float margin = 3f * invScalePow * markerScale * screenScale;
+            Draw.color(0f, 0f, 0f, 0.35f * parentAlpha);
             for(int i = 0; i < cache.markers.size; i++){
                 MarkerInfo info = cache.markers.get(i);
                 PowerGraph graph = info.graph;
                 if(graph == null) continue;
                 if(!viewRect.contains(info.x, info.y)) continue;
 
-                float balance = graph.getPowerBalance() * 60f;
-                String text = (balance >= 0f ? "+" : "") + UI.formatAmount((long)balance);
-
-                layout.setText(font, text);
-
+                GlyphLayout layout = info.balanceLabel(font, graph.getPowerBalance() * 60f, textColor);
                 float sx = x + (info.x - viewRect.x) * (width / viewRect.width);
                 float sy = y + (info.y - viewRect.y) * (height / viewRect.height);
-
-                float margin = 3f * invScalePow * markerScale * screenScale;
-
-                Draw.color(0f, 0f, 0f, 0.35f * parentAlpha);
                 Fill.rect(sx, sy, layout.width + margin * 2f, layout.height + margin * 2f);
-                Draw.color();
+            }
+            Draw.color();
+
+            for(int i = 0; i < cache.markers.size; i++){
+                MarkerInfo info = cache.markers.get(i);
+                PowerGraph graph = info.graph;
+                if(graph == null) continue;
+                if(!viewRect.contains(info.x, info.y)) continue;
 
-                font.setColor(textColor);
-                font.draw(text, sx, sy + layout.height / 2f, 0, Align.center, false);
+                GlyphLayout layout = info.labelLayout;
+                float sx = x + (info.x - viewRect.x) * (width / viewRect.width);
+                float sy = y + (info.y - viewRect.y) * (height / viewRect.height);
+                font.draw(layout, sx, sy + layout.height / 2f);
             }
 
             Draw.reset();
             font.getData().setScale(1f);
             font.setColor(Color.white);
             font.setUseIntegerPositions(ints);
-            Pools.free(layout);
         }
 
         private boolean updateViewRect(float drawW, float drawH){
@@ -1491,7 +1529,6 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             float invScalePow = Mathf.pow(invScale, 1f - follow);
 
             Font font = Fonts.outline;
-            GlyphLayout layout = Pools.obtain(GlyphLayout.class, GlyphLayout::new);
 
             boolean ints = font.usesIntegerPositions();
             font.setUseIntegerPositions(false);
@@ -1502,32 +1539,33 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             Color textColor = Tmp.c2.set(markerColor);
             textColor.a *= parentAlpha;
 
+            float margin = 3f * invScalePow * markerScale;
+            Draw.color(0f, 0f, 0f, 0.35f * parentAlpha);
             for(int i = 0; i < cache.markers.size; i++){
                 MarkerInfo info = cache.markers.get(i);
                 PowerGraph graph = info.graph;
                 if(graph == null) continue;
                 if(!viewRect.contains(info.x, info.y)) continue;
 
-                float balance = graph.getPowerBalance() * 60f;
-                String text = (balance >= 0f ? "+" : "") + UI.formatAmount((long)balance);
-
-                layout.setText(font, text);
-
-                float margin = 3f * invScalePow * markerScale;
-
-                Draw.color(0f, 0f, 0f, 0.35f * parentAlpha);
+                GlyphLayout layout = info.balanceLabel(font, graph.getPowerBalance() * 60f, textColor);
                 Fill.rect(info.x, info.y, layout.width + margin * 2f, layout.height + margin * 2f);
-                Draw.color();
+            }
+            Draw.color();
 
-                font.setColor(textColor);
-                font.draw(text, info.x, info.y + layout.height / 2f, 0, Align.center, false);
+            for(int i = 0; i < cache.markers.size; i++){
+                MarkerInfo info = cache.markers.get(i);
+                PowerGraph graph = info.graph;
+                if(graph == null) continue;
+                if(!viewRect.contains(info.x, info.y)) continue;
+
+                GlyphLayout layout = info.labelLayout;
+                font.draw(layout, info.x, info.y + layout.height / 2f);
             }
 
             Draw.reset();
             font.getData().setScale(1f);
             font.setColor(Color.white);
             font.setUseIntegerPositions(ints);
-            Pools.free(layout);
         }
     }
 
@@ -1547,41 +1585,33 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
 
         private final ObjectSet<PowerGraph> graphs = new ObjectSet<>();
         private final Seq<GridInfo> grids = new Seq<>();
+        //flattened from grids (in grid order) after every basic update
         private final Seq<MarkerInfo> markers = new Seq<>();
         private final Seq<MarkerRectInfo> markerRects = new Seq<>();
 
-        //object pools to reduce allocations/GC
+        //incremental updates: graph membership from the last scan + building positions touched since
+        private final IntMap<GridInfo> gridById = new IntMap<>();
+        private final IntMap<IntSeq> graphMembers = new IntMap<>();
+        private final IntIntMap graphOfBuild = new IntIntMap();
+        private final IntSet dirtyBuilds = new IntSet();
+        private final IntSeq tmpPending = new IntSeq();
+        private final ObjectSet<PowerGraph> tmpRebuildSet = new ObjectSet<>();
+        private final Seq<PowerGraph> tmpRebuild = new Seq<>();
+        private final Seq<IntSeq> memberPool = new Seq<>();
+
+        //object pools to reduce allocations/GC (free lists; grids return their markers when dropped)
         private final Seq<MarkerInfo> markerPool = new Seq<>();
-        private int markerPoolUsed = 0;
         private final Seq<MarkerRectInfo> rectPool = new Seq<>();
-        private int rectPoolUsed = 0;
-        private final Seq<ClusterInfo> clusterPool = new Seq<>();
-        private int clusterPoolUsed = 0;
 
-        //reused scratch objects for clustering
-        private final IntSet tmpOccupied = new IntSet();
-        private final IntSeq tmpOccupiedList = new IntSeq();
-        private final IntSet tmpVisited = new IntSet();
-        private final IntQueue tmpQueue = new IntQueue();
-        private final Seq<ClusterInfo> tmpClusters = new Seq<>();
+        //cluster-marker partitioning runs on a building snapshot (see PgmmGridAnalysis)
+        private final PgmmGridAnalysis analysis = new PgmmGridAnalysis();
+        private final PgmmGridAnalysis.Network clusterNetwork = new PgmmGridAnalysis.Network();
+        private final PgmmGridAnalysis.Partition clusterPartition = new PgmmGridAnalysis.Partition();
+        private final IntSeq tmpMembers = new IntSeq();
 
         //reused scratch objects for area-based filtering
         private final IntSet tmpAreaSeen = new IntSet();
 
-        //reused scratch arrays for MST/partitioning (clusters are capped)
-        private static final int maxMarkersPerGraph = 64;
-        private final int[] mstParent = new int[maxMarkersPerGraph];
-        private final float[] mstParentW = new float[maxMarkersPerGraph];
-        private final boolean[] mstUsed = new boolean[maxMarkersPerGraph];
-        private final float[] mstBest = new float[maxMarkersPerGraph];
-        private final boolean[] mstCompVisited = new boolean[maxMarkersPerGraph];
-        private final IntSeq[] mstAdj = new IntSeq[maxMarkersPerGraph];
-        {
-            for(int i = 0; i < mstAdj.length; i++){
-                mstAdj[i] = new IntSeq();
-            }
-        }
-
         private float nextUpdateTime = 0f;
         private boolean basicDirty = true;
         private boolean fullDirty = true;
@@ -1590,49 +1620,36 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
 
         //fullscreen overlay cache
         private float nextFullUpdateTime = 0f;
-        private Pixmap fullOverlayPixmap;
         private Texture fullOverlayTexture;
         private int lastClaimDistance = -1;
         private int lastGridAlpha = -1;
         private int lastWorldW = -1, lastWorldH = -1;
 
-        //reused scratch arrays for full overlay rebuild
-        private int lastTileCount = -1;
-        private int[] tmpOwnerPower;
-        private int[] tmpOwnerClaim;
-        private int[] tmpOverlayOwner;
-        private boolean[] tmpClaimedBuild;
-        private boolean[] tmpVisitedTiles;
-        private short[] tmpDist;
-        private int[] tmpOwnerNear;
-        private boolean[] tmpAssigned;
-        private final Seq<mindustry.gen.Building> tmpNonPower = new Seq<>();
+        //fullscreen overlay ownership, kept between rebuilds so only the rectangle around changes is recomputed and uploaded
+        private static int cachedMaxBlockSize = 0;
+        private PgmmClaimOverlay claimOverlay = new PgmmClaimOverlay();
+        private PgmmClaimOverlay.Buildings overlayBuildings = new PgmmClaimOverlay.Buildings();
+        //background update in flight (null when idle); it owns claimOverlay and overlayBuildings until it finishes
+        private PgmmOverlayJob overlayJob;
+        private final Seq<PgmmOverlayJob> abandonedOverlayJobs = new Seq<>();
+        private Pixmap overlaySparePixmap;
+        //event boxes recorded since the last job was submitted (inclusive, -1 = none)
+        private int pendingDirtyX0 = -1, pendingDirtyY0, pendingDirtyX1, pendingDirtyY1;
+        private final IntSeq overlayRemovedSlots = new IntSeq();
+        private final IntSet overlaySeenBuilds = new IntSet();
         private final IntSeq tmpTiles = new IntSeq();
-        private final IntSeq tmpComp = new IntSeq();
-        private final IntQueue tmpBfs = new IntQueue();
-        private final int[] tmpNeighborGrids = new int[8];
-
-        // Reused per-grid RGBA lookup tables for the full overlay rebuild.
-        // These avoid allocating 3x int[gridCount] every time the overlay pixmap is regenerated.
-        private int[] tmpBaseRgbaByGrid;
-        private int[] tmpDarkRgbaByGrid;
-        private int[] tmpLightRgbaByGrid;
+        private final int[] tmpRegion = new int[4];
+        private boolean overlayReset = true;
 
         public void clear(){
             graphs.clear();
-            grids.clear();
-            markers.clear();
-            markerRects.clear();
+            releaseGrids();
             nextUpdateTime = 0f;
             nextFullUpdateTime = 0f;
             basicDirty = true;
             fullDirty = true;
             lastIgnoreAreaTiles = Integer.MIN_VALUE;
 
-            if(fullOverlayPixmap != null){
-                fullOverlayPixmap.dispose();
-                fullOverlayPixmap = null;
-            }
             if(fullOverlayTexture != null){
                 fullOverlayTexture.dispose();
                 fullOverlayTexture = null;
@@ -1641,15 +1658,15 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             lastGridAlpha = -1;
             lastWorldW = lastWorldH = -1;
 
-            lastTileCount = -1;
-            tmpOwnerPower = null;
-            tmpOwnerClaim = null;
-            tmpOverlayOwner = null;
-            tmpClaimedBuild = null;
-            tmpVisitedTiles = null;
-            tmpDist = null;
-            tmpOwnerNear = null;
-            tmpAssigned = null;
+            abandonOverlayJob();
+            releaseAbandonedJobs();
+            if(overlaySparePixmap != null){
+                overlaySparePixmap.dispose();
+                overlaySparePixmap = null;
+            }
+            claimOverlay.reset(0, 0);
+            overlayReset = true;
+            pendingDirtyX0 = -1;
         }
 
         public void invalidateAll(){
@@ -1660,6 +1677,32 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             nextFullUpdateTime = Time.time + wait;
         }
 
+        public void invalidateTile(mindustry.world.Tile tile){
+            if(tile == null) return;
+            invalidatePos(tile.pos());
+            if(tile.build != null) invalidatePos(tile.build.pos());
+        }
+
+        /**
+         * Marks one building as changed; the next updateBasic re-processes only the graphs it belonged to before and after.
+         * 标记单个建筑变化：下次 updateBasic 只重算它变化前后所属的电网。
+         */
+        public void invalidateBuild(Building build){
+            if(build == null) return;
+            invalidatePos(build.pos());
+        }
+
+        private void invalidatePos(int pos){
+            dirtyBuilds.add(pos);
+            //the building may already be gone, so pad the overlay dirty box by the largest block
+            int x = Point2.x(pos), y = Point2.y(pos), pad = maxBlockSize();
+            markOverlayDirty(x - pad, y - pad, x + pad, y + pad);
+            fullDirty = true;
+            float wait = updateWaitTicks();
+            nextUpdateTime = Time.time + wait;
+            nextFullUpdateTime = Time.time + wait;
+        }
+
         /** Bypasses update delay and forces next updateBasic/updateFullOverlay to rebuild immediately. */
         public void forceRebuildNow(){
             basicDirty = true;
@@ -1684,7 +1727,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             }
 
             if(Time.time < nextUpdateTime) return;
-            if(!basicDirty){
+            if(!basicDirty && dirtyBuilds.isEmpty()){
                 // If nothing invalidated the cache, avoid rescanning the whole map repeatedly.
                 float wait = updateWaitTicks();
                 nextUpdateTime = Time.time + wait * 6f;
@@ -1693,49 +1736,187 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
 
             float wait = updateWaitTicks();
             nextUpdateTime = Time.time + wait;
-            basicDirty = false;
 
-            graphs.clear();
-            grids.clear();
-            markers.clear();
-            markerRects.clear();
-            markerPoolUsed = 0;
-            rectPoolUsed = 0;
+            if(basicDirty){
+                basicDirty = false;
+                rescanAll(ignoreAreaTiles);
+            }else{
+                refreshDirty(ignoreAreaTiles);
+            }
+            flattenMarkers();
+        }
+
+        private void rescanAll(int ignoreAreaTiles){
+            releaseGrids();
 
+            graphs.clear();
             for(int i = 0; i < mindustry.gen.Groups.build.size(); i++){
                 mindustry.gen.Building build = mindustry.gen.Groups.build.index(i);
-                if(build == null || build.power == null) continue;
-                if(build.power.graph == null || build.power.graph.all == null || build.power.graph.all.isEmpty()) continue;
-                graphs.add(build.power.graph);
+                PowerGraph graph = powerGraphOf(build);
+                if(graph != null) graphs.add(graph);
             }
 
             for(PowerGraph graph : graphs){
-                if(graph == null || graph.all == null) continue;
-
-                Team team = graphTeam(graph);
-                if(team == null) continue;
+                scanGraph(graph, ignoreAreaTiles);
+            }
+            graphs.clear();
+        }
 
-                //Ignore "single-building grids" to reduce minimap noise; they are often stray nodes and not useful to render.
-                int buildCount = 0;
-                Seq<mindustry.gen.Building> all = graph.all;
+        /**
+         * Re-processes the graphs that touched buildings belonged to at the last scan or belong to now.
+         * Dropping a graph re-queues all of its former members, so splits and merges reach every affected graph.
+         * 只重算受影响的电网：被丢弃电网的旧成员会重新入队，因此拆分 / 合并涉及的电网都会被覆盖。
+         */
+        private void refreshDirty(int ignoreAreaTiles){
+            tmpPending.clear();
+            IntSet.IntSetIterator it = dirtyBuilds.iterator();
+            while(it.hasNext){
+                tmpPending.add(it.next());
+            }
+            dirtyBuilds.clear();
+
+            tmpRebuildSet.clear();
+            tmpRebuild.clear();
+            for(int i = 0; i < tmpPending.size; i++){
+                int pos = tmpPending.get(i);
+                dropGraph(graphOfBuild.get(pos, -1));
+
+                Building build = world.build(pos);
+                PowerGraph graph = powerGraphOf(build);
+                if(graph == null || !tmpRebuildSet.add(graph)) continue;
+                tmpRebuild.add(graph);
+
+                //The graph may have absorbed others (merge) or kept its id while gaining / losing members.
+                dropGraph(graph.getID());
+                Seq<Building> all = graph.all;
                 for(int bi = 0; bi < all.size; bi++){
-                    mindustry.gen.Building b = all.get(bi);
-                    if(b == null || b.team != team) continue;
-                    buildCount++;
-                    if(buildCount > 1) break;
+                    Building b = all.get(bi);
+                    if(b != null) dropGraph(graphOfBuild.get(b.pos(), -1));
+                }
+            }
+
+            for(int i = 0; i < tmpRebuild.size; i++){
+                PowerGraph graph = tmpRebuild.get(i);
+                if(graph.all == null || graph.all.isEmpty()) continue;
+                scanGraph(graph, ignoreAreaTiles);
+            }
+            tmpRebuildSet.clear();
+            tmpRebuild.clear();
+            tmpPending.clear();
+        }
+
+        /** Forgets one graph: its grid and markers go back to the pools, its members are queued for re-processing. */
+        private void dropGraph(int id){
+            if(id == -1) return;
+            IntSeq members = graphMembers.remove(id);
+            if(members != null){
+                for(int i = 0; i < members.size; i++){
+                    int pos = members.get(i);
+                    if(graphOfBuild.get(pos, -1) == id) graphOfBuild.remove(pos, -1);
+                    tmpPending.add(pos);
                 }
-                if(buildCount <= 1) continue;
+                members.clear();
+                memberPool.add(members);
+            }
+
+            GridInfo info = gridById.remove(id);
+            if(info != null){
+                grids.remove(info, true);
+                releaseMarkers(info);
+                if(info.overlaySlot >= 0) overlayRemovedSlots.add(info.overlaySlot);
+            }
+        }
+
+        /** Records membership of one graph and, if it passes the filters, builds its GridInfo and markers. */
+        private void scanGraph(PowerGraph graph, int ignoreAreaTiles){
+            if(graph == null || graph.all == null) return;
+
+            int id = graph.getID();
+            IntSeq members = memberPool.isEmpty() ? new IntSeq() : memberPool.pop();
+            Seq<mindustry.gen.Building> all = graph.all;
+            for(int bi = 0; bi < all.size; bi++){
+                mindustry.gen.Building b = all.get(bi);
+                if(b == null) continue;
+                int pos = b.pos();
+                members.add(pos);
+                graphOfBuild.put(pos, id);
+            }
+            graphMembers.put(id, members);
+
+            Team team = graphTeam(graph);
+            if(team == null) return;
+
+            //Ignore "single-building grids" to reduce minimap noise; they are often stray nodes and not useful to render.
+            int buildCount = 0;
+            for(int bi = 0; bi < all.size; bi++){
+                mindustry.gen.Building b = all.get(bi);
+                if(b == null || b.team != team) continue;
+                buildCount++;
+                if(buildCount > 1) break;
+            }
+            if(buildCount <= 1) return;
+
+            if(ignoreAreaTiles > 0 && graphAreaTiles(graph, team) < ignoreAreaTiles) return;
+
+            GridInfo info = new GridInfo();
+            info.graph = graph;
+            info.team = team;
+            grids.add(info);
+            gridById.put(id, info);
+
+            //For sparse laser-linked grids, render one balance marker per contiguous "chunk" of buildings.
+            addClusterMarkers(info);
+        }
+
+        private static PowerGraph powerGraphOf(Building build){
+            if(build == null || build.power == null) return null;
+            PowerGraph graph = build.power.graph;
+            if(graph == null || graph.all == null || graph.all.isEmpty()) return null;
+            return graph;
+        }
 
-                if(ignoreAreaTiles > 0 && graphAreaTiles(graph, team) < ignoreAreaTiles) continue;
+        private void flattenMarkers(){
+            markers.clear();
+            markerRects.clear();
+            for(int i = 0; i < grids.size; i++){
+                GridInfo info = grids.get(i);
+                markers.addAll(info.markers);
+                markerRects.addAll(info.rects);
+            }
+        }
 
-                GridInfo info = new GridInfo();
-                info.graph = graph;
-                info.team = team;
-                grids.add(info);
+        private void releaseMarkers(GridInfo info){
+            for(int i = 0; i < info.markers.size; i++){
+                MarkerInfo m = info.markers.get(i);
+                m.graph = null;
+                markerPool.add(m);
+            }
+            for(int i = 0; i < info.rects.size; i++){
+                MarkerRectInfo r = info.rects.get(i);
+                r.graph = null;
+                rectPool.add(r);
+            }
+            info.markers.clear();
+            info.rects.clear();
+        }
 
-                //For sparse laser-linked grids, render one balance marker per contiguous "chunk" of buildings.
-                addClusterMarkers(info);
+        private void releaseGrids(){
+            for(int i = 0; i < grids.size; i++){
+                releaseMarkers(grids.get(i));
             }
+            grids.clear();
+            gridById.clear();
+            for(IntSeq members : graphMembers.values()){
+                members.clear();
+                memberPool.add(members);
+            }
+            graphMembers.clear();
+            graphOfBuild.clear();
+            dirtyBuilds.clear();
+            markers.clear();
+            markerRects.clear();
+            overlayRemovedSlots.clear();
+            overlayReset = true;
         }
 
         private Team graphTeam(PowerGraph graph){
@@ -1781,240 +1962,52 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             info.colorKey = graph.getID();
             info.hasCenter = false;
 
-            //Collect occupied tiles (all linked tiles for each building) for this graph.
-            tmpOccupied.clear();
-            tmpOccupiedList.clear();
-
+            //snapshot this graph's buildings; PgmmGridAnalysis does the clustering on plain arrays
+            PgmmGridAnalysis.Network net = clusterNetwork;
+            net.clear(world.width(), world.height());
+            tmpMembers.clear();
             Seq<mindustry.gen.Building> all = graph.all;
             for(int i = 0; i < all.size; i++){
                 mindustry.gen.Building b = all.get(i);
                 if(b == null || b.team != team || b.tile == null) continue;
-                b.tile.getLinkedTiles(t -> {
-                    int pos = t.pos();
-                    if(!tmpOccupied.contains(pos)){
-                        tmpOccupied.add(pos);
-                        tmpOccupiedList.add(pos);
-                    }
-                });
+                tmpMembers.add(net.add(b.tile.pos(), b.block.size, 0, 0f, 0f));
             }
 
-            if(tmpOccupiedList.isEmpty()) return;
-
-            //stable color key: minimum occupied tile position (stable across minimap opens)
-            int minPos = Integer.MAX_VALUE;
-            for(int i = 0; i < tmpOccupiedList.size; i++){
-                int p = tmpOccupiedList.get(i);
-                if(p < minPos) minPos = p;
-            }
-            if(minPos != Integer.MAX_VALUE){
-                info.colorKey = minPos;
-            }
-
-            //Flood-fill connected components on the tile grid, using 4-neighbor adjacency.
             //If clusters are close together (< threshold tiles), draw a single marker at the whole-graph center.
             //If clusters are far apart (> threshold tiles), draw one marker per cluster.
-            tmpVisited.clear();
-            tmpQueue.clear();
-            tmpClusters.clear();
-            clusterPoolUsed = 0;
-            float totalSumX = 0f, totalSumY = 0f;
-            int totalCount = 0;
-
-            for(int i = 0; i < tmpOccupiedList.size; i++){
-                int start = tmpOccupiedList.get(i);
-                if(tmpVisited.contains(start)) continue;
-
-                ClusterInfo cluster = clusterPoolUsed < clusterPool.size ? clusterPool.get(clusterPoolUsed) : new ClusterInfo();
-                if(clusterPoolUsed >= clusterPool.size) clusterPool.add(cluster);
-                clusterPoolUsed++;
-                cluster.minx = Integer.MAX_VALUE;
-                cluster.miny = Integer.MAX_VALUE;
-                cluster.maxx = Integer.MIN_VALUE;
-                cluster.maxy = Integer.MIN_VALUE;
-                cluster.sumX = 0f;
-                cluster.sumY = 0f;
-                cluster.count = 0;
-
-                tmpVisited.add(start);
-                tmpQueue.addLast(start);
-
-                while(tmpQueue.size > 0){
-                    int cur = tmpQueue.removeFirst();
-                    int x = Point2.x(cur);
-                    int y = Point2.y(cur);
-
-                    cluster.sumX += (x + 0.5f) * tilesize;
-                    cluster.sumY += (y + 0.5f) * tilesize;
-                    cluster.count++;
-
-                    if(x < cluster.minx) cluster.minx = x;
-                    if(y < cluster.miny) cluster.miny = y;
-                    if(x > cluster.maxx) cluster.maxx = x;
-                    if(y > cluster.maxy) cluster.maxy = y;
-
-                    int n;
-                    n = Point2.pack(x + 1, y);
-                    if(x + 1 < world.width() && tmpOccupied.contains(n) && !tmpVisited.contains(n)){ tmpVisited.add(n); tmpQueue.addLast(n); }
-                    n = Point2.pack(x - 1, y);
-                    if(x - 1 >= 0 && tmpOccupied.contains(n) && !tmpVisited.contains(n)){ tmpVisited.add(n); tmpQueue.addLast(n); }
-                    n = Point2.pack(x, y + 1);
-                    if(y + 1 < world.height() && tmpOccupied.contains(n) && !tmpVisited.contains(n)){ tmpVisited.add(n); tmpQueue.addLast(n); }
-                    n = Point2.pack(x, y - 1);
-                    if(y - 1 >= 0 && tmpOccupied.contains(n) && !tmpVisited.contains(n)){ tmpVisited.add(n); tmpQueue.addLast(n); }
-                }
-
-                if(cluster.count <= 0) continue;
+            PgmmGridAnalysis.Partition part = clusterPartition;
+            analysis.partition(net, tmpMembers, Core.settings.getInt(keyClusterMarkerDistance, 15), part);
+            if(!part.hasTiles) return;
 
-                totalSumX += cluster.sumX;
-                totalSumY += cluster.sumY;
-                totalCount += cluster.count;
-
-                tmpClusters.add(cluster);
-                if(tmpClusters.size >= maxMarkersPerGraph){
-                    //Avoid UI spam/perf issues on extreme maps.
-                    break;
-                }
-            }
-
-            if(tmpClusters.isEmpty() || totalCount <= 0) return;
-
-            info.centerX = totalSumX / totalCount;
-            info.centerY = totalSumY / totalCount;
+            //stable color key: minimum occupied tile position (stable across minimap opens)
+            info.colorKey = part.minPos;
+            if(!part.hasCenter) return;
+            info.centerX = part.centerX;
+            info.centerY = part.centerY;
             info.hasCenter = true;
 
-            int thresholdTiles = Core.settings.getInt(keyClusterMarkerDistance, 15);
-            //Partition the graph into multiple rectangles using MST cut:
-            //- build MST of clusters with bbox-gap as edge weight
-            //- cut edges whose weight > thresholdTiles
-            //- each connected component becomes a rectangle (bbox union)
-            int n = tmpClusters.size;
-            int[] parent = mstParent;
-            float[] parentW = mstParentW;
-            boolean[] used = mstUsed;
-            float[] best = mstBest;
-            Arrays.fill(parent, 0, n, -1);
-            Arrays.fill(parentW, 0, n, 0f);
-            Arrays.fill(used, 0, n, false);
-            Arrays.fill(best, 0, n, Float.POSITIVE_INFINITY);
-            best[0] = 0f;
-
-            for(int iter = 0; iter < n; iter++){
-                int v = -1;
-                float vBest = Float.POSITIVE_INFINITY;
-                for(int i = 0; i < n; i++){
-                    if(used[i]) continue;
-                    float d = best[i];
-                    if(d < vBest){
-                        vBest = d;
-                        v = i;
-                    }
-                }
-                if(v == -1) break;
-                used[v] = true;
-                if(iter != 0){
-                    parentW[v] = vBest;
-                }
-
-                ClusterInfo a = tmpClusters.get(v);
-                for(int u = 0; u < n; u++){
-                    if(used[u]) continue;
-                    ClusterInfo b = tmpClusters.get(u);
-                    float gap = clusterGap(a, b);
-                    if(gap < best[u]){
-                        best[u] = gap;
-                        parent[u] = v;
-                    }
-                }
-            }
-
-            //build adjacency from MST edges that pass the threshold (or all edges if threshold <= 0)
-            IntSeq[] adj = mstAdj;
-            for(int i = 0; i < n; i++){
-                adj[i].clear();
-            }
-            for(int i = 1; i < n; i++){
-                int p = parent[i];
-                if(p < 0) continue;
-                float w = parentW[i];
-                if(thresholdTiles > 0 && w > thresholdTiles) continue;
-                adj[i].add(p);
-                adj[p].add(i);
-            }
-
-            boolean[] compVisited = mstCompVisited;
-            Arrays.fill(compVisited, 0, n, false);
-            int maxRectsPerGraph = 64;
-
-            for(int si = 0; si < n; si++){
-                if(compVisited[si]) continue;
-                compVisited[si] = true;
-                tmpQueue.clear();
-                tmpQueue.addLast(si);
-
-                int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE, maxx = Integer.MIN_VALUE, maxy = Integer.MIN_VALUE;
-
-                while(tmpQueue.size > 0){
-                    int v = tmpQueue.removeFirst();
-                    ClusterInfo c = tmpClusters.get(v);
-                    if(c.minx < minx) minx = c.minx;
-                    if(c.miny < miny) miny = c.miny;
-                    if(c.maxx > maxx) maxx = c.maxx;
-                    if(c.maxy > maxy) maxy = c.maxy;
-
-                    IntSeq nei = adj[v];
-                    for(int ni = 0; ni < nei.size; ni++){
-                        int to = nei.get(ni);
-                        if(compVisited[to]) continue;
-                        compVisited[to] = true;
-                        tmpQueue.addLast(to);
-                    }
-                }
-
-                if(minx == Integer.MAX_VALUE || miny == Integer.MAX_VALUE) continue;
-
+            IntSeq rects = part.rects;
+            for(int i = 0; i + 3 < rects.size; i += 4){
+                int minx = rects.items[i], miny = rects.items[i + 1], maxx = rects.items[i + 2], maxy = rects.items[i + 3];
                 float wx = minx * tilesize;
                 float wy = miny * tilesize;
                 float ww = (maxx - minx + 1) * tilesize;
                 float wh = (maxy - miny + 1) * tilesize;
 
-                MarkerRectInfo r = rectPoolUsed < rectPool.size ? rectPool.get(rectPoolUsed) : new MarkerRectInfo();
-                if(rectPoolUsed >= rectPool.size) rectPool.add(r);
-                rectPoolUsed++;
+                MarkerRectInfo r = rectPool.isEmpty() ? new MarkerRectInfo() : rectPool.pop();
                 r.graph = graph;
                 r.colorKey = info.colorKey;
                 r.worldRect.set(wx, wy, ww, wh);
-                markerRects.add(r);
+                info.rects.add(r);
 
-                MarkerInfo m = markerPoolUsed < markerPool.size ? markerPool.get(markerPoolUsed) : new MarkerInfo();
-                if(markerPoolUsed >= markerPool.size) markerPool.add(m);
-                markerPoolUsed++;
+                MarkerInfo m = markerPool.isEmpty() ? new MarkerInfo() : markerPool.pop();
                 m.graph = graph;
                 m.x = wx + ww / 2f;
                 m.y = wy + wh / 2f;
-                markers.add(m);
-
-                if(markerRects.size >= maxRectsPerGraph) break;
+                info.markers.add(m);
             }
         }
 
-        private static class ClusterInfo{
-            float sumX, sumY;
-            int count;
-            int minx, miny, maxx, maxy;
-        }
-
-        private static float clusterGap(ClusterInfo a, ClusterInfo b){
-            int dx = 0;
-            if(a.maxx < b.minx) dx = b.minx - a.maxx - 1;
-            else if(b.maxx < a.minx) dx = a.minx - b.maxx - 1;
-
-            int dy = 0;
-            if(a.maxy < b.miny) dy = b.miny - a.maxy - 1;
-            else if(b.maxy < a.miny) dy = a.miny - b.maxy - 1;
-
-            return Mathf.dst(0f, 0f, dx, dy);
-        }
-
         public void updateFullOverlay(){
             if(!state.isGame() || world == null || world.isGenerating() || player == null){
                 clear();
@@ -2027,12 +2020,17 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             boolean sizeChanged = world.width() != lastWorldW || world.height() != lastWorldH;
             boolean settingsChanged = claimDistance != lastClaimDistance || gridAlpha != lastGridAlpha;
 
+            pollOverlayJob();
+
             if(sizeChanged || settingsChanged){
                 fullDirty = true;
+                overlayReset = true;
             }
 
             if(!fullDirty) return;
             if(fullDirty && Time.time < nextFullUpdateTime) return;
+            //one update at a time; changes keep accumulating until the running one lands (a reset drops it instead)
+            if(overlayJob != null && !overlayReset) return;
             nextFullUpdateTime = Time.time + fullUpdateMinTicks();
             fullDirty = false;
 
@@ -2048,21 +2046,15 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             return fullOverlayTexture;
         }
 
-        private void ensureOverlayBuffers(int w, int h){
-            if(fullOverlayPixmap != null && (fullOverlayPixmap.width != w || fullOverlayPixmap.height != h)){
-                fullOverlayPixmap.dispose();
-                fullOverlayPixmap = null;
-            }
+        private void ensureOverlayTexture(int w, int h){
             if(fullOverlayTexture != null && (fullOverlayTexture.width != w || fullOverlayTexture.height != h)){
                 fullOverlayTexture.dispose();
                 fullOverlayTexture = null;
             }
 
-            if(fullOverlayPixmap == null){
-                fullOverlayPixmap = new Pixmap(w, h);
-            }
             if(fullOverlayTexture == null){
-                fullOverlayTexture = new Texture(fullOverlayPixmap);
+                //the worker draws into per-job pixmaps; the blank upload pixmap is disposed by the texture data
+                fullOverlayTexture = new Texture(w, h);
             }
         }
 
@@ -2072,322 +2064,160 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
 
             int w = world.width();
             int h = world.height();
-            ensureOverlayBuffers(w, h);
-
-            //clear to transparent
-            fullOverlayPixmap.fill(0);
+            ensureOverlayTexture(w, h);
 
-            if(grids.isEmpty()) {
-                fullOverlayTexture.draw(fullOverlayPixmap);
+            if(overlayReset || claimOverlay.width() != w || claimOverlay.height() != h){
+                overlayReset = false;
+                overlayRemovedSlots.clear();
+                pendingDirtyX0 = -1;
+                abandonOverlayJob();
+                claimOverlay.reset(w, h);
+                for(int gi = 0; gi < grids.size; gi++){
+                    grids.get(gi).overlaySlot = -1;
+                }
+            }
+            if(overlayJob != null){
+                //updateBasic above can queue more changes while a job runs; pick them up once it lands
+                fullDirty = true;
                 return;
             }
 
-            final int tileCount = w * h;
-            ensureOverlayScratch(tileCount);
-            int[] ownerPower = tmpOwnerPower;
-            int[] overlayOwner = tmpOverlayOwner;
-            int[] ownerClaim = tmpOwnerClaim;
-            boolean[] claimedBuild = tmpClaimedBuild;
-            Team[] gridTeams = new Team[grids.size];
-            for(int gi = 0; gi < grids.size; gi++){
-                gridTeams[gi] = grids.get(gi).team;
+            // Step 1) Grids dropped since the last rebuild release their power tiles, new grids seed theirs.
+            for(int i = 0; i < overlayRemovedSlots.size; i++){
+                claimOverlay.removeSlot(overlayRemovedSlots.get(i));
             }
-            Arrays.fill(ownerPower, -1);
-            Arrays.fill(overlayOwner, -1);
+            overlayRemovedSlots.clear();
 
-            // Step 1) Seed power-using building tiles.
+            float alpha = Mathf.clamp(gridAlphaInt / 100f);
+            IntSeq tiles = tmpTiles;
             for(int gi = 0; gi < grids.size; gi++){
-                final int gridIndex = gi;
-                GridInfo gridInfo = grids.get(gi);
-                Team team = gridTeams[gi];
-                PowerGraph graph = gridInfo == null ? null : gridInfo.graph;
-                if(team == null) continue;
-                if(graph == null || graph.all == null) continue;
+                GridInfo info = grids.get(gi);
+                if(info.overlaySlot >= 0) continue;
+                Team team = info.team;
+                PowerGraph graph = info.graph;
+                if(team == null || graph == null || graph.all == null) continue;
+
+                tiles.clear();
                 Seq<mindustry.gen.Building> all = graph.all;
                 for(int bi = 0; bi < all.size; bi++){
                     mindustry.gen.Building b = all.get(bi);
                     if(b == null || b.team != team) continue;
                     if(b.tile == null) continue;
-                    b.tile.getLinkedTiles(t -> {
-                        int idx = t.x + t.y * w;
-                        if(idx >= 0 && idx < tileCount) ownerPower[idx] = gridIndex;
-                    });
+                    b.tile.getLinkedTiles(t -> tiles.add(t.x + t.y * w));
                 }
-            }
 
-            System.arraycopy(ownerPower, 0, ownerClaim, 0, tileCount);
-            for(int i = 0; i < tileCount; i++){
-                claimedBuild[i] = ownerClaim[i] >= 0;
+                Color base = MinimapOverlay.colorForGraph(info.colorKey, Tmp.c1);
+                Color dark = Tmp.c2.set(base).mul(0.55f);
+                Color light = Tmp.c3.set(base).lerp(Color.white, 0.75f);
+                int baseRgba = Tmp.c4.set(base.r, base.g, base.b, alpha).rgba();
+                int darkRgba = Tmp.c4.set(dark.r, dark.g, dark.b, alpha).rgba();
+                int lightRgba = Tmp.c4.set(light.r, light.g, light.b, alpha * 0.45f).rgba();
+                info.overlaySlot = claimOverlay.addSlot(team.id, baseRgba, darkRgba, lightRgba, tiles);
             }
+            tiles.clear();
 
-            // Step 2) Claim "non-power" buildings that touch exactly one grid.
-            // Collect non-power buildings first so we can assign them deterministically.
-            Seq<mindustry.gen.Building> nonPower = tmpNonPower;
-            nonPower.clear();
-            for(int i = 0; i < mindustry.gen.Groups.build.size(); i++){
-                mindustry.gen.Building b = mindustry.gen.Groups.build.index(i);
-                if(b == null || b.team == null) continue;
-                if(b.power != null) continue;
-                if(b.tile == null) continue;
-                nonPower.add(b);
-            }
-
-            boolean[] assigned = ensureAssigned(nonPower.size);
-            IntSeq tmpTiles = this.tmpTiles;
-            int[] neighborGrids = tmpNeighborGrids;
-
-            for(int ni = 0; ni < nonPower.size; ni++){
-                mindustry.gen.Building b = nonPower.get(ni);
-                tmpTiles.clear();
-                b.tile.getLinkedTiles(t -> tmpTiles.add(t.x + t.y * w));
-
-                int ncount = 0;
-                Arrays.fill(neighborGrids, -1);
-
-                for(int ti = 0; ti < tmpTiles.size; ti++){
-                    int idx = tmpTiles.get(ti);
-                    int tx = idx % w;
-                    int ty = idx / w;
-
-                    //4-dir adjacency
-                    Team team = b.team;
-                    ncount = addNeighborGrid(ownerPower, gridTeams, team, w, h, tx + 1, ty, neighborGrids, ncount);
-                    ncount = addNeighborGrid(ownerPower, gridTeams, team, w, h, tx - 1, ty, neighborGrids, ncount);
-                    ncount = addNeighborGrid(ownerPower, gridTeams, team, w, h, tx, ty + 1, neighborGrids, ncount);
-                    ncount = addNeighborGrid(ownerPower, gridTeams, team, w, h, tx, ty - 1, neighborGrids, ncount);
-                    if(ncount > 1) break;
-                }
-
-                if(ncount == 1){
-                    int g = neighborGrids[0];
-                    //claim this building tiles into that grid
-                    for(int ti = 0; ti < tmpTiles.size; ti++){
-                        int idx = tmpTiles.get(ti);
-                        ownerClaim[idx] = g;
-                        claimedBuild[idx] = true;
-                    }
-                    assigned[ni] = true;
-                }
+            if(pendingDirtyX0 != -1){
+                claimOverlay.markDirty(pendingDirtyX0, pendingDirtyY0, pendingDirtyX1, pendingDirtyY1);
+                pendingDirtyX0 = -1;
             }
 
-            // Step 3) Distance-BFS from power tiles: remaining non-power buildings within threshold join the nearest grid.
-            if(claimDistance > 0){
-                short[] dist = tmpDist;
-                int[] ownerNear = tmpOwnerNear;
-                Arrays.fill(dist, (short)-1);
-                Arrays.fill(ownerNear, -1);
-                IntQueue q = tmpQueue;
-                q.clear();
-
-                for(int i = 0; i < tileCount; i++){
-                    int g = ownerPower[i];
-                    if(g >= 0){
-                        dist[i] = 0;
-                        ownerNear[i] = g;
-                        q.addLast(i);
-                    }
-                }
-
-                while(q.size > 0){
-                    int idx = q.removeFirst();
-                    int d = dist[idx];
-                    if(d >= claimDistance) continue;
-                    int x = idx % w;
-                    int y = idx / w;
-                    int g = ownerNear[idx];
-
-                    //4-dir spread
-                    spread(dist, ownerNear, q, w, h, x + 1, y, d + 1, g);
-                    spread(dist, ownerNear, q, w, h, x - 1, y, d + 1, g);
-                    spread(dist, ownerNear, q, w, h, x, y + 1, d + 1, g);
-                    spread(dist, ownerNear, q, w, h, x, y - 1, d + 1, g);
-                }
-
-                for(int ni = 0; ni < nonPower.size; ni++){
-                    if(assigned[ni]) continue;
-                    mindustry.gen.Building b = nonPower.get(ni);
-                    int cx = b.tileX();
-                    int cy = b.tileY();
-                    if(cx < 0 || cy < 0 || cx >= w || cy >= h) continue;
-                    int cidx = cx + cy * w;
-                    int d = dist[cidx];
-                    int g = ownerNear[cidx];
-                    if(d >= 0 && d < claimDistance && g >= 0 && g < gridTeams.length && gridTeams[g] == b.team){
-                        tmpTiles.clear();
-                        b.tile.getLinkedTiles(t -> tmpTiles.add(t.x + t.y * w));
-                        for(int ti = 0; ti < tmpTiles.size; ti++){
-                            int idx = tmpTiles.get(ti);
-                            ownerClaim[idx] = g;
-                            claimedBuild[idx] = true;
-                        }
-                        assigned[ni] = true;
-                    }
-                }
+            // Step 2) Snapshot every non-power building reaching into the claim region.
+            if(!claimOverlay.hasWork()) return;
+            overlayBuildings.clear();
+            if(claimOverlay.claimRegion(claimDistance, tmpRegion)){
+                collectOverlayBuildings(tmpRegion[0], tmpRegion[1], tmpRegion[2], tmpRegion[3], w);
             }
 
-            // Step 4) Render per-grid bounding rectangles into the overlay pixmap.
-            boolean[] visited = tmpVisitedTiles;
-            Arrays.fill(visited, false);
-            IntQueue bfs = tmpBfs;
-            bfs.clear();
-            IntSeq comp = tmpComp;
-            comp.clear();
+            // Step 3) Claims, components and pixels are recomputed off-thread; pollOverlayJob uploads the changed rectangle.
+            overlayJob = new PgmmOverlayJob(claimOverlay, overlayBuildings, claimDistance, overlaySparePixmap);
+            overlaySparePixmap = null;
+            overlayJob.submit();
+        }
 
-            float alpha = Mathf.clamp(gridAlphaInt / 100f);
+        /** Uploads a finished background update; until then the texture keeps showing the previous result. */
+        private void pollOverlayJob(){
+            releaseAbandonedJobs();
 
-            // Precompute colors per grid once, then scan tiles once.
-            int gridCount = grids.size;
-            tmpBaseRgbaByGrid = ensureIntArray(tmpBaseRgbaByGrid, gridCount);
-            tmpDarkRgbaByGrid = ensureIntArray(tmpDarkRgbaByGrid, gridCount);
-            tmpLightRgbaByGrid = ensureIntArray(tmpLightRgbaByGrid, gridCount);
-            int[] baseRgbaByGrid = tmpBaseRgbaByGrid;
-            int[] darkRgbaByGrid = tmpDarkRgbaByGrid;
-            int[] lightRgbaByGrid = tmpLightRgbaByGrid;
-            for(int gi = 0; gi < gridCount; gi++){
-                GridInfo info = grids.get(gi);
-                Color base = MinimapOverlay.colorForGraph(info.colorKey, Tmp.c1);
-                Color dark = Tmp.c2.set(base).mul(0.55f);
-                Color light = Tmp.c3.set(base).lerp(Color.white, 0.75f);
-                baseRgbaByGrid[gi] = Tmp.c4.set(base.r, base.g, base.b, alpha).rgba();
-                darkRgbaByGrid[gi] = Tmp.c4.set(dark.r, dark.g, dark.b, alpha).rgba();
-                lightRgbaByGrid[gi] = Tmp.c4.set(light.r, light.g, light.b, alpha * 0.45f).rgba();
-            }
-
-            for(int idx = 0; idx < tileCount; idx++){
-                int gi = ownerClaim[idx];
-                if(gi < 0 || visited[idx]) continue;
-
-                //BFS component gather + bbox (for this grid)
-                comp.clear();
-                bfs.clear();
-                bfs.addLast(idx);
-                visited[idx] = true;
-
-                int minx = w, miny = h, maxx = -1, maxy = -1;
-
-                while(bfs.size > 0){
-                    int cur = bfs.removeFirst();
-                    comp.add(cur);
-                    int x = cur % w;
-                    int y = cur / w;
-                    if(x < minx) minx = x;
-                    if(y < miny) miny = y;
-                    if(x > maxx) maxx = x;
-                    if(y > maxy) maxy = y;
-
-                    //neighbors
-                    int n;
-                    if(x + 1 < w && !visited[n = cur + 1] && ownerClaim[n] == gi){ visited[n] = true; bfs.addLast(n); }
-                    if(x - 1 >= 0 && !visited[n = cur - 1] && ownerClaim[n] == gi){ visited[n] = true; bfs.addLast(n); }
-                    if(y + 1 < h && !visited[n = cur + w] && ownerClaim[n] == gi){ visited[n] = true; bfs.addLast(n); }
-                    if(y - 1 >= 0 && !visited[n = cur - w] && ownerClaim[n] == gi){ visited[n] = true; bfs.addLast(n); }
-                }
+            PgmmOverlayJob job = overlayJob;
+            if(job == null || !job.finished) return;
+            overlayJob = null;
+            overlayBuildings.clear();
+            if(job.spare != null && job.spare != job.pixmap) job.spare.dispose();
+            overlaySparePixmap = job.pixmap;
 
-                if(comp.isEmpty()) continue;
-
-                //expand bbox by 1 to allow outside fill
-                int bx0 = Math.max(0, minx - 1);
-                int by0 = Math.max(0, miny - 1);
-                int bx1 = Math.min(w - 1, maxx + 1);
-                int by1 = Math.min(h - 1, maxy + 1);
-
-                //rectangular-biased render:
-                //- fill the whole (expanded) bounding box area with light color
-                //- draw a dark border around the rectangle (closed shape)
-                //- draw claimed building tiles with base color; border tiles with dark color
-                int baseRgba = baseRgbaByGrid[gi];
-                int darkRgba = darkRgbaByGrid[gi];
-                int lightRgba = lightRgbaByGrid[gi];
-
-                for(int wy = by0; wy <= by1; wy++){
-                    int yOff = wy * w;
-                    boolean edgeY = wy == by0 || wy == by1;
-                    for(int wx = bx0; wx <= bx1; wx++){
-                        int widx = wx + yOff;
-
-                        //don't overwrite other grids' claimed buildings
-                        if(claimedBuild[widx] && ownerClaim[widx] != gi) continue;
-
-                        boolean edge = edgeY || wx == bx0 || wx == bx1;
-                        boolean isBuild = claimedBuild[widx] && ownerClaim[widx] == gi;
-
-                        //avoid messy overlaps between rectangles: only paint empty tiles if unowned yet
-                        if(!isBuild && overlayOwner[widx] != -1 && overlayOwner[widx] != gi) continue;
-
-                        int rgba;
-                        if(isBuild){
-                            rgba = edge ? darkRgba : baseRgba;
-                        }else{
-                            rgba = edge ? darkRgba : lightRgba;
-                        }
-
-                        fullOverlayPixmap.set(wx, h - 1 - wy, rgba);
-                        if(!isBuild){
-                            overlayOwner[widx] = gi;
-                        }
-                    }
-                }
+            if(job.error != null){
+                Log.err("PGMM: grid overlay update failed; rebuilding it from scratch.", job.error);
+                overlayReset = true;
+                fullDirty = true;
+                return;
             }
-
-            fullOverlayTexture.draw(fullOverlayPixmap);
+            if(!job.changed || fullOverlayTexture == null) return;
+            int h = job.overlay.height();
+            if(fullOverlayTexture.width != job.overlay.width() || fullOverlayTexture.height != h) return;
+            fullOverlayTexture.draw(job.pixmap, job.x0, h - 1 - job.y1);
         }
 
-        private void ensureOverlayScratch(int tileCount){
-            if(tileCount == lastTileCount && tmpOwnerPower != null) return;
-            lastTileCount = tileCount;
-            tmpOwnerPower = new int[tileCount];
-            tmpOwnerClaim = new int[tileCount];
-            tmpOverlayOwner = new int[tileCount];
-            tmpClaimedBuild = new boolean[tileCount];
-            tmpVisitedTiles = new boolean[tileCount];
-            tmpDist = new short[tileCount];
-            tmpOwnerNear = new int[tileCount];
-            tmpAssigned = new boolean[0];
+        /** Drops the running update; the worker may still write its overlay and snapshot, so both are replaced. */
+        private void abandonOverlayJob(){
+            if(overlayJob == null) return;
+            overlayJob.cancel();
+            abandonedOverlayJobs.add(overlayJob);
+            overlayJob = null;
+            claimOverlay = new PgmmClaimOverlay();
+            overlayBuildings = new PgmmClaimOverlay.Buildings();
         }
 
-        private boolean[] ensureAssigned(int size){
-            if(tmpAssigned == null || tmpAssigned.length < size){
-                tmpAssigned = new boolean[size];
-            }else{
-                Arrays.fill(tmpAssigned, 0, size, false);
+        private void releaseAbandonedJobs(){
+            for(int i = abandonedOverlayJobs.size - 1; i >= 0; i--){
+                PgmmOverlayJob job = abandonedOverlayJobs.get(i);
+                if(!job.finished) continue;
+                if(job.spare != null) job.spare.dispose();
+                if(job.pixmap != null && job.pixmap != job.spare) job.pixmap.dispose();
+                abandonedOverlayJobs.remove(i);
             }
-            return tmpAssigned;
         }
 
-        private static int[] ensureIntArray(int[] arr, int size){
-            if(arr == null || arr.length < size){
-                return new int[size];
+        private void markOverlayDirty(int x0, int y0, int x1, int y1){
+            if(pendingDirtyX0 == -1){
+                pendingDirtyX0 = x0;
+                pendingDirtyY0 = y0;
+                pendingDirtyX1 = x1;
+                pendingDirtyY1 = y1;
+            }else{
+                pendingDirtyX0 = Math.min(pendingDirtyX0, x0);
+                pendingDirtyY0 = Math.min(pendingDirtyY0, y0);
+                pendingDirtyX1 = Math.max(pendingDirtyX1, x1);
+                pendingDirtyY1 = Math.max(pendingDirtyY1, y1);
             }
-            return arr;
         }
 
-        private static int addNeighborGrid(int[] ownerPower, Team[] gridTeams, Team buildTeam, int w, int h, int x, int y, int[] out, int count){
-            if(x < 0 || y < 0 || x >= w || y >= h) return count;
-            int g = ownerPower[x + y * w];
-            if(g < 0) return count;
-            if(g >= gridTeams.length || gridTeams[g] != buildTeam) return count;
-            for(int i = 0; i < count; i++){
-                if(out[i] == g) return count;
+        private void collectOverlayBuildings(int x0, int y0, int x1, int y1, int w){
+            overlaySeenBuilds.clear();
+            PgmmClaimOverlay.Buildings out = overlayBuildings;
+            for(int y = y0; y <= y1; y++){
+                for(int x = x0; x <= x1; x++){
+                    mindustry.gen.Building b = world.build(x, y);
+                    if(b == null || b.team == null) continue;
+                    if(b.power != null) continue;
+                    if(b.tile == null) continue;
+                    if(!overlaySeenBuilds.add(b.pos())) continue;
+                    out.begin(b.team.id, b.tileX() + b.tileY() * w);
+                    b.tile.getLinkedTiles(t -> out.tile(t.x + t.y * w));
+                }
             }
-            out[count] = g;
-            return count + 1;
+            overlaySeenBuilds.clear();
         }
 
-        private static void spread(short[] dist, int[] owner, IntQueue q, int w, int h, int x, int y, int nd, int g){
-            if(x < 0 || y < 0 || x >= w || y >= h) return;
-            int idx = x + y * w;
-            int cd = dist[idx];
-            if(cd == -1){
-                dist[idx] = (short)nd;
-                owner[idx] = g;
-                q.addLast(idx);
-            }else if(cd == nd){
-                //tie-break: keep deterministic smallest grid index
-                int og = owner[idx];
-                if(og > g){
-                    owner[idx] = g;
+        /** Largest block size in the loaded content; a removed building's tiles lie within this distance of its position. */
+        private static int maxBlockSize(){
+            if(cachedMaxBlockSize <= 0){
+                int max = 1;
+                for(mindustry.world.Block block : mindustry.Vars.content.blocks()){
+                    if(block != null) max = Math.max(max, block.size);
                 }
+                cachedMaxBlockSize = max;
             }
+            return cachedMaxBlockSize;
         }
 
     }
@@ -3095,7 +2925,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
 
             String title = Core.bundle.get("pgmm.powertable.title", "Power");
             add("[accent]" + title + "[]").left().row();
-            add("in>=" + UI.formatAmount(threshold) + "/s  min(" + k + "s)").color(cKey).padTop(2f).row();
+            add("in>=" + UI.formatAmount(threshold) + "/s  min(" + k + "s)  " + powerTableTrendMinutes() + "min").color(cKey).padTop(2f).row();
 
             if(cache.grids.isEmpty()){
                 add(Core.bundle.get("pgmm.powertable.empty", "No power grids.")).color(cKey).padTop(4f).row();
@@ -3165,6 +2995,8 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
                         minLabel.setAlignment(Align.right);
                         minLabel.setWrap(false);
                         minLabel.setEllipsis(true);
+
+                        right.add(new TrendSparkline(gid)).size(56f, 14f);
                     }).right();
                 }).growX().fillX().padTop(2f).row();
 
@@ -3176,118 +3008,306 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
                 add(Core.bundle.get("pgmm.powertable.none", "No grids above threshold.")).color(cKey).padTop(4f).row();
             }
         }
+
+        /** Balance trend of one grid over the long window, read live from its history (the table itself rebuilds every 30 ticks). */
+        private class TrendSparkline extends Element{
+            private final int graphId;
+
+            TrendSparkline(int graphId){
+                this.graphId = graphId;
+            }
+
+            @Override
+            public void draw(){
+                PgmmBalanceHistory history = rescueAdvisor.history(graphId);
+                if(history == null) return;
+                PgmmBalanceHistory.Ring trend = history.trend;
+                int n = trend.size();
+                if(n < 2) return;
+
+                //range straight from the monotonic deques; zero stays inside it so the baseline is always drawn
+                float lo = Math.min(0f, trend.min());
+                float hi = Math.max(0f, trend.max());
+                float range = Math.max(hi - lo, 1f);
+                //newest point at the right edge; a young grid only fills the right part
+                float step = width / Math.max(1, trend.capacity - 1);
+                float left = x + width - (n - 1) * step;
+
+                Lines.stroke(Scl.scl(1f));
+                Draw.color(cKey, 0.35f * parentAlpha);
+                float zeroY = y + -lo / range * height;
+                Lines.line(x, zeroY, x + width, zeroY);
+
+                Draw.color(trend.last() >= 0f ? cPos : cNeg, parentAlpha);
+                float px = left, py = y + (trend.get(0) - lo) / range * height;
+                for(int i = 1; i < n; i++){
+                    float cx = left + i * step;
+                    float cy = y + (trend.get(i) - lo) / range * height;
+                    Lines.line(px, py, cx, cy);
+                    px = cx;
+                    py = cy;
+                }
+                Draw.reset();
+            }
+        }
     }
 
+    /**
+     * Split detection driven by build events: only graphs that a changed power building belonged to (before or after) are re-read.
+     * 电网拆分检测：只重读变化建筑所属的电网（变化前 / 后），没有电力建筑变化时扫描不做任何事。
+     */
     private class SplitWatcher{
         private static final float scanInterval = 30f;
         private static final float cooldown = 60f * 10f;
 
-        private final IntIntMap lastGraphByBuildPos = new IntIntMap();
-        //per-second (UI unit) power-in of last scan
-        private final IntMap<Float> lastGraphPowerIn = new IntMap<>();
-        private final IntMap<Float> lastSplitTime = new IntMap<>();
+        //membership of the player's graphs as of the last processed scan
+        private final IntIntMap graphOfBuild = new IntIntMap();
+        private final IntMap<IntSeq> membersByGraph = new IntMap<>();
+        private final IntMap<PowerGraph> graphById = new IntMap<>();
+        private final Seq<IntSeq> memberPool = new Seq<>();
+        //bumped whenever a graph's membership is re-recorded, so failed reconnect searches know when to retry
+        private final IntIntMap memberRevision = new IntIntMap();
+        private int membershipRevision;
+        //building positions touched since the last scan, plus the power-in of their graph at that moment
+        private final IntSet dirtyBuilds = new IntSet();
+        private final IntFloatMap powerInAtChange = new IntFloatMap();
+        private boolean needsFullScan = true;
+        private Team lastTeam;
+
+        private final IntFloatMap lastSplitTime = new IntFloatMap();
         private final IntMap<PendingSplit> pendingSplits = new IntMap<>();
 
         //reused temp structures to reduce GC pressure
         private final IntMap<IntSet> prevToNew = new IntMap<>();
         private final Seq<IntSet> prevToNewSetPool = new Seq<>();
         private int prevToNewSetPoolUsed = 0;
-        private final IntMap<Float> currentPowerIn = new IntMap<>();
-        private final IntMap<Float> currentBalance = new IntMap<>();
-        private final IntSet currentIds = new IntSet();
-        private final IntSet tmpResultIds = new IntSet();
+        private final IntFloatMap prevPowerIn = new IntFloatMap();
+        private final IntSeq tmpPendingOld = new IntSeq();
+        private final IntSet tmpSeenOld = new IntSet();
+        private final Seq<PowerGraph> tmpPendingNew = new Seq<>();
+        private final Seq<PowerGraph> tmpNewGraphs = new Seq<>();
+        private final IntSet tmpSeenNew = new IntSet();
         private final IntSeq tmpToRemove = new IntSeq();
 
         private float nextScan = 0f;
 
         void reset(){
-            lastGraphByBuildPos.clear();
-            lastGraphPowerIn.clear();
+            releaseMembership();
+            dirtyBuilds.clear();
+            powerInAtChange.clear();
+            needsFullScan = true;
+            lastTeam = null;
             lastSplitTime.clear();
             pendingSplits.clear();
             nextScan = 0f;
         }
 
+        void invalidateTile(mindustry.world.Tile tile){
+            if(tile == null) return;
+            invalidatePos(tile.pos());
+            if(tile.build != null) invalidatePos(tile.build.pos());
+        }
+
+        void invalidateBuild(Building build){
+            if(build == null) return;
+            invalidatePos(build.pos());
+        }
+
+        private void invalidatePos(int pos){
+            if(needsFullScan) return;
+            dirtyBuilds.add(pos);
+            //events fire before the graph is split, so remember what the old graph produced
+            int id = graphOfBuild.get(pos, Integer.MIN_VALUE);
+            if(id == Integer.MIN_VALUE || powerInAtChange.containsKey(id)) return;
+            PowerGraph graph = graphById.get(id);
+            if(graph != null) powerInAtChange.put(id, graph.getLastScaledPowerIn() * 60f);
+        }
+
         void update(){
             if(!Core.settings.getBool(keySplitAlertEnabled, true)){
-                if(!pendingSplits.isEmpty()){
+                if(!needsFullScan || !pendingSplits.isEmpty()){
                     reset();
                 }
                 alert.clear();
                 return;
             }
+            if(!pendingSplits.isEmpty()) pollSearches();
             if(Time.time < nextScan) return;
             nextScan = Time.time + scanInterval;
 
             if(!state.isGame() || world == null || world.isGenerating() || player == null){
-                lastGraphByBuildPos.clear();
-                lastGraphPowerIn.clear();
-                lastSplitTime.clear();
-                pendingSplits.clear();
+                reset();
+                nextScan = Time.time + scanInterval;
                 alert.clear();
                 return;
             }
 
-            int threshold = Core.settings.getInt(keySplitAlertThreshold, 10000);
-            int configuredNegativeThreshold = Core.settings.getInt(keySplitAlertNegativeThreshold, 0);
-            int negativeThreshold = Math.min(configuredNegativeThreshold, 0);
-            if(configuredNegativeThreshold != negativeThreshold){
-                Core.settings.put(keySplitAlertNegativeThreshold, negativeThreshold);
+            if(needsFullScan || player.team() != lastTeam){
+                fullScan();
+            }else if(!dirtyBuilds.isEmpty()){
+                refreshDirty();
             }
-            int windowSeconds = Core.settings.getInt(keySplitAlertWindowSeconds, 4);
-            float windowFrames = Math.max(1f, windowSeconds) * 60f;
 
-            //clear temp maps; reuse IntSet instances via pool
-            prevToNew.clear();
-            prevToNewSetPoolUsed = 0;
-            currentPowerIn.clear();
-            currentBalance.clear();
-            currentIds.clear();
+            if(pendingSplits.isEmpty()) return;
+            evaluatePending();
+        }
+
+        /** Records membership of every player graph; splits are only detected against a previous scan. */
+        private void fullScan(){
+            releaseMembership();
+            dirtyBuilds.clear();
+            powerInAtChange.clear();
+            pendingSplits.clear();
+            needsFullScan = false;
+            lastTeam = player.team();
 
-            //scan all player buildings with power modules
+            tmpSeenNew.clear();
             for(int i = 0; i < mindustry.gen.Groups.build.size(); i++){
-                mindustry.gen.Building b = mindustry.gen.Groups.build.index(i);
-                if(b == null || b.team != player.team() || b.power == null || b.power.graph == null) continue;
+                Building b = mindustry.gen.Groups.build.index(i);
+                PowerGraph graph = playerGraphOf(b);
+                if(graph != null && tmpSeenNew.add(graph.getID())) registerGraph(graph);
+            }
+            tmpSeenNew.clear();
+        }
 
-                int pos = b.pos();
-                int newId = b.power.graph.getID();
-                int prevId = lastGraphByBuildPos.get(pos, Integer.MIN_VALUE);
-
-                lastGraphByBuildPos.put(pos, newId);
-
-                //build stats
-                currentPowerIn.put(newId, b.power.graph.getLastScaledPowerIn() * 60f);
-                currentBalance.put(newId, b.power.graph.getPowerBalance() * 60f);
-                currentIds.add(newId);
-
-                if(prevId != Integer.MIN_VALUE && prevId != newId){
-                    IntSet set = prevToNew.get(prevId);
-                    if(set == null){
-                        set = prevToNewSetPoolUsed < prevToNewSetPool.size ? prevToNewSetPool.get(prevToNewSetPoolUsed) : new IntSet();
-                        if(prevToNewSetPoolUsed >= prevToNewSetPool.size) prevToNewSetPool.add(set);
-                        prevToNewSetPoolUsed++;
-                        set.clear();
-                        prevToNew.put(prevId, set);
+        /**
+         * Re-reads the graphs touched since the last scan. A dropped graph pulls in the current graphs of all its former
+         * members, and a current graph pulls in the former graphs of all its members, so splits and merges are closed over.
+         * 只重读受影响的电网：旧电网的成员带出它们现在的电网，现在的电网又带出成员原来的电网，直到闭合。
+         */
+        private void refreshDirty(){
+            prevToNew.clear();
+            prevToNewSetPoolUsed = 0;
+            prevPowerIn.clear();
+            tmpPendingOld.clear();
+            tmpSeenOld.clear();
+            tmpPendingNew.clear();
+            tmpNewGraphs.clear();
+            tmpSeenNew.clear();
+
+            IntSet.IntSetIterator it = dirtyBuilds.iterator();
+            while(it.hasNext){
+                int pos = it.next();
+                queueOld(graphOfBuild.get(pos, Integer.MIN_VALUE));
+                queueNew(playerGraphOf(world.build(pos)));
+            }
+            dirtyBuilds.clear();
+
+            while(tmpPendingOld.size > 0 || tmpPendingNew.size > 0){
+                while(tmpPendingOld.size > 0){
+                    int oldId = tmpPendingOld.pop();
+                    PowerGraph oldGraph = graphById.remove(oldId);
+                    float pin = powerInAtChange.get(oldId, Float.NaN);
+                    if(Float.isNaN(pin)) pin = oldGraph == null ? 0f : oldGraph.getLastScaledPowerIn() * 60f;
+                    prevPowerIn.put(oldId, pin);
+
+                    memberRevision.remove(oldId, 0);
+                    IntSeq members = membersByGraph.remove(oldId);
+                    if(members == null) continue;
+                    for(int i = 0; i < members.size; i++){
+                        int pos = members.get(i);
+                        if(graphOfBuild.get(pos, Integer.MIN_VALUE) == oldId) graphOfBuild.remove(pos, Integer.MIN_VALUE);
+                        PowerGraph graph = playerGraphOf(world.build(pos));
+                        if(graph == null) continue;
+                        resultsOf(oldId).add(graph.getID());
+                        queueNew(graph);
+                    }
+                    members.clear();
+                    memberPool.add(members);
+                }
+
+                while(tmpPendingNew.size > 0){
+                    PowerGraph graph = tmpPendingNew.pop();
+                    Seq<Building> all = graph.all;
+                    for(int i = 0; i < all.size; i++){
+                        Building b = all.get(i);
+                        if(b == null || b.team != lastTeam) continue;
+                        queueOld(graphOfBuild.get(b.pos(), Integer.MIN_VALUE));
                     }
-                    set.add(newId);
                 }
             }
 
+            for(int i = 0; i < tmpNewGraphs.size; i++){
+                registerGraph(tmpNewGraphs.get(i));
+            }
+            tmpNewGraphs.clear();
+            powerInAtChange.clear();
+
+            registerSplits();
+        }
+
+        private void queueOld(int id){
+            if(id != Integer.MIN_VALUE && tmpSeenOld.add(id)) tmpPendingOld.add(id);
+        }
+
+        private void queueNew(PowerGraph graph){
+            if(graph == null || !tmpSeenNew.add(graph.getID())) return;
+            tmpPendingNew.add(graph);
+            tmpNewGraphs.add(graph);
+        }
+
+        private IntSet resultsOf(int prevId){
+            IntSet set = prevToNew.get(prevId);
+            if(set == null){
+                set = prevToNewSetPoolUsed < prevToNewSetPool.size ? prevToNewSetPool.get(prevToNewSetPoolUsed) : new IntSet();
+                if(prevToNewSetPoolUsed >= prevToNewSetPool.size) prevToNewSetPool.add(set);
+                prevToNewSetPoolUsed++;
+                set.clear();
+                prevToNew.put(prevId, set);
+            }
+            return set;
+        }
+
+        private void registerGraph(PowerGraph graph){
+            int id = graph.getID();
+            IntSeq members = memberPool.isEmpty() ? new IntSeq() : memberPool.pop();
+            Seq<Building> all = graph.all;
+            for(int i = 0; i < all.size; i++){
+                Building b = all.get(i);
+                if(b == null || b.team != lastTeam) continue;
+                int pos = b.pos();
+                members.add(pos);
+                graphOfBuild.put(pos, id);
+            }
+            if(members.isEmpty()){
+                memberPool.add(members);
+                return;
+            }
+            membersByGraph.put(id, members);
+            graphById.put(id, graph);
+            memberRevision.put(id, ++membershipRevision);
+        }
+
+        private void releaseMembership(){
+            for(IntSeq members : membersByGraph.values()){
+                members.clear();
+                memberPool.add(members);
+            }
+            membersByGraph.clear();
+            graphOfBuild.clear();
+            graphById.clear();
+            memberRevision.clear();
+        }
+
+        private PowerGraph playerGraphOf(Building b){
+            if(b == null || b.team != player.team() || b.power == null || b.power.graph == null) return null;
+            PowerGraph graph = b.power.graph;
+            return graph.all == null || graph.all.isEmpty() ? null : graph;
+        }
+
+        /** A former graph whose members now sit in two or more graphs opens (or widens) a pending split window. */
+        private void registerSplits(){
+            int threshold = Core.settings.getInt(keySplitAlertThreshold, 10000);
+            int windowSeconds = Core.settings.getInt(keySplitAlertWindowSeconds, 4);
+            float windowFrames = Math.max(1f, windowSeconds) * 60f;
+
             //register split events (including the case where one side keeps the old graph ID)
             for(IntMap.Entry<IntSet> e : prevToNew){
                 int prevId = e.key;
-                IntSet changedIds = e.value;
+                IntSet resultIds = e.value;
+                if(resultIds == null || resultIds.size < 2) continue;
 
-                //result set = changed graph IDs + (prevId if it still exists after the split)
-                tmpResultIds.clear();
-                if(changedIds != null) changedIds.each(tmpResultIds::add);
-                if(currentIds.contains(prevId)){
-                    tmpResultIds.add(prevId);
-                }
-                if(tmpResultIds.size < 2) continue;
-
-                float prevPowerIn = lastGraphPowerIn.get(prevId, 0f);
-                if(prevPowerIn < threshold) continue;
+                if(prevPowerIn.get(prevId, 0f) < threshold) continue;
 
                 float lastTime = lastSplitTime.get(prevId, -999999f);
                 if(Time.time - lastTime < cooldown) continue;
@@ -3300,19 +3320,37 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
                     pending.expiresAt = Time.time + windowFrames;
                     pending.resultIds.clear();
                     pending.belowSince.clear();
-                    tmpResultIds.each(pending.resultIds::add);
+                    resultIds.each(pending.resultIds::add);
                     pendingSplits.put(prevId, pending);
                 }else{
                     //keep original window; just widen the set of resulting IDs
-                    tmpResultIds.each(pending.resultIds::add);
+                    resultIds.each(pending.resultIds::add);
                 }
             }
+            prevToNew.clear();
+            prevToNewSetPoolUsed = 0;
+            prevPowerIn.clear();
+        }
+
+        private float powerInOf(int id){
+            PowerGraph graph = graphById.get(id);
+            return graph == null ? 0f : graph.getLastScaledPowerIn() * 60f;
+        }
+
+        //evaluate pending split windows; if any resulting grid goes negative within the window, fire alert
+        private void evaluatePending(){
+            int configuredNegativeThreshold = Core.settings.getInt(keySplitAlertNegativeThreshold, 0);
+            int negativeThreshold = Math.min(configuredNegativeThreshold, 0);
+            if(configuredNegativeThreshold != negativeThreshold){
+                Core.settings.put(keySplitAlertNegativeThreshold, negativeThreshold);
+            }
+            int windowSeconds = Core.settings.getInt(keySplitAlertWindowSeconds, 4);
+            float windowFrames = Math.max(1f, windowSeconds) * 60f;
 
-            //evaluate pending split windows; if any resulting grid goes negative within the window, fire alert
             tmpToRemove.clear();
             for(IntMap.Entry<PendingSplit> e : pendingSplits){
                 PendingSplit pending = e.value;
-                if(pending == null) continue;
+                if(pending == null || pending.search != null) continue;
 
                 boolean expired = Time.time > pending.expiresAt + scanInterval;
 
@@ -3320,11 +3358,12 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
                 final float[] mostNegative = {Float.POSITIVE_INFINITY};
 
                 pending.resultIds.each(id -> {
-                    if(!currentIds.contains(id)){
-                        pending.belowSince.remove(id);
+                    PowerGraph graph = graphById.get(id);
+                    if(graph == null){
+                        pending.belowSince.remove(id, -1f);
                         return;
                     }
-                    float bal = currentBalance.get(id, 0f);
+                    float bal = graph.getPowerBalance() * 60f;
                     if(bal <= negativeThreshold){
                         float belowAt = pending.belowSince.get(id, -1f);
                         if(belowAt < 0f){
@@ -3336,7 +3375,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
                             negativeId[0] = id;
                         }
                     }else{
-                        pending.belowSince.remove(id);
+                        pending.belowSince.remove(id, -1f);
                     }
                 });
 
@@ -3352,7 +3391,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
                 final float[] bestPower = {Float.NEGATIVE_INFINITY};
                 pending.resultIds.each(id -> {
                     if(id == negativeId[0]) return;
-                    float pin = currentPowerIn.get(id, 0f);
+                    float pin = powerInOf(id);
                     if(pin > bestPower[0]){
                         bestPower[0] = pin;
                         bestOther[0] = id;
@@ -3362,42 +3401,66 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
 
                 int aId = negativeId[0];
                 int bId = bestOther[0];
-                if(currentPowerIn.get(aId, 0f) >= currentPowerIn.get(bId, 0f)) continue;
-
-                ReconnectResult reconnect = findReconnectPoint(aId, bId);
-                if(reconnect == null){
-                    //fallback: try any other candidate
-                    final ReconnectResult[] found = {null};
-                    final int[] foundB = {bId};
-                    pending.resultIds.each(id -> {
-                        if(found[0] != null) return;
-                        if(id == aId) return;
-                        if(currentPowerIn.get(aId, 0f) >= currentPowerIn.get(id, 0f)) return;
-                        ReconnectResult r = findReconnectPoint(aId, id);
-                        if(r != null){
-                            found[0] = r;
-                            foundB[0] = id;
-                        }
-                    });
-                    reconnect = found[0];
-                    bId = foundB[0];
-                }
+                if(powerInOf(aId) >= powerInOf(bId)) continue;
 
-                if(reconnect != null){
-                    lastSplitTime.put(pending.prevId, Time.time);
-                    alert.trigger(aId, bId, reconnect.midX, reconnect.midY, reconnect.ax, reconnect.ay, reconnect.bx, reconnect.by);
-                    tmpToRemove.add(pending.prevId);
-                }
+                //a search that found no pair is not repeated until one of the graphs it covered is re-recorded
+                final int[] revision = {Math.max(memberRevision.get(aId, 0), memberRevision.get(bId, 0))};
+                pending.resultIds.each(id -> {
+                    if(id == aId || id == bId) return;
+                    if(powerInOf(aId) >= powerInOf(id)) return;
+                    revision[0] = Math.max(revision[0], memberRevision.get(id, 0));
+                });
+                if(pending.failedA == aId && pending.failedB == bId && pending.failedRevision == revision[0]) continue;
+
+                //the closest tile pair is searched off-thread; pollSearches raises the alert once it lands
+                PgmmReconnectSearch search = new PgmmReconnectSearch(aId, collectGraphTiles(aId));
+                search.addCandidate(bId, collectGraphTiles(bId));
+                //fallback: any other side with more power-in, in set order
+                pending.resultIds.each(id -> {
+                    if(id == aId || id == bId) return;
+                    if(powerInOf(aId) >= powerInOf(id)) return;
+                    search.addCandidate(id, collectGraphTiles(id));
+                });
+                pending.search = search;
+                pending.searchB = bId;
+                pending.searchRevision = revision[0];
+                search.submit();
             }
             for(int i = 0; i < tmpToRemove.size; i++){
                 pendingSplits.remove(tmpToRemove.get(i));
             }
+        }
+
+        /** Raises the alert for every finished reconnect search; a split without a reachable partner keeps its window. */
+        private void pollSearches(){
+            tmpToRemove.clear();
+            for(IntMap.Entry<PendingSplit> e : pendingSplits){
+                PendingSplit pending = e.value;
+                if(pending == null || pending.search == null || !pending.search.finished) continue;
+                PgmmReconnectSearch search = pending.search;
+                pending.search = null;
+
+                if(search.error != null){
+                    Log.err("PGMM: reconnect point search failed.", search.error);
+                    continue;
+                }
+                if(!search.found){
+                    pending.failedA = search.graphA;
+                    pending.failedB = pending.searchB;
+                    pending.failedRevision = pending.searchRevision;
+                    continue;
+                }
+                if(world == null) continue;
 
-            //store last stats
-            lastGraphPowerIn.clear();
-            for(IntMap.Entry<Float> e : currentPowerIn){
-                lastGraphPowerIn.put(e.key, e.value);
+                ReconnectResult reconnect = reconnectResult(search.posA, search.posB);
+                lastSplitTime.put(pending.prevId, Time.time);
+                alert.trigger(search.graphA, search.graphB, reconnect.midX, reconnect.midY, reconnect.ax, reconnect.ay, reconnect.bx, reconnect.by);
+                tmpToRemove.add(pending.prevId);
             }
+            for(int i = 0; i < tmpToRemove.size; i++){
+                pendingSplits.remove(tmpToRemove.get(i));
+            }
+            tmpToRemove.clear();
         }
 
         private class PendingSplit{
@@ -3405,135 +3468,35 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             float createdAt;
             float expiresAt;
             IntSet resultIds = new IntSet();
-            IntMap<Float> belowSince = new IntMap<>();
+            IntFloatMap belowSince = new IntFloatMap();
+            /** Reconnect search in flight, null when idle. 进行中的重连点搜索。 */
+            PgmmReconnectSearch search;
+            int searchB, searchRevision;
+            /** Graph pair of the last search that found nothing, and the membership revision it saw. 上次无结果的搜索。 */
+            int failedA = -1, failedB = -1, failedRevision;
+        }
+
+        /** Power tiles (Point2-packed) of one tracked graph; snapshot for the reconnect search. */
+        private IntSeq collectGraphTiles(int graphId){
+            IntSeq out = new IntSeq();
+            IntSeq members = membersByGraph.get(graphId);
+            if(members == null) return out;
+            for(int i = 0; i < members.size; i++){
+                Building b = world.build(members.get(i));
+                if(b == null || b.tile == null || playerGraphOf(b) == null || b.power.graph.getID() != graphId) continue;
+                b.tile.getLinkedTiles(t -> out.add(t.pos()));
+            }
+            return out;
         }
 
-        private ReconnectResult findReconnectPoint(int graphA, int graphB){
-            float range = ((PowerNode)Blocks.powerNodeLarge).laserRange * tilesize;
-
-            //collect tiles for each graph (power tiles only; faster and reflects actual graph connectivity)
-            IntSeq tilesA = new IntSeq();
-            IntSet tilesB = new IntSet();
-
+        private ReconnectResult reconnectResult(int posA, int posB){
             int w = world.width();
             int h = world.height();
 
-            for(int i = 0; i < mindustry.gen.Groups.build.size(); i++){
-                mindustry.gen.Building b = mindustry.gen.Groups.build.index(i);
-                if(b == null || b.team != player.team() || b.power == null || b.power.graph == null || b.tile == null) continue;
-                int gid = b.power.graph.getID();
-                if(gid != graphA && gid != graphB) continue;
-
-                if(gid == graphA){
-                    b.tile.getLinkedTiles(t -> tilesA.add(t.pos()));
-                }else{
-                    b.tile.getLinkedTiles(t -> tilesB.add(t.pos()));
-                }
-            }
-
-            if(tilesA.isEmpty() || tilesB.isEmpty()) return null;
-
-            //compute bbox to limit BFS
-            int minx = w, miny = h, maxx = -1, maxy = -1;
-            for(int i = 0; i < tilesA.size; i++){
-                int pos = tilesA.get(i);
-                int x = Point2.x(pos);
-                int y = Point2.y(pos);
-                if(x < minx) minx = x;
-                if(y < miny) miny = y;
-                if(x > maxx) maxx = x;
-                if(y > maxy) maxy = y;
-            }
-            IntSeq tilesBSeq = new IntSeq();
-            tilesB.each(tilesBSeq::add);
-            for(int i = 0; i < tilesBSeq.size; i++){
-                int pos = tilesBSeq.get(i);
-                int x = Point2.x(pos);
-                int y = Point2.y(pos);
-                if(x < minx) minx = x;
-                if(y < miny) miny = y;
-                if(x > maxx) maxx = x;
-                if(y > maxy) maxy = y;
-            }
-
-            int margin = (int)Math.ceil((range / tilesize) * 2f) + 2;
-            int bx0 = Math.max(0, minx - margin);
-            int by0 = Math.max(0, miny - margin);
-            int bx1 = Math.min(w - 1, maxx + margin);
-            int by1 = Math.min(h - 1, maxy + margin);
-            int bw = bx1 - bx0 + 1;
-            int bh = by1 - by0 + 1;
-            int area = bw * bh;
-
-            //visited + predecessor within bbox coordinates
-            boolean[] visited = new boolean[area];
-            int[] prev = new int[area];
-            Arrays.fill(prev, -1);
-            IntQueue q = new IntQueue();
-
-            //seed queue with all A tiles
-            for(int i = 0; i < tilesA.size; i++){
-                int pos = tilesA.get(i);
-                int x = Point2.x(pos);
-                int y = Point2.y(pos);
-                if(x < bx0 || y < by0 || x > bx1 || y > by1) continue;
-                int lx = x - bx0, ly = y - by0;
-                int li = lx + ly * bw;
-                if(!visited[li]){
-                    visited[li] = true;
-                    q.addLast(li);
-                }
-            }
-
-            int hitLocal = -1;
-            int hitWorldPos = -1;
-
-            while(q.size > 0){
-                int li = q.removeFirst();
-                int lx = li % bw;
-                int ly = li / bw;
-                int wx = bx0 + lx;
-                int wy = by0 + ly;
-                int wpos = Point2.pack(wx, wy);
-
-                if(tilesB.contains(wpos)){
-                    hitLocal = li;
-                    hitWorldPos = wpos;
-                    break;
-                }
-
-                //4-dir
-                expandBfs(li, lx + 1, ly, bw, bh, visited, prev, q);
-                expandBfs(li, lx - 1, ly, bw, bh, visited, prev, q);
-                expandBfs(li, lx, ly + 1, bw, bh, visited, prev, q);
-                expandBfs(li, lx, ly - 1, bw, bh, visited, prev, q);
-            }
-
-            if(hitLocal == -1 || hitWorldPos == -1) return null;
-
-            //trace back to nearest A tile in bbox
-            int cur = hitLocal;
-            int last = cur;
-            while(prev[cur] != -1){
-                last = cur;
-                cur = prev[cur];
-            }
-
-            //cur is some seed tile; translate to world
-            int axTile = bx0 + (cur % bw);
-            int ayTile = by0 + (cur / bw);
-            int bxTile = Point2.x(hitWorldPos);
-            int byTile = Point2.y(hitWorldPos);
-
-            float ax = (axTile + 0.5f) * tilesize;
-            float ay = (ayTile + 0.5f) * tilesize;
-            float bx = (bxTile + 0.5f) * tilesize;
-            float by = (byTile + 0.5f) * tilesize;
-
-            float dist = Mathf.dst(ax, ay, bx, by);
-            if(dist > range * 2f){
-                //still return midpoint, but it may require multiple nodes
-            }
+            float ax = (Point2.x(posA) + 0.5f) * tilesize;
+            float ay = (Point2.y(posA) + 0.5f) * tilesize;
+            float bx = (Point2.x(posB) + 0.5f) * tilesize;
+            float by = (Point2.y(posB) + 0.5f) * tilesize;
 
             float midX = (ax + bx) / 2f;
             float midY = (ay + by) / 2f;
@@ -3549,51 +3512,44 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             res.midX = snapX; res.midY = snapY;
             return res;
         }
+    }
 
-        private int expandBfs(int from, int nx, int ny, int bw, int bh, boolean[] visited, int[] prev, IntQueue q){
-            if(nx < 0 || ny < 0 || nx >= bw || ny >= bh) return -1;
-            int ni = nx + ny * bw;
-            if(visited[ni]) return -1;
-            visited[ni] = true;
-            prev[ni] = from;
-            q.addLast(ni);
-            return -1;
-        }
+    private static int powerTableTrendMinutes(){
+        return Mathf.clamp(Core.settings.getInt(keyPowerTableTrendMinutes, 5), 5, 10);
     }
 
     private class RescueAdvisor{
-        private final IntMap<Float> negativeSince = new IntMap<>();
-        private final IntMap<BalanceWindow> balanceWindows = new IntMap<>();
-        private final IntMap<Float> minBalanceById = new IntMap<>();
+        //one trend point per bucket (mean of the scans inside it)
+        private static final int trendBucketSeconds = 5;
+
+        private final IntFloatMap negativeSince = new IntFloatMap();
+        //per-grid balance history (recent min window + long trend); released histories are reused
+        private final IntMap<PgmmBalanceHistory> histories = new IntMap<>();
+        private final Seq<PgmmBalanceHistory> historyPool = new Seq<>();
         private final IntSet currentIds = new IntSet();
         private final IntSeq tmpToRemove = new IntSeq();
-        private int historySamples = -1;
+        private int historySamples = -1, historyTrendBuckets = -1, historySamplesPerBucket = -1;
         private float nextScan = 0f;
         private int lastGraphId = -1;
         private float lastToast = 0f;
 
         //reused temp structures to reduce GC pressure
         private final Seq<Building> tmpConns = new Seq<>(false, 8, Building.class);
-        private final IntSet tmpVisited = new IntSet();
-        private final IntQueue tmpQueue = new IntQueue();
         private final Seq<RescueCutHint> tmpHints = new Seq<>(false, 8, RescueCutHint.class);
-        private final Seq<RescueCutHint> tmpBest = new Seq<>(false, 8, RescueCutHint.class);
         private final Seq<ImpactDisableHint> tmpImpactHints = new Seq<>(false, 8, ImpactDisableHint.class);
-        private final IntSeq tmpEdgeA = new IntSeq();
-        private final IntSeq tmpEdgeB = new IntSeq();
-        private final IntSet tmpHullTiles = new IntSet();
-        private final IntSeq tmpHullTileList = new IntSeq();
-        private final LongSeq tmpHullCorners = new LongSeq();
-        private final LongSeq tmpHullUnique = new LongSeq();
-        private final LongSeq tmpHull = new LongSeq();
+        private final PgmmGridAnalysis analysis = new PgmmGridAnalysis();
+        private final PgmmGridAnalysis.Network cutNetwork = new PgmmGridAnalysis.Network();
+        private final Seq<PgmmGridAnalysis.Cut> tmpCuts = new Seq<>(false, 8, PgmmGridAnalysis.Cut.class);
+        private final IntSeq tmpMembers = new IntSeq();
 
         void reset(){
             negativeSince.clear();
-            balanceWindows.clear();
-            minBalanceById.clear();
+            releaseHistories();
             currentIds.clear();
             tmpToRemove.clear();
             historySamples = -1;
+            historyTrendBuckets = -1;
+            historySamplesPerBucket = -1;
             nextScan = 0f;
             lastGraphId = -1;
             lastToast = 0f;
@@ -3614,8 +3570,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             if(cache.grids.isEmpty()){
                 rescueAlert.clear();
                 negativeSince.clear();
-                balanceWindows.clear();
-                minBalanceById.clear();
+                releaseHistories();
                 currentIds.clear();
                 return;
             }
@@ -3633,11 +3588,11 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             int activeId = rescueAlert.getGraphId();
             if(activeId != -1){
                 //clear if graph disappeared or stayed positive for the whole clear window
-                float minBal = minBalanceById.get(activeId, 0f);
+                float minBal = minBalance(activeId);
                 if(!currentIds.contains(activeId) || minBal > 0f){
                     rescueAlert.clear();
                     lastGraphId = -1;
-                    negativeSince.remove(activeId);
+                    negativeSince.remove(activeId, 0f);
                 }
             }
 
@@ -3670,7 +3625,7 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
                         }
                     }
                 }else{
-                    negativeSince.remove(gid);
+                    negativeSince.remove(gid, 0f);
                     if(activeId != -1 && gid == activeId){
                         worstBalance = balance;
                     }
@@ -3734,18 +3689,27 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
         }
 
         float minBalance(int graphId){
-            return minBalanceById.get(graphId, 0f);
+            PgmmBalanceHistory history = histories.get(graphId);
+            return history == null ? 0f : history.recent.min();
+        }
+
+        /** Balance history of a grid seen by the last scan, or null. */
+        PgmmBalanceHistory history(int graphId){
+            return histories.get(graphId);
         }
 
         private void updateMinHistory(float scanInterval){
             currentIds.clear();
-            minBalanceById.clear();
 
             int clearWindowSeconds = Math.max(0, Core.settings.getInt(keyRescueClearWindowSeconds, 8));
             int samples = Math.max(1, (int)Math.ceil(clearWindowSeconds * 60f / Math.max(1f, scanInterval)));
-            if(samples != historySamples){
+            int samplesPerBucket = Math.max(1, Math.round(trendBucketSeconds * 60f / Math.max(1f, scanInterval)));
+            int trendBuckets = Math.max(1, powerTableTrendMinutes() * 60 / trendBucketSeconds);
+            if(samples != historySamples || trendBuckets != historyTrendBuckets || samplesPerBucket != historySamplesPerBucket){
                 historySamples = samples;
-                balanceWindows.clear();
+                historyTrendBuckets = trendBuckets;
+                historySamplesPerBucket = samplesPerBucket;
+                releaseHistories();
             }
 
             for(int i = 0; i < cache.grids.size; i++){
@@ -3756,148 +3720,98 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
                 currentIds.add(gid);
 
                 float balance = graph.getPowerBalance() * 60f;
-                BalanceWindow w = balanceWindows.get(gid);
-                if(w == null){
-                    w = new BalanceWindow(samples);
-                    balanceWindows.put(gid, w);
-                }else if(w.size != samples){
-                    w = new BalanceWindow(samples);
-                    balanceWindows.put(gid, w);
+                PgmmBalanceHistory history = histories.get(gid);
+                if(history == null){
+                    history = obtainHistory(samples, trendBuckets, samplesPerBucket);
+                    histories.put(gid, history);
                 }
-                w.add(balance);
-                minBalanceById.put(gid, w.min());
+                history.add(balance);
             }
 
             //prune history for disappeared graphs
             tmpToRemove.clear();
-            for(IntMap.Entry<BalanceWindow> e : balanceWindows){
+            for(IntMap.Entry<PgmmBalanceHistory> e : histories){
                 if(!currentIds.contains(e.key)){
                     tmpToRemove.add(e.key);
                 }
             }
             for(int i = 0; i < tmpToRemove.size; i++){
                 int gid = tmpToRemove.get(i);
-                balanceWindows.remove(gid);
-                minBalanceById.remove(gid);
-                negativeSince.remove(gid);
+                historyPool.add(histories.remove(gid));
+                negativeSince.remove(gid, 0f);
             }
         }
 
-        private class BalanceWindow{
-            final int size;
-            final float[] values;
-            int index = 0;
-            int filled = 0;
-
-            BalanceWindow(int size){
-                this.size = Math.max(1, size);
-                this.values = new float[this.size];
+        private PgmmBalanceHistory obtainHistory(int samples, int trendBuckets, int samplesPerBucket){
+            while(!historyPool.isEmpty()){
+                PgmmBalanceHistory history = historyPool.pop();
+                if(history.matches(samples, trendBuckets, samplesPerBucket)){
+                    history.clear();
+                    return history;
+                }
             }
+            return new PgmmBalanceHistory(samples, trendBuckets, samplesPerBucket);
+        }
 
-            void add(float v){
-                values[index] = v;
-                index = (index + 1) % size;
-                if(filled < size) filled++;
-            }
-
-            float min(){
-                if(filled <= 0) return 0f;
-                float m = Float.POSITIVE_INFINITY;
-                for(int i = 0; i < filled; i++){
-                    float v = values[i];
-                    if(v < m) m = v;
-                }
-                return m == Float.POSITIVE_INFINITY ? 0f : m;
+        private void releaseHistories(){
+            for(IntMap.Entry<PgmmBalanceHistory> e : histories){
+                historyPool.add(e.value);
             }
+            histories.clear();
         }
 
         private void buildCutHints(PowerGraph graph, boolean aggressive, int topk, Seq<RescueCutHint> out){
             if(graph == null || graph.all == null || graph.all.isEmpty()) return;
 
-            //collect candidate link edges (PowerNode laser links); dedupe in a small list
-            tmpEdgeA.clear();
-            tmpEdgeB.clear();
+            //snapshot the graph (steady-state flows per tick, node links, power connections); PgmmGridAnalysis searches the cuts
+            PgmmGridAnalysis.Network net = cutNetwork;
+            net.clear(world.width(), world.height());
+            tmpMembers.clear();
             for(int i = 0; i < graph.all.size; i++){
                 Building b = graph.all.get(i);
-                if(b == null || b.team != player.team() || b.power == null) continue;
-                if(!(b.block instanceof PowerNode)) continue;
-                IntSeq links = b.power.links;
-                for(int li = 0; li < links.size; li++){
-                    int otherPos = links.get(li);
-                    if(otherPos == b.pos()) continue;
-                    int a = Math.min(b.pos(), otherPos);
-                    int c = Math.max(b.pos(), otherPos);
-                    boolean exists = false;
-                    for(int ei = 0; ei < tmpEdgeA.size; ei++){
-                        if(tmpEdgeA.get(ei) == a && tmpEdgeB.get(ei) == c){
-                            exists = true;
-                            break;
-                        }
-                    }
-                    if(!exists){
-                        tmpEdgeA.add(a);
-                        tmpEdgeB.add(c);
-                    }
-                }
-            }
+                if(b == null || b.team != player.team() || b.power == null || b.tile == null) continue;
 
-            if(tmpEdgeA.isEmpty()) return;
-
-            //compute graph totals once (steady-state only; batteries kept separate)
-            float totalProduced = 0f;
-            float totalNeeded = 0f;
-            float totalStored = 0f;
-            for(int i = 0; i < graph.all.size; i++){
-                Building b = graph.all.get(i);
-                if(b == null || b.team != player.team() || b.power == null) continue;
-                totalProduced += b.getPowerProduction() * b.delta();
+                float produced = b.getPowerProduction() * b.delta();
+                float needed = 0f;
                 if(b.shouldConsumePower && b.block != null && b.block.consPower != null){
-                    totalNeeded += b.block.consPower.requestedPower(b) * b.delta();
+                    needed = b.block.consPower.requestedPower(b) * b.delta();
                 }
-                if(b.enabled && b.block != null && b.block.consPower != null && b.block.consPower.buffered && b.block.consPower.capacity > 0f){
-                    totalStored += b.power.status * b.block.consPower.capacity;
-                }
-            }
-
-            tmpBest.clear();
-
-            int maxEdges = aggressive ? 60 : 30;
-            for(int ei = 0; ei < tmpEdgeA.size && ei < maxEdges; ei++){
-                int aPos = tmpEdgeA.get(ei);
-                int bPos = tmpEdgeB.get(ei);
-                Building aBuild = world.build(aPos);
-                Building bBuild = world.build(bPos);
-                if(aBuild == null || bBuild == null) continue;
-                if(aBuild.team != player.team() || bBuild.team != player.team()) continue;
-                if(aBuild.power == null || bBuild.power == null) continue;
-                if(aBuild.power.graph != graph || bBuild.power.graph != graph) continue;
-
-                ComponentStats aSide = computeComponent(graph, aBuild, aBuild.pos(), bBuild.pos());
-                if(aSide.count <= 0) continue;
-
-                float bProduced = totalProduced - aSide.produced;
-                float bNeeded = totalNeeded - aSide.needed;
-                float netA = aSide.produced - aSide.needed;
-                float netB = bProduced - bNeeded;
+                tmpMembers.add(net.add(b.pos(), b.block.size, 0, produced, needed));
 
-                float rescueNet = Math.max(netA, netB);
-                if(rescueNet <= 0.01f) continue;
-
-                RescueCutHint hint = new RescueCutHint();
-                hint.aPos = aBuild.pos();
-                hint.bPos = bBuild.pos();
-                hint.islandStartPos = netA >= netB ? hint.aPos : hint.bPos;
-                hint.rescueNetPerTick = rescueNet;
+                if(b.block instanceof PowerNode){
+                    IntSeq links = b.power.links;
+                    for(int li = 0; li < links.size; li++){
+                        net.link(links.get(li));
+                    }
+                }
 
-                insertTopK(tmpBest, hint, topk);
+                b.getPowerConnections(tmpConns);
+                for(int ci = 0; ci < tmpConns.size; ci++){
+                    Building next = tmpConns.get(ci);
+                    if(next == null || next.power == null || next.power.graph != graph) continue;
+                    net.connect(next.pos());
+                }
             }
 
-            for(int i = 0; i < tmpBest.size; i++){
-                RescueCutHint h = tmpBest.get(i);
-                if(h == null) continue;
-                if(!computeIslandHull(graph, h)) continue;
-                out.add(h);
-            }
+            tmpCuts.clear();
+            analysis.rescueCuts(net, tmpMembers, aggressive, topk, tmpCuts);
+            for(int i = 0; i < tmpCuts.size; i++){
+                PgmmGridAnalysis.Cut cut = tmpCuts.get(i);
+                RescueCutHint hint = new RescueCutHint();
+                hint.aPos = cut.aPos;
+                hint.bPos = cut.bPos;
+                hint.islandStartPos = cut.islandStartPos;
+                hint.rescueNetPerTick = cut.rescueNetPerTick;
+                hint.hull = cut.hull;
+                hint.minX = cut.minX;
+                hint.minY = cut.minY;
+                hint.maxX = cut.maxX;
+                hint.maxY = cut.maxY;
+                hint.centerX = cut.centerX;
+                hint.centerY = cut.centerY;
+                out.add(hint);
+            }
+            tmpCuts.clear();
         }
 
         private void buildImpactDisableHints(PowerGraph graph, float deficitPerSecond, Seq<ImpactDisableHint> out){
@@ -3957,246 +3871,6 @@ public class PowerGridMinimapMod extends mindustry.mod.Mod{
             keep = Mathf.clamp(keep, 0, 30);
             out.truncate(keep);
         }
-
-        private boolean computeIslandHull(PowerGraph graph, RescueCutHint hint){
-            if(graph == null || hint == null) return false;
-            int startPos = hint.islandStartPos;
-            Building start = world.build(startPos);
-            if(start == null || start.power == null || start.power.graph != graph) return false;
-
-            tmpHullTiles.clear();
-            tmpHullTileList.clear();
-
-            tmpVisited.clear();
-            tmpQueue.clear();
-            tmpVisited.add(startPos);
-            tmpQueue.addLast(startPos);
-
-            int cutA = hint.aPos;
-            int cutB = hint.bPos;
-
-            while(tmpQueue.size > 0){
-                int pos = tmpQueue.removeFirst();
-                Building cur = world.build(pos);
-                if(cur == null || cur.power == null || cur.power.graph != graph) continue;
-                if(cur.team != player.team()) continue;
-                if(cur.tile != null){
-                    cur.tile.getLinkedTiles(t -> {
-                        int tpos = t.pos();
-                        if(tmpHullTiles.add(tpos)){
-                            tmpHullTileList.add(tpos);
-                        }
-                    });
-                }
-
-                cur.getPowerConnections(tmpConns);
-                for(int i = 0; i < tmpConns.size; i++){
-                    Building next = tmpConns.get(i);
-                    if(next == null || next.power == null) continue;
-                    if(next.power.graph != graph) continue;
-                    int npos = next.pos();
-
-                    //skip the tested link cut (in both directions)
-                    if((pos == cutA && npos == cutB) || (pos == cutB && npos == cutA)) continue;
-
-                    if(tmpVisited.add(npos)){
-                        tmpQueue.addLast(npos);
-                    }
-                }
-            }
-
-            if(tmpHullTileList.isEmpty()) return false;
-
-            //collect corner points in tile-coordinates, then compute a convex hull
-            tmpHullCorners.clear();
-            for(int i = 0; i < tmpHullTileList.size; i++){
-                int tpos = tmpHullTileList.get(i);
-                int tx = Point2.x(tpos);
-                int ty = Point2.y(tpos);
-                addCorner(tx, ty);
-                addCorner(tx + 1, ty);
-                addCorner(tx, ty + 1);
-                addCorner(tx + 1, ty + 1);
-            }
-
-            if(tmpHullCorners.size < 3) return false;
-
-            Arrays.sort(tmpHullCorners.items, 0, tmpHullCorners.size);
-
-            tmpHullUnique.clear();
-            long last = Long.MIN_VALUE;
-            for(int i = 0; i < tmpHullCorners.size; i++){
-                long p = tmpHullCorners.items[i];
-                if(p != last){
-                    tmpHullUnique.add(p);
-                    last = p;
-                }
-            }
-            if(tmpHullUnique.size < 3) return false;
-
-            tmpHull.clear();
-
-            //lower hull
-            for(int i = 0; i < tmpHullUnique.size; i++){
-                long p = tmpHullUnique.items[i];
-                while(tmpHull.size >= 2 && cross(tmpHull.items[tmpHull.size - 2], tmpHull.items[tmpHull.size - 1], p) <= 0){
-                    tmpHull.size--;
-                }
-                tmpHull.add(p);
-            }
-
-            //upper hull
-            int lowerSize = tmpHull.size;
-            for(int i = tmpHullUnique.size - 2; i >= 0; i--){
-                long p = tmpHullUnique.items[i];
-                while(tmpHull.size > lowerSize && cross(tmpHull.items[tmpHull.size - 2], tmpHull.items[tmpHull.size - 1], p) <= 0){
-                    tmpHull.size--;
-                }
-                tmpHull.add(p);
-            }
-
-            //remove duplicate start
-            if(tmpHull.size > 1){
-                tmpHull.size--;
-            }
-            if(tmpHull.size < 3) return false;
-
-            int n = tmpHull.size;
-            float[] hull = hint.hull;
-            if(hull == null || hull.length != n * 2){
-                hull = new float[n * 2];
-                hint.hull = hull;
-            }
-
-            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
-            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
-
-            for(int i = 0; i < n; i++){
-                long p = tmpHull.items[i];
-                int tx = (int)(p >> 32);
-                int ty = (int)p;
-
-                float wx = tx * tilesize;
-                float wy = ty * tilesize;
-
-                hull[i * 2] = wx;
-                hull[i * 2 + 1] = wy;
-
-                if(wx < minX) minX = wx;
-                if(wy < minY) minY = wy;
-                if(wx > maxX) maxX = wx;
-                if(wy > maxY) maxY = wy;
-            }
-
-            hint.minX = minX;
-            hint.minY = minY;
-            hint.maxX = maxX;
-            hint.maxY = maxY;
-
-            //polygon centroid (world coords); fallback to bbox center if degenerate
-            double area2 = 0.0;
-            double cx = 0.0;
-            double cy = 0.0;
-            for(int i = 0; i < n; i++){
-                int j = (i + 1) % n;
-                double x0 = hull[i * 2];
-                double y0 = hull[i * 2 + 1];
-                double x1 = hull[j * 2];
-                double y1 = hull[j * 2 + 1];
-                double cross = x0 * y1 - x1 * y0;
-                area2 += cross;
-                cx += (x0 + x1) * cross;
-                cy += (y0 + y1) * cross;
-            }
-
-            if(Math.abs(area2) < 0.0001){
-                hint.centerX = (minX + maxX) / 2f;
-                hint.centerY = (minY + maxY) / 2f;
-            }else{
-                double area6 = area2 * 3.0;
-                hint.centerX = (float)(cx / area6);
-                hint.centerY = (float)(cy / area6);
-            }
-
-            return true;
-        }
-
-        private void addCorner(int x, int y){
-            tmpHullCorners.add((((long)x) << 32) | (y & 0xffffffffL));
-        }
-
-        private long cross(long o, long a, long b){
-            long ox = (int)(o >> 32);
-            long oy = (int)o;
-            long ax = (int)(a >> 32);
-            long ay = (int)a;
-            long bx = (int)(b >> 32);
-            long by = (int)b;
-
-            return (ax - ox) * (by - oy) - (ay - oy) * (bx - ox);
-        }
-
-        private void insertTopK(Seq<RescueCutHint> best, RescueCutHint hint, int k){
-            //sort descending by rescue net
-            int idx = 0;
-            for(; idx < best.size; idx++){
-                if(hint.rescueNetPerTick > best.get(idx).rescueNetPerTick){
-                    break;
-                }
-            }
-            best.insert(idx, hint);
-            if(best.size > k){
-                best.truncate(k);
-            }
-        }
-
-        private class ComponentStats{
-            float produced, needed, stored;
-            int count;
-        }
-
-        private ComponentStats computeComponent(PowerGraph graph, Building start, int cutA, int cutB){
-            ComponentStats out = new ComponentStats();
-            tmpVisited.clear();
-            tmpQueue.clear();
-
-            int startPos = start.pos();
-            tmpVisited.add(startPos);
-            tmpQueue.addLast(startPos);
-
-            while(tmpQueue.size > 0){
-                int pos = tmpQueue.removeFirst();
-                Building cur = world.build(pos);
-                if(cur == null || cur.power == null || cur.power.graph != graph) continue;
-                if(cur.team != player.team()) continue;
-
-                out.count++;
-                out.produced += cur.getPowerProduction() * cur.delta();
-                if(cur.shouldConsumePower && cur.block != null && cur.block.consPower != null){
-                    out.needed += cur.block.consPower.requestedPower(cur) * cur.delta();
-                }
-                if(cur.enabled && cur.block != null && cur.block.consPower != null && cur.block.consPower.buffered && cur.block.consPower.capacity > 0f){
-                    out.stored += cur.power.status * cur.block.consPower.capacity;
-                }
-
-                cur.getPowerConnections(tmpConns);
-                for(int i = 0; i < tmpConns.size; i++){
-                    Building next = tmpConns.get(i);
-                    if(next == null || next.power == null) continue;
-                    if(next.power.graph != graph) continue;
-                    int npos = next.pos();
-
-                    //skip the tested link cut (in both directions)
-                    if((pos == cutA && npos == cutB) || (pos == cutB && npos == cutA)) continue;
-
-                    if(tmpVisited.add(npos)){
-                        tmpQueue.addLast(npos);
-                    }
-                }
-            }
-
-            return out;
-        }
     }
 
     private static class ReconnectResult{
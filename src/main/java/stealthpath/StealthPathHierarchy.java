@@ -0,0 +1,469 @@
+package stealthpath;
+
+import arc.math.Mathf;
+import arc.struct.IntSeq;
+import arc.struct.IntSet;
+
+import java.util.Arrays;
+
+/**
+ * Coarse portal graph for the hierarchical (HPA*) pathfinder.
+ *
+ * 分层寻路（HPA*）的粗粒度图：
+ * - 地图按 {@link #chunkSize} 切块；相邻块之间连续可通行的边界段生成入口（portal）
+ * - 块内入口两两之间的代价用块内 Dijkstra 预计算，代价按风险加权
+ * - 每次 {@link #update(ThreatMap)} 对每块的 passable/risk/floorRisk 求哈希，只有内容或入口变化的块才重算块内边；
+ *   同一张图且 {@link ThreatMap#serial} 未变时直接跳过（多种模式、平移候选共用一张图）
+ * - {@link #route} 先在入口图上求粗路线，返回沿途块（外扩一圈）作为细化搜索的走廊
+ */
+final class StealthPathHierarchy{
+    static final int chunkSize = 16;
+    // Long border runs get a portal at each end instead of one in the middle.
+    private static final int singlePortalMaxRun = 6;
+    // Coarse cost of a tile = 1 + risk * weight; large enough that any safe detour is preferred.
+    private static final float riskWeight = 4f;
+
+    private int width = -1, height = -1;
+    private int chunksX, chunksY;
+    // Map instance and content serial the graph was last synced with.
+    private ThreatMap syncedMap;
+    private int syncedSerial;
+
+    private long[] chunkHash;
+    private IntSeq[] chunkPortals;
+    private IntSeq[] scannedPortals;
+    private float[][] chunkEdges;
+
+    // Portal nodes rebuilt on every update (cheap: border scan only).
+    private int[] nodeOfTile = new int[0];
+    private int[] chunkNodeStart = new int[0];
+    private final IntSeq nodeTile = new IntSeq();
+    private final IntSeq nodeChunk = new IntSeq();
+    private final IntSeq crossA = new IntSeq();
+    private final IntSeq crossB = new IntSeq();
+    private int[] nodeCrossStart = new int[0];
+    private int[] nodeCross = new int[0];
+
+    // Local (single chunk) Dijkstra scratch.
+    private final StealthPathOpenSet localOpen = new StealthPathOpenSet();
+    private final float[] localDist = new float[chunkSize * chunkSize];
+    private final boolean[] localClosed = new boolean[chunkSize * chunkSize];
+
+    // Coarse search scratch.
+    private final StealthPathOpenSet coarseOpen = new StealthPathOpenSet();
+    private float[] coarseDist = new float[0];
+    private float[] nodeStartCost = new float[0];
+    private float[] nodeGoalCost = new float[0];
+    private int[] coarseParent = new int[0];
+    private boolean[] coarseClosed = new boolean[0];
+    private boolean[] chunkMark = new boolean[0];
+    private final IntSet goalChunks = new IntSet();
+    private final IntSeq corridor = new IntSeq();
+    private final IntSeq seeds = new IntSeq();
+
+    /**
+     * Syncs the graph with {@code map}; only chunks whose tiles or portals changed are recomputed.
+     * Returns immediately when the same map was synced at the same {@link ThreatMap#serial}.
+     * 同步入口图；仅重算内容或入口发生变化的块。同一张图的版本号未变时直接返回。
+     */
+    void update(ThreatMap map){
+        if(map == syncedMap && map.serial == syncedSerial) return;
+        syncedMap = map;
+        syncedSerial = map.serial;
+
+        if(map.width != width || map.height != height){
+            width = map.width;
+            height = map.height;
+            chunksX = (width + chunkSize - 1) / chunkSize;
+            chunksY = (height + chunkSize - 1) / chunkSize;
+            int chunks = chunksX * chunksY;
+            chunkHash = new long[chunks];
+            chunkPortals = new IntSeq[chunks];
+            scannedPortals = new IntSeq[chunks];
+            for(int c = 0; c < chunks; c++){
+                chunkPortals[c] = new IntSeq();
+                scannedPortals[c] = new IntSeq();
+            }
+            chunkEdges = new float[chunks][];
+            chunkMark = new boolean[chunks];
+            chunkNodeStart = new int[chunks + 1];
+            nodeOfTile = new int[width * height];
+            Arrays.fill(nodeOfTile, -1);
+            nodeTile.clear();
+        }
+
+        int chunks = chunksX * chunksY;
+        for(int c = 0; c < chunks; c++){
+            scannedPortals[c].clear();
+        }
+        crossA.clear();
+        crossB.clear();
+        scanPortals(map, scannedPortals);
+
+        for(int c = 0; c < chunks; c++){
+            IntSeq list = scannedPortals[c];
+            list.sort();
+            dedupSorted(list);
+
+            long hash = chunkContentHash(map, c);
+            if(chunkEdges[c] != null && chunkHash[c] == hash && list.equals(chunkPortals[c])) continue;
+
+            chunkHash[c] = hash;
+            chunkPortals[c].clear();
+            chunkPortals[c].addAll(list);
+            chunkEdges[c] = computeChunkEdges(map, c, chunkPortals[c]);
+        }
+
+        buildNodes();
+    }
+
+    /**
+     * Solves the coarse route and returns the chunk ids of the corridor (route chunks plus one ring),
+     * or null when the portal graph has no route.
+     * 在入口图上求粗路线，返回走廊块（路线块外扩一圈）；无路线时返回 null。
+     */
+    IntSeq route(ThreatMap map, int startIdx, IntSeq goals, boolean[] goalMask){
+        if(chunkEdges == null || goals == null || goals.isEmpty()) return null;
+
+        int nodes = nodeTile.size;
+        int goalNode = nodes;
+        ensureCoarseScratch(nodes + 1);
+        Arrays.fill(nodeStartCost, 0, nodes, Float.POSITIVE_INFINITY);
+        Arrays.fill(nodeGoalCost, 0, nodes, Float.POSITIVE_INFINITY);
+
+        // Start chunk: cost from the start tile to each portal, plus any goal reached inside the chunk.
+        int startChunk = chunkOf(startIdx);
+        seeds.clear();
+        seeds.add(startIdx);
+        localDijkstra(map, startChunk, seeds);
+        float direct = minLocalGoalCost(startChunk, goalMask);
+        IntSeq startPortals = chunkPortals[startChunk];
+        for(int i = 0; i < startPortals.size; i++){
+            nodeStartCost[chunkNodeStart[startChunk] + i] = localCost(startChunk, startPortals.items[i]);
+        }
+
+        // Goal chunks: reverse cost from each portal to the nearest goal tile of that chunk.
+        goalChunks.clear();
+        for(int i = 0; i < goals.size; i++){
+            int g = goals.items[i];
+            if(g >= 0 && g < map.size) goalChunks.add(chunkOf(g));
+        }
+        IntSet.IntSetIterator it = goalChunks.iterator();
+        while(it.hasNext){
+            int c = it.next();
+            seeds.clear();
+            for(int i = 0; i < goals.size; i++){
+                int g = goals.items[i];
+                if(g >= 0 && g < map.size && chunkOf(g) == c) seeds.add(g);
+            }
+            localDijkstra(map, c, seeds);
+            IntSeq list = chunkPortals[c];
+            for(int i = 0; i < list.size; i++){
+                nodeGoalCost[chunkNodeStart[c] + i] = localCost(c, list.items[i]);
+            }
+        }
+
+        coarseOpen.reset(nodes + 1);
+        Arrays.fill(coarseDist, 0, nodes + 1, Float.POSITIVE_INFINITY);
+        Arrays.fill(coarseClosed, 0, nodes + 1, false);
+        for(int n = 0; n < nodes; n++){
+            if(!Float.isFinite(nodeStartCost[n])) continue;
+            coarseDist[n] = nodeStartCost[n];
+            coarseParent[n] = -1;
+            coarseOpen.push(n, nodeStartCost[n]);
+        }
+        if(Float.isFinite(direct)){
+            coarseDist[goalNode] = direct;
+            coarseParent[goalNode] = -1;
+            coarseOpen.push(goalNode, direct);
+        }
+
+        boolean found = false;
+        while(!coarseOpen.isEmpty()){
+            int u = coarseOpen.poll();
+            coarseClosed[u] = true;
+            if(u == goalNode){
+                found = true;
+                break;
+            }
+
+            float du = coarseDist[u];
+            if(Float.isFinite(nodeGoalCost[u])) relaxCoarse(u, goalNode, du + nodeGoalCost[u]);
+
+            int c = nodeChunk.items[u];
+            IntSeq list = chunkPortals[c];
+            float[] edges = chunkEdges[c];
+            int n = list.size;
+            int first = chunkNodeStart[c];
+            int row = (u - first) * n;
+            for(int j = 0; j < n; j++){
+                float cost = edges[row + j];
+                if(!Float.isFinite(cost)) continue;
+                relaxCoarse(u, first + j, du + cost);
+            }
+
+            for(int e = nodeCrossStart[u]; e < nodeCrossStart[u + 1]; e++){
+                int v = nodeCross[e];
+                relaxCoarse(u, v, du + tileCost(map, nodeTile.items[v]));
+            }
+        }
+        if(!found) return null;
+
+        int chunks = chunksX * chunksY;
+        Arrays.fill(chunkMark, 0, chunks, false);
+        chunkMark[startChunk] = true;
+        for(int n = coarseParent[goalNode]; n != -1; n = coarseParent[n]){
+            chunkMark[nodeChunk.items[n]] = true;
+        }
+
+        corridor.clear();
+        for(int c = 0; c < chunks; c++){
+            if(!chunkMark[c]) continue;
+            int cx = c % chunksX, cy = c / chunksX;
+            for(int dy = -1; dy <= 1; dy++){
+                for(int dx = -1; dx <= 1; dx++){
+                    int nx = cx + dx, ny = cy + dy;
+                    if(nx < 0 || ny < 0 || nx >= chunksX || ny >= chunksY) continue;
+                    corridor.add(nx + ny * chunksX);
+                }
+            }
+        }
+        corridor.sort();
+        dedupSorted(corridor);
+        return corridor;
+    }
+
+    /** Minimum tile x of chunk {@code c}. 块的起始 x。 */
+    int chunkMinX(int c){
+        return (c % chunksX) * chunkSize;
+    }
+
+    int chunkMinY(int c){
+        return (c / chunksX) * chunkSize;
+    }
+
+    private void relaxCoarse(int from, int to, float cost){
+        if(to < 0 || coarseClosed[to] || cost >= coarseDist[to]) return;
+        coarseDist[to] = cost;
+        coarseParent[to] = from;
+        coarseOpen.push(to, cost);
+    }
+
+    private void scanPortals(ThreatMap map, IntSeq[] portals){
+        // Vertical borders (between chunk columns).
+        for(int cx = 0; cx < chunksX - 1; cx++){
+            int lx = (cx + 1) * chunkSize - 1;
+            int rx = lx + 1;
+            if(rx >= width) continue;
+            for(int cy = 0; cy < chunksY; cy++){
+                int y0 = cy * chunkSize;
+                int y1 = Math.min(height, y0 + chunkSize) - 1;
+                int run = -1;
+                for(int y = y0; y <= y1 + 1; y++){
+                    boolean open = y <= y1 && map.passable[lx + y * width] && map.passable[rx + y * width];
+                    if(open && run < 0) run = y;
+                    if(!open && run >= 0){
+                        addRunPortals(portals, run, y - 1, true, lx, rx);
+                        run = -1;
+                    }
+                }
+            }
+        }
+
+        // Horizontal borders (between chunk rows).
+        for(int cy = 0; cy < chunksY - 1; cy++){
+            int ty = (cy + 1) * chunkSize - 1;
+            int by = ty + 1;
+            if(by >= height) continue;
+            for(int cx = 0; cx < chunksX; cx++){
+                int x0 = cx * chunkSize;
+                int x1 = Math.min(width, x0 + chunkSize) - 1;
+                int run = -1;
+                for(int x = x0; x <= x1 + 1; x++){
+                    boolean open = x <= x1 && map.passable[x + ty * width] && map.passable[x + by * width];
+                    if(open && run < 0) run = x;
+                    if(!open && run >= 0){
+                        addRunPortals(portals, run, x - 1, false, ty, by);
+                        run = -1;
+                    }
+                }
+            }
+        }
+    }
+
+    private void addRunPortals(IntSeq[] portals, int from, int to, boolean vertical, int a, int b){
+        if(to - from + 1 <= singlePortalMaxRun){
+            addPortalPair(portals, (from + to) >>> 1, vertical, a, b);
+        }else{
+            addPortalPair(portals, from, vertical, a, b);
+            addPortalPair(portals, to, vertical, a, b);
+        }
+    }
+
+    private void addPortalPair(IntSeq[] portals, int along, boolean vertical, int a, int b){
+        int ta = vertical ? a + along * width : along + a * width;
+        int tb = vertical ? b + along * width : along + b * width;
+        portals[chunkOf(ta)].add(ta);
+        portals[chunkOf(tb)].add(tb);
+        crossA.add(ta);
+        crossB.add(tb);
+    }
+
+    private void buildNodes(){
+        for(int i = 0; i < nodeTile.size; i++){
+            nodeOfTile[nodeTile.items[i]] = -1;
+        }
+        nodeTile.clear();
+        nodeChunk.clear();
+        int chunks = chunksX * chunksY;
+        for(int c = 0; c < chunks; c++){
+            chunkNodeStart[c] = nodeTile.size;
+            IntSeq list = chunkPortals[c];
+            for(int i = 0; i < list.size; i++){
+                nodeOfTile[list.items[i]] = nodeTile.size;
+                nodeTile.add(list.items[i]);
+                nodeChunk.add(c);
+            }
+        }
+        chunkNodeStart[chunks] = nodeTile.size;
+
+        int nodes = nodeTile.size;
+        if(nodeCrossStart.length < nodes + 1) nodeCrossStart = new int[nodes + 1];
+        Arrays.fill(nodeCrossStart, 0, nodes + 1, 0);
+        for(int i = 0; i < crossA.size; i++){
+            nodeCrossStart[nodeOfTile[crossA.items[i]] + 1]++;
+            nodeCrossStart[nodeOfTile[crossB.items[i]] + 1]++;
+        }
+        for(int n = 0; n < nodes; n++){
+            nodeCrossStart[n + 1] += nodeCrossStart[n];
+        }
+        if(nodeCross.length < crossA.size * 2) nodeCross = new int[crossA.size * 2];
+        int[] fill = Arrays.copyOf(nodeCrossStart, nodes + 1);
+        for(int i = 0; i < crossA.size; i++){
+            int a = nodeOfTile[crossA.items[i]];
+            int b = nodeOfTile[crossB.items[i]];
+            nodeCross[fill[a]++] = b;
+            nodeCross[fill[b]++] = a;
+        }
+    }
+
+    private float[] computeChunkEdges(ThreatMap map, int c, IntSeq list){
+        int n = list.size;
+        float[] edges = new float[n * n];
+        for(int i = 0; i < n; i++){
+            seeds.clear();
+            seeds.add(list.items[i]);
+            localDijkstra(map, c, seeds);
+            for(int j = 0; j < n; j++){
+                edges[i * n + j] = i == j ? 0f : localCost(c, list.items[j]);
+            }
+        }
+        return edges;
+    }
+
+    /** Dijkstra restricted to chunk {@code c}, seeded with zero cost at {@code from}. 块内 Dijkstra。 */
+    private void localDijkstra(ThreatMap map, int c, IntSeq from){
+        int x0 = chunkMinX(c), y0 = chunkMinY(c);
+        int cw = Math.min(chunkSize, width - x0);
+        int ch = Math.min(chunkSize, height - y0);
+
+        localOpen.reset(chunkSize * chunkSize);
+        Arrays.fill(localDist, 0, chunkSize * chunkSize, Float.POSITIVE_INFINITY);
+        Arrays.fill(localClosed, 0, chunkSize * chunkSize, false);
+        for(int i = 0; i < from.size; i++){
+            int t = from.items[i];
+            int lx = t % width - x0, ly = t / width - y0;
+            if(lx < 0 || ly < 0 || lx >= cw || ly >= ch || !map.passable[t]) continue;
+            int li = lx + ly * chunkSize;
+            localDist[li] = 0f;
+            localOpen.push(li, 0f);
+        }
+
+        while(!localOpen.isEmpty()){
+            int li = localOpen.poll();
+            localClosed[li] = true;
+            int lx = li % chunkSize, ly = li / chunkSize;
+            float d = localDist[li];
+            for(int dy = -1; dy <= 1; dy++){
+                for(int dx = -1; dx <= 1; dx++){
+                    if(dx == 0 && dy == 0) continue;
+                    int nx = lx + dx, ny = ly + dy;
+                    if(nx < 0 || ny < 0 || nx >= cw || ny >= ch) continue;
+                    int nli = nx + ny * chunkSize;
+                    if(localClosed[nli]) continue;
+                    int t = (x0 + nx) + (y0 + ny) * width;
+                    if(!map.passable[t]) continue;
+                    if(dx != 0 && dy != 0){
+                        if(!map.passable[(x0 + nx) + (y0 + ly) * width] || !map.passable[(x0 + lx) + (y0 + ny) * width]) continue;
+                    }
+                    float step = (dx == 0 || dy == 0) ? 1f : Mathf.sqrt2;
+                    float nd = d + step * tileCost(map, t);
+                    if(nd >= localDist[nli]) continue;
+                    localDist[nli] = nd;
+                    localOpen.push(nli, nd);
+                }
+            }
+        }
+    }
+
+    private float localCost(int c, int tile){
+        int lx = tile % width - chunkMinX(c);
+        int ly = tile / width - chunkMinY(c);
+        return localDist[lx + ly * chunkSize];
+    }
+
+    private float minLocalGoalCost(int c, boolean[] goalMask){
+        int x0 = chunkMinX(c), y0 = chunkMinY(c);
+        int cw = Math.min(chunkSize, width - x0);
+        int ch = Math.min(chunkSize, height - y0);
+        float best = Float.POSITIVE_INFINITY;
+        for(int ly = 0; ly < ch; ly++){
+            for(int lx = 0; lx < cw; lx++){
+                if(goalMask[(x0 + lx) + (y0 + ly) * width]) best = Math.min(best, localDist[lx + ly * chunkSize]);
+            }
+        }
+        return best;
+    }
+
+    private long chunkContentHash(ThreatMap map, int c){
+        int x0 = chunkMinX(c), y0 = chunkMinY(c);
+        int x1 = Math.min(width, x0 + chunkSize);
+        int y1 = Math.min(height, y0 + chunkSize);
+        long hash = 1125899906842597L;
+        for(int y = y0; y < y1; y++){
+            for(int x = x0; x < x1; x++){
+                int idx = x + y * width;
+                hash = 31L * hash + (map.passable[idx] ? 1 : 0);
+                hash = 31L * hash + Float.floatToIntBits(map.risk[idx]);
+                hash = 31L * hash + Float.floatToIntBits(map.floorRisk[idx]);
+            }
+        }
+        return hash;
+    }
+
+    private int chunkOf(int tile){
+        return (tile % width) / chunkSize + ((tile / width) / chunkSize) * chunksX;
+    }
+
+    private void ensureCoarseScratch(int size){
+        if(coarseDist.length >= size) return;
+        coarseDist = new float[size];
+        nodeStartCost = new float[size];
+        nodeGoalCost = new float[size];
+        coarseParent = new int[size];
+        coarseClosed = new boolean[size];
+    }
+
+    private static float tileCost(ThreatMap map, int idx){
+        return 1f + (map.risk[idx] + map.floorRisk[idx]) * riskWeight;
+    }
+
+    private static void dedupSorted(IntSeq seq){
+        if(seq.size < 2) return;
+        int w = 1;
+        for(int i = 1; i < seq.size; i++){
+            if(seq.items[i] != seq.items[w - 1]) seq.items[w++] = seq.items[i];
+        }
+        seq.size = w;
+    }
+}
@@ -0,0 +1,147 @@
+package stealthpath;
+
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Recorded planning input (ThreatMap layers, start / goal tiles, threat circles) for headless benchmarks.
+ *
+ * 录制的寻路输入，供无 Mindustry 运行时的基准测试使用：
+ * - 内容：宽高、safeBias、可通行位图、risk / floorRisk / drownRate、起点集合、终点集合、威胁圆（x, y, 射程, 最小射程, DPS）及其外扩
+ * - 格式：gzip 压缩的 DataOutputStream（大端序），以魔数 + 版本号开头；不兼容的版本读取时直接报错
+ * - 不包含地板槽位（floorSlot），回放时按“无类型单位”计算代价
+ */
+final class StealthPathMapFixture{
+    static final int magic = 0x53504658; // "SPFX"
+    static final int version = 1;
+    static final String extension = ".spfx";
+
+    final ThreatMap map;
+    final IntSeq starts;
+    final IntSeq goals;
+    final Seq<Threat> threats;
+    final float threatInflate;
+
+    StealthPathMapFixture(ThreatMap map, IntSeq starts, IntSeq goals, Seq<Threat> threats, float threatInflate){
+        this.map = map;
+        this.starts = starts;
+        this.goals = goals;
+        this.threats = threats;
+        this.threatInflate = threatInflate;
+    }
+
+    void write(OutputStream stream) throws IOException{
+        GZIPOutputStream gzip = new GZIPOutputStream(stream, 1 << 16);
+        DataOutputStream out = new DataOutputStream(gzip);
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeInt(map.width);
+        out.writeInt(map.height);
+        out.writeFloat(map.safeBias);
+
+        long word = 0L;
+        for(int i = 0; i < map.size; i++){
+            if(map.passable[i]) word |= 1L << (i & 63);
+            if((i & 63) == 63 || i == map.size - 1){
+                out.writeLong(word);
+                word = 0L;
+            }
+        }
+        writeFloats(out, map.risk, map.size);
+        writeFloats(out, map.floorRisk, map.size);
+        writeFloats(out, map.drownRate, map.size);
+
+        writeInts(out, starts);
+        writeInts(out, goals);
+
+        out.writeFloat(threatInflate);
+        out.writeInt(threats.size);
+        for(int i = 0; i < threats.size; i++){
+            Threat t = threats.get(i);
+            out.writeFloat(t.x);
+            out.writeFloat(t.y);
+            out.writeFloat(t.range);
+            out.writeFloat(t.minRange);
+            out.writeFloat(t.dps);
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    static StealthPathMapFixture read(InputStream stream) throws IOException{
+        DataInputStream in = new DataInputStream(new GZIPInputStream(stream, 1 << 16));
+        if(in.readInt() != magic) throw new IOException("Not a StealthPath map fixture.");
+        int fileVersion = in.readInt();
+        if(fileVersion != version) throw new IOException("Unsupported fixture version " + fileVersion + " (expected " + version + ").");
+
+        int width = in.readInt();
+        int height = in.readInt();
+        if(width <= 0 || height <= 0 || (long)width * height > Integer.MAX_VALUE) throw new IOException("Bad fixture size " + width + "x" + height + ".");
+        ThreatMap map = new ThreatMap(width, height);
+        map.safeBias = in.readFloat();
+
+        for(int base = 0; base < map.size; base += 64){
+            long word = in.readLong();
+            int end = Math.min(map.size, base + 64);
+            for(int i = base; i < end; i++){
+                map.passable[i] = (word & (1L << (i & 63))) != 0L;
+            }
+        }
+        readFloats(in, map.risk, map.size);
+        readFloats(in, map.floorRisk, map.size);
+        readFloats(in, map.drownRate, map.size);
+
+        IntSeq starts = readInts(in, map.size);
+        IntSeq goals = readInts(in, map.size);
+
+        float threatInflate = in.readFloat();
+        int threatCount = in.readInt();
+        if(threatCount < 0) throw new IOException("Bad threat count " + threatCount + ".");
+        Seq<Threat> threats = new Seq<>(threatCount);
+        for(int i = 0; i < threatCount; i++){
+            float x = in.readFloat(), y = in.readFloat();
+            float range = in.readFloat(), minRange = in.readFloat(), dps = in.readFloat();
+            threats.add(new Threat(x, y, range, minRange, dps));
+        }
+        return new StealthPathMapFixture(map, starts, goals, threats, threatInflate);
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values, int count) throws IOException{
+        for(int i = 0; i < count; i++){
+            out.writeFloat(values[i]);
+        }
+    }
+
+    private static void readFloats(DataInputStream in, float[] values, int count) throws IOException{
+        for(int i = 0; i < count; i++){
+            values[i] = in.readFloat();
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntSeq values) throws IOException{
+        out.writeInt(values.size);
+        for(int i = 0; i < values.size; i++){
+            out.writeInt(values.items[i]);
+        }
+    }
+
+    private static IntSeq readInts(DataInputStream in, int tiles) throws IOException{
+        int count = in.readInt();
+        if(count < 0 || count > tiles) throw new IOException("Bad tile list length " + count + ".");
+        IntSeq out = new IntSeq(count);
+        for(int i = 0; i < count; i++){
+            int idx = in.readInt();
+            if(idx < 0 || idx >= tiles) throw new IOException("Tile index out of range: " + idx + ".");
+            out.add(idx);
+        }
+        return out;
+    }
+}
@@ -23,10 +23,14 @@ import arc.scene.ui.TextField;
 import arc.scene.ui.TextButton;
 import arc.scene.event.Touchable;
 import arc.scene.ui.layout.Table;
+import arc.struct.IntIntMap;
 import arc.struct.IntSeq;
 import arc.struct.IntSet;
+import arc.struct.LongSeq;
 import arc.struct.Seq;
+import arc.math.geom.Rect;
 import arc.math.geom.Vec2;
+import arc.files.Fi;
 import arc.util.Align;
 import arc.util.Log;
 import arc.util.Strings;
@@ -51,6 +55,7 @@ import mindustry.ui.dialogs.SettingsMenuDialog;
 import mindustry.entities.bullet.BulletType;
 import mindustry.entities.bullet.ContinuousBulletType;
 import mindustry.type.Liquid;
+import mindustry.type.UnitType;
 import mindustry.world.Tile;
 import mindustry.world.Block;
 import mindustry.world.blocks.defense.BaseShield;
@@ -66,15 +71,16 @@ import mindustry.world.blocks.power.PowerGenerator;
 import mindustry.world.blocks.storage.CoreBlock;
 import mindustry.world.meta.BuildVisibility;
 
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Locale;
-import java.util.PriorityQueue;
 import java.lang.reflect.Field;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static stealthpath.StealthPathMathUtil.*;
 import static stealthpath.StealthPathPathUtil.*;
+import static stealthpath.StealthPathPlanner.*;
 import static mindustry.Vars.content;
 import static mindustry.Vars.control;
 import static mindustry.Vars.mobile;
@@ -134,6 +140,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
     private static final String keyFormationInflatePct = "sp-formation-inflate-pct";
     private static final String keySafeCorridorBiasPct = "sp-safe-corridor-bias-pct";
     private static final String keyComputeSafeDistance = "sp-compute-safe-distance";
+    private static final String keyBackgroundPlanning = "sp-background-planning";
     private static final String keyRtsMaxWaypoints = "sp-rts-max-waypoints";
     private static final String keyRtsUpdateInterval = "sp-rts-update-interval";
     private static final String keyRtsCommandSpacing = "sp-rts-command-spacing";
@@ -158,19 +165,11 @@ public class StealthPathMod extends mindustry.mod.Mod{
     private static final String keyGoalCandidateRadiusTiles = "sp-goal-candidate-radius-tiles";
     private static final String keyDebugRiskTextScale = "sp-debug-risk-text-scale";
     private static final String keyDebugHoverTurretDps = "sp-debug-hover-turret-dps";
+    private static final String keyDebugRecordFixtures = "sp-debug-record-fixtures";
 
-    private enum PathMode{
-        safeOnly, minDamage, nearest
-    }
-
-    private static final float safeRiskEps = 1e-6f;
-    // Human-like path preference in min-damage mode:
-    // keep avoiding danger first, but add tiny pressure against very long detours and jittery zig-zags.
-    private static final float minDamageDistanceBias = 0.015f;
-    private static final float minDamageTurnBias = 0.04f;
-
-    private static final int pathfinderAStar = 0;
-    private static final int pathfinderDfs = 1;
+    private static final int pathfinderAStar = StealthPathPlanner.pathfinderAStar;
+    private static final int pathfinderDfs = StealthPathPlanner.pathfinderDfs;
+    private static final int pathfinderHpa = StealthPathPlanner.pathfinderHpa;
 
     private static final int targetModeCore = 0;
     private static final int targetModeNearest = 1;
@@ -186,6 +185,9 @@ public class StealthPathMod extends mindustry.mod.Mod{
     private static final int threatModeAir = 1;
     private static final int threatModeBoth = 2;
 
+    // Background auto-plan results are dropped when a cluster drifted farther than this from its planned start.
+    private static final int autoStaleStartTiles = 3;
+
     private static final String excludedGeneratorCombustion = "combustion-generator";
     private static final String excludedGeneratorTurbine = "turbine-condenser";
     private static final int defaultGenClusterLinkDistTiles = 8;
@@ -214,6 +216,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
     private float lastDamage = 0f;
     private boolean lastIncludeUnits = false;
     private final Seq<Building> tmpBuildings = new Seq<>();
+    private final Seq<Building> tmpShieldBuildings = new Seq<>();
     private final Seq<Unit> tmpUnits = new Seq<>();
 
     private int lastCycleBaseMode = targetModeCore;
@@ -267,7 +270,9 @@ public class StealthPathMod extends mindustry.mod.Mod{
     private float autoNextNoUnitsToast = 0f;
 
     private boolean debugRiskOverlayEnabled = false;
-    private final Color debugRiskColor = new Color();
+    // Heatmap texture for the risk debug overlay; refreshed from planning maps or at most every debugRiskRefreshTicks.
+    private final StealthPathRiskOverlay riskOverlay = new StealthPathRiskOverlay();
+    private static final float debugRiskRefreshTicks = 30f;
     private final Seq<String> debugHoverTurretLines = new Seq<>();
 
     // Optional OverlayUI integration; the bridge selects MindustryX, OverlayCompatBridge,
@@ -296,29 +301,52 @@ public class StealthPathMod extends mindustry.mod.Mod{
     private String debugHoverLinesText = "(disabled)";
 
     // Cached passability (expensive to recompute every frame).
-    private final arc.struct.IntMap<boolean[]> passableCacheByKey = new arc.struct.IntMap<>();
-    private final IntSeq passableCacheKeyOrder = new IntSeq();
-    private int passableCacheRevision = 0;
-    private int passableCacheUsedRevision = -1;
+    private final StealthPathPassableCache passableCache = new StealthPathPassableCache();
+    // Tiles around a changed tile that may belong to the same building (largest vanilla footprint is 6x6).
+    private static final int passableDirtyMargin = 4;
 
     // Reused ThreatMap + safe-distance scratch buffers to reduce allocations during auto mode.
     private ThreatMap threatMapScratch;
-    private short[] safeDistScratch;
-    private int[] safeDistQueueScratch;
+    // Bumped whenever the scratch map is handed out again, so callers can tell whether it still holds their build.
+    private int threatMapScratchSerial;
+    private final StealthPathSafeDistance safeDistance = new StealthPathSafeDistance();
     private float nextHoverDpsDebugUpdate = 0f;
 
+    // Event-driven turret registry (team id -> building pos -> turret) + persistent per-team turret risk layers.
+    private static final int turretRiskLayerCacheMax = 3;
+    private final arc.struct.IntMap<arc.struct.IntMap<Building>> turretRegistry = new arc.struct.IntMap<>();
+    private final IntSeq turretRegistryRemoveScratch = new IntSeq();
+    private final Seq<StealthPathTurretRiskLayer> turretRiskLayers = new Seq<>();
+    private boolean turretRegistryStale = true;
+    private final StealthPathTurretDpsCache turretDpsCache = new StealthPathTurretDpsCache();
+    // Finished searches keyed by map inputs (ThreatMap.contentKey) / start / goals / units; cleared on world load.
+    private static final int pathCacheCapacity = 64;
+    private final StealthPathPathCache pathCache = new StealthPathPathCache(pathCacheCapacity);
+    // Bumped by every tile change that can alter passable masks, floors or floor slots; part of ThreatMap.contentKey.
+    private int threatInputEpoch;
+
+    // Enemy units binned into a uniform grid, rebuilt at most once per frame for bounding-box threat gathering.
+    private static final float enemyUnitGridCellWorld = 16f * tilesize;
+    // Detour allowance around the start/goal box when gathering threats for a known goal.
+    private static final int threatGatherMarginTiles = 40;
+    private final StealthPathThreatGrid<Unit> enemyUnitGrid = new StealthPathThreatGrid<>(enemyUnitGridCellWorld);
+    private final Seq<Unit> enemyUnitScratch = new Seq<>();
+    private final Rect threatGatherRect = new Rect();
+    private long enemyUnitGridFrame = -1;
+    private int enemyUnitGridTeam = -1;
+
     // Reused threat lists for building ThreatMap (sequential use only).
     private final Seq<Threat> tmpThreats = new Seq<>();
     private final Seq<Threat> tmpDerelictThreats = new Seq<>();
 
     // Scratch arrays for pathfinding (avoid allocating/filling map-sized arrays every search).
-    private float[] pathBest;
-    private int[] pathBestStamp;
-    private int[] pathParent;
-    private int[] pathClosedStamp;
-    private int pathStamp = 1;
-    private final PriorityQueue<Node> pathOpen = new PriorityQueue<>();
-    private final IntSeq pathStack = new IntSeq();
+    private final StealthPathPlanner planner = new StealthPathPlanner();
+    private final Seq<ThreatMap> plannerSnapshotPool = new Seq<>();
+    // Map-sized float buffers of finished ThreatBase raster caches, reused by the next auto job.
+    private final Seq<float[]> threatRasterPool = new Seq<>();
+    // Per-tile floor slot for planner cost profiles; replaced (never mutated) when the world changes.
+    private short[] floorSlotCache;
+    private final Seq<Floor> floorSlotFloors = new Seq<>();
 
     private static final Pattern coordPattern = Pattern.compile("\\((-?\\d+)\\s*,\\s*(-?\\d+)\\)");
 
@@ -381,10 +409,28 @@ public class StealthPathMod extends mindustry.mod.Mod{
             autoMoveFollowLastIssue.clear();
             rtsSendCursor = 0f;
             invalidatePassableCache();
+            riskOverlay.invalidate();
+            resetTurretRegistry();
         });
 
-        Events.on(BlockBuildEndEvent.class, e -> invalidatePassableCache());
-        Events.on(BlockDestroyEvent.class, e -> invalidatePassableCache());
+        Events.on(BlockBuildEndEvent.class, e -> {
+            markPassableDirty(e.tile);
+            trackTurretTile(e.tile);
+        });
+        Events.on(BlockDestroyEvent.class, e -> {
+            markPassableDirty(e.tile);
+            if(e.tile != null) untrackTurret(e.tile.pos());
+        });
+        Events.on(BuildTeamChangeEvent.class, e -> {
+            if(e.build == null) return;
+            untrackTurret(e.build.pos());
+            trackTurretTile(e.build.tile);
+        });
+        // Catches placements that skip the build events (payload drops, world processors, editor, net sync).
+        Events.on(TileChangeEvent.class, e -> {
+            markPassableDirty(e.tile);
+            trackTurretTile(e.tile);
+        });
     }
 
     private static OverlayUiBridge vanillaOverlayUi(){
@@ -448,7 +494,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
     }
 
     private static int pathfinderMode(){
-        return clamp(Core.settings.getInt(keyPathfinder, pathfinderAStar), pathfinderAStar, pathfinderDfs);
+        return clamp(Core.settings.getInt(keyPathfinder, pathfinderAStar), pathfinderAStar, pathfinderHpa);
     }
 
     private static int coreTargetCount(){
@@ -481,8 +527,12 @@ public class StealthPathMod extends mindustry.mod.Mod{
         return Core.settings.getBool(keyComputeSafeDistance, true);
     }
 
+    private static boolean backgroundPlanningEnabled(){
+        return Core.settings.getBool(keyBackgroundPlanning, true);
+    }
+
     private static int passableCacheEntries(){
-        return clamp(Core.settings.getInt(keyPassableCacheEntries, 8), 1, 64);
+        return clamp(Core.settings.getInt(keyPassableCacheEntries, 16), 1, 64);
     }
 
     private static int genClusterLinkDistTiles(){
@@ -577,7 +627,15 @@ public class StealthPathMod extends mindustry.mod.Mod{
     }
 
     private void invalidatePassableCache(){
-        passableCacheRevision++;
+        passableCache.clear();
+        threatInputEpoch++;
+    }
+
+    private void markPassableDirty(Tile tile){
+        if(tile == null) return;
+        threatInputEpoch++;
+        int r = Math.max(passableDirtyMargin, tile.block() == null ? 0 : tile.block().size);
+        passableCache.markDirty(tile.x - r, tile.y - r, tile.x + r, tile.y + r);
     }
 
     private void ensureDefaults(){
@@ -625,6 +683,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
         Core.settings.defaults(keyFormationInflatePct, 125);
         Core.settings.defaults(keySafeCorridorBiasPct, 35);
         Core.settings.defaults(keyComputeSafeDistance, true);
+        Core.settings.defaults(keyBackgroundPlanning, true);
         Core.settings.defaults(keyRtsMaxWaypoints, 12);
         Core.settings.defaults(keyRtsUpdateInterval, 30);
         Core.settings.defaults(keyRtsCommandSpacing, 2);
@@ -634,7 +693,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
         Core.settings.defaults(keyAutoBatchDelayPct, 100);
         Core.settings.defaults(keyAutoSlowMultiplier, 8);
         Core.settings.defaults(keyPathComputeSplitTicks, 1);
-        Core.settings.defaults(keyPassableCacheEntries, 8);
+        Core.settings.defaults(keyPassableCacheEntries, 16);
         Core.settings.defaults(keyGenClusterLinkDistTiles, defaultGenClusterLinkDistTiles);
         Core.settings.defaults(keyGenClusterNearTurretDistTiles, defaultGenClusterNearTurretDistTiles);
         Core.settings.defaults(keyGenClusterMinDrawTiles, defaultGenClusterMinDrawTiles);
@@ -646,6 +705,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
         Core.settings.defaults(keyGoalCandidateRadiusTiles, 24);
         Core.settings.defaults(keyDebugRiskTextScale, 100);
         Core.settings.defaults(keyDebugHoverTurretDps, false);
+        Core.settings.defaults(keyDebugRecordFixtures, false);
     }
 
     private void registerKeybinds(){
@@ -788,10 +848,12 @@ public class StealthPathMod extends mindustry.mod.Mod{
         table.pref(new IconSliderSetting(keyFormationInflatePct, 125, 100, 300, 5, null, v -> v + "%", null));
         table.pref(new IconSliderSetting(keySafeCorridorBiasPct, 35, 0, 200, 5, null, v -> v + "%", null));
         table.pref(new IconCheckSetting(keyComputeSafeDistance, true, null, null));
+        table.pref(new IconCheckSetting(keyBackgroundPlanning, true, null, null));
         table.pref(new IconSliderSetting(keyDrownReserveDeciSeconds, 15, 0, 30, 1, null, v -> Strings.autoFixed(v / 10f, 1) + "s", null));
         table.pref(new IconSliderSetting(keyGoalCandidateRadiusTiles, 24, 6, 64, 1, null, v -> v + " tiles", null));
         table.pref(new IconSliderSetting(keyDebugRiskTextScale, 100, 50, 400, 10, null, v -> v + "%", null));
         table.pref(new IconCheckSetting(keyDebugHoverTurretDps, false, null, null));
+        table.pref(new IconCheckSetting(keyDebugRecordFixtures, false, null, null));
 
         table.pref(new HeaderSetting("@sp.section.advanced.automove", null));
         table.pref(new IconSliderSetting(keyRtsMaxWaypoints, 12, 2, 60, 1, null, v -> String.valueOf(v), null));
@@ -801,7 +863,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
         table.pref(new IconSliderSetting(keyAutoSlowMultiplier, 8, 1, 30, 1, null, v -> v + "x", null));
 
         table.pref(new HeaderSetting("@sp.section.advanced.cache", null));
-        table.pref(new IconSliderSetting(keyPassableCacheEntries, 8, 1, 24, 1, null, v -> String.valueOf(v), v -> invalidatePassableCache()));
+        table.pref(new IconSliderSetting(keyPassableCacheEntries, 16, 1, 48, 1, null, v -> String.valueOf(v), v -> invalidatePassableCache()));
 
         table.pref(new HeaderSetting("@sp.section.advanced.gencluster", null));
         table.pref(new IconSliderSetting(keyGenClusterLinkDistTiles, defaultGenClusterLinkDistTiles, 1, 20, 1, null, v -> v + " tiles", null));
@@ -920,7 +982,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
 
     private void cyclePathfinder(){
         int cur = pathfinderMode();
-        int next = cur == pathfinderAStar ? pathfinderDfs : pathfinderAStar;
+        int next = cur == pathfinderHpa ? pathfinderAStar : cur + 1;
         Core.settings.put(keyPathfinder, next);
     }
 
@@ -928,6 +990,8 @@ public class StealthPathMod extends mindustry.mod.Mod{
         switch(mode){
             case pathfinderDfs:
                 return Core.bundle.get("sp.setting.pathfinder.dfs");
+            case pathfinderHpa:
+                return Core.bundle.get("sp.setting.pathfinder.hpa");
             case pathfinderAStar:
             default:
                 return Core.bundle.get("sp.setting.pathfinder.astar");
@@ -1164,14 +1228,25 @@ public class StealthPathMod extends mindustry.mod.Mod{
     private void registerTriggers(){
         Events.run(Trigger.update, this::update);
         Events.run(Trigger.draw, this::draw);
-        Events.on(ResetEvent.class, e -> releaseThreatMapScratch());
-        Events.on(WorldLoadEvent.class, e -> releaseThreatMapScratch());
+        Events.on(ResetEvent.class, e -> {
+            cancelAutoComputeJob();
+            releaseThreatMapScratch();
+        });
+        Events.on(WorldLoadEvent.class, e -> {
+            cancelAutoComputeJob();
+            releaseThreatMapScratch();
+        });
     }
 
     private void releaseThreatMapScratch(){
         threatMapScratch = null;
-        safeDistScratch = null;
-        safeDistQueueScratch = null;
+        safeDistance.reset();
+        floorSlotCache = null;
+        floorSlotFloors.clear();
+        plannerSnapshotPool.clear();
+        threatRasterPool.clear();
+        pathCache.clear();
+        resetTurretRegistry();
     }
 
     private void update(){
@@ -1182,6 +1257,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
         }
 
         ensureOverlayWindowsAttached();
+        pathCache.flushProfiler();
 
         if(!state.isGame() || world == null || world.isGenerating() || player == null || player.unit() == null) return;
 
@@ -1321,8 +1397,9 @@ public class StealthPathMod extends mindustry.mod.Mod{
 
             float passClearance = cluster.maxHitRadiusWorld;
             float threatClearance = cluster.threatClearanceWorld + autoThreatExtraPaddingTiles * tilesize;
-            ThreatMap map = buildThreatMap(cluster.moveUnit, cluster.units, true, cluster.moveFlying, cluster.threatsAir, cluster.threatsGround, passClearance, threatClearance);
-            ShiftedPath best = findBestShiftedClusterPath(cluster, map, goalX, goalY);
+            Rect gather = threatGatherRegion(cluster.x, cluster.y, tileToWorld(goalX), tileToWorld(goalY));
+            ThreatMap map = buildThreatMap(cluster.moveUnit, cluster.units, true, cluster.moveFlying, cluster.threatsAir, cluster.threatsGround, passClearance, threatClearance, gather);
+            ShiftedPath best = planClusterPath(cluster, map, goalX, goalY);
             if(best == null || best.path == null || best.path.isEmpty()) continue;
 
             int issuedHash = issueRtsMoveAlongPath(cluster, best.path, map.width);
@@ -1510,8 +1587,9 @@ public class StealthPathMod extends mindustry.mod.Mod{
 
             float passClearance = cluster.maxHitRadiusWorld;
             float threatClearance = cluster.threatClearanceWorld + autoThreatExtraPaddingTiles * tilesize;
-            ThreatMap map = buildThreatMap(cluster.moveUnit, cluster.units, true, cluster.moveFlying, cluster.threatsAir, cluster.threatsGround, passClearance, threatClearance);
-            ShiftedPath best = findBestShiftedClusterPath(cluster, map, goalX, goalY);
+            Rect gather = threatGatherRegion(cluster.x, cluster.y, tileToWorld(goalX), tileToWorld(goalY));
+            ThreatMap map = buildThreatMap(cluster.moveUnit, cluster.units, true, cluster.moveFlying, cluster.threatsAir, cluster.threatsGround, passClearance, threatClearance, gather);
+            ShiftedPath best = planClusterPath(cluster, map, goalX, goalY);
             if(best == null || best.path == null || best.path.isEmpty()) continue;
 
             int issuedHash = issueRtsMoveAlongPath(cluster, best.path, map.width);
@@ -1537,7 +1615,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
         if(autoMode == requested){
             autoMode = autoModeOff;
             autoNextCompute = 0f;
-            autoComputeJob = null;
+            cancelAutoComputeJob();
             drawUntil = 0f;
             clearPaths();
             autoThreatExtraPaddingTiles = 0;
@@ -1553,7 +1631,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
         }else{
             autoMode = requested;
             autoNextCompute = 0f;
-            autoComputeJob = null;
+            cancelAutoComputeJob();
             autoLastStartPacked = Integer.MIN_VALUE;
             autoLastGoalPacked = Integer.MIN_VALUE;
             autoLastThreatMode = Integer.MIN_VALUE;
@@ -1673,6 +1751,12 @@ public class StealthPathMod extends mindustry.mod.Mod{
 
     private void finishAutoComputeJob(AutoComputeJob job, float baseInterval){
         if(job == null) return;
+        job.threatBase.release();
+        if(job.stale){
+            // Units moved away from the planned starts; replan on the next update instead of drawing outdated paths.
+            autoNextCompute = Time.time;
+            return;
+        }
         if(!job.anyPath){
             logAuto(logFormat("sp.log.auto.done.empty", elapsedMillis(job.startedNano)));
             autoNextCompute = Time.time + baseInterval * 2f;
@@ -1702,6 +1786,221 @@ public class StealthPathMod extends mindustry.mod.Mod{
             job.issueFollowCommands));
     }
 
+    /**
+     * Threat inputs shared by every cluster of one {@link AutoComputeJob}.
+     * Built lazily on first use: one gather region (all clusters + goal), one unit-threat scan per air/ground filter,
+     * one shield scan, and risk / floor rasters cached per (filter, clearance) and (unit type, size) so each cluster
+     * only overlays its own passability, shield clearance and safe distance. A cluster with the same profile as the
+     * previous build reuses the scratch map as is. Rasters are only cached for keys used by more than one cluster,
+     * in buffers taken from {@link #threatRasterPool} and returned by {@link #release()}.
+     *
+     * 自动模式单次任务的共享威胁基础层：
+     * - 采集区域取所有集群与目标的包围盒；敌方单位与护盾只扫描一次
+     * - 风险（炮塔层 + 单位）按 对空 / 对地 / 威胁间隙 缓存，地面伤害与溺水按 单位类型 / 体积 缓存；
+     *   只有被多个集群共用的键才缓存，缓冲区取自 threatRasterPool，任务结束时归还
+     * - 每个集群只叠加自己的可通行掩码、护盾间隙与安全距离；与上一个集群配置完全相同时直接复用
+     * 任务跨多帧执行时，基础层停留在首次构建时的世界状态（与整批结果的时效一致）。
+     */
+    private final class ThreatBase{
+        private static final int maxCachedRasters = 6;
+
+        private final Rect gather = new Rect();
+        private final float maxThreatClearance;
+        private final Seq<Building> shields = new Seq<>();
+        private boolean shieldsCollected;
+        private final arc.struct.IntMap<Seq<Threat>> unitThreats = new arc.struct.IntMap<>();
+        private final arc.struct.LongMap<CachedLayer> riskRasters = new arc.struct.LongMap<>();
+        private final arc.struct.LongMap<CachedLayer> floorRasters = new arc.struct.LongMap<>();
+        // Raster keys used by at least two clusters; single-use keys are never cached.
+        private final LongSeq sharedRiskKeys = new LongSeq();
+        private final LongSeq sharedFloorKeys = new LongSeq();
+
+        // Profile of the last map handed out, valid while threatMapScratchSerial == lastSerial.
+        private int lastSerial = -1;
+        private UnitType lastType;
+        private float lastHitSize, lastPassClearance, lastThreatClearance;
+        private boolean lastDrownable, lastFlying, lastAir, lastGround;
+
+        ThreatBase(Seq<ControlledCluster> clusters, int goalX, int goalY){
+            float minX = tileToWorld(goalX), maxX = minX, minY = tileToWorld(goalY), maxY = minY;
+            float clearance = 0f;
+            for(int i = 0; i < clusters.size; i++){
+                ControlledCluster c = clusters.get(i);
+                if(c == null) continue;
+                minX = Math.min(minX, c.x);
+                maxX = Math.max(maxX, c.x);
+                minY = Math.min(minY, c.y);
+                maxY = Math.max(maxY, c.y);
+                clearance = Math.max(clearance, c.threatClearanceWorld + autoThreatExtraPaddingTiles * tilesize);
+            }
+            float pad = threatGatherMarginTiles * tilesize;
+            gather.set(minX - pad, minY - pad, maxX - minX + pad * 2f, maxY - minY + pad * 2f);
+            maxThreatClearance = clearance;
+
+            LongSeq riskKeys = new LongSeq(), floorKeys = new LongSeq();
+            for(int i = 0; i < clusters.size; i++){
+                ControlledCluster c = clusters.get(i);
+                if(c == null) continue;
+                float threatInflate = Math.max(0f, c.threatClearanceWorld + autoThreatExtraPaddingTiles * tilesize);
+                markShared(riskKeys, sharedRiskKeys, riskKey(threatInflate, c.threatsAir, c.threatsGround));
+                if(!c.moveFlying && c.moveUnit != null && c.moveUnit.type != null){
+                    markShared(floorKeys, sharedFloorKeys, floorKey(c.moveUnit));
+                }
+            }
+        }
+
+        private void markShared(LongSeq seen, LongSeq shared, long key){
+            if(!seen.contains(key)){
+                seen.add(key);
+            }else if(!shared.contains(key)){
+                shared.add(key);
+            }
+        }
+
+        private long riskKey(float threatInflate, boolean threatsAir, boolean threatsGround){
+            return ((long)Float.floatToIntBits(threatInflate) << 2) | (threatsAir ? 1L : 0L) | (threatsGround ? 2L : 0L);
+        }
+
+        private long floorKey(Unit unit){
+            return ((long)unit.type.id << 32) | (Float.floatToIntBits(unit.hitSize) & 0xffffffffL);
+        }
+
+        /** Returns the cached raster buffers to {@link #threatRasterPool}. 归还缓存的栅格缓冲区。 */
+        void release(){
+            for(CachedLayer layer : riskRasters.values()){
+                recycleRaster(layer.raster);
+            }
+            for(CachedLayer layer : floorRasters.values()){
+                recycleRaster(layer.raster);
+                recycleRaster(layer.drown);
+            }
+            riskRasters.clear();
+            floorRasters.clear();
+        }
+
+        private void recycleRaster(float[] raster){
+            if(threatRasterPool.size < maxCachedRasters * 3) threatRasterPool.add(raster);
+        }
+
+        /** A pooled buffer holding a copy of {@code src}. 取一个池中缓冲区并复制 src。 */
+        private float[] copyRaster(float[] src){
+            float[] out = null;
+            for(int i = threatRasterPool.size - 1; i >= 0; i--){
+                if(threatRasterPool.items[i].length == src.length){
+                    out = threatRasterPool.remove(i);
+                    break;
+                }
+            }
+            if(out == null) out = new float[src.length];
+            System.arraycopy(src, 0, out, 0, src.length);
+            return out;
+        }
+
+        ThreatMap build(Unit unit, Seq<Unit> pathUnits, boolean moveFlying, boolean threatsAir, boolean threatsGround, float passClearanceWorld, float threatClearanceWorld){
+            UnitType type = unit == null ? null : unit.type;
+            float hitSize = unit == null ? 0f : unit.hitSize;
+            boolean drownable = hasDrownableUnit(unit, pathUnits);
+            if(threatMapScratch != null && lastSerial == threatMapScratchSerial && lastType == type && lastHitSize == hitSize
+            && lastDrownable == drownable && lastFlying == moveFlying && lastAir == threatsAir && lastGround == threatsGround
+            && lastPassClearance == passClearanceWorld && lastThreatClearance == threatClearanceWorld){
+                return threatMapScratch;
+            }
+
+            ThreatMap map = obtainThreatMapScratch();
+            map.safeBias = Mathf.clamp(threatClearanceWorld / tilesize, 0f, 10f);
+
+            long passKey = fillPassable(map, unit, pathUnits, moveFlying, passClearanceWorld);
+            long floorKey = applyFloorHazards(map, unit, moveFlying);
+            long shieldKey = 0L;
+            if(state.isGame() && player != null){
+                if(!shieldsCollected){
+                    shieldsCollected = true;
+                    collectEnemyShieldBuildings(shields);
+                }
+                shieldKey = applyShieldNoGoZones(map, passClearanceWorld, shields);
+            }
+            long riskKey = applyRisk(map, unit, threatsAir, threatsGround, Math.max(0f, threatClearanceWorld));
+
+            if(computeSafeDistanceEnabled()){
+                computeSafeDistance(map);
+            }else{
+                map.safeDist = null;
+            }
+            map.contentKey = threatMapKey(map, passKey, floorKey, shieldKey, riskKey);
+
+            lastSerial = threatMapScratchSerial;
+            lastType = type;
+            lastHitSize = hitSize;
+            lastDrownable = drownable;
+            lastFlying = moveFlying;
+            lastAir = threatsAir;
+            lastGround = threatsGround;
+            lastPassClearance = passClearanceWorld;
+            lastThreatClearance = threatClearanceWorld;
+            return map;
+        }
+
+        /** @return risk part of {@link ThreatMap#contentKey}: turret layer version, inflate and unit threats */
+        private long applyRisk(ThreatMap map, Unit unit, boolean threatsAir, boolean threatsGround, float threatInflate){
+            long key = riskKey(threatInflate, threatsAir, threatsGround);
+            CachedLayer cached = riskRasters.get(key);
+            if(cached != null && cached.raster.length == map.risk.length){
+                System.arraycopy(cached.raster, 0, map.risk, 0, cached.raster.length);
+                return cached.content;
+            }
+
+            Seq<Threat> threats = unitThreats(unit, threatsAir, threatsGround);
+            long content = StealthPathPathCache.mix(applyTurretRiskLayer(map, threatsAir, threatsGround, threatInflate, gather), Float.floatToIntBits(threatInflate));
+            applyThreatsToRisk(map, threats, threatInflate);
+            content = StealthPathPathCache.mix(content, StealthPathPathCache.threatsHash(threats));
+            if(riskRasters.size < maxCachedRasters && sharedRiskKeys.contains(key)){
+                riskRasters.put(key, new CachedLayer(copyRaster(map.risk), null, content));
+            }
+            return content;
+        }
+
+        private Seq<Threat> unitThreats(Unit unit, boolean threatsAir, boolean threatsGround){
+            int key = (threatsAir ? 1 : 0) | (threatsGround ? 2 : 0);
+            Seq<Threat> threats = unitThreats.get(key);
+            if(threats == null){
+                threats = new Seq<>(collectUnitThreats(unit, threatsAir, threatsGround, gather, maxThreatClearance));
+                unitThreats.put(key, threats);
+            }
+            return threats;
+        }
+
+        /** @return floor part of {@link ThreatMap#contentKey}, as returned by fillFloorHazards when the layers were filled */
+        private long applyFloorHazards(ThreatMap map, Unit unit, boolean moveFlying){
+            if(moveFlying || unit == null || unit.type == null) return 0L;
+
+            long key = floorKey(unit);
+            CachedLayer cached = floorRasters.get(key);
+            if(cached != null && cached.raster.length == map.floorRisk.length){
+                System.arraycopy(cached.raster, 0, map.floorRisk, 0, cached.raster.length);
+                System.arraycopy(cached.drown, 0, map.drownRate, 0, cached.drown.length);
+                return cached.content;
+            }
+
+            long content = fillFloorHazards(map, unit, false);
+            if(floorRasters.size < maxCachedRasters && sharedFloorKeys.contains(key)){
+                floorRasters.put(key, new CachedLayer(copyRaster(map.floorRisk), copyRaster(map.drownRate), content));
+            }
+            return content;
+        }
+    }
+
+    /** Raster copy kept by {@link ThreatBase} (risk, or floor risk + drown rate) plus the content key it was built with. 缓存的栅格副本及其输入键。 */
+    private static final class CachedLayer{
+        final float[] raster, drown;
+        final long content;
+
+        CachedLayer(float[] raster, float[] drown, long content){
+            this.raster = raster;
+            this.drown = drown;
+            this.content = content;
+        }
+    }
+
     private final class AutoComputeJob{
         final Seq<ControlledCluster> clusters;
         final int goalX, goalY;
@@ -1720,6 +2019,17 @@ public class StealthPathMod extends mindustry.mod.Mod{
         int index = 0;
         boolean done = false;
 
+        final boolean background;
+        final PlanSettings settings;
+        final int maxInFlight;
+        final Seq<StealthPathPlanTask> tasks = new Seq<>();
+        // Parallel to tasks: the path cache key to store the result under, null for cache hits.
+        final Seq<StealthPathPathCache.Key> taskKeys = new Seq<>();
+        int mapWidth;
+        int applied = 0;
+        boolean stale = false;
+        final ThreatBase threatBase;
+
         AutoComputeJob(Seq<ControlledCluster> clusters, int goalX, int goalY, int goalPacked, int startHash, int threatHash, float rtsInterval, boolean unchanged, boolean issueFollowCommands, int splitTicks){
             this.clusters = new Seq<>(clusters.size);
             this.clusters.addAll(clusters);
@@ -1734,57 +2044,205 @@ public class StealthPathMod extends mindustry.mod.Mod{
             this.startedNano = System.nanoTime();
             int ticks = Math.max(1, splitTicks);
             this.clustersPerTick = Math.max(1, (clusters.size + ticks - 1) / ticks);
+            this.background = backgroundPlanningEnabled();
+            this.settings = background ? planSettings() : null;
+            this.maxInFlight = StealthPathPlanTask.workers() * 2;
+            this.threatBase = new ThreatBase(this.clusters, goalX, goalY);
         }
 
         void step(){
             if(done) return;
+            if(background){
+                stepBackground();
+                return;
+            }
+
             int end = Math.min(clusters.size, index + clustersPerTick);
             for(; index < end; index++){
                 ControlledCluster cluster = clusters.get(index);
                 if(cluster == null) continue;
 
-                float passClearance = cluster.maxHitRadiusWorld;
-                float threatClearance = cluster.threatClearanceWorld + autoThreatExtraPaddingTiles * tilesize;
                 long clusterStart = System.nanoTime();
-                ThreatMap map = buildThreatMap(cluster.moveUnit, cluster.units, true, cluster.moveFlying, cluster.threatsAir, cluster.threatsGround, passClearance, threatClearance);
-                ShiftedPath sp = findBestShiftedClusterPath(cluster, map, goalX, goalY);
-                if(sp == null || sp.path == null || sp.path.isEmpty()){
-                    logAuto(logFormat("sp.log.auto.cluster.nopath", cluster.key, elapsedMillis(clusterStart)));
+                ThreatMap map = buildClusterThreatMap(cluster);
+                ShiftedPath sp = planClusterPath(cluster, map, goalX, goalY);
+                applyClusterPath(cluster, sp, map.width, elapsedMillis(clusterStart));
+            }
+
+            if(index >= clusters.size){
+                done = true;
+            }
+        }
+
+        /**
+         * Threat maps are still built here (they read world state), but the searches run on
+         * {@link StealthPathPlanTask} workers; finished results are applied in cluster order.
+         */
+        private void stepBackground(){
+            int submitted = 0;
+            while(index < clusters.size && submitted < clustersPerTick && tasks.size - applied < maxInFlight){
+                ControlledCluster cluster = clusters.get(index++);
+                if(cluster == null) continue;
+
+                ThreatMap map = buildClusterThreatMap(cluster);
+                mapWidth = map.width;
+                UnitCostGroup units = unitCostGroup(cluster.moveUnit, cluster.units);
+                StealthPathPathCache.Key key = clusterPathKey(cluster, map, goalX, goalY, units, settings);
+                if(pathCache.lookup(key)){
+                    StealthPathPlanTask task = new StealthPathPlanTask(cluster, null, units, settings, goalX, goalY, null);
+                    task.complete(pathCache.shiftedValue());
+                    tasks.add(task);
+                    taskKeys.add((StealthPathPathCache.Key)null);
                     continue;
                 }
 
-                anyPath = true;
-                if(Float.isFinite(sp.maxDmg)){
-                    maxDmg = Math.max(maxDmg, sp.maxDmg);
+                StealthPathPlanTask task = new StealthPathPlanTask(
+                    cluster,
+                    obtainPlannerSnapshot(map),
+                    units,
+                    settings,
+                    goalX,
+                    goalY,
+                    debugLogsEnabled() ? new StealthPathPlanner.DeferredLog() : null
+                );
+                tasks.add(task);
+                taskKeys.add(key.copy());
+                task.submit();
+                submitted++;
+            }
+
+            boolean checkedStale = false;
+            while(applied < tasks.size){
+                StealthPathPlanTask task = tasks.get(applied);
+                if(!task.finished) break;
+                applied++;
+
+                if(task.log != null) task.log.replay(StealthPathMod::planLogLine);
+                if(!checkedStale){
+                    checkedStale = true;
+                    if(autoJobResultsStale(this)){
+                        stale = true;
+                        cancel();
+                        logAuto(logFormat("sp.log.auto.stale", task.cluster.key, applied - 1, tasks.size));
+                        break;
+                    }
+                }
+
+                if(task.error != null){
+                    Log.err("StealthPath: background path planning failed.", task.error);
+                }else{
+                    StealthPathPathCache.Key key = taskKeys.get(applied - 1);
+                    if(key != null) pathCache.store(key, task.result);
+                    applyClusterPath(task.cluster, task.result, task.map == null ? mapWidth : task.map.width, task.elapsedNanos / 1_000_000L);
                 }
+                recyclePlannerSnapshot(task.map);
+            }
+
+            if(!stale && index >= clusters.size && applied >= tasks.size){
+                done = true;
+            }
+        }
+
+        void cancel(){
+            for(int i = applied; i < tasks.size; i++){
+                tasks.get(i).cancel();
+            }
+            done = true;
+            threatBase.release();
+        }
+
+        private ThreatMap buildClusterThreatMap(ControlledCluster cluster){
+            float passClearance = cluster.maxHitRadiusWorld;
+            float threatClearance = cluster.threatClearanceWorld + autoThreatExtraPaddingTiles * tilesize;
+            return threatBase.build(cluster.moveUnit, cluster.units, cluster.moveFlying, cluster.threatsAir, cluster.threatsGround, passClearance, threatClearance);
+        }
+
+        private void applyClusterPath(ControlledCluster cluster, ShiftedPath sp, int width, long elapsedMs){
+            if(sp == null || sp.path == null || sp.path.isEmpty()){
+                logAuto(logFormat("sp.log.auto.cluster.nopath", cluster.key, elapsedMs));
+                return;
+            }
+
+            anyPath = true;
+            if(Float.isFinite(sp.maxDmg)){
+                maxDmg = Math.max(maxDmg, sp.maxDmg);
+            }
 
-                IntSeq compact = compactPath(sp.path, map.width);
-                Color c = autoPathColor(cluster, sp.dmgGround, sp.dmgAir, sp.maxDmg);
-                paths.add(new RenderPath(toWorldPointsFromTilesWithStart(compact, map.width, cluster.x + sp.dx, cluster.y + sp.dy, null), c, sp.maxDmg));
+            IntSeq compact = compactPath(sp.path, width);
+            Color c = autoPathColor(cluster, sp.dmgGround, sp.dmgAir, sp.maxDmg);
+            paths.add(new RenderPath(toWorldPointsFromTilesWithStart(compact, width, cluster.x + sp.dx, cluster.y + sp.dy, null), c, sp.maxDmg));
 
-                logAuto(logFormat("sp.log.auto.cluster.ok", cluster.key, sp.path.size, Strings.autoFixed(sp.maxDmg, 2), elapsedMillis(clusterStart)));
+            logAuto(logFormat("sp.log.auto.cluster.ok", cluster.key, sp.path.size, Strings.autoFixed(sp.maxDmg, 2), elapsedMs));
 
-                if(issueFollowCommands && Core.settings.getBool(keyAutoMoveEnabled, true)){
-                    int newHash = rtsWaypointHash(cluster, sp.path, map.width);
-                    int prevHash = autoMoveFollowPathHash.get(cluster.key, Integer.MIN_VALUE);
-                    float lastIssued = autoMoveFollowLastIssue.get(cluster.key, -999999f);
+            if(issueFollowCommands && Core.settings.getBool(keyAutoMoveEnabled, true)){
+                int newHash = rtsWaypointHash(cluster, sp.path, width);
+                int prevHash = autoMoveFollowPathHash.get(cluster.key, Integer.MIN_VALUE);
+                float lastIssued = autoMoveFollowLastIssue.get(cluster.key, -999999f);
 
-                    if(prevHash == Integer.MIN_VALUE || prevHash != newHash){
-                        if(Time.time - lastIssued >= rtsInterval){
-                            int issuedHash = issueRtsMoveAlongPath(cluster, sp.path, map.width);
-                            if(issuedHash != Integer.MIN_VALUE){
-                                autoMoveFollowPathHash.put(cluster.key, issuedHash);
-                                autoMoveFollowLastIssue.put(cluster.key, Time.time);
-                            }
+                if(prevHash == Integer.MIN_VALUE || prevHash != newHash){
+                    if(Time.time - lastIssued >= rtsInterval){
+                        int issuedHash = issueRtsMoveAlongPath(cluster, sp.path, width);
+                        if(issuedHash != Integer.MIN_VALUE){
+                            autoMoveFollowPathHash.put(cluster.key, issuedHash);
+                            autoMoveFollowLastIssue.put(cluster.key, Time.time);
                         }
                     }
                 }
             }
+        }
+    }
 
-            if(index >= clusters.size){
-                done = true;
+    /**
+     * Re-checks a background job's start/threat hashes against the live units before applying its results.
+     * Any change of a cluster's air/ground mix invalidates the job; start drift is tolerated up to
+     * {@link #autoStaleStartTiles} because units following a path are always moving.
+     */
+    private boolean autoJobResultsStale(AutoComputeJob job){
+        if(world == null || world.width() <= 0 || world.height() <= 0) return true;
+        int width = world.width();
+        int height = world.height();
+
+        int liveStartHash = 1;
+        int liveThreatHash = 1;
+        boolean drifted = false;
+        for(int i = 0; i < job.clusters.size; i++){
+            ControlledCluster c = job.clusters.get(i);
+            if(c == null) continue;
+
+            float sx = 0f, sy = 0f;
+            int count = 0;
+            int flying = 0;
+            for(int u = 0; u < c.units.size; u++){
+                Unit unit = c.units.get(u);
+                if(unit == null) continue;
+                sx += unit.x;
+                sy += unit.y;
+                count++;
+                if(unit.isFlying()) flying++;
             }
+
+            float cx = count == 0 ? c.x : sx / count;
+            float cy = count == 0 ? c.y : sy / count;
+            int tx = clamp(worldToTile(cx), 0, width - 1);
+            int ty = clamp(worldToTile(cy), 0, height - 1);
+            int px = clamp(worldToTile(c.x), 0, width - 1);
+            int py = clamp(worldToTile(c.y), 0, height - 1);
+            int mode = count == 0 ? c.threatMode : (flying == count ? threatModeAir : (flying == 0 ? threatModeGround : threatModeBoth));
+
+            liveStartHash = 31 * liveStartHash + (tx + ty * width);
+            liveThreatHash = 31 * liveThreatHash + mode;
+            if(Math.max(Math.abs(tx - px), Math.abs(ty - py)) > autoStaleStartTiles) drifted = true;
         }
+
+        liveStartHash = 31 * liveStartHash + job.clusters.size;
+        liveThreatHash = 31 * liveThreatHash + job.clusters.size;
+
+        if(liveThreatHash != job.threatHash) return true;
+        return liveStartHash != job.startHash && drifted;
+    }
+
+    private void cancelAutoComputeJob(){
+        if(autoComputeJob != null) autoComputeJob.cancel();
+        autoComputeJob = null;
     }
 
     private static boolean clusterIsMoving(ControlledCluster cluster){
@@ -2139,6 +2597,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
 
     private void toggleDebugRiskOverlay(){
         debugRiskOverlayEnabled = !debugRiskOverlayEnabled;
+        if(!debugRiskOverlayEnabled) riskOverlay.dispose();
         showToast(debugRiskOverlayEnabled ? "Risk debug: ON (J)" : "Risk debug: OFF", 2.2f);
     }
 
@@ -2214,67 +2673,47 @@ public class StealthPathMod extends mindustry.mod.Mod{
         if(!debugRiskOverlayEnabled) return;
         if(world == null || player == null) return;
 
-        PlanningStart start = computeSelectedOrPlayerStart();
-        if(start == null || start.unit == null) return;
+        if(riskOverlay.due(Time.time, debugRiskRefreshTicks)){
+            PlanningStart start = computeSelectedOrPlayerStart();
+            if(start == null || start.unit == null) return;
 
-        int threatMode = Core.settings.getInt(keyThreatMode, threatModeGround);
-        boolean moveFlying = threatMode == threatModeAir;
-        boolean threatsAir = threatMode == threatModeAir || threatMode == threatModeBoth;
-        boolean threatsGround = threatMode == threatModeGround || threatMode == threatModeBoth;
-        boolean includeUnits = autoMode != autoModeOff || includeUnitsFromLast();
+            int threatMode = Core.settings.getInt(keyThreatMode, threatModeGround);
+            boolean moveFlying = threatMode == threatModeAir;
+            boolean threatsAir = threatMode == threatModeAir || threatMode == threatModeBoth;
+            boolean threatsGround = threatMode == threatModeGround || threatMode == threatModeBoth;
+            boolean includeUnits = autoMode != autoModeOff || includeUnitsFromLast();
+            float threatInflate = Math.max(0f, start.threatClearanceWorld);
 
-        ThreatMap map = buildThreatMap(start.unit, start.pathUnits, includeUnits, moveFlying, threatsAir, threatsGround, start.passClearanceWorld, start.threatClearanceWorld);
-        if(map == null || map.risk == null) return;
+            riskOverlay.setKey(threatsAir, threatsGround, includeUnits, threatInflate);
+            // The build uploads the texture through the planning hook in buildThreatMap.
+            buildThreatMap(start.unit, start.pathUnits, includeUnits, moveFlying, threatsAir, threatsGround, start.passClearanceWorld, start.threatClearanceWorld);
+        }
+        if(riskOverlay.width() != world.width() || riskOverlay.height() != world.height()) return;
 
         float halfW = Core.camera.width / 2f;
         float halfH = Core.camera.height / 2f;
 
-        int minX = clamp(worldToTile(Core.camera.position.x - halfW) - 1, 0, map.width - 1);
-        int maxX = clamp(worldToTile(Core.camera.position.x + halfW) + 1, 0, map.width - 1);
-        int minY = clamp(worldToTile(Core.camera.position.y - halfH) - 1, 0, map.height - 1);
-        int maxY = clamp(worldToTile(Core.camera.position.y + halfH) + 1, 0, map.height - 1);
-
-        float min = Float.POSITIVE_INFINITY;
-        float max = Float.NEGATIVE_INFINITY;
-        for(int y = minY; y <= maxY; y++){
-            for(int x = minX; x <= maxX; x++){
-                int idx = x + y * map.width;
-                float risk = Math.max(0f, map.risk[idx]);
-                if(risk < min) min = risk;
-                if(risk > max) max = risk;
-            }
-        }
-        if(!Float.isFinite(min) || !Float.isFinite(max)) return;
-        float range = Math.max(0.0001f, max - min);
-        final float minRisk = min;
-        final float invRange = 1f / range;
+        int w = riskOverlay.width(), h = riskOverlay.height();
+        int minX = clamp(worldToTile(Core.camera.position.x - halfW) - 1, 0, w - 1);
+        int maxX = clamp(worldToTile(Core.camera.position.x + halfW) + 1, 0, w - 1);
+        int minY = clamp(worldToTile(Core.camera.position.y - halfH) - 1, 0, h - 1);
+        int maxY = clamp(worldToTile(Core.camera.position.y + halfH) + 1, 0, h - 1);
 
         Draw.draw(Layer.overlayUI + 0.02f, () -> {
+            riskOverlay.drawHeat();
+
             float prevScale = Fonts.outline.getScaleX();
             float textScale = (0.18f * debugRiskTextScaleFactor()) / Math.max(0.0001f, renderer.getDisplayScale());
             Fonts.outline.getData().setScale(textScale);
 
             for(int y = minY; y <= maxY; y++){
                 for(int x = minX; x <= maxX; x++){
-                    int idx = x + y * map.width;
-                    float risk = Math.max(0f, map.risk[idx]);
-                    float normalized = Mathf.clamp((risk - minRisk) * invRange);
-
-                    if(normalized <= 0.5f){
-                        debugRiskColor.set(0.2f, 0.95f, 0.25f, 0.95f);
-                        debugRiskColor.lerp(Color.yellow, normalized * 2f);
-                    }else{
-                        debugRiskColor.set(Color.yellow);
-                        debugRiskColor.a = 0.95f;
-                        debugRiskColor.lerp(Color.red, (normalized - 0.5f) * 2f);
-                    }
-                    debugRiskColor.a = 0.95f;
-                    Draw.color(debugRiskColor);
+                    float normalized = riskOverlay.normalized(x, y);
+                    Draw.color(riskOverlay.heatColor(normalized, 0.95f));
 
                     float wx = tileToWorld(x) + tilesize * 0.5f;
                     float wy = tileToWorld(y) + tilesize * 0.5f;
-                    int value = Mathf.clamp(Math.round(normalized * 100f), 0, 100);
-                    Fonts.outline.draw(String.valueOf(value), wx, wy + tilesize * 0.12f, Align.center);
+                    Fonts.outline.draw(StealthPathRiskOverlay.label(normalized), wx, wy + tilesize * 0.12f, Align.center);
                 }
             }
 
@@ -2519,28 +2958,6 @@ public class StealthPathMod extends mindustry.mod.Mod{
         return null;
     }
 
-    private static Unit slowestUnitRefByFlight(Seq<Unit> units, Unit fallbackUnit, boolean wantFlying){
-        Unit best = null;
-        float bestSpeed = Float.POSITIVE_INFINITY;
-
-        if(units != null && units.any()){
-            for(int i = 0; i < units.size; i++){
-                Unit u = units.get(i);
-                if(u == null || !u.isAdded() || u.dead()) continue;
-                if(u.isFlying() != wantFlying) continue;
-                float s = Math.max(0.0001f, u.speed());
-                if(s < bestSpeed){
-                    bestSpeed = s;
-                    best = u;
-                }
-            }
-        }
-
-        if(best != null) return best;
-        if(fallbackUnit != null && fallbackUnit.isFlying() == wantFlying) return fallbackUnit;
-        return null;
-    }
-
     private static float slowestUnitSpeed(Seq<Unit> units, Unit fallbackUnit){
         Unit slowest = slowestUnitRef(units, fallbackUnit);
         if(slowest != null) return Math.max(0.0001f, slowest.speed());
@@ -2574,7 +2991,9 @@ public class StealthPathMod extends mindustry.mod.Mod{
             boolean threatsGround = threatMode == threatModeGround || threatMode == threatModeBoth;
 
             float r = unit.hitSize / 2f;
-            ThreatMap map = buildThreatMap(unit, singletonUnitSeq(unit), includeUnits, moveFlying, threatsAir, threatsGround, r, r);
+            int goalPacked = resolveGoalInputPacked(world.width(), world.height());
+            Rect gather = goalPacked == -1 ? null : threatGatherRegion(unit.x, unit.y, tileToWorld(goalPacked % world.width()), tileToWorld(goalPacked / world.width()));
+            ThreatMap map = buildThreatMap(unit, singletonUnitSeq(unit), includeUnits, moveFlying, threatsAir, threatsGround, r, r, gather);
             computePlayerToMousePath(unit, map, moveFlying, showToasts);
             logPlan(logFormat("sp.log.plan.finish", targetModeName(mode), elapsedMillis(planStarted), drawPaths.size, Strings.autoFixed(lastDamage, 2)));
             return;
@@ -2640,6 +3059,8 @@ public class StealthPathMod extends mindustry.mod.Mod{
         float bestDmg = Float.POSITIVE_INFINITY;
         int paths = 0;
         int firstPathTiles = 0;
+        StealthPathPlanner searcher = mainPlanner();
+        UnitCostGroup costGroup = unitCostGroup(unit, start.pathUnits);
 
         for(int ti = 0; ti < targets.size; ti++){
             Building target = targets.get(ti);
@@ -2648,20 +3069,23 @@ public class StealthPathMod extends mindustry.mod.Mod{
             IntSeq goals = buildGoalTiles(map, unit, target, moveFlying);
             if(goals.isEmpty()) continue;
             boolean[] goalMask = buildGoalMask(map, goals);
+            if(ti == 0 && Core.settings.getBool(keyDebugRecordFixtures, false)){
+                recordMapFixture(map, startX + startY * map.width, goals, unit, includeUnits, threatsAir, threatsGround, start.threatClearanceWorld);
+            }
 
             PathResult safe = null;
             PathResult result;
             if(alwaysPlanNearestPath()){
-                result = findPath(map, startX, startY, goals, goalMask, PathMode.nearest, unit, start.pathUnits, speed);
+                result = findPathCached(searcher, map, startX, startY, goals, goalMask, PathMode.nearest, costGroup, speed);
             }else{
-                safe = findPath(map, startX, startY, goals, goalMask, PathMode.safeOnly, unit, start.pathUnits, speed);
-                result = safe != null ? safe : findPath(map, startX, startY, goals, goalMask, PathMode.minDamage, unit, start.pathUnits, speed);
+                safe = findPathCached(searcher, map, startX, startY, goals, goalMask, PathMode.safeOnly, costGroup, speed);
+                result = safe != null ? safe : findPathCached(searcher, map, startX, startY, goals, goalMask, PathMode.minDamage, costGroup, speed);
             }
 
             if(result == null || result.path == null || result.path.isEmpty()) continue;
 
             IntSeq compact = compactPath(result.path, map.width);
-            float dmg = estimateDamageForUnits(map, result.path, start.pathUnits, unit, speed);
+            float dmg = estimateDamageForUnits(map, result.path, costGroup, speed, useSlowestUnitForPathCost());
             bestDmg = Math.min(bestDmg, dmg);
 
             Seq<Pos> points = toWorldPointsFromTilesWithStart(compact, map.width, start.worldX, start.worldY, target);
@@ -2849,6 +3273,8 @@ public class StealthPathMod extends mindustry.mod.Mod{
         Seq<ClusterPath> candidates = new Seq<>();
         float speed = start == null ? unit.speed() : start.speed;
         speed = Math.max(0.0001f, speed);
+        StealthPathPlanner searcher = mainPlanner();
+        UnitCostGroup costGroup = unitCostGroup(unit, pathUnits);
 
         for(int i = 0; i < clusters.size; i++){
             Seq<Building> cluster = clusters.get(i);
@@ -2865,14 +3291,14 @@ public class StealthPathMod extends mindustry.mod.Mod{
             PathResult safe = null;
             PathResult result;
             if(alwaysPlanNearestPath()){
-                result = findPath(map, startX, startY, goals, goalMask, PathMode.nearest, unit, pathUnits, speed);
+                result = findPathCached(searcher, map, startX, startY, goals, goalMask, PathMode.nearest, costGroup, speed);
             }else{
-                safe = findPath(map, startX, startY, goals, goalMask, PathMode.safeOnly, unit, pathUnits, speed);
-                result = safe != null ? safe : findPath(map, startX, startY, goals, goalMask, PathMode.minDamage, unit, pathUnits, speed);
+                safe = findPathCached(searcher, map, startX, startY, goals, goalMask, PathMode.safeOnly, costGroup, speed);
+                result = safe != null ? safe : findPathCached(searcher, map, startX, startY, goals, goalMask, PathMode.minDamage, costGroup, speed);
             }
             if(result == null) continue;
 
-            float damage = estimateDamageForUnits(map, result.path, pathUnits, unit, speed);
+            float damage = estimateDamageForUnits(map, result.path, costGroup, speed, useSlowestUnitForPathCost());
             candidates.add(new ClusterPath(target, result.path, safe != null, damage));
         }
 
@@ -2907,7 +3333,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
                 }
             }
 
-            float dmg = estimateDamageForUnits(map, segment, pathUnits, unit, speed);
+            float dmg = estimateDamageForUnits(map, segment, costGroup, speed, useSlowestUnitForPathCost());
             if(dmg < bestDamage) bestDamage = dmg;
 
             IntSeq compact = compactPath(segment, map.width);
@@ -2964,14 +3390,16 @@ public class StealthPathMod extends mindustry.mod.Mod{
 
         float speed = unit.speed();
         Seq<Unit> pathUnits = singletonUnitSeq(unit);
+        StealthPathPlanner searcher = mainPlanner();
+        UnitCostGroup costGroup = unitCostGroup(unit, pathUnits);
         PathResult result;
         if(alwaysPlanNearestPath()){
-            result = findPath(map, startX, startY, goalsAll, goalMaskAll, PathMode.nearest, unit, pathUnits, speed);
+            result = findPathCached(searcher, map, startX, startY, goalsAll, goalMaskAll, PathMode.nearest, costGroup, speed);
         }else{
             PathResult safe = !goalsSafe.isEmpty()
-                ? findPath(map, startX, startY, goalsSafe, buildGoalMask(map, goalsSafe), PathMode.safeOnly, unit, pathUnits, speed)
+                ? findPathCached(searcher, map, startX, startY, goalsSafe, buildGoalMask(map, goalsSafe), PathMode.safeOnly, costGroup, speed)
                 : null;
-            result = safe != null ? safe : findPath(map, startX, startY, goalsAll, goalMaskAll, PathMode.minDamage, unit, pathUnits, speed);
+            result = safe != null ? safe : findPathCached(searcher, map, startX, startY, goalsAll, goalMaskAll, PathMode.minDamage, costGroup, speed);
         }
 
         if(result == null){
@@ -2980,7 +3408,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
         }
 
         IntSeq compact = compactPath(result.path, map.width);
-        float dmg = estimateDamage(map, result.path, unit);
+        float dmg = estimateDamage(map, result.path, costGroup.fallback);
         drawPaths.add(new RenderPath(toWorldPointsFromTilesWithStart(compact, map.width, unit.x, unit.y, null), mousePathColor, dmg));
 
         lastDamage = dmg;
@@ -2994,7 +3422,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
     private ShiftedPath computeClusterToGoal(ControlledCluster cluster, ThreatMap map, int goalX, int goalY, boolean showToasts){
         if(showToasts) clearPaths();
 
-        ShiftedPath sp = findBestShiftedClusterPath(cluster, map, goalX, goalY);
+        ShiftedPath sp = planClusterPath(cluster, map, goalX, goalY);
         if(sp == null || sp.path == null || sp.path.isEmpty()){
             if(showToasts) showToast("@sp.toast.no-path", 2.5f);
             return null;
@@ -3015,185 +3443,6 @@ public class StealthPathMod extends mindustry.mod.Mod{
         return sp;
     }
 
-    private ShiftedPath findBestShiftedClusterPath(ControlledCluster cluster, ThreatMap map, int goalX, int goalY){
-        if(cluster == null || map == null) return null;
-
-        goalX = clamp(goalX, 0, map.width - 1);
-        goalY = clamp(goalY, 0, map.height - 1);
-
-        int goalRadius = goalCandidateRadiusTiles();
-        IntSeq goalsAll = buildNearestGoalCandidates(map, goalX, goalY, goalRadius, false);
-        if(goalsAll.isEmpty()) return null;
-        IntSeq goalsSafe = buildNearestGoalCandidates(map, goalX, goalY, goalRadius, true);
-        boolean[] goalMaskAll = buildGoalMask(map, goalsAll);
-        boolean[] goalMaskSafe = goalsSafe.isEmpty() ? null : buildGoalMask(map, goalsSafe);
-
-        int startX = clamp(worldToTile(cluster.x), 0, map.width - 1);
-        int startY = clamp(worldToTile(cluster.y), 0, map.height - 1);
-        if(!inBounds(map, startX, startY)) return null;
-        if(!map.passable[startX + startY * map.width]){
-            int startIdx = findNearestPassable(map, startX, startY, 10);
-            if(startIdx == -1) return null;
-            startX = startIdx % map.width;
-            startY = startIdx / map.width;
-        }
-
-        float speed = useSlowestUnitForPathCost()
-            ? slowestUnitSpeed(cluster.units, cluster.moveUnit)
-            : Math.max(0.0001f, cluster.speed);
-
-        boolean nearestPlan = alwaysPlanNearestPath();
-        PathResult base = findClusterPathFromStart(
-            cluster,
-            map,
-            startX,
-            startY,
-            goalsAll,
-            goalMaskAll,
-            goalsSafe,
-            goalMaskSafe,
-            speed,
-            nearestPlan
-        );
-        if(base == null || base.path == null || base.path.isEmpty()) return null;
-
-        // Plan from center first, then try small offsets to keep the whole formation's collision volume safe.
-        float offset = Mathf.clamp(cluster.maxHitRadiusWorld, tilesize * 0.5f, tilesize * 3f);
-        float[] dxs = new float[]{0f, -offset, offset, 0f, 0f};
-        float[] dys = new float[]{0f, 0f, 0f, offset, -offset};
-
-        ShiftedPath best = null;
-
-        for(int i = 0; i < dxs.length; i++){
-            float dx = dxs[i];
-            float dy = dys[i];
-
-            IntSeq shifted = shiftTilePath(map, base.path, dx, dy);
-            if(shifted == null || shifted.isEmpty()) continue;
-
-            IntSeq candidatePath = shifted;
-            if(pathWouldDrownForUnits(map, shifted, cluster.moveUnit, cluster.units, speed)){
-                int offsetStartX = clamp(worldToTile(cluster.x + dx), 0, map.width - 1);
-                int offsetStartY = clamp(worldToTile(cluster.y + dy), 0, map.height - 1);
-
-                if(!map.passable[offsetStartX + offsetStartY * map.width]){
-                    int offsetStartIdx = findNearestPassable(map, offsetStartX, offsetStartY, 10);
-                    if(offsetStartIdx == -1) continue;
-                    offsetStartX = offsetStartIdx % map.width;
-                    offsetStartY = offsetStartIdx / map.width;
-                }
-
-                PathResult rerouted = findClusterPathFromStart(
-                    cluster,
-                    map,
-                    offsetStartX,
-                    offsetStartY,
-                    goalsAll,
-                    goalMaskAll,
-                    goalsSafe,
-                    goalMaskSafe,
-                    speed,
-                    nearestPlan
-                );
-                if(rerouted == null || rerouted.path == null || rerouted.path.isEmpty()) continue;
-                if(pathWouldDrownForUnits(map, rerouted.path, cluster.moveUnit, cluster.units, speed)) continue;
-
-                logDrown(logFormat("sp.log.drown.replan", cluster.key, Strings.autoFixed(dx, 1), Strings.autoFixed(dy, 1), rerouted.path.size));
-                candidatePath = rerouted.path;
-            }
-
-            float dmgGround = cluster.hasGround ? estimateDamageForUnitsByFlight(map, candidatePath, cluster.units, cluster.moveUnit, false) : Float.NaN;
-            float dmgAir = cluster.hasAir ? estimateDamageForUnitsByFlight(map, candidatePath, cluster.units, cluster.moveUnit, true) : Float.NaN;
-
-            float maxDmg = 0f;
-            if(cluster.hasGround && Float.isFinite(dmgGround)) maxDmg = Math.max(maxDmg, dmgGround);
-            if(cluster.hasAir && Float.isFinite(dmgAir)) maxDmg = Math.max(maxDmg, dmgAir);
-
-            short minSafeDist = 0;
-            if(map.safeDist != null){
-                short min = Short.MAX_VALUE;
-                for(int s = 0; s < candidatePath.size; s++){
-                    int tidx = candidatePath.items[s];
-                    short d = map.safeDist[tidx];
-                    if(d < min) min = d;
-                }
-                minSafeDist = min == Short.MAX_VALUE ? 0 : min;
-            }
-
-            if(nearestPlan){
-                if(best == null
-                    || candidatePath.size < best.path.size
-                    || (candidatePath.size == best.path.size && (minSafeDist > best.minSafeDist || (minSafeDist == best.minSafeDist && maxDmg + 0.0001f < best.maxDmg)))){
-                    best = new ShiftedPath(candidatePath, dx, dy, dmgGround, dmgAir, maxDmg, minSafeDist);
-                }
-            }else{
-                if(best == null
-                    || maxDmg + 0.0001f < best.maxDmg
-                    || (Math.abs(maxDmg - best.maxDmg) <= 0.0001f && (minSafeDist > best.minSafeDist || (minSafeDist == best.minSafeDist && candidatePath.size < best.path.size)))){
-                    best = new ShiftedPath(candidatePath, dx, dy, dmgGround, dmgAir, maxDmg, minSafeDist);
-                }
-            }
-        }
-
-        return best;
-    }
-
-    private PathResult findClusterPathFromStart(
-        ControlledCluster cluster,
-        ThreatMap map,
-        int startX,
-        int startY,
-        IntSeq goalsAll,
-        boolean[] goalMaskAll,
-        IntSeq goalsSafe,
-        boolean[] goalMaskSafe,
-        float speed,
-        boolean nearestPlan
-    ){
-        if(cluster == null || map == null) return null;
-        if(!inBounds(map, startX, startY)) return null;
-
-        if(nearestPlan){
-            return findPath(map, startX, startY, goalsAll, goalMaskAll, PathMode.nearest, cluster.moveUnit, cluster.units, speed);
-        }
-
-        PathResult safe = goalsSafe != null && !goalsSafe.isEmpty() && goalMaskSafe != null
-            ? findPath(map, startX, startY, goalsSafe, goalMaskSafe, PathMode.safeOnly, cluster.moveUnit, cluster.units, speed)
-            : null;
-        if(safe != null && safe.path != null && !safe.path.isEmpty()) return safe;
-
-        return findPath(map, startX, startY, goalsAll, goalMaskAll, PathMode.minDamage, cluster.moveUnit, cluster.units, speed);
-    }
-
-    private static IntSeq shiftTilePath(ThreatMap map, IntSeq base, float dx, float dy){
-        if(map == null || base == null || base.isEmpty()) return null;
-
-        IntSeq out = new IntSeq(base.size);
-        int last = Integer.MIN_VALUE;
-
-        for(int i = 0; i < base.size; i++){
-            int idx = base.items[i];
-            int tx = idx % map.width;
-            int ty = idx / map.width;
-
-            float wx = tileToWorld(tx) + tilesize / 2f + dx;
-            float wy = tileToWorld(ty) + tilesize / 2f + dy;
-
-            int ntx = clamp(worldToTile(wx), 0, map.width - 1);
-            int nty = clamp(worldToTile(wy), 0, map.height - 1);
-            int nidx = ntx + nty * map.width;
-
-            if(!map.passable[nidx]) return null;
-
-            if(nidx != last){
-                out.add(nidx);
-                last = nidx;
-            }
-        }
-
-        return out;
-    }
-
     private int issueRtsMoveAlongPath(ControlledCluster cluster, IntSeq tilePath, int width){
         long issuedStarted = System.nanoTime();
         if(tilePath == null || tilePath.isEmpty()) return Integer.MIN_VALUE;
@@ -3608,94 +3857,6 @@ public class StealthPathMod extends mindustry.mod.Mod{
         return null;
     }
 
-    private static int findNearestPassable(ThreatMap map, int x, int y, int radius){
-        if(inBounds(map, x, y)){
-            int idx = x + y * map.width;
-            if(map.passable[idx]) return idx;
-        }
-
-        int best = -1;
-        float bestDst2 = Float.POSITIVE_INFINITY;
-
-        for(int dy = -radius; dy <= radius; dy++){
-            for(int dx = -radius; dx <= radius; dx++){
-                int nx = x + dx;
-                int ny = y + dy;
-                if(!inBounds(map, nx, ny)) continue;
-                int nidx = nx + ny * map.width;
-                if(!map.passable[nidx]) continue;
-
-                float d2 = dx * dx + dy * dy;
-                if(d2 < bestDst2){
-                    bestDst2 = d2;
-                    best = nidx;
-                }
-            }
-        }
-
-        return best;
-    }
-
-    private static IntSeq buildNearestGoalCandidates(ThreatMap map, int x, int y, int radius, boolean safeOnly){
-        IntSeq out = new IntSeq();
-        if(map == null) return out;
-
-        radius = Math.max(1, radius);
-        int radiusSq = radius * radius;
-        IntSeq[] buckets = new IntSeq[radiusSq + 1];
-
-        for(int dy = -radius; dy <= radius; dy++){
-            for(int dx = -radius; dx <= radius; dx++){
-                int d2 = dx * dx + dy * dy;
-                if(d2 > radiusSq) continue;
-
-                int nx = x + dx;
-                int ny = y + dy;
-                if(!inBounds(map, nx, ny)) continue;
-
-                int nidx = nx + ny * map.width;
-                if(!map.passable[nidx]) continue;
-                if(safeOnly && !isZeroDamageTile(map, nidx)) continue;
-
-                IntSeq bucket = buckets[d2];
-                if(bucket == null){
-                    bucket = new IntSeq();
-                    buckets[d2] = bucket;
-                }
-                bucket.add(nidx);
-            }
-        }
-
-        int limit = 256;
-        for(int d2 = 0; d2 < buckets.length && out.size < limit; d2++){
-            IntSeq bucket = buckets[d2];
-            if(bucket == null || bucket.isEmpty()) continue;
-            for(int i = 0; i < bucket.size && out.size < limit; i++){
-                out.add(bucket.items[i]);
-            }
-        }
-
-        return out;
-    }
-
-    private static boolean isZeroDamageTile(ThreatMap map, int idx){
-        if(map == null || idx < 0 || idx >= map.size) return false;
-        float threat = map.risk == null ? 0f : map.risk[idx];
-        float floor = map.floorRisk == null ? 0f : map.floorRisk[idx];
-        return threat <= safeRiskEps && floor <= safeRiskEps;
-    }
-
-    private static boolean[] buildGoalMask(ThreatMap map, IntSeq goals){
-        boolean[] mask = new boolean[map.size];
-        for(int i = 0; i < goals.size; i++){
-            int idx = goals.items[i];
-            if(idx >= 0 && idx < map.size){
-                mask[idx] = true;
-            }
-        }
-        return mask;
-    }
-
     private Seq<Seq<Building>> findEnemyGeneratorClusters(int minSize){
         Seq<Building> gens = new Seq<>();
         Seq<Building> derelictGens = new Seq<>();
@@ -3801,21 +3962,23 @@ public class StealthPathMod extends mindustry.mod.Mod{
         Seq<Building> derelictOut = new Seq<>();
 
         Team myTeam = player.team();
-        Seq<Building> builds = anchorBuildings();
-        for(int i = 0; i < builds.size; i++){
-            Building b = builds.get(i);
-            if(b == null) continue;
-            if(b.team == myTeam) continue;
-            if(!canTurretThreatMode(b, threatsAir, threatsGround)) continue;
-            if(estimateTurretThreatDps(b) <= 0.0001f) continue;
-
-            if(b.team == Team.derelict){
-                derelictOut.add(b);
-            }else{
-                out.add(b);
+        ensureTurretRegistry();
+        for(arc.struct.IntMap.Entry<arc.struct.IntMap<Building>> team : turretRegistry.entries()){
+            if(team.key == myTeam.id) continue;
+            for(Building b : team.value.values()){
+                if(b == null || !b.isAdded() || b.team.id != team.key) continue;
+                if(!canTurretThreatMode(b, threatsAir, threatsGround)) continue;
+                if(cachedTurretThreatDps(b) <= 0.0001f) continue;
+
+                if(b.team == Team.derelict){
+                    derelictOut.add(b);
+                }else{
+                    out.add(b);
+                }
             }
         }
 
+        turretDpsCache.flushProfiler();
         return out.isEmpty() ? derelictOut : out;
     }
 
@@ -3884,20 +4047,28 @@ public class StealthPathMod extends mindustry.mod.Mod{
     // Generic helpers extracted into `StealthPathMathUtil` (no behavior changes).
 
     private ThreatMap buildThreatMap(Unit unit, Seq<Unit> pathUnits, boolean includeUnits, boolean moveFlying, boolean threatsAir, boolean threatsGround, float passClearanceWorld, float threatClearanceWorld){
+        return buildThreatMap(unit, pathUnits, includeUnits, moveFlying, threatsAir, threatsGround, passClearanceWorld, threatClearanceWorld, null);
+    }
+
+    /**
+     * @param gather world-space region the search is expected to stay in (start/goal box plus a detour margin);
+     *               threats that cannot reach it are not re-evaluated. Null gathers the whole map.
+     */
+    private ThreatMap buildThreatMap(Unit unit, Seq<Unit> pathUnits, boolean includeUnits, boolean moveFlying, boolean threatsAir, boolean threatsGround, float passClearanceWorld, float threatClearanceWorld, Rect gather){
         ThreatMap map = obtainThreatMapScratch();
         map.safeBias = Mathf.clamp(threatClearanceWorld / tilesize, 0f, 10f);
 
-        fillPassable(map, unit, pathUnits, moveFlying, passClearanceWorld);
-        fillFloorHazards(map, unit, moveFlying);
-        applyShieldNoGoZones(map, passClearanceWorld);
+        long passKey = fillPassable(map, unit, pathUnits, moveFlying, passClearanceWorld);
+        long floorKey = fillFloorHazards(map, unit, moveFlying);
+        long shieldKey = applyShieldNoGoZones(map, passClearanceWorld);
 
         float threatInflate = Math.max(0f, threatClearanceWorld);
-        Seq<Threat> turretThreats = collectTurretThreats(unit, threatsAir, threatsGround);
-        applyThreatsToRisk(map, turretThreats, threatInflate);
+        long riskKey = StealthPathPathCache.mix(applyTurretRiskLayer(map, threatsAir, threatsGround, threatInflate, gather), Float.floatToIntBits(threatInflate));
 
         if(includeUnits){
-            Seq<Threat> unitThreats = collectUnitThreats(unit, threatsAir, threatsGround);
+            Seq<Threat> unitThreats = collectUnitThreats(unit, threatsAir, threatsGround, gather, threatInflate);
             applyThreatsToRisk(map, unitThreats, threatInflate);
+            riskKey = StealthPathPathCache.mix(riskKey, StealthPathPathCache.threatsHash(unitThreats));
         }
 
         if(computeSafeDistanceEnabled()){
@@ -3905,138 +4076,276 @@ public class StealthPathMod extends mindustry.mod.Mod{
         }else{
             map.safeDist = null;
         }
+        map.contentKey = threatMapKey(map, passKey, floorKey, shieldKey, riskKey);
+
+        // Planning just built what the debug overlay shows; refresh its texture instead of building another map.
+        if(debugRiskOverlayEnabled && riskOverlay.matches(threatsAir, threatsGround, includeUnits, threatInflate) && riskOverlay.due(Time.time, debugRiskRefreshTicks)){
+            riskOverlay.upload(map, Time.time);
+        }
         return map;
     }
 
-    private void applyThreatsToRisk(ThreatMap map, Seq<Threat> threats, float threatInflate){
-        if(map == null || threats == null || threats.isEmpty()) return;
+    /**
+     * Copies the persistent turret risk layer into {@code map.risk}.
+     * Registered enemy turrets are re-evaluated (team, mode, range, DPS incl. ammo / coolant / efficiency),
+     * but only turrets whose values changed are re-rasterized. With a gather region, turrets that cannot
+     * reach it keep their cached contribution instead of being re-evaluated.
+     *
+     * @return {@link StealthPathTurretRiskLayer#version()} of the copied layer, 0 when nothing was copied
+     */
+    private long applyTurretRiskLayer(ThreatMap map, boolean threatsAir, boolean threatsGround, float threatInflate, Rect gather){
+        if(map == null || player == null) return 0L;
+        ensureTurretRegistry();
 
-        for(int i = 0; i < threats.size; i++){
-            Threat t = threats.get(i);
-            if(t == null || t.dps <= 0.0001f || t.range <= 0.0001f) continue;
+        Team myTeam = player.team();
+        StealthPathTurretRiskLayer layer = turretRiskLayer(map.width, map.height, myTeam.id, threatsAir, threatsGround, threatInflate);
+        layer.beginSync();
+        for(arc.struct.IntMap.Entry<arc.struct.IntMap<Building>> team : turretRegistry.entries()){
+            if(team.key == myTeam.id) continue;
+
+            turretRegistryRemoveScratch.clear();
+            for(arc.struct.IntMap.Entry<Building> entry : team.value.entries()){
+                Building b = entry.value;
+                if(b == null || !b.isAdded() || b.tile == null || b.tile.build != b || b.team.id != team.key){
+                    turretRegistryRemoveScratch.add(entry.key);
+                    continue;
+                }
 
-            float r = t.range + threatInflate;
-            float r2 = r * r;
-            float mr = Math.max(0f, t.minRange);
-            float mr2 = mr * mr;
+                float range = turretThreatRange(b);
+                if(gather != null && !circleTouchesRect(b.x, b.y, range + threatInflate, gather) && layer.keep(entry.key)) continue;
 
-            // Distance is checked at tile centers; pad bounds so center candidates are never missed.
-            int minX = clamp((int)Math.floor((t.x - r) / tilesize) - 1, 0, map.width - 1);
-            int maxX = clamp((int)Math.ceil((t.x + r) / tilesize) + 1, 0, map.width - 1);
-            int minY = clamp((int)Math.floor((t.y - r) / tilesize) - 1, 0, map.height - 1);
-            int maxY = clamp((int)Math.ceil((t.y + r) / tilesize) + 1, 0, map.height - 1);
+                if(!canTurretThreatMode(b, threatsAir, threatsGround)) continue;
+                if(range <= 0.0001f) continue;
 
-            for(int ty = minY; ty <= maxY; ty++){
-                float wy = tileToWorld(ty) + tilesize / 2f;
-                for(int tx = minX; tx <= maxX; tx++){
-                    float wx = tileToWorld(tx) + tilesize / 2f;
-                    float dx = wx - t.x;
-                    float dy = wy - t.y;
-                    float d2 = dx * dx + dy * dy;
-                    if(d2 <= r2 && d2 >= mr2){
-                        map.risk[tx + ty * map.width] += t.dps;
-                    }
-                }
+                float dps = cachedTurretThreatDps(b);
+                if(dps <= 0.0001f) continue;
+                layer.sync(entry.key, b.x, b.y, range, turretThreatMinRange(b), dps, b.team == Team.derelict);
+            }
+            for(int i = 0; i < turretRegistryRemoveScratch.size; i++){
+                team.value.remove(turretRegistryRemoveScratch.get(i));
+                turretDpsCache.remove(turretRegistryRemoveScratch.get(i));
             }
         }
+        turretDpsCache.flushProfiler();
+        layer.endSync();
+        layer.copyRiskTo(map.risk);
+        return layer.version();
     }
 
-    private ThreatMap obtainThreatMapScratch(){
-        int w = world.width();
-        int h = world.height();
-        if(threatMapScratch == null || threatMapScratch.width != w || threatMapScratch.height != h){
-            threatMapScratch = new ThreatMap(w, h);
-            safeDistScratch = null;
-            safeDistQueueScratch = null;
-        }else{
-            Arrays.fill(threatMapScratch.risk, 0f);
-            Arrays.fill(threatMapScratch.floorRisk, 0f);
-            Arrays.fill(threatMapScratch.drownRate, 0f);
+    /**
+     * Start/goal bounding box (world units) padded by {@link #threatGatherMarginTiles}; reuses one Rect.
+     * 起点 / 终点包围盒外扩绕行余量（世界坐标）。
+     */
+    private Rect threatGatherRegion(float startX, float startY, float goalX, float goalY){
+        float pad = threatGatherMarginTiles * tilesize;
+        float minX = Math.min(startX, goalX) - pad;
+        float minY = Math.min(startY, goalY) - pad;
+        return threatGatherRect.set(minX, minY, Math.abs(goalX - startX) + pad * 2f, Math.abs(goalY - startY) + pad * 2f);
+    }
+
+    private static boolean circleTouchesRect(float x, float y, float r, Rect rect){
+        float dx = Math.max(0f, Math.max(rect.x - x, x - (rect.x + rect.width)));
+        float dy = Math.max(0f, Math.max(rect.y - y, y - (rect.y + rect.height)));
+        return dx * dx + dy * dy <= r * r;
+    }
+
+    private StealthPathTurretRiskLayer turretRiskLayer(int width, int height, int team, boolean threatsAir, boolean threatsGround, float threatInflate){
+        for(int i = 0; i < turretRiskLayers.size; i++){
+            StealthPathTurretRiskLayer layer = turretRiskLayers.get(i);
+            if(!layer.matches(width, height, team, threatsAir, threatsGround, threatInflate)) continue;
+            if(i != 0){
+                turretRiskLayers.remove(i);
+                turretRiskLayers.insert(0, layer);
+            }
+            return layer;
         }
-        threatMapScratch.safeDist = null;
-        return threatMapScratch;
+
+        StealthPathTurretRiskLayer layer = new StealthPathTurretRiskLayer(width, height, team, threatsAir, threatsGround, threatInflate);
+        turretRiskLayers.insert(0, layer);
+        while(turretRiskLayers.size > turretRiskLayerCacheMax){
+            turretRiskLayers.pop();
+        }
+        return layer;
     }
 
-    private void computeSafeDistance(ThreatMap map){
-        if(map == null || map.risk == null) return;
+    private void ensureTurretRegistry(){
+        if(!turretRegistryStale) return;
+        turretRegistryStale = false;
+        turretRegistry.clear();
+
+        Seq<Building> builds = anchorBuildings();
+        for(int i = 0; i < builds.size; i++){
+            Building b = builds.get(i);
+            if(isThreatTurretBuild(b)) registerTurret(b);
+        }
+    }
 
-        if(safeDistScratch == null || safeDistScratch.length < map.size){
-            safeDistScratch = new short[map.size];
+    private void trackTurretTile(Tile tile){
+        if(tile == null || turretRegistryStale) return;
+        Building b = tile.build;
+        untrackTurret(tile.pos());
+        if(isThreatTurretBuild(b) && b.tile == tile){
+            registerTurret(b);
         }
-        short[] dist = safeDistScratch;
-        Arrays.fill(dist, (short)-1);
+    }
 
-        if(safeDistQueueScratch == null || safeDistQueueScratch.length < map.size){
-            safeDistQueueScratch = new int[map.size];
+    private void registerTurret(Building b){
+        arc.struct.IntMap<Building> team = turretRegistry.get(b.team.id);
+        if(team == null){
+            team = new arc.struct.IntMap<>();
+            turretRegistry.put(b.team.id, team);
         }
-        int[] queue = safeDistQueueScratch;
-        int head = 0, tail = 0;
+        team.put(b.pos(), b);
+    }
 
-        for(int i = 0; i < map.size; i++){
-            if(map.risk[i] > 0.0001f){
-                dist[i] = 0;
-                queue[tail++] = i;
-            }
+    private void untrackTurret(int pos){
+        for(arc.struct.IntMap<Building> team : turretRegistry.values()){
+            team.remove(pos);
         }
+        turretDpsCache.remove(pos);
+    }
 
-        if(tail == 0){
-            map.safeDist = null;
-            return;
+    /** Enemy units in a uniform grid, rebuilt once per frame (units move every tick). 敌方单位网格，每帧最多重建一次。 */
+    private StealthPathThreatGrid<Unit> enemyUnitGrid(){
+        Team myTeam = player.team();
+        long frame = Core.graphics == null ? -1 : Core.graphics.getFrameId();
+        if(frame >= 0 && frame == enemyUnitGridFrame && myTeam.id == enemyUnitGridTeam) return enemyUnitGrid;
+        enemyUnitGridFrame = frame;
+        enemyUnitGridTeam = myTeam.id;
+
+        enemyUnitGrid.reset(world.width() * tilesize, world.height() * tilesize);
+        for(int i = 0; i < Groups.unit.size(); i++){
+            Unit u = Groups.unit.index(i);
+            if(u == null || u.team == myTeam) continue;
+            if(!u.isAdded() || u.dead()) continue;
+            float range = u.range();
+            if(range <= 0.0001f) continue;
+            enemyUnitGrid.add(u.x, u.y, range, u);
         }
+        return enemyUnitGrid;
+    }
 
-        while(head < tail){
-            int idx = queue[head++];
-            short d = dist[idx];
-            int nd = d == Short.MAX_VALUE ? Short.MAX_VALUE : (d + 1);
+    private void resetTurretRegistry(){
+        turretRegistry.clear();
+        turretRiskLayers.clear();
+        turretDpsCache.clear();
+        turretRegistryStale = true;
+        enemyUnitGridFrame = -1;
+        enemyUnitScratch.clear();
+    }
 
-            int x = idx % map.width;
-            int y = idx / map.width;
+    private static boolean isThreatTurretBuild(Building b){
+        return b instanceof Turret.TurretBuild || b instanceof TractorBeamTurret.TractorBeamBuild;
+    }
 
-            // 4-neighbor expansion is enough for a "center of corridor" bias.
-            if(x > 0){
-                int n = idx - 1;
-                if(dist[n] == (short)-1){
-                    dist[n] = (short)nd;
-                    queue[tail++] = n;
-                }
-            }
-            if(x < map.width - 1){
-                int n = idx + 1;
-                if(dist[n] == (short)-1){
-                    dist[n] = (short)nd;
-                    queue[tail++] = n;
-                }
+    /**
+     * Saves the planning input as a benchmark fixture (see {@link StealthPathMapFixture}) under the data directory.
+     * Turret threats are re-read from the registry so the fixture can replay {@code applyThreatsToRisk}.
+     * 将本次规划输入保存为基准测试用的 fixture（数据目录 stealthpath/fixtures）。
+     */
+    private void recordMapFixture(ThreatMap map, int startIdx, IntSeq goals, Unit unit, boolean includeUnits, boolean threatsAir, boolean threatsGround, float threatClearanceWorld){
+        float threatInflate = Math.max(0f, threatClearanceWorld);
+        Seq<Threat> threats = new Seq<>();
+        ensureTurretRegistry();
+        for(arc.struct.IntMap.Entry<arc.struct.IntMap<Building>> team : turretRegistry.entries()){
+            if(team.key == player.team().id) continue;
+            for(Building b : team.value.values()){
+                if(b == null || !b.isAdded() || !canTurretThreatMode(b, threatsAir, threatsGround)) continue;
+                float range = turretThreatRange(b);
+                float dps = cachedTurretThreatDps(b);
+                if(range <= 0.0001f || dps <= 0.0001f) continue;
+                threats.add(new Threat(b.x, b.y, range, turretThreatMinRange(b), dps));
             }
-            if(y > 0){
-                int n = idx - map.width;
-                if(dist[n] == (short)-1){
-                    dist[n] = (short)nd;
-                    queue[tail++] = n;
-                }
+        }
+        turretDpsCache.flushProfiler();
+        if(includeUnits){
+            Seq<Threat> unitThreats = collectUnitThreats(unit, threatsAir, threatsGround, null, threatInflate);
+            for(int i = 0; i < unitThreats.size; i++){
+                Threat t = unitThreats.get(i);
+                threats.add(new Threat(t.x, t.y, t.range, t.minRange, t.dps));
             }
-            if(y < map.height - 1){
-                int n = idx + map.width;
-                if(dist[n] == (short)-1){
-                    dist[n] = (short)nd;
-                    queue[tail++] = n;
-                }
+        }
+
+        ThreatMap copy = new ThreatMap(map.width, map.height);
+        copy.copyFrom(map);
+        IntSeq starts = new IntSeq();
+        starts.add(startIdx);
+        StealthPathMapFixture fixture = new StealthPathMapFixture(copy, starts, new IntSeq(goals), threats, threatInflate);
+
+        Fi file = Core.settings.getDataDirectory().child("stealthpath/fixtures/" + System.currentTimeMillis() + StealthPathMapFixture.extension);
+        try{
+            file.parent().mkdirs();
+            try(OutputStream out = file.write(false)){
+                fixture.write(out);
             }
+            logPlan(logFormat("sp.log.fixture.saved", file.absolutePath(), map.width, map.height, threats.size));
+        }catch(Throwable t){
+            Log.err("StealthPath: failed to record map fixture", t);
         }
+    }
 
-        map.safeDist = dist;
+    private void applyThreatsToRisk(ThreatMap map, Seq<Threat> threats, float threatInflate){
+        if(map == null || threats == null || threats.isEmpty()) return;
+        StealthPathRiskRaster.applyThreats(StealthPathRiskRaster.preferredKernel(), map, threats, threatInflate);
     }
 
-    private void applyShieldNoGoZones(ThreatMap map, float clearanceWorld){
-        if(map == null || map.passable == null) return;
-        if(!state.isGame() || world == null || player == null) return;
+    private ThreatMap obtainThreatMapScratch(){
+        threatMapScratchSerial++;
+        int w = world.width();
+        int h = world.height();
+        if(threatMapScratch == null || threatMapScratch.width != w || threatMapScratch.height != h){
+            threatMapScratch = new ThreatMap(w, h);
+        }else{
+            Arrays.fill(threatMapScratch.risk, 0f);
+            Arrays.fill(threatMapScratch.floorRisk, 0f);
+            Arrays.fill(threatMapScratch.drownRate, 0f);
+            threatMapScratch.touch();
+        }
+        threatMapScratch.safeDist = null;
+        ensureFloorSlots();
+        threatMapScratch.floorSlot = floorSlotCache;
+        return threatMapScratch;
+    }
 
-        float inflate = Math.max(0f, clearanceWorld);
+    private void computeSafeDistance(ThreatMap map){
+        if(map == null || map.risk == null) return;
+        map.safeDist = safeDistance.update(map.risk, map.width, map.height);
+    }
+
+    private long applyShieldNoGoZones(ThreatMap map, float clearanceWorld){
+        if(map == null || map.passable == null) return 0L;
+        if(!state.isGame() || world == null || player == null) return 0L;
+
+        return applyShieldNoGoZones(map, clearanceWorld, collectEnemyShieldBuildings(tmpShieldBuildings));
+    }
 
+    private Seq<Building> collectEnemyShieldBuildings(Seq<Building> out){
+        out.clear();
         Seq<Building> builds = anchorBuildings();
         for(int i = 0; i < builds.size; i++){
             Building b = builds.get(i);
+            if(b == null || b.team == player.team()) continue;
+            if(isShieldBuild(b)) out.add(b);
+        }
+        return out;
+    }
+
+    private static boolean isShieldBuild(Building b){
+        if(b.block instanceof BaseShield && b instanceof BaseShield.BaseShieldBuild) return true;
+        if(b.block instanceof ForceProjector && b instanceof ForceProjector.ForceBuild) return true;
+        return b.block != null && ("shield-projector".equals(b.block.name) || "large-shield-projector".equals(b.block.name));
+    }
+
+    /** @return hash of the blocked discs (center + radius), the shield part of {@link ThreatMap#contentKey} */
+    private static long applyShieldNoGoZones(ThreatMap map, float clearanceWorld, Seq<Building> shields){
+        if(map == null || map.passable == null) return 0L;
+
+        float inflate = Math.max(0f, clearanceWorld);
+        long key = shields.size;
+
+        for(int i = 0; i < shields.size; i++){
+            Building b = shields.get(i);
             if(b == null) continue;
-            if(b.team == player.team()) continue;
 
             float r = 0f;
 
@@ -4064,6 +4373,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
             }
 
             if(r <= 0.001f) continue;
+            key = StealthPathPathCache.mix(StealthPathPathCache.mix(key, b.pos()), Float.floatToIntBits(r));
 
             float r2 = r * r;
 
@@ -4088,78 +4398,36 @@ public class StealthPathMod extends mindustry.mod.Mod{
         }
     }
 
-    private void fillPassable(ThreatMap map, Unit unit, Seq<Unit> pathUnits, boolean treatFlying, float clearanceWorld){
-        if(map == null) return;
+    /** @return passable-cache key plus tile epoch, the passable part of {@link ThreatMap#contentKey} */
+    private long fillPassable(ThreatMap map, Unit unit, Seq<Unit> pathUnits, boolean treatFlying, float clearanceWorld){
+        if(map == null) return 0L;
         if(treatFlying){
             Arrays.fill(map.passable, true);
-            return;
+            return 1L;
         }
 
         if(world == null || unit == null || unit.type == null){
             Arrays.fill(map.passable, false);
-            return;
-        }
-
-        if(passableCacheUsedRevision != passableCacheRevision){
-            passableCacheByKey.clear();
-            passableCacheKeyOrder.clear();
-            passableCacheUsedRevision = passableCacheRevision;
+            return 2L;
         }
 
         int clearanceTiles = clearanceTiles(clearanceWorld);
         boolean avoidDrownLiquid = hasDrownableUnit(unit, pathUnits) && !allowSurvivableLiquidCross();
+        UnitType type = unit.type;
 
-        int key = unit.type.id;
-        key = key * 31 + (unit.type.allowLegStep ? 1 : 0);
-        key = key * 31 + (unit.type.naval ? 1 : 0);
-        key = key * 31 + (unit.type.canDrown ? 1 : 0);
+        int key = type.id;
+        key = key * 31 + (type.allowLegStep ? 1 : 0);
+        key = key * 31 + (type.naval ? 1 : 0);
+        key = key * 31 + (type.canDrown ? 1 : 0);
         key = key * 31 + (avoidDrownLiquid ? 1 : 0);
         key = key * 31 + clearanceTiles;
         key = key * 31 + map.width;
         key = key * 31 + map.height;
 
-        boolean[] cached = passableCacheByKey.get(key);
-        if(cached != null && cached.length == map.size){
-            System.arraycopy(cached, 0, map.passable, 0, map.size);
-            return;
-        }
-
-        boolean[] computed = new boolean[map.size];
-
-        for(int y = 0; y < map.height; y++){
-            for(int x = 0; x < map.width; x++){
-                int idx = x + y * map.width;
-                boolean p = passableFor(unit, world.tile(x, y), false, avoidDrownLiquid);
-                if(p && clearanceTiles > 0){
-                    for(int dy = -clearanceTiles; dy <= clearanceTiles && p; dy++){
-                        for(int dx = -clearanceTiles; dx <= clearanceTiles; dx++){
-                            int nx = x + dx;
-                            int ny = y + dy;
-                            if(nx < 0 || ny < 0 || nx >= map.width || ny >= map.height){
-                                p = false;
-                                break;
-                            }
-                            if(!passableFor(unit, world.tile(nx, ny), false, avoidDrownLiquid)){
-                                p = false;
-                                break;
-                            }
-                        }
-                    }
-                }
-                computed[idx] = p;
-            }
-        }
-
-        passableCacheByKey.put(key, computed);
-        passableCacheKeyOrder.add(key);
-
-        int maxEntries = passableCacheEntries();
-        while(passableCacheKeyOrder.size > maxEntries){
-            int dropKey = passableCacheKeyOrder.removeIndex(0);
-            passableCacheByKey.remove(dropKey);
-        }
-
-        System.arraycopy(computed, 0, map.passable, 0, map.size);
+        passableCache.fill(key, map.width, map.height, clearanceTiles,
+            (x, y) -> passableFor(type, world.tile(x, y), avoidDrownLiquid),
+            map.passable, passableCacheEntries());
+        return StealthPathPathCache.mix(StealthPathPathCache.mix(3L, threatInputEpoch), key);
     }
 
     private static int clearanceTiles(float clearanceWorld){
@@ -4167,10 +4435,11 @@ public class StealthPathMod extends mindustry.mod.Mod{
         return Math.max(0, Mathf.ceil(clearanceWorld / tilesize));
     }
 
-    private void fillFloorHazards(ThreatMap map, Unit unit, boolean treatFlying){
-        if(map == null || map.floorRisk == null || map.drownRate == null) return;
-        if(world == null || unit == null || unit.type == null) return;
-        if(treatFlying) return;
+    /** @return unit profile plus tile epoch, the floor part of {@link ThreatMap#contentKey}; 0 when the layers stay empty */
+    private long fillFloorHazards(ThreatMap map, Unit unit, boolean treatFlying){
+        if(map == null || map.floorRisk == null || map.drownRate == null) return 0L;
+        if(world == null || unit == null || unit.type == null) return 0L;
+        if(treatFlying) return 0L;
 
         boolean applyFloorDamage = !unit.type.hovering;
         boolean canDrown = unit.type.canDrown;
@@ -4206,71 +4475,48 @@ public class StealthPathMod extends mindustry.mod.Mod{
                 }
             }
         }
+
+        long key = StealthPathPathCache.mix(StealthPathPathCache.mix(4L, threatInputEpoch), unit.type.id);
+        key = StealthPathPathCache.mix(key, Float.floatToIntBits(unit.hitSize));
+        return StealthPathPathCache.mix(key, Float.floatToIntBits(reserveTicks));
     }
 
-    private static boolean passableFor(Unit unit, Tile tile, boolean treatFlying, boolean avoidDrownLiquid){
+    private static boolean passableFor(UnitType type, Tile tile, boolean avoidDrownLiquid){
         if(tile == null) return false;
-        if(treatFlying) return true;
 
         Floor floor = tile.floor();
         if(floor == null || floor.isAir()) return false;
 
         if(avoidDrownLiquid && floor.isLiquid && floor.drownTime > 0f) return false;
 
-        if(unit.type.allowLegStep){
+        if(type.allowLegStep){
             return !tile.legSolid();
         }
 
-        if(unit.type.naval){
+        if(type.naval){
             return !tile.solid() && tile.floor().isLiquid;
         }
 
         return !tile.solid();
     }
 
-    private Seq<Threat> collectTurretThreats(Unit playerUnit, boolean threatsAir, boolean threatsGround){
+    private Seq<Threat> collectUnitThreats(Unit playerUnit, boolean threatsAir, boolean threatsGround, Rect gather, float threatInflate){
         Seq<Threat> out = tmpThreats;
         Seq<Threat> derelictOut = tmpDerelictThreats;
         out.clear();
         derelictOut.clear();
 
-        Seq<Building> builds = anchorBuildings();
-        for(int i = 0; i < builds.size; i++){
-            Building b = builds.get(i);
-            if(b == null) continue;
-            if(b.team == player.team()) continue;
-            if(!canTurretThreatMode(b, threatsAir, threatsGround)) continue;
-
-            float dps = estimateTurretThreatDps(b);
-            if(dps <= 0.0001f) continue;
-
-            float range = turretThreatRange(b);
-            if(range <= 0.0001f) continue;
-            float minRange = turretThreatMinRange(b);
-            Threat t = new Threat(b.x, b.y, range, minRange, dps);
-            if(b.team == Team.derelict){
-                derelictOut.add(t);
-            }else{
-                out.add(t);
-            }
-        }
-
-        if(out.isEmpty()){
-            out.addAll(derelictOut);
+        StealthPathThreatGrid<Unit> grid = enemyUnitGrid();
+        Seq<Unit> units = enemyUnitScratch;
+        units.clear();
+        if(gather == null){
+            grid.all(units);
+        }else{
+            grid.query(gather.x, gather.y, gather.x + gather.width, gather.y + gather.height, threatInflate, units);
         }
 
-        return out;
-    }
-
-    private Seq<Threat> collectUnitThreats(Unit playerUnit, boolean threatsAir, boolean threatsGround){
-        Seq<Threat> out = tmpThreats;
-        Seq<Threat> derelictOut = tmpDerelictThreats;
-        out.clear();
-        derelictOut.clear();
-
-        for(int i = 0; i < Groups.unit.size(); i++){
-            Unit u = Groups.unit.index(i);
-            if(u == null) continue;
+        for(int i = 0; i < units.size; i++){
+            Unit u = units.get(i);
             if(u.team == player.team()) continue;
             if(!u.isAdded() || u.dead()) continue;
             if(!((threatsAir && u.type.targetAir) || (threatsGround && u.type.targetGround))) continue;
@@ -4325,11 +4571,52 @@ public class StealthPathMod extends mindustry.mod.Mod{
         float heatMul = turretHeatEfficiency(tb, turret);
         if(heatMul <= 0.0001f) return 0f;
 
+        return Math.max(0f, estimateTurretBaseDps(tb, turret, ammo, efficiency, timeScale) * heatMul * ruleScale);
+    }
+
+    /**
+     * {@link #estimateTurretThreatDps(Building)} memoized in {@link #turretDpsCache}. Misses call the estimator itself;
+     * the key holds every input it reads, with the coolant amount bucketed (see {@link StealthPathTurretDpsCache}).
+     */
+    private float cachedTurretThreatDps(Building b){
+        if(b == null || b.block == null) return 0f;
+
+        Object ammo;
+        float heatMul;
+        ConsumeLiquidBase coolant;
+        if(b.block instanceof Turret && b instanceof Turret.TurretBuild){
+            Turret.TurretBuild tb = (Turret.TurretBuild)b;
+            Turret turret = (Turret)b.block;
+            ammo = tb.peekAmmo();
+            heatMul = turretHeatEfficiency(tb, turret);
+            coolant = turret.coolant;
+        }else if(b.block instanceof TractorBeamTurret && b instanceof TractorBeamTurret.TractorBeamBuild){
+            ammo = null;
+            heatMul = 1f;
+            coolant = ((TractorBeamTurret)b.block).coolant;
+        }else{
+            return 0f;
+        }
+
+        float coolantUse = coolant == null ? 0f : coolant.amount;
+        float efficiency = Math.max(b.efficiency, b.potentialEfficiency);
+        float timeScale = b.timeScale();
+        float ruleScale = state.rules.blockDamage(b.team);
+        float dps = turretDpsCache.get(b, ammo, coolantUse, efficiency, timeScale, heatMul, ruleScale);
+        if(Float.isNaN(dps)){
+            dps = estimateTurretThreatDps(b);
+            turretDpsCache.put(b, ammo, coolantUse, efficiency, timeScale, heatMul, ruleScale, dps);
+        }
+        return dps;
+    }
+
+    /** Turret DPS before heat efficiency and the block-damage rule. 未乘热量效率与规则倍率的炮塔 DPS。 */
+    private static float estimateTurretBaseDps(Turret.TurretBuild tb, Turret turret, BulletType ammo, float efficiency, float timeScale){
         if(turret instanceof LaserTurret){
-            return estimateLaserTurretThreatDps(tb, (LaserTurret)turret, ammo, ruleScale, efficiency, timeScale, heatMul);
+            return estimateLaserTurretThreatDps(tb, (LaserTurret)turret, ammo, efficiency, timeScale);
         }
         if(turret instanceof ContinuousTurret){
-            return estimateContinuousTurretThreatDps(tb, (ContinuousTurret)turret, ammo, ruleScale, efficiency, timeScale, heatMul);
+            return estimateContinuousTurretThreatDps(tb, (ContinuousTurret)turret, ammo, efficiency, timeScale);
         }
 
         float damagePerShot = Math.max(0f, ammo.estimateDPS());
@@ -4340,11 +4627,10 @@ public class StealthPathMod extends mindustry.mod.Mod{
         reloadRate *= Math.max(0f, ammo.reloadMultiplier);
 
         float shotsPerSecond = Math.max(0f, turret.shoot.shots) * reloadRate * 60f / Math.max(0.0001f, turret.reload);
-        float dps = shotsPerSecond * damagePerShot * heatMul * ruleScale;
-        return Math.max(0f, dps);
+        return shotsPerSecond * damagePerShot;
     }
 
-    private static float estimateLaserTurretThreatDps(Turret.TurretBuild tb, LaserTurret turret, BulletType ammo, float ruleScale, float efficiency, float timeScale, float heatMul){
+    private static float estimateLaserTurretThreatDps(Turret.TurretBuild tb, LaserTurret turret, BulletType ammo, float efficiency, float timeScale){
         float beamDps = estimateContinuousBulletDps(ammo);
         if(beamDps <= 0.0001f){
             beamDps = Math.max(0f, ammo.estimateDPS());
@@ -4388,10 +4674,10 @@ public class StealthPathMod extends mindustry.mod.Mod{
             dps *= timeScale;
         }
 
-        return Math.max(0f, dps * heatMul * ruleScale);
+        return dps;
     }
 
-    private static float estimateContinuousTurretThreatDps(Turret.TurretBuild tb, ContinuousTurret turret, BulletType ammo, float ruleScale, float efficiency, float timeScale, float heatMul){
+    private static float estimateContinuousTurretThreatDps(Turret.TurretBuild tb, ContinuousTurret turret, BulletType ammo, float efficiency, float timeScale){
         float dps = estimateContinuousBulletDps(ammo);
         if(dps <= 0.0001f){
             dps = Math.max(0f, tb.estimateDps());
@@ -4405,7 +4691,7 @@ public class StealthPathMod extends mindustry.mod.Mod{
             dps *= timeScale;
         }
 
-        return Math.max(0f, dps * heatMul * ruleScale);
+        return dps;
     }
 
     private static float turretHeatEfficiency(Turret.TurretBuild tb, Turret turret){
@@ -4426,8 +4712,12 @@ public class StealthPathMod extends mindustry.mod.Mod{
         if(efficiency <= 0.0001f || timeScale <= 0.0001f) return 0f;
 
         float ruleScale = Math.max(0f, state.rules.blockDamage(tb.team));
+        return Math.max(0f, estimateTractorBaseDps(tb, turret, efficiency, timeScale) * ruleScale);
+    }
+
+    private static float estimateTractorBaseDps(TractorBeamTurret.TractorBeamBuild tb, TractorBeamTurret turret, float efficiency, float timeScale){
         float coolantMul = 1f + Mathf.clamp(turretReloadCoolantBonus(tb, turret.coolantMultiplier, turret.coolant), 0f, 1f);
-        return Math.max(0f, turret.damage * 60f * efficiency * timeScale * coolantMul * ruleScale);
+        return turret.damage * 60f * efficiency * timeScale * coolantMul;
     }
 
     private static float estimateContinuousBulletDps(BulletType ammo){
@@ -4524,122 +4814,6 @@ public class StealthPathMod extends mindustry.mod.Mod{
         out.add(idx);
     }
 
-    private void ensurePathScratch(int size){
-        if(pathBest == null || pathBest.length != size){
-            pathBest = new float[size];
-            pathBestStamp = new int[size];
-            pathParent = new int[size];
-            pathClosedStamp = new int[size];
-        }
-    }
-
-    private int nextPathStamp(){
-        pathStamp++;
-        if(pathStamp == Integer.MAX_VALUE){
-            if(pathBestStamp != null) Arrays.fill(pathBestStamp, 0);
-            if(pathClosedStamp != null) Arrays.fill(pathClosedStamp, 0);
-            pathStamp = 1;
-        }
-        return pathStamp;
-    }
-
-    private PathResult findPath(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, Unit unit, Seq<Unit> pathUnits, float speed){
-        long searchStarted = System.nanoTime();
-        Unit costUnit = useSlowestUnitForPathCost() ? slowestUnitRef(pathUnits, unit) : unit;
-        float costSpeed = useSlowestUnitForPathCost() ? slowestUnitSpeed(pathUnits, unit) : Math.max(0.0001f, speed);
-        int retries = 0;
-        int blockedTilesTotal = 0;
-
-        PathResult result = runPathSearch(map, startX, startY, goals, goalMask, mode, costUnit, costSpeed);
-        if(result != null && result.path != null && !result.path.isEmpty() && hasDrownableUnit(unit, pathUnits) && pathWouldDrownForUnits(map, result.path, unit, pathUnits, costSpeed)){
-            IntSeq restored = new IntSeq();
-            int startIdx = startX + startY * map.width;
-
-            // Retry a few times, each time blocking the drowning-critical liquid strip(s).
-            for(int attempt = 0; attempt < 4; attempt++){
-                IntSeq blocked = collectDrownBlockingTilesForUnits(map, result.path, unit, pathUnits, costSpeed);
-                retries++;
-                if(blocked.isEmpty()){
-                    result = null;
-                    break;
-                }
-
-                int added = 0;
-                for(int i = 0; i < blocked.size; i++){
-                    int idx = blocked.items[i];
-                    if(idx < 0 || idx >= map.size) continue;
-                    if(idx == startIdx) continue;
-                    if(!map.passable[idx]) continue;
-                    map.passable[idx] = false;
-                    restored.add(idx);
-                    added++;
-                }
-                blockedTilesTotal += added;
-
-                if(added == 0){
-                    result = null;
-                    break;
-                }
-
-                result = runPathSearch(map, startX, startY, goals, goalMask, mode, costUnit, costSpeed);
-                if(result == null || result.path == null || result.path.isEmpty()) break;
-                if(!pathWouldDrownForUnits(map, result.path, unit, pathUnits, costSpeed)) break;
-            }
-
-            for(int i = 0; i < restored.size; i++){
-                map.passable[restored.items[i]] = true;
-            }
-
-            if(result == null || result.path == null || result.path.isEmpty()){
-                result = null;
-            }else if(pathWouldDrownForUnits(map, result.path, unit, pathUnits, costSpeed)){
-                result = null;
-            }
-        }
-
-        int pathTiles = (result == null || result.path == null) ? 0 : result.path.size;
-        logPlan(logFormat("sp.log.plan.search",
-            pathModeName(mode),
-            startX,
-            startY,
-            goals == null ? 0 : goals.size,
-            Strings.autoFixed(costSpeed, 2),
-            retries,
-            blockedTilesTotal,
-            pathTiles,
-            (result != null && result.path != null && !result.path.isEmpty()),
-            elapsedMillis(searchStarted)));
-
-        if(retries > 0 || blockedTilesTotal > 0){
-            logDrown(logFormat("sp.log.drown.check",
-                pathModeName(mode),
-                retries,
-                blockedTilesTotal,
-                pathTiles,
-                (result != null && result.path != null && !result.path.isEmpty())));
-        }
-
-        return result;
-    }
-
-    private PathResult runPathSearch(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, Unit unit, float speed){
-        return pathfinderMode() == pathfinderDfs
-            ? findPathDfs(map, startX, startY, goals, goalMask, mode, unit, speed)
-            : findPathAStar(map, startX, startY, goals, goalMask, mode, unit, speed);
-    }
-
-    private static float segmentDistanceWorld(ThreatMap map, int a, int b){
-        int ax = a % map.width;
-        int ay = a / map.width;
-        int bx = b % map.width;
-        int by = b / map.width;
-
-        int dx = Math.abs(bx - ax);
-        int dy = Math.abs(by - ay);
-        float step = (dx + dy == 1) ? 1f : Mathf.sqrt2;
-        return tilesize * step;
-    }
-
     private static boolean isDrownCandidate(Unit unit){
         return unit != null
             && unit.type != null
@@ -4658,14 +4832,6 @@ public class StealthPathMod extends mindustry.mod.Mod{
         return isDrownCandidate(fallback);
     }
 
-    private static Floor floorAt(ThreatMap map, int idx){
-        if(map == null || idx < 0 || idx >= map.size || world == null) return null;
-        int x = idx % map.width;
-        int y = idx / map.width;
-        Tile tile = world.tile(x, y);
-        return tile == null ? null : tile.floor();
-    }
-
     private static float floorSpeedMultiplierForUnit(Unit unit, Floor floor){
         if(unit == null || unit.type == null || floor == null) return 1f;
         float sm = Math.max(0.0001f, floor.speedMultiplier);
@@ -4693,29 +4859,8 @@ public class StealthPathMod extends mindustry.mod.Mod{
         return Math.max(typeSpeed, runtime);
     }
 
-    private static float segmentSpeedForUnit(ThreatMap map, int a, int b, Unit unit, float fallbackSpeed){
-        float base = nominalSpeedForUnit(unit, fallbackSpeed);
-        if(unit == null || unit.type == null) return base;
-        if(unit.type.flying || unit.type.hovering) return base;
-
-        Floor floorA = floorAt(map, a);
-        Floor floorB = floorAt(map, b);
-        float segMulA = floorTravelSpeedMultiplierForUnit(unit, floorA);
-        float segMulB = floorTravelSpeedMultiplierForUnit(unit, floorB);
-        float segMul = (segMulA + segMulB) * 0.5f;
-
-        return Math.max(0.0001f, base * segMul);
-    }
-
-    private static float segmentTicksForUnit(ThreatMap map, int a, int b, Unit unit, float fallbackSpeed){
-        float speed = segmentSpeedForUnit(map, a, b, unit, fallbackSpeed);
-        return segmentDistanceWorld(map, a, b) / Math.max(0.0001f, speed);
-    }
-
-    private static float drownRateAt(ThreatMap map, int idx, Unit unit){
+    private static float floorDrownRateForUnit(Floor floor, Unit unit){
         if(!isDrownCandidate(unit)) return 0f;
-
-        Floor floor = floorAt(map, idx);
         if(floor == null || !floor.isLiquid || floor.drownTime <= 0f) return 0f;
 
         float unitFactor = Math.max(0.0001f, unit.hitSize / 8f * Math.max(0.0001f, unit.type.drownTimeMultiplier));
@@ -4727,533 +4872,177 @@ public class StealthPathMod extends mindustry.mod.Mod{
         return 1f / safeDenom;
     }
 
-    private static float avgDrownRateForUnit(ThreatMap map, int a, int b, Unit unit){
-        return (drownRateAt(map, a, unit) + drownRateAt(map, b, unit)) * 0.5f;
-    }
-
-    private static boolean pathWouldDrown(ThreatMap map, IntSeq tilePath, Unit unit, float fallbackSpeed){
-        if(map == null || tilePath == null || tilePath.size <= 1) return false;
-        if(!isDrownCandidate(unit)) return false;
-
-        float progress = 0f;
-        for(int i = 0; i < tilePath.size - 1; i++){
-            int a = tilePath.items[i];
-            int b = tilePath.items[i + 1];
-            float ticks = segmentTicksForUnit(map, a, b, unit, fallbackSpeed);
-            float rate = avgDrownRateForUnit(map, a, b, unit);
-
-            if(rate > 0.000001f){
-                progress += rate * ticks;
-                if(progress >= 0.999f) return true;
-                progress = Math.min(progress, 1f);
-            }else{
-                progress = Math.max(0f, progress - ticks / 50f);
-            }
-        }
-
-        return false;
-    }
-
-    private static boolean pathWouldDrownForUnits(ThreatMap map, IntSeq tilePath, Unit fallback, Seq<Unit> units, float fallbackSpeed){
-        if(map == null || tilePath == null || tilePath.size <= 1) return false;
+    private static float floorDamagePerTickForUnit(Floor floor, Unit unit){
+        if(floor == null) return 0f;
+        if(unit != null && unit.type != null && unit.type.hovering) return 0f;
 
-        boolean checkedAny = false;
-        if(units != null && units.any()){
-            for(int i = 0; i < units.size; i++){
-                Unit u = units.get(i);
-                if(!isDrownCandidate(u)) continue;
-                checkedAny = true;
-                float speed = nominalSpeedForUnit(u, fallbackSpeed);
-                if(pathWouldDrown(map, tilePath, u, speed)) return true;
-            }
+        float perTick = Math.max(0f, floor.damageTaken);
+        if(floor.status != null && floor.statusDuration > 0.0001f && (unit == null || !unit.isImmune(floor.status))){
+            perTick += Math.max(0f, floor.status.damage);
         }
-
-        if(checkedAny) return false;
-        return pathWouldDrown(map, tilePath, fallback, fallbackSpeed);
+        return perTick;
     }
 
-    private static IntSeq collectDrownBlockingTiles(ThreatMap map, IntSeq tilePath, Unit unit, float fallbackSpeed){
-        IntSeq blocked = new IntSeq();
-        if(map == null || tilePath == null || tilePath.size <= 1) return blocked;
-        if(!isDrownCandidate(unit)) return blocked;
-
-        boolean[] marked = new boolean[map.size];
-        boolean[] inRun = new boolean[map.size];
-        IntSeq run = new IntSeq();
-        boolean runFatal = false;
-        float progress = 0f;
-
-        for(int i = 0; i < tilePath.size - 1; i++){
-            int a = tilePath.items[i];
-            int b = tilePath.items[i + 1];
-            float ticks = segmentTicksForUnit(map, a, b, unit, fallbackSpeed);
-            float rate = avgDrownRateForUnit(map, a, b, unit);
-
-            if(rate > 0.000001f){
-                if(a >= 0 && a < map.size && !inRun[a]){
-                    inRun[a] = true;
-                    run.add(a);
-                }
-                if(b >= 0 && b < map.size && !inRun[b]){
-                    inRun[b] = true;
-                    run.add(b);
-                }
-
-                progress += rate * ticks;
-                if(progress >= 0.999f){
-                    runFatal = true;
-                    progress = 1f;
-                }
-            }else{
-                if(runFatal){
-                    for(int r = 0; r < run.size; r++){
-                        int idx = run.items[r];
-                        if(idx < 0 || idx >= map.size || marked[idx]) continue;
-                        marked[idx] = true;
-                        blocked.add(idx);
-                    }
+    private void ensureFloorSlots(){
+        if(world == null) return;
+        int width = world.width();
+        int height = world.height();
+        if(floorSlotCache != null && floorSlotCache.length == width * height) return;
+
+        floorSlotFloors.clear();
+        IntIntMap slotByFloorId = new IntIntMap();
+        short[] slots = new short[width * height];
+        for(int y = 0; y < height; y++){
+            for(int x = 0; x < width; x++){
+                Tile tile = world.tile(x, y);
+                Floor floor = tile == null ? null : tile.floor();
+                int idx = x + y * width;
+                if(floor == null){
+                    slots[idx] = -1;
+                    continue;
                 }
-
-                for(int r = 0; r < run.size; r++){
-                    int idx = run.items[r];
-                    if(idx >= 0 && idx < map.size) inRun[idx] = false;
+                int slot = slotByFloorId.get(floor.id, -1);
+                if(slot == -1){
+                    slot = floorSlotFloors.size;
+                    slotByFloorId.put(floor.id, slot);
+                    floorSlotFloors.add(floor);
                 }
-                run.clear();
-                runFatal = false;
-                progress = Math.max(0f, progress - ticks / 50f);
-            }
-        }
-
-        if(runFatal){
-            for(int r = 0; r < run.size; r++){
-                int idx = run.items[r];
-                if(idx < 0 || idx >= map.size || marked[idx]) continue;
-                marked[idx] = true;
-                blocked.add(idx);
+                slots[idx] = (short)slot;
             }
         }
-
-        return blocked;
+        floorSlotCache = slots;
+    }
+
+    /** Captures everything the planner needs to know about {@code unit} (may be null). */
+    private UnitCostProfile unitCostProfile(Unit unit){
+        int slots = floorSlotFloors.size;
+        float[] speedMul = new float[slots];
+        float[] damage = new float[slots];
+        float[] drown = new float[slots];
+        boolean drownCandidate = isDrownCandidate(unit);
+        for(int i = 0; i < slots; i++){
+            Floor floor = floorSlotFloors.get(i);
+            speedMul[i] = floorTravelSpeedMultiplierForUnit(unit, floor);
+            damage[i] = floorDamagePerTickForUnit(floor, unit);
+            drown[i] = drownCandidate ? floorDrownRateForUnit(floor, unit) : 0f;
+        }
+
+        if(unit == null){
+            return new UnitCostProfile(false, false, false, false, false, false, 0.0001f, 0.0001f, speedMul, damage, drown);
+        }
+
+        boolean typed = unit.type != null;
+        return new UnitCostProfile(
+            true,
+            unit.isAdded() && !unit.dead(),
+            unit.isFlying(),
+            typed,
+            typed && !unit.type.flying && !unit.type.hovering,
+            drownCandidate,
+            Math.max(0.0001f, unit.speed()),
+            nominalSpeedForUnit(unit, 0f),
+            speedMul,
+            damage,
+            drown
+        );
     }
 
-    private static IntSeq collectDrownBlockingTilesForUnits(ThreatMap map, IntSeq tilePath, Unit fallback, Seq<Unit> units, float fallbackSpeed){
-        IntSeq out = new IntSeq();
-        if(map == null || tilePath == null || tilePath.size <= 1) return out;
-
-        boolean checkedAny = false;
-        if(units != null && units.any()){
+    private UnitCostGroup unitCostGroup(Unit fallback, Seq<Unit> units){
+        ensureFloorSlots();
+        Seq<UnitCostProfile> profiles = new Seq<>(UnitCostProfile.class);
+        if(units != null){
             for(int i = 0; i < units.size; i++){
                 Unit u = units.get(i);
-                if(!isDrownCandidate(u)) continue;
-                checkedAny = true;
-                float speed = nominalSpeedForUnit(u, fallbackSpeed);
-                if(!pathWouldDrown(map, tilePath, u, speed)) continue;
-
-                IntSeq blocked = collectDrownBlockingTiles(map, tilePath, u, speed);
-                mergeUniqueInts(out, blocked);
-            }
-        }
-
-        if(!checkedAny && pathWouldDrown(map, tilePath, fallback, fallbackSpeed)){
-            mergeUniqueInts(out, collectDrownBlockingTiles(map, tilePath, fallback, fallbackSpeed));
-        }
-
-        return out;
-    }
-
-    private static void mergeUniqueInts(IntSeq dst, IntSeq src){
-        if(dst == null || src == null || src.isEmpty()) return;
-        IntSet existing = new IntSet(dst.size + src.size);
-        for(int i = 0; i < dst.size; i++) existing.add(dst.items[i]);
-        for(int i = 0; i < src.size; i++){
-            int v = src.items[i];
-            if(existing.add(v)) dst.add(v);
-        }
-    }
-
-    private PathResult findPathAStar(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, Unit unit, float speed){
-        int startIdx = startX + startY * map.width;
-        if(!map.passable[startIdx]) return null;
-        boolean safeOnly = mode == PathMode.safeOnly;
-        boolean nearest = mode == PathMode.nearest;
-        if(safeOnly && !isZeroDamageTile(map, startIdx)) return null;
-
-        ensurePathScratch(map.size);
-        int stamp = nextPathStamp();
-
-        pathOpen.clear();
-
-        pathBestStamp[startIdx] = stamp;
-        pathBest[startIdx] = 0f;
-        pathParent[startIdx] = -1;
-        pathOpen.add(new Node(startIdx, heuristic(map, startX, startY, goals, mode), 0f));
-
-        while(!pathOpen.isEmpty()){
-            Node cur = pathOpen.poll();
-            int idx = cur.idx;
-
-            if(pathClosedStamp[idx] == stamp) continue;
-            if(pathBestStamp[idx] != stamp || cur.g != pathBest[idx]) continue;
-            pathClosedStamp[idx] = stamp;
-
-            if(goalMask[idx]){
-                return new PathResult(reconstruct(pathParent, idx));
-            }
-
-            int x = idx % map.width;
-            int y = idx / map.width;
-
-            for(int dy = -1; dy <= 1; dy++){
-                for(int dx = -1; dx <= 1; dx++){
-                    if(dx == 0 && dy == 0) continue;
-                    int nx = x + dx;
-                    int ny = y + dy;
-                    if(nx < 0 || ny < 0 || nx >= map.width || ny >= map.height) continue;
-
-                    int nidx = nx + ny * map.width;
-                    if(pathClosedStamp[nidx] == stamp) continue;
-                    if(!map.passable[nidx]) continue;
-                    if(safeOnly && !isZeroDamageTile(map, nidx)) continue;
-
-                    // No cutting corners through blocked tiles.
-                    if(dx != 0 && dy != 0){
-                        int aidx = (x + dx) + y * map.width;
-                        int bidx = x + (y + dy) * map.width;
-                        if(!map.passable[aidx] || !map.passable[bidx]) continue;
-                        if(safeOnly && (!isZeroDamageTile(map, aidx) || !isZeroDamageTile(map, bidx))) continue;
-                    }
-
-                    float step = (dx == 0 || dy == 0) ? 1f : Mathf.sqrt2;
-
-                    float ng;
-                    if(safeOnly || nearest){
-                        float tie = step * 0.0001f;
-                        ng = pathBest[idx] + step + tie;
-
-                        // Prefer the center of safe corridors (farther from risk zones) when multiple safe paths exist.
-                        if(safeOnly && map.safeDist != null && map.safeBias > 0.0001f){
-                            int sd = map.safeDist[nidx];
-                            // Larger safeDist => smaller penalty; bias scales with formation size.
-                            float centerBias = map.safeBias * safeCorridorBiasFactor();
-                            ng += centerBias / (Math.max(0f, sd) + 1f);
-                        }
-                    }else{
-                        float distWorld = tilesize * step;
-                        float dmg = edgeDamage(map, idx, nidx, distWorld, unit, speed, true);
-                        float distBias = step * minDamageDistanceBias;
-                        float turnBias = turnSeverity(pathParent[idx], idx, nidx, map.width) * minDamageTurnBias;
-                        float tie = step * 0.00001f;
-                        ng = pathBest[idx] + dmg + distBias + turnBias + tie;
-                    }
-
-                    float prev = (pathBestStamp[nidx] == stamp) ? pathBest[nidx] : Float.POSITIVE_INFINITY;
-                    if(ng >= prev) continue;
-
-                    pathBestStamp[nidx] = stamp;
-                    pathBest[nidx] = ng;
-                    pathParent[nidx] = idx;
-
-                    float h = heuristic(map, nx, ny, goals, mode);
-                    pathOpen.add(new Node(nidx, ng + h, ng));
-                }
+                if(u != null) profiles.add(unitCostProfile(u));
             }
         }
-
-        return null;
+        return new UnitCostGroup(unitCostProfile(fallback), profiles.toArray());
     }
 
-    private PathResult findPathDfs(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, Unit unit, float speed){
-        int startIdx = startX + startY * map.width;
-        if(!map.passable[startIdx]) return null;
-
-        boolean safeOnly = mode == PathMode.safeOnly;
-        boolean nearest = mode == PathMode.nearest;
-        if(safeOnly && !isZeroDamageTile(map, startIdx)) return null;
-
-        ensurePathScratch(map.size);
-        int stamp = nextPathStamp();
-
-        pathStack.clear();
-        pathStack.add(startIdx);
-
-        pathBestStamp[startIdx] = stamp;
-        pathBest[startIdx] = 0f;
-        pathParent[startIdx] = -1;
-
-        float bestGoal = Float.POSITIVE_INFINITY;
-        int bestGoalIdx = -1;
-
-        while(pathStack.size > 0){
-            int idx = pathStack.pop();
-            if(pathBestStamp[idx] != stamp) continue;
-
-            float g = pathBest[idx];
-            if(g >= bestGoal) continue;
-
-            if(goalMask[idx]){
-                bestGoal = g;
-                bestGoalIdx = idx;
-                continue;
-            }
-
-            int x = idx % map.width;
-            int y = idx / map.width;
-
-            for(int dy = -1; dy <= 1; dy++){
-                for(int dx = -1; dx <= 1; dx++){
-                    if(dx == 0 && dy == 0) continue;
-                    int nx = x + dx;
-                    int ny = y + dy;
-                    if(nx < 0 || ny < 0 || nx >= map.width || ny >= map.height) continue;
-
-                    int nidx = nx + ny * map.width;
-                    if(!map.passable[nidx]) continue;
-                    if(safeOnly && !isZeroDamageTile(map, nidx)) continue;
-
-                    // No cutting corners through blocked tiles.
-                    if(dx != 0 && dy != 0){
-                        int aidx = (x + dx) + y * map.width;
-                        int bidx = x + (y + dy) * map.width;
-                        if(!map.passable[aidx] || !map.passable[bidx]) continue;
-                        if(safeOnly && (!isZeroDamageTile(map, aidx) || !isZeroDamageTile(map, bidx))) continue;
-                    }
-
-                    float step = (dx == 0 || dy == 0) ? 1f : Mathf.sqrt2;
-
-                    float ng;
-                    if(safeOnly || nearest){
-                        float tie = step * 0.0001f;
-                        ng = g + step + tie;
-
-                        if(safeOnly && map.safeDist != null && map.safeBias > 0.0001f){
-                            int sd = map.safeDist[nidx];
-                            float centerBias = map.safeBias * safeCorridorBiasFactor();
-                            ng += centerBias / (Math.max(0f, sd) + 1f);
-                        }
-                    }else{
-                        float distWorld = tilesize * step;
-                        float dmg = edgeDamage(map, idx, nidx, distWorld, unit, speed, true);
-                        float distBias = step * minDamageDistanceBias;
-                        float turnBias = turnSeverity(pathParent[idx], idx, nidx, map.width) * minDamageTurnBias;
-                        float tie = step * 0.00001f;
-                        ng = g + dmg + distBias + turnBias + tie;
-                    }
-
-                    if(ng >= bestGoal) continue;
-
-                    float prev = (pathBestStamp[nidx] == stamp) ? pathBest[nidx] : Float.POSITIVE_INFINITY;
-                    if(ng >= prev) continue;
-
-                    pathBestStamp[nidx] = stamp;
-                    pathBest[nidx] = ng;
-                    pathParent[nidx] = idx;
-                    pathStack.add(nidx);
-                }
-            }
-        }
-
-        if(bestGoalIdx == -1) return null;
-        return new PathResult(reconstruct(pathParent, bestGoalIdx));
-    }
-
-    private static float turnSeverity(int prevIdx, int curIdx, int nextIdx, int width){
-        if(prevIdx < 0 || curIdx < 0 || nextIdx < 0 || width <= 0) return 0f;
-
-        int px = prevIdx % width;
-        int py = prevIdx / width;
-        int cx = curIdx % width;
-        int cy = curIdx / width;
-        int nx = nextIdx % width;
-        int ny = nextIdx / width;
-
-        int inDx = Integer.compare(cx, px);
-        int inDy = Integer.compare(cy, py);
-        int outDx = Integer.compare(nx, cx);
-        int outDy = Integer.compare(ny, cy);
-
-        if((inDx == 0 && inDy == 0) || (outDx == 0 && outDy == 0)) return 0f;
-
-        float inLen = Mathf.len(inDx, inDy);
-        float outLen = Mathf.len(outDx, outDy);
-        if(inLen <= 0.0001f || outLen <= 0.0001f) return 0f;
-
-        float cos = (inDx * outDx + inDy * outDy) / (inLen * outLen);
-        cos = Mathf.clamp(cos, -1f, 1f);
-        return 1f - cos;
-    }
-
-    private static float heuristic(ThreatMap map, int x, int y, IntSeq goals, PathMode mode){
-        float best = Float.POSITIVE_INFINITY;
-        for(int i = 0; i < goals.size; i++){
-            int idx = goals.items[i];
-            int gx = idx % map.width;
-            int gy = idx / map.width;
-            float dst = octileDistance(x, y, gx, gy);
-            if(dst < best) best = dst;
-        }
-
-        if(!Float.isFinite(best)) return 0f;
-        return mode == PathMode.minDamage ? best * minDamageDistanceBias : best;
-    }
-
-    private static float octileDistance(int x1, int y1, int x2, int y2){
-        int dx = Math.abs(x2 - x1);
-        int dy = Math.abs(y2 - y1);
-        int diag = Math.min(dx, dy);
-        int straight = Math.max(dx, dy) - diag;
-        return diag * Mathf.sqrt2 + straight;
-    }
-
-    private static IntSeq reconstruct(int[] parent, int endIdx){
-        IntSeq out = new IntSeq();
-        int cur = endIdx;
-        while(cur != -1){
-            out.add(cur);
-            cur = parent[cur];
-        }
-        out.reverse();
-        return out;
-    }
-
-    // Path compaction/hash extracted into `StealthPathPathUtil`.
-
-    private static float edgeDamage(ThreatMap map, int a, int b, float distWorld, float speed, boolean includeThreat){
-        if(map == null || distWorld <= 0.0001f) return 0f;
-
-        float v = Math.max(0.0001f, speed);
-        float seconds = distWorld / (v * 60f);
-
-        float dps = 0f;
-        if(includeThreat && map.risk != null){
-            dps += (map.risk[a] + map.risk[b]) * 0.5f;
-        }
-        if(map.floorRisk != null){
-            dps += (map.floorRisk[a] + map.floorRisk[b]) * 0.5f;
-        }
-
-        return dps * seconds;
+    private static PlanSettings planSettings(){
+        return new PlanSettings(pathfinderMode(), useSlowestUnitForPathCost(), alwaysPlanNearestPath(), safeCorridorBiasFactor(), goalCandidateRadiusTiles());
     }
 
-    private static float floorDamagePerTickForUnit(Floor floor, Unit unit){
-        if(floor == null) return 0f;
-        if(unit != null && unit.type != null && unit.type.hovering) return 0f;
-
-        float perTick = Math.max(0f, floor.damageTaken);
-        if(floor.status != null && floor.statusDuration > 0.0001f && (unit == null || !unit.isImmune(floor.status))){
-            perTick += Math.max(0f, floor.status.damage);
+    private static void planLogLine(String category, String key, Object... args){
+        for(int i = 0; i < args.length; i++){
+            if(args[i] instanceof PathMode) args[i] = pathModeName((PathMode)args[i]);
         }
-        return perTick;
+        debugLog(category, logFormat(key, args));
     }
 
-    private static float edgeDamage(ThreatMap map, int a, int b, float distWorld, Unit unit, float fallbackSpeed, boolean includeThreat){
-        if(map == null || distWorld <= 0.0001f) return 0f;
-
-        float segSpeed = segmentSpeedForUnit(map, a, b, unit, fallbackSpeed);
-        float seconds = distWorld / (Math.max(0.0001f, segSpeed) * 60f);
-
-        float dps = 0f;
-        if(includeThreat && map.risk != null){
-            dps += (map.risk[a] + map.risk[b]) * 0.5f;
-        }
-
-        Floor floorA = floorAt(map, a);
-        Floor floorB = floorAt(map, b);
-        float floorPerTick = (floorDamagePerTickForUnit(floorA, unit) + floorDamagePerTickForUnit(floorB, unit)) * 0.5f;
-        dps += floorPerTick * 60f;
-
-        return dps * seconds;
+    /** Main-thread planner bound to the current settings. */
+    private StealthPathPlanner mainPlanner(){
+        planner.begin(planSettings(), debugLogsEnabled() ? StealthPathMod::planLogLine : null);
+        return planner;
     }
 
-    private static float estimateDamage(ThreatMap map, IntSeq tilePath, Unit unit){
-        if(tilePath == null || tilePath.size <= 1) return 0f;
-        if(unit == null) return 0f;
-
-        float fallbackSpeed = Math.max(0.0001f, unit.speed());
-        float dmg = 0f;
-
-        for(int i = 0; i < tilePath.size - 1; i++){
-            int a = tilePath.items[i];
-            int b = tilePath.items[i + 1];
-            float distWorld = segmentDistanceWorld(map, a, b);
-            dmg += edgeDamage(map, a, b, distWorld, unit, fallbackSpeed, true);
-        }
-
-        return dmg;
+    private ShiftedPath planClusterPath(ControlledCluster cluster, ThreatMap map, int goalX, int goalY){
+        if(cluster == null || map == null) return null;
+        StealthPathPlanner searcher = mainPlanner();
+        UnitCostGroup units = unitCostGroup(cluster.moveUnit, cluster.units);
+        StealthPathPathCache.Key key = clusterPathKey(cluster, map, goalX, goalY, units, searcher.settings());
+        if(pathCache.lookup(key)) return pathCache.shiftedValue();
+        ShiftedPath result = searcher.findBestShiftedClusterPath(cluster, map, goalX, goalY, units);
+        pathCache.store(key, result);
+        return result;
     }
 
-    private static float estimateDamage(ThreatMap map, IntSeq tilePath, float speed){
-        if(tilePath == null || tilePath.size <= 1) return 0f;
-
-        speed = Math.max(0.0001f, speed);
-        float dmg = 0f;
-
-        for(int i = 0; i < tilePath.size - 1; i++){
-            int a = tilePath.items[i];
-            int b = tilePath.items[i + 1];
-
-            int ax = a % map.width;
-            int ay = a / map.width;
-            int bx = b % map.width;
-            int by = b / map.width;
-
-            int dx = Math.abs(bx - ax);
-            int dy = Math.abs(by - ay);
-            float step = (dx + dy == 1) ? 1f : Mathf.sqrt2;
-
-            float distWorld = tilesize * step;
-            dmg += edgeDamage(map, a, b, distWorld, speed, true);
-        }
-
-        return dmg;
+    /** {@link StealthPathPlanner#findPath} through {@link #pathCache}. 经过结果缓存的 findPath。 */
+    private PathResult findPathCached(StealthPathPlanner searcher, ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask,
+                                      PathMode mode, UnitCostGroup units, float speed){
+        long extra = StealthPathPathCache.mix(StealthPathPathCache.settingsHash(searcher.settings()), mode.ordinal());
+        StealthPathPathCache.Key key = pathCache.key(StealthPathPathCache.kindPath, map.contentKey, startX + startY * map.width,
+            StealthPathPathCache.tilesHash(goals), StealthPathPathCache.unitsHash(units, speed), extra);
+        if(pathCache.lookup(key)) return pathCache.pathValue();
+        PathResult result = searcher.findPath(map, startX, startY, goals, goalMask, mode, units, speed);
+        pathCache.store(key, result);
+        return result;
     }
 
-    private static float estimateDamageForUnits(ThreatMap map, IntSeq tilePath, Seq<Unit> units, Unit fallbackUnit, float fallbackSpeed){
-        if(tilePath == null || tilePath.size <= 1) return 0f;
-
-        if(useSlowestUnitForPathCost()){
-            Unit slowest = slowestUnitRef(units, fallbackUnit);
-            if(slowest != null) return estimateDamage(map, tilePath, slowest);
-            return estimateDamage(map, tilePath, fallbackSpeed);
-        }
-
-        float max = 0f;
-        boolean hasAny = false;
-        if(units != null && units.any()){
-            for(int i = 0; i < units.size; i++){
-                Unit u = units.get(i);
-                if(u == null || !u.isAdded() || u.dead()) continue;
-                hasAny = true;
-                max = Math.max(max, estimateDamage(map, tilePath, u));
+    /**
+     * Cache key of one cluster plan. The goal tile stands in for the goal mask: both masks are derived from the map and this tile.
+     * 集群寻路的缓存键；终点掩码由威胁图和终点格决定，因此只用终点格参与哈希。
+     */
+    private StealthPathPathCache.Key clusterPathKey(ControlledCluster cluster, ThreatMap map, int goalX, int goalY, UnitCostGroup units, PlanSettings settings){
+        long extra = StealthPathPathCache.mix(StealthPathPathCache.settingsHash(settings), Float.floatToIntBits(cluster.maxHitRadiusWorld));
+        extra = StealthPathPathCache.mix(extra, (cluster.hasGround ? 1 : 0) | (cluster.hasAir ? 2 : 0));
+        int start = worldToTile(cluster.x) + worldToTile(cluster.y) * map.width;
+        return pathCache.key(StealthPathPathCache.kindShifted, map.contentKey, start,
+            StealthPathPathCache.mix(StealthPathPathCache.clusterStartHash(cluster, map.width, map.height), goalX + goalY * map.width),
+            StealthPathPathCache.unitsHash(units, cluster.speed), extra);
+    }
+
+    /**
+     * Combines the per-layer input keys of a freshly built map into {@link ThreatMap#contentKey}; the safe-distance
+     * field and floor slots are derived from the same inputs.
+     * 由各图层的输入键合成威胁图输入键（安全距离场与地板槽位由同样的输入导出）。
+     */
+    private long threatMapKey(ThreatMap map, long passKey, long floorKey, long shieldKey, long riskKey){
+        long h = StealthPathPathCache.mix(map.width, map.height);
+        h = StealthPathPathCache.mix(h, Float.floatToIntBits(map.safeBias) ^ (map.safeDist == null ? 0 : 0x5bd1e995));
+        h = StealthPathPathCache.mix(h, passKey);
+        h = StealthPathPathCache.mix(h, floorKey);
+        h = StealthPathPathCache.mix(h, shieldKey);
+        return StealthPathPathCache.mix(h, riskKey);
+    }
+
+    private ThreatMap obtainPlannerSnapshot(ThreatMap src){
+        ThreatMap snapshot = null;
+        while(plannerSnapshotPool.any()){
+            ThreatMap pooled = plannerSnapshotPool.pop();
+            if(pooled.width == src.width && pooled.height == src.height){
+                snapshot = pooled;
+                break;
             }
         }
-        if(hasAny) return max;
-        if(fallbackUnit != null) return estimateDamage(map, tilePath, fallbackUnit);
-        return estimateDamage(map, tilePath, fallbackSpeed);
+        if(snapshot == null) snapshot = new ThreatMap(src.width, src.height);
+        snapshot.copyFrom(src);
+        return snapshot;
     }
 
-    private static float estimateDamageForUnitsByFlight(ThreatMap map, IntSeq tilePath, Seq<Unit> units, Unit fallbackUnit, boolean wantFlying){
-        if(tilePath == null || tilePath.size <= 1) return Float.NaN;
-
-        if(useSlowestUnitForPathCost()){
-            Unit slowest = slowestUnitRefByFlight(units, fallbackUnit, wantFlying);
-            if(slowest == null) return Float.NaN;
-            return estimateDamage(map, tilePath, slowest);
-        }
-
-        float max = Float.NaN;
-        if(units != null && units.any()){
-            for(int i = 0; i < units.size; i++){
-                Unit u = units.get(i);
-                if(u == null || !u.isAdded() || u.dead()) continue;
-                if(u.isFlying() != wantFlying) continue;
-                float d = estimateDamage(map, tilePath, u);
-                max = Float.isNaN(max) ? d : Math.max(max, d);
-            }
-        }
-
-        if(!Float.isNaN(max)) return max;
-        if(fallbackUnit != null && fallbackUnit.isFlying() == wantFlying) return estimateDamage(map, tilePath, fallbackUnit);
-        return Float.NaN;
+    private void recyclePlannerSnapshot(ThreatMap map){
+        if(map == null || plannerSnapshotPool.size >= StealthPathPlanTask.workers() * 2) return;
+        plannerSnapshotPool.add(map);
     }
 
     private void showToast(String keyOrText, float seconds){
@@ -5621,6 +5410,22 @@ public class StealthPathMod extends mindustry.mod.Mod{
             t.add(overlayHoverTotalValue).left().growX();
         }).padTop(6f).growX().row();
 
+        overlayHoverDpsContent.table(t -> {
+            t.left().defaults().left().minWidth(0f).growX();
+            t.add("Cache").color(key).padRight(8f);
+            Label cacheValue = new Label("-", Styles.outlineLabel);
+            cacheValue.setColor(number);
+            long[] shown = {-1L};
+            cacheValue.update(() -> {
+                long lookups = pathCache.lookups();
+                if(lookups == shown[0]) return;
+                shown[0] = lookups;
+                long hits = pathCache.hits();
+                cacheValue.setText(lookups <= 0L ? "-" : hits + "/" + lookups + " (" + Strings.autoFixed(hits * 100f / lookups, 1) + "%)");
+            });
+            t.add(cacheValue).left().growX();
+        }).padTop(6f).growX().row();
+
         // Allow arbitrary resize in MindustryX OverlayUI (prevents "snap back" on resize end).
         overlayHoverDpsContent.add(new PreferAnySize()).grow().row();
     }
@@ -0,0 +1,126 @@
+package stealthpath;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap over tile indices, used as the A* open set.
+ *
+ * A* 开放集：以格子下标为元素的索引二叉小顶堆。
+ * - 键值存放在按格子下标索引的 {@code float[]} 中，支持 decrease-key，同一格子最多只在堆中出现一次
+ * - 不再为每次松弛分配 Node 对象，也不需要依赖 closed/best 的惰性删除
+ * - {@link #clear()} 通过代数（stamp）失效旧位置，O(1)，无需清空整张地图大小的数组
+ */
+final class StealthPathOpenSet{
+    private int[] heap = new int[0];
+    private float[] keys = new float[0];
+    private int[] slot = new int[0];
+    private int[] slotStamp = new int[0];
+    private int stamp = 1;
+    private int size;
+
+    /** Grows the per-tile arrays to {@code capacity} tiles and empties the heap. 按地图大小准备数组并清空。 */
+    void reset(int capacity){
+        if(slot.length != capacity){
+            heap = new int[capacity];
+            keys = new float[capacity];
+            slot = new int[capacity];
+            slotStamp = new int[capacity];
+            stamp = 1;
+            size = 0;
+            return;
+        }
+        clear();
+    }
+
+    void clear(){
+        size = 0;
+        stamp++;
+        if(stamp == Integer.MAX_VALUE){
+            Arrays.fill(slotStamp, 0);
+            stamp = 1;
+        }
+    }
+
+    boolean isEmpty(){
+        return size == 0;
+    }
+
+    int size(){
+        return size;
+    }
+
+    boolean contains(int idx){
+        return slotStamp[idx] == stamp;
+    }
+
+    /**
+     * Inserts {@code idx}, or lowers its key if it is already queued. A larger key is ignored.
+     * 插入格子；若已在堆中则仅在新键更小时执行 decrease-key。
+     */
+    void push(int idx, float key){
+        if(slotStamp[idx] == stamp){
+            if(key >= keys[idx]) return;
+            keys[idx] = key;
+            siftUp(slot[idx]);
+            return;
+        }
+
+        slotStamp[idx] = stamp;
+        keys[idx] = key;
+        heap[size] = idx;
+        slot[idx] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /** Removes and returns the tile with the smallest key. 弹出键值最小的格子。 */
+    int poll(){
+        int top = heap[0];
+        slotStamp[top] = 0;
+        size--;
+        if(size > 0){
+            int last = heap[size];
+            heap[0] = last;
+            slot[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    float peekKey(){
+        return keys[heap[0]];
+    }
+
+    private void siftUp(int pos){
+        int idx = heap[pos];
+        float key = keys[idx];
+        while(pos > 0){
+            int parentPos = (pos - 1) >>> 1;
+            int parent = heap[parentPos];
+            if(keys[parent] <= key) break;
+            heap[pos] = parent;
+            slot[parent] = pos;
+            pos = parentPos;
+        }
+        heap[pos] = idx;
+        slot[idx] = pos;
+    }
+
+    private void siftDown(int pos){
+        int idx = heap[pos];
+        float key = keys[idx];
+        int half = size >>> 1;
+        while(pos < half){
+            int child = (pos << 1) + 1;
+            int right = child + 1;
+            if(right < size && keys[heap[right]] < keys[heap[child]]) child = right;
+            int childIdx = heap[child];
+            if(key <= keys[childIdx]) break;
+            heap[pos] = childIdx;
+            slot[childIdx] = pos;
+            pos = child;
+        }
+        heap[pos] = idx;
+        slot[idx] = pos;
+    }
+}
@@ -0,0 +1,147 @@
+package stealthpath;
+
+import arc.struct.IntMap;
+import arc.struct.IntSeq;
+
+/**
+ * LRU of passable masks (one {@code long[]} bitset per unit-profile/clearance key).
+ *
+ * 可通行掩码缓存：
+ * - 每个键（单位类型标志 + 间隙 + 地图尺寸）存一份 long[] 位图，内存约为 boolean[] 的 1/8
+ * - 间隙腐蚀拆成行、列两遍，O(格子数 × (2c+1))，与逐格检查 (2c+1)² 邻域结果相同
+ * - 地块变化只记录脏矩形；下次取用时在“矩形外扩间隙半径”的范围内重算，不再整表清空
+ */
+final class StealthPathPassableCache{
+    /** Base passability of one tile, before clearance. 单格基础可通行判断（不含间隙）。 */
+    interface TileRule{
+        boolean passable(int x, int y);
+    }
+
+    // An entry with more pending rects than this is rebuilt from scratch instead.
+    private static final int maxPendingRects = 128;
+
+    private static final class Entry{
+        final int width, height, clearance;
+        final long[] bits;
+        final IntSeq pending = new IntSeq();
+        boolean stale;
+
+        Entry(int width, int height, int clearance){
+            this.width = width;
+            this.height = height;
+            this.clearance = clearance;
+            this.bits = new long[(width * height + 63) >>> 6];
+        }
+    }
+
+    private final IntMap<Entry> entries = new IntMap<>();
+    private final IntSeq order = new IntSeq();
+    private boolean[] base = new boolean[0];
+    private boolean[] rows = new boolean[0];
+
+    /**
+     * Writes the mask for {@code key} into {@code out}, computing or patching the cached bitset first.
+     * 输出 key 对应的掩码；缓存缺失时整图计算，存在脏矩形时局部修补。
+     */
+    void fill(int key, int width, int height, int clearance, TileRule rule, boolean[] out, int maxEntries){
+        Entry entry = entries.get(key);
+        if(entry == null || entry.stale || entry.width != width || entry.height != height || entry.clearance != clearance){
+            entry = new Entry(width, height, clearance);
+            compute(entry, rule, 0, 0, width - 1, height - 1);
+            if(!entries.containsKey(key)) order.add(key);
+            entries.put(key, entry);
+        }else{
+            int[] r = entry.pending.items;
+            int c = entry.clearance;
+            for(int i = 0; i + 3 < entry.pending.size; i += 4){
+                compute(entry, rule, r[i] - c, r[i + 1] - c, r[i + 2] + c, r[i + 3] + c);
+            }
+            entry.pending.clear();
+            order.removeValue(key);
+            order.add(key);
+        }
+
+        while(order.size > Math.max(1, maxEntries)){
+            entries.remove(order.removeIndex(0));
+        }
+
+        long[] bits = entry.bits;
+        int size = width * height;
+        for(int i = 0; i < size; i++){
+            out[i] = (bits[i >>> 6] & (1L << i)) != 0L;
+        }
+    }
+
+    /** Records a changed tile rectangle (inclusive) for every cached mask. 记录变化的地块矩形。 */
+    void markDirty(int x0, int y0, int x1, int y1){
+        for(Entry entry : entries.values()){
+            if(entry.stale) continue;
+            if(entry.pending.size >= maxPendingRects * 4){
+                entry.stale = true;
+                entry.pending.clear();
+                continue;
+            }
+            entry.pending.add(x0, y0, x1, y1);
+        }
+    }
+
+    void clear(){
+        entries.clear();
+        order.clear();
+    }
+
+    /**
+     * Recomputes output tiles in [x0..x1] x [y0..y1] (clamped). A tile is passable when every tile in its
+     * (2c+1)² square is passable and inside the map.
+     */
+    private void compute(Entry entry, TileRule rule, int x0, int y0, int x1, int y1){
+        int w = entry.width, h = entry.height, c = entry.clearance;
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(w - 1, x1);
+        y1 = Math.min(h - 1, y1);
+        if(x0 > x1 || y0 > y1) return;
+
+        // Base tiles needed: output rect dilated by the clearance.
+        int bx0 = Math.max(0, x0 - c), by0 = Math.max(0, y0 - c);
+        int bx1 = Math.min(w - 1, x1 + c), by1 = Math.min(h - 1, y1 + c);
+        int bw = bx1 - bx0 + 1, bh = by1 - by0 + 1;
+        int ow = x1 - x0 + 1;
+        if(base.length < bw * bh) base = new boolean[bw * bh];
+        if(rows.length < ow * bh) rows = new boolean[ow * bh];
+
+        for(int y = by0; y <= by1; y++){
+            for(int x = bx0; x <= bx1; x++){
+                base[(x - bx0) + (y - by0) * bw] = rule.passable(x, y);
+            }
+        }
+
+        // Horizontal pass: rows[x, y] = all base tiles in [x-c, x+c] on row y are passable and inside the map.
+        for(int y = by0; y <= by1; y++){
+            int rowBase = (y - by0) * bw;
+            for(int x = x0; x <= x1; x++){
+                boolean ok = x - c >= 0 && x + c < w;
+                for(int dx = -c; dx <= c && ok; dx++){
+                    ok = base[rowBase + (x + dx - bx0)];
+                }
+                rows[(x - x0) + (y - by0) * ow] = ok;
+            }
+        }
+
+        // Vertical pass over the horizontal result.
+        for(int y = y0; y <= y1; y++){
+            for(int x = x0; x <= x1; x++){
+                boolean ok = y - c >= 0 && y + c < h;
+                for(int dy = -c; dy <= c && ok; dy++){
+                    ok = rows[(x - x0) + (y + dy - by0) * ow];
+                }
+                int idx = x + y * w;
+                if(ok){
+                    entry.bits[idx >>> 6] |= 1L << idx;
+                }else{
+                    entry.bits[idx >>> 6] &= ~(1L << idx);
+                }
+            }
+        }
+    }
+}
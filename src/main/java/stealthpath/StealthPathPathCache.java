@@ -0,0 +1,203 @@
+package stealthpath;
+
+import arc.math.Mathf;
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+import bektools.profiler.NeonProfiler;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static mindustry.Vars.tilesize;
+import static stealthpath.StealthPathMathUtil.worldToTile;
+
+/**
+ * Bounded LRU of finished searches ({@link PathResult} / {@link ShiftedPath}), keyed by map inputs, start, goals and units.
+ *
+ * 寻路结果缓存（LRU，容量有限）：
+ * - 键：威胁图输入键（{@link ThreatMap#contentKey}，构建时由输入算出，不扫描图层）、起点格、终点集合哈希、单位代价哈希、
+ *   附加参数（寻路模式 / 设置 / 集群尺寸等）
+ * - 命中时直接返回上次结果，完全跳过搜索；“无路径”同样缓存
+ * - 结果中的 IntSeq 视为只读（调用方只做压缩 / 转换，不会原地修改）
+ * - 命中 / 未命中次数写入 Neon 性能分析器（SP / PathCache），并保留累计值供调试窗口显示
+ * 只在主线程使用。
+ */
+final class StealthPathPathCache{
+    static final int kindPath = 1, kindShifted = 2;
+
+    private static final Object noPath = new Object();
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Object> entries;
+    private final Key probe = new Key();
+    private Object lastValue;
+    private long hits, misses;
+    private long flushedHits, flushedMisses;
+
+    StealthPathPathCache(int capacity){
+        this.capacity = Math.max(1, capacity);
+        this.entries = new LinkedHashMap<Key, Object>(this.capacity * 2, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest){
+                return size() > StealthPathPathCache.this.capacity;
+            }
+        };
+    }
+
+    /** Fills the reusable probe key; pass it to {@link #lookup} / {@link #store}. 填充查询键。 */
+    Key key(int kind, long threatHash, int start, long goalHash, long unitsHash, long extra){
+        return probe.set(kind, threatHash, start, goalHash, unitsHash, extra);
+    }
+
+    /** True on a hit; the cached value (null = no path) is then read with {@link #pathValue} / {@link #shiftedValue}. 命中时返回 true。 */
+    boolean lookup(Key key){
+        Object v = entries.get(key);
+        if(v == null){
+            misses++;
+            return false;
+        }
+        hits++;
+        lastValue = v;
+        return true;
+    }
+
+    PathResult pathValue(){
+        return lastValue == noPath ? null : (PathResult)lastValue;
+    }
+
+    ShiftedPath shiftedValue(){
+        return lastValue == noPath ? null : (ShiftedPath)lastValue;
+    }
+
+    void store(Key key, Object value){
+        entries.put(key.copy(), value == null ? noPath : value);
+    }
+
+    void clear(){
+        entries.clear();
+        lastValue = null;
+    }
+
+    long hits(){
+        return flushedHits + hits;
+    }
+
+    long lookups(){
+        return flushedHits + hits + flushedMisses + misses;
+    }
+
+    /** Adds the counts gathered since the last flush to the profiler. 将命中统计写入性能分析器。 */
+    void flushProfiler(){
+        if(hits > 0L) NeonProfiler.count("SP", "PathCache", "hit", NeonProfiler.threadMain, hits);
+        if(misses > 0L) NeonProfiler.count("SP", "PathCache", "miss", NeonProfiler.threadMain, misses);
+        flushedHits += hits;
+        flushedMisses += misses;
+        hits = 0L;
+        misses = 0L;
+    }
+
+    static long tilesHash(IntSeq tiles){
+        long h = tiles.size;
+        for(int i = 0; i < tiles.size; i++){
+            h = mix(h, tiles.items[i]);
+        }
+        return h;
+    }
+
+    /** Threat discs as rasterized into the risk layer (position, ranges, DPS). 威胁圆列表哈希。 */
+    static long threatsHash(Seq<Threat> threats){
+        long h = threats.size;
+        for(int i = 0; i < threats.size; i++){
+            Threat t = threats.get(i);
+            h = mix(h, Float.floatToIntBits(t.x));
+            h = mix(h, Float.floatToIntBits(t.y));
+            h = mix(h, Float.floatToIntBits(t.range));
+            h = mix(h, Float.floatToIntBits(t.minRange));
+            h = mix(h, Float.floatToIntBits(t.dps));
+        }
+        return h;
+    }
+
+    /**
+     * Start tile of a cluster plus the offset start tiles {@link StealthPathPlanner#findBestShiftedClusterPath} may replan from.
+     * 集群起点格，以及偏移候选在溺水重规划时使用的起点格。
+     */
+    static long clusterStartHash(ControlledCluster cluster, int width, int height){
+        float offset = Mathf.clamp(cluster.maxHitRadiusWorld, tilesize * 0.5f, tilesize * 3f);
+        long h = 0L;
+        for(int i = -1; i <= 1; i++){
+            h = mix(h, Mathf.clamp(worldToTile(cluster.x + offset * i), 0, width - 1));
+            h = mix(h, Mathf.clamp(worldToTile(cluster.y + offset * i), 0, height - 1));
+        }
+        return h;
+    }
+
+    static long unitsHash(UnitCostGroup units, float speed){
+        long h = mix(Float.floatToIntBits(speed), units.units.length);
+        h = profileHash(h, units.fallback);
+        for(UnitCostProfile u : units.units){
+            h = profileHash(h, u);
+        }
+        return h;
+    }
+
+    static long settingsHash(PlanSettings settings){
+        long h = mix(settings.pathfinder, (settings.useSlowestUnit ? 1 : 0) | (settings.nearestPlan ? 2 : 0));
+        h = mix(h, Float.floatToIntBits(settings.safeCorridorBias));
+        return mix(h, settings.goalCandidateRadius);
+    }
+
+    static long mix(long h, int v){
+        h = (h ^ v) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    static long mix(long h, long v){
+        return mix(mix(h, (int)v), (int)(v >>> 32));
+    }
+
+    private static long profileHash(long h, UnitCostProfile u){
+        int flags = (u.present ? 1 : 0) | (u.alive ? 2 : 0) | (u.flying ? 4 : 0) | (u.typed ? 8 : 0)
+            | (u.floorSpeed ? 16 : 0) | (u.drownCandidate ? 32 : 0);
+        h = mix(h, flags);
+        h = mix(h, Float.floatToIntBits(u.speed));
+        h = mix(h, Float.floatToIntBits(u.nominalSpeed));
+        h = mix(h, Arrays.hashCode(u.floorSpeedMul));
+        h = mix(h, Arrays.hashCode(u.floorDamage));
+        return mix(h, Arrays.hashCode(u.drownRate));
+    }
+
+    static final class Key{
+        int kind, start;
+        long threatHash, goalHash, unitsHash, extra;
+
+        Key set(int kind, long threatHash, int start, long goalHash, long unitsHash, long extra){
+            this.kind = kind;
+            this.threatHash = threatHash;
+            this.start = start;
+            this.goalHash = goalHash;
+            this.unitsHash = unitsHash;
+            this.extra = extra;
+            return this;
+        }
+
+        Key copy(){
+            return new Key().set(kind, threatHash, start, goalHash, unitsHash, extra);
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return kind == k.kind && start == k.start && threatHash == k.threatHash && goalHash == k.goalHash
+                && unitsHash == k.unitsHash && extra == k.extra;
+        }
+
+        @Override
+        public int hashCode(){
+            long h = mix(mix(mix(threatHash, start), (int)(goalHash ^ (goalHash >>> 32))), (int)(unitsHash ^ extra));
+            return (int)(h ^ (h >>> 32)) * 31 + kind;
+        }
+    }
+}
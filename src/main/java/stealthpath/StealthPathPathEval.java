@@ -0,0 +1,266 @@
+package stealthpath;
+
+import arc.struct.IntSeq;
+import arc.struct.IntSet;
+import arc.struct.Seq;
+
+import java.util.Arrays;
+
+/**
+ * Drown / damage evaluation of one tile path, shared by every unit with the same cost profile.
+ *
+ * 单条路径的溺水 / 伤害评估（按单位代价档位去重）：
+ * - 编队里同类型单位的代价快照内容相同（基础速度、地板速度倍率、地板伤害、溺水速率），每种档位只沿路径走一遍
+ * - 每种档位保存逐段耗时 / 溺水速率，以及溺水进度上界与伤害的前缀和；单位查询变为查表
+ * - 逐段数值调用 StealthPathPlanner 的同一组函数、按同一顺序累加，结果与逐单位循环逐位一致
+ * - 溺水进度只会因衰减 / 封顶而变小，因此累加和是实际进度的上界：总和未到阈值时直接判定不会溺水
+ */
+final class StealthPathPathEval{
+    private static final float drownThreshold = 0.999f;
+    private static final int drownUnknown = 0, drownNo = 1, drownYes = 2;
+
+    final ThreatMap map;
+    final IntSeq path;
+    private final int segments;
+    private final Seq<Profile> profiles = new Seq<>(4);
+
+    StealthPathPathEval(ThreatMap map, IntSeq path){
+        this.map = map;
+        this.path = path;
+        this.segments = map == null || path == null ? 0 : Math.max(0, path.size - 1);
+    }
+
+    /** Same result as walking the path once per drownable unit. 与逐单位溺水检测结果一致。 */
+    boolean wouldDrownForUnits(UnitCostGroup units, float fallbackSpeed){
+        if(segments == 0) return false;
+
+        boolean checkedAny = false;
+        for(UnitCostProfile u : units.units){
+            if(!u.drownCandidate) continue;
+            checkedAny = true;
+            if(wouldDrown(u, u.nominalSpeed(fallbackSpeed))) return true;
+        }
+
+        if(checkedAny) return false;
+        return wouldDrown(units.fallback, fallbackSpeed);
+    }
+
+    boolean wouldDrown(UnitCostProfile unit, float fallbackSpeed){
+        if(segments == 0 || unit == null || !unit.drownCandidate) return false;
+        return profile(unit, fallbackSpeed).drowns();
+    }
+
+    /**
+     * Tiles of every liquid run that drowns at least one unit, in path order without duplicates.
+     * 至少会淹死一个单位的液体段上的格子（按路径顺序，去重）。
+     */
+    IntSeq drownBlockingTilesForUnits(UnitCostGroup units, float fallbackSpeed){
+        IntSeq out = new IntSeq();
+        if(segments == 0) return out;
+
+        IntSet seen = new IntSet();
+        boolean checkedAny = false;
+        for(UnitCostProfile u : units.units){
+            if(!u.drownCandidate) continue;
+            checkedAny = true;
+            Profile p = profile(u, u.nominalSpeed(fallbackSpeed));
+            if(p.drowns()) merge(out, seen, p.blocking());
+        }
+
+        if(!checkedAny && wouldDrown(units.fallback, fallbackSpeed)){
+            merge(out, seen, profile(units.fallback, fallbackSpeed).blocking());
+        }
+        return out;
+    }
+
+    /** Equals {@link StealthPathPlanner#estimateDamage(ThreatMap, IntSeq, UnitCostProfile)}. 与单单位伤害估算一致。 */
+    float damage(UnitCostProfile unit){
+        if(segments == 0 || unit == null || !unit.present) return 0f;
+        return profile(unit, unit.speed).damage(0, segments);
+    }
+
+    float damageForUnits(UnitCostGroup units, float fallbackSpeed, boolean useSlowestUnit){
+        if(segments == 0) return 0f;
+
+        if(useSlowestUnit){
+            UnitCostProfile slowest = units.slowest();
+            if(slowest != null) return damage(slowest);
+            return StealthPathPlanner.estimateDamage(map, path, fallbackSpeed);
+        }
+
+        float max = 0f;
+        boolean hasAny = false;
+        for(UnitCostProfile u : units.units){
+            if(!u.alive) continue;
+            hasAny = true;
+            max = Math.max(max, damage(u));
+        }
+        if(hasAny) return max;
+        if(units.fallback.present) return damage(units.fallback);
+        return StealthPathPlanner.estimateDamage(map, path, fallbackSpeed);
+    }
+
+    float damageForUnitsByFlight(UnitCostGroup units, boolean wantFlying, boolean useSlowestUnit){
+        if(segments == 0) return Float.NaN;
+
+        if(useSlowestUnit){
+            UnitCostProfile slowest = units.slowestByFlight(wantFlying);
+            return slowest == null ? Float.NaN : damage(slowest);
+        }
+
+        float max = Float.NaN;
+        for(UnitCostProfile u : units.units){
+            if(!u.alive || u.flying != wantFlying) continue;
+            float d = damage(u);
+            max = Float.isNaN(max) ? d : Math.max(max, d);
+        }
+
+        if(!Float.isNaN(max)) return max;
+        if(units.fallback.present && units.fallback.flying == wantFlying) return damage(units.fallback);
+        return Float.NaN;
+    }
+
+    private Profile profile(UnitCostProfile unit, float fallbackSpeed){
+        float base = unit.nominalSpeed(fallbackSpeed);
+        for(int i = 0; i < profiles.size; i++){
+            Profile p = profiles.get(i);
+            if(p.matches(unit, base)) return p;
+        }
+        Profile p = new Profile(unit, fallbackSpeed, base);
+        profiles.add(p);
+        return p;
+    }
+
+    private static void merge(IntSeq out, IntSet seen, IntSeq tiles){
+        for(int i = 0; i < tiles.size; i++){
+            int idx = tiles.items[i];
+            if(seen.add(idx)) out.add(idx);
+        }
+    }
+
+    /** Everything the per-segment math reads from a unit; equal profiles give bit-identical results. 代价档位。 */
+    private final class Profile{
+        final UnitCostProfile unit;
+        final float fallbackSpeed;
+        final float base;
+
+        private float[] ticks, rate;
+        // Prefix sums, index i = first i segments.
+        private float[] cumDrown, cumDamage;
+        private int drownState = drownUnknown;
+        private IntSeq blocking;
+
+        Profile(UnitCostProfile unit, float fallbackSpeed, float base){
+            this.unit = unit;
+            this.fallbackSpeed = fallbackSpeed;
+            this.base = base;
+        }
+
+        boolean matches(UnitCostProfile other, float otherBase){
+            if(Float.floatToIntBits(base) != Float.floatToIntBits(otherBase)) return false;
+            if(other == unit) return true;
+            return unit.floorSpeed == other.floorSpeed && unit.drownCandidate == other.drownCandidate
+                && Arrays.equals(unit.floorSpeedMul, other.floorSpeedMul)
+                && Arrays.equals(unit.floorDamage, other.floorDamage)
+                && Arrays.equals(unit.drownRate, other.drownRate);
+        }
+
+        boolean drowns(){
+            if(drownState == drownUnknown){
+                ensureDrown();
+                drownState = cumDrown[segments] < drownThreshold || !simulateDrown() ? drownNo : drownYes;
+            }
+            return drownState == drownYes;
+        }
+
+        float damage(int from, int to){
+            if(cumDamage == null){
+                cumDamage = new float[segments + 1];
+                int[] items = path.items;
+                for(int i = 0; i < segments; i++){
+                    int a = items[i];
+                    int b = items[i + 1];
+                    float distWorld = StealthPathPlanner.segmentDistanceWorld(map, a, b);
+                    cumDamage[i + 1] = cumDamage[i] + StealthPathPlanner.edgeDamage(map, a, b, distWorld, unit, fallbackSpeed, true);
+                }
+            }
+            return from == 0 ? cumDamage[to] : cumDamage[to] - cumDamage[from];
+        }
+
+        private void ensureDrown(){
+            if(ticks != null) return;
+            ticks = new float[segments];
+            rate = new float[segments];
+            cumDrown = new float[segments + 1];
+            int[] items = path.items;
+            for(int i = 0; i < segments; i++){
+                int a = items[i];
+                int b = items[i + 1];
+                float t = StealthPathPlanner.segmentTicks(map, a, b, unit, fallbackSpeed);
+                float r = StealthPathPlanner.avgDrownRate(map, a, b, unit);
+                ticks[i] = t;
+                rate[i] = r;
+                cumDrown[i + 1] = r > 0.000001f ? cumDrown[i] + r * t : cumDrown[i];
+            }
+        }
+
+        private boolean simulateDrown(){
+            float progress = 0f;
+            for(int i = 0; i < segments; i++){
+                if(rate[i] > 0.000001f){
+                    progress += rate[i] * ticks[i];
+                    if(progress >= drownThreshold) return true;
+                    progress = Math.min(progress, 1f);
+                }else{
+                    progress = Math.max(0f, progress - ticks[i] / 50f);
+                }
+            }
+            return false;
+        }
+
+        /** Tiles of the liquid runs where drowning progress reaches the threshold. 溺水进度达到阈值的液体段格子。 */
+        IntSeq blocking(){
+            if(blocking != null) return blocking;
+            ensureDrown();
+            blocking = new IntSeq();
+
+            IntSet marked = new IntSet();
+            IntSet inRun = new IntSet();
+            IntSeq run = new IntSeq();
+            boolean runFatal = false;
+            float progress = 0f;
+            int[] items = path.items;
+
+            for(int i = 0; i < segments; i++){
+                if(rate[i] > 0.000001f){
+                    int a = items[i];
+                    int b = items[i + 1];
+                    if(a >= 0 && a < map.size && inRun.add(a)) run.add(a);
+                    if(b >= 0 && b < map.size && inRun.add(b)) run.add(b);
+
+                    progress += rate[i] * ticks[i];
+                    if(progress >= drownThreshold){
+                        runFatal = true;
+                        progress = 1f;
+                    }
+                }else{
+                    if(runFatal) flushRun(run, marked);
+                    inRun.clear();
+                    run.clear();
+                    runFatal = false;
+                    progress = Math.max(0f, progress - ticks[i] / 50f);
+                }
+            }
+
+            if(runFatal) flushRun(run, marked);
+            return blocking;
+        }
+
+        private void flushRun(IntSeq run, IntSet marked){
+            for(int r = 0; r < run.size; r++){
+                int idx = run.items[r];
+                if(marked.add(idx)) blocking.add(idx);
+            }
+        }
+    }
+}
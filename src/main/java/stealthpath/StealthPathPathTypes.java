@@ -8,6 +8,8 @@ import mindustry.entities.bullet.BulletType;
 import mindustry.gen.Building;
 import mindustry.gen.Unit;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Pathfinding / rendering data types for StealthPath.
  *
@@ -107,6 +109,21 @@ final class ThreatMap{
     final float[] drownRate;
     short[] safeDist;
     float safeBias;
+    /** Per-tile floor slot (see {@link UnitCostProfile}); shared, never written after publishing. 每格地板槽位（只读共享）。 */
+    short[] floorSlot;
+    /**
+     * Content generation: changes whenever the layers are rebuilt ({@link #touch}), so derived data can be reused while it stays the same.
+     * 内容版本号：图层重建时更新（见 {@link #touch}），派生数据在版本号不变时可直接复用。
+     */
+    int serial;
+    /**
+     * Key of the inputs the layers were built from (tile epoch, unit profile, shields, turret layer version, unit threats);
+     * equal keys mean equal layers. 0 while unknown. Set by the builder after filling.
+     * 图层输入键：由构建方在填充后写入，键相同即图层相同；未知时为 0。
+     */
+    long contentKey;
+
+    private static final AtomicInteger nextSerial = new AtomicInteger();
 
     ThreatMap(int width, int height){
         this.width = width;
@@ -116,31 +133,189 @@ final class ThreatMap{
         this.risk = new float[size];
         this.floorRisk = new float[size];
         this.drownRate = new float[size];
+        touch();
+    }
+
+    /** Marks the layers as rebuilt; call before refilling a reused map. 标记图层已重建（复用地图重新填充前调用）。 */
+    void touch(){
+        serial = nextSerial.incrementAndGet();
+        contentKey = 0L;
+    }
+
+    /**
+     * Copies every planning layer from {@code src} (same dimensions), so the copy can be handed to a worker thread.
+     *
+     * 复制全部寻路图层（尺寸必须一致），得到可交给后台线程的只读快照。
+     */
+    void copyFrom(ThreatMap src){
+        System.arraycopy(src.passable, 0, passable, 0, size);
+        System.arraycopy(src.risk, 0, risk, 0, size);
+        System.arraycopy(src.floorRisk, 0, floorRisk, 0, size);
+        System.arraycopy(src.drownRate, 0, drownRate, 0, size);
+        if(src.safeDist == null){
+            safeDist = null;
+        }else{
+            if(safeDist == null || safeDist.length != size) safeDist = new short[size];
+            System.arraycopy(src.safeDist, 0, safeDist, 0, size);
+        }
+        safeBias = src.safeBias;
+        floorSlot = src.floorSlot;
+        touch();
+        contentKey = src.contentKey;
     }
 }
 
-final class PathResult{
-    final IntSeq path;
+enum PathMode{
+    safeOnly, minDamage, nearest
+}
 
-    PathResult(IntSeq path){
-        this.path = path;
+/**
+ * Immutable cost inputs of one unit, captured on the game thread.
+ *
+ * 单个单位的寻路代价快照（在主线程采集）：
+ * - 速度/是否飞行/是否会溺水等标志
+ * - 按地板槽位预先算好的“地板减速倍率 / 地板每 tick 伤害 / 溺水速率”
+ * 规划器只读这些数值，不再访问 Unit/Floor，因此可以在后台线程运行。
+ */
+final class UnitCostProfile{
+    /** False when the profile stands in for a missing unit. 为 false 表示“无单位”占位。 */
+    final boolean present;
+    final boolean alive;
+    final boolean flying;
+    final boolean typed;
+    /** Ground-walking unit whose speed depends on the floor. 速度受地板影响的地面单位。 */
+    final boolean floorSpeed;
+    final boolean drownCandidate;
+    /** {@code max(0.0001, unit.speed())} at capture time. */
+    final float speed;
+    /** {@code max(type.speed, unit.speed())}; only meaningful when {@link #typed}. */
+    final float nominalSpeed;
+    final float[] floorSpeedMul;
+    final float[] floorDamage;
+    final float[] drownRate;
+
+    UnitCostProfile(boolean present, boolean alive, boolean flying, boolean typed, boolean floorSpeed, boolean drownCandidate,
+                    float speed, float nominalSpeed, float[] floorSpeedMul, float[] floorDamage, float[] drownRate){
+        this.present = present;
+        this.alive = alive;
+        this.flying = flying;
+        this.typed = typed;
+        this.floorSpeed = floorSpeed;
+        this.drownCandidate = drownCandidate;
+        this.speed = speed;
+        this.nominalSpeed = nominalSpeed;
+        this.floorSpeedMul = floorSpeedMul;
+        this.floorDamage = floorDamage;
+        this.drownRate = drownRate;
+    }
+
+    float nominalSpeed(float fallbackSpeed){
+        return typed ? nominalSpeed : Math.max(0.0001f, fallbackSpeed);
+    }
+
+    float floorSpeedMul(ThreatMap map, int idx){
+        int slot = slotAt(map, idx);
+        return slot < 0 || slot >= floorSpeedMul.length ? 1f : floorSpeedMul[slot];
+    }
+
+    float floorDamagePerTick(ThreatMap map, int idx){
+        int slot = slotAt(map, idx);
+        return slot < 0 || slot >= floorDamage.length ? 0f : floorDamage[slot];
+    }
+
+    float drownRateAt(ThreatMap map, int idx){
+        if(!drownCandidate) return 0f;
+        int slot = slotAt(map, idx);
+        return slot < 0 || slot >= drownRate.length ? 0f : drownRate[slot];
+    }
+
+    private static int slotAt(ThreatMap map, int idx){
+        if(map == null || map.floorSlot == null || idx < 0 || idx >= map.size) return -1;
+        return map.floorSlot[idx];
+    }
+}
+
+/**
+ * Cost profiles of a planning group (the move unit plus its members).
+ *
+ * 一组单位的代价快照：fallback 为移动单位（可能是“无单位”占位），units 为成员（已去除 null）。
+ */
+final class UnitCostGroup{
+    final UnitCostProfile fallback;
+    final UnitCostProfile[] units;
+
+    UnitCostGroup(UnitCostProfile fallback, UnitCostProfile[] units){
+        this.fallback = fallback;
+        this.units = units;
+    }
+
+    UnitCostProfile slowest(){
+        UnitCostProfile best = null;
+        float bestSpeed = Float.POSITIVE_INFINITY;
+        for(UnitCostProfile u : units){
+            if(!u.alive) continue;
+            if(u.speed < bestSpeed){
+                bestSpeed = u.speed;
+                best = u;
+            }
+        }
+        if(best != null) return best;
+        return fallback.present ? fallback : null;
+    }
+
+    UnitCostProfile slowestByFlight(boolean wantFlying){
+        UnitCostProfile best = null;
+        float bestSpeed = Float.POSITIVE_INFINITY;
+        for(UnitCostProfile u : units){
+            if(!u.alive || u.flying != wantFlying) continue;
+            if(u.speed < bestSpeed){
+                bestSpeed = u.speed;
+                best = u;
+            }
+        }
+        if(best != null) return best;
+        return fallback.present && fallback.flying == wantFlying ? fallback : null;
+    }
+
+    float slowestSpeed(){
+        UnitCostProfile slowest = slowest();
+        return slowest == null ? 0.0001f : slowest.speed;
+    }
+
+    boolean hasDrownable(){
+        for(UnitCostProfile u : units){
+            if(u.drownCandidate) return true;
+        }
+        return fallback.drownCandidate;
     }
 }
 
-final class Node implements Comparable<Node>{
-    final int idx;
-    final float f;
-    final float g;
+/**
+ * Settings snapshot for one planning run (read once on the game thread).
+ *
+ * 单次规划使用的设置快照（主线程读取一次，后台线程只读）。
+ */
+final class PlanSettings{
+    final int pathfinder;
+    final boolean useSlowestUnit;
+    final boolean nearestPlan;
+    final float safeCorridorBias;
+    final int goalCandidateRadius;
 
-    Node(int idx, float f, float g){
-        this.idx = idx;
-        this.f = f;
-        this.g = g;
+    PlanSettings(int pathfinder, boolean useSlowestUnit, boolean nearestPlan, float safeCorridorBias, int goalCandidateRadius){
+        this.pathfinder = pathfinder;
+        this.useSlowestUnit = useSlowestUnit;
+        this.nearestPlan = nearestPlan;
+        this.safeCorridorBias = safeCorridorBias;
+        this.goalCandidateRadius = goalCandidateRadius;
     }
+}
+
+final class PathResult{
+    final IntSeq path;
 
-    @Override
-    public int compareTo(Node other){
-        return Float.compare(this.f, other.f);
+    PathResult(IntSeq path){
+        this.path = path;
     }
 }
 
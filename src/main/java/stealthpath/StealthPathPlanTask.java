@@ -0,0 +1,110 @@
+package stealthpath;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One cluster path plan executed on the background planner pool.
+ *
+ * 在后台规划线程池中执行的单个集群寻路任务：
+ * - 输入全部是主线程采集的快照（ThreatMap 副本 / UnitCostGroup / PlanSettings）
+ * - 结果通过 {@link #finished} 发布，由主线程轮询并应用（绘制路径、下发 RTS 指令）
+ * - {@link #cancel()} 只是标记，已开始的搜索会跑完，但结果会被丢弃
+ * - 寻路缓存命中时用 {@link #complete} 直接发布结果，此时 map 为 null
+ * - 每个工作线程持有一个寻路实例（{@link #workerPlanner()}），集群偏移候选的辅助任务也在本线程池上复用它
+ */
+final class StealthPathPlanTask implements Runnable{
+    private static final int workerCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    private static final AtomicInteger workerIds = new AtomicInteger();
+    private static ExecutorService executor;
+
+    final ControlledCluster cluster;
+    final ThreatMap map;
+    final UnitCostGroup units;
+    final PlanSettings settings;
+    final int goalX, goalY;
+    /** Null when debug logs are off. 关闭调试日志时为 null。 */
+    final StealthPathPlanner.DeferredLog log;
+
+    volatile boolean cancelled;
+    volatile boolean finished;
+    ShiftedPath result;
+    Throwable error;
+    long elapsedNanos;
+
+    StealthPathPlanTask(ControlledCluster cluster, ThreatMap map, UnitCostGroup units, PlanSettings settings, int goalX, int goalY, StealthPathPlanner.DeferredLog log){
+        this.cluster = cluster;
+        this.map = map;
+        this.units = units;
+        this.settings = settings;
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.log = log;
+    }
+
+    static int workers(){
+        return workerCount;
+    }
+
+    void submit(){
+        executor().execute(this);
+    }
+
+    /** Runs a helper job on the planner pool; it must not block on other queued work. 在规划线程池上执行辅助任务（不得等待排队中的任务）。 */
+    static void execute(Runnable job){
+        executor().execute(job);
+    }
+
+    /** Planner scratch of the current pool thread, or null off the pool. 当前规划线程的寻路实例；非规划线程返回 null。 */
+    static StealthPathPlanner workerPlanner(){
+        Thread thread = Thread.currentThread();
+        return thread instanceof WorkerThread ? ((WorkerThread)thread).planner : null;
+    }
+
+    void cancel(){
+        cancelled = true;
+    }
+
+    /** Publishes a result without running the search (path cache hit). 直接发布结果（缓存命中时不再搜索）。 */
+    void complete(ShiftedPath result){
+        this.result = result;
+        finished = true;
+    }
+
+    @Override
+    public void run(){
+        long started = System.nanoTime();
+        try{
+            if(cancelled) return;
+            StealthPathPlanner planner = workerPlanner();
+            planner.begin(settings, log);
+            result = planner.findBestShiftedClusterPath(cluster, map, goalX, goalY, units);
+        }catch(Throwable t){
+            error = t;
+        }finally{
+            elapsedNanos = System.nanoTime() - started;
+            finished = true;
+        }
+    }
+
+    private static synchronized ExecutorService executor(){
+        if(executor == null){
+            executor = Executors.newFixedThreadPool(workerCount, r -> {
+                Thread thread = new WorkerThread(r, "stealthpath-planner-" + workerIds.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private static final class WorkerThread extends Thread{
+        final StealthPathPlanner planner = new StealthPathPlanner();
+
+        WorkerThread(Runnable target, String name){
+            super(target, name);
+        }
+    }
+}
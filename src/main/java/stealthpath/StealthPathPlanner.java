@@ -0,0 +1,1090 @@
+package stealthpath;
+
+import arc.math.Mathf;
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+import arc.util.Strings;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static mindustry.Vars.tilesize;
+import static stealthpath.StealthPathMathUtil.*;
+
+/**
+ * Grid path search for StealthPath, free of game-state access.
+ *
+ * StealthPath 的网格寻路核心（A* / DFS、溺水重试、集群偏移择优、伤害估算）。
+ * - 只读取 {@link ThreatMap}、{@link UnitCostGroup}、{@link PlanSettings} 快照，不访问 world/Unit/Core
+ * - 搜索临时数组按实例持有：主线程一个实例，后台规划线程各一个实例；集群偏移候选的辅助任务借用所在规划线程的实例，不额外分配
+ * - 溺水重试时的临时封锁格子记录在实例内部，不改写 ThreatMap，因此同一快照可被多个实例并发读取
+ */
+final class StealthPathPlanner{
+    static final int pathfinderAStar = 0;
+    static final int pathfinderDfs = 1;
+    static final int pathfinderHpa = 2;
+
+    static final float safeRiskEps = 1e-6f;
+    // Human-like path preference in min-damage mode:
+    // keep avoiding danger first, but add tiny pressure against very long detours and jittery zig-zags.
+    static final float minDamageDistanceBias = 0.015f;
+    static final float minDamageTurnBias = 0.04f;
+    // Below this many goal tiles, scanning the goal list per node is cheaper than a map-sized transform.
+    static final int goalFieldMinGoals = 12;
+    // Shorter base paths make the offset candidates too cheap to be worth a hand-off to the pool.
+    static final int parallelCandidateMinPath = 96;
+
+    /** Debug log sink; {@code args} follow the bundle key. 调试日志输出（参数对应 bundle key）。 */
+    interface PlanLog{
+        void log(String category, String key, Object... args);
+    }
+
+    /**
+     * Collects log lines on a worker thread so the game thread can replay them later.
+     *
+     * 后台线程先缓存日志，由主线程在应用结果时回放。
+     */
+    static final class DeferredLog implements PlanLog{
+        private final Seq<Object[]> entries = new Seq<>();
+
+        @Override
+        public void log(String category, String key, Object... args){
+            entries.add(new Object[]{category, key, args});
+        }
+
+        void replay(PlanLog target){
+            if(target != null){
+                for(int i = 0; i < entries.size; i++){
+                    Object[] e = entries.get(i);
+                    target.log((String)e[0], (String)e[1], (Object[])e[2]);
+                }
+            }
+            entries.clear();
+        }
+    }
+
+    private PlanSettings settings = new PlanSettings(pathfinderAStar, true, false, 0.35f, 24);
+    private PlanLog log;
+
+    private float[] pathBest;
+    private int[] pathBestStamp;
+    private int[] pathParent;
+    private int[] pathClosedStamp;
+    private int pathStamp = 1;
+    private final StealthPathOpenSet pathOpen = new StealthPathOpenSet();
+    private final IntSeq pathStack = new IntSeq();
+
+    // Octile distance to the nearest goal tile (obstacle-free), reused while the goal set stays the same.
+    private float[] goalDist;
+    private int[] goalSeed;
+    private final IntSeq goalFieldGoals = new IntSeq();
+    private int goalFieldWidth = -1, goalFieldHeight = -1;
+    private boolean goalFieldActive;
+
+    // HPA*: coarse portal graph, and the refine corridor (tile is inside when corridorStamp[idx] == corridorMark).
+    private final StealthPathHierarchy hierarchy = new StealthPathHierarchy();
+    private int[] corridorStamp;
+    private int corridorGen = 0;
+    private int corridorMark = -1;
+
+    // Tiles temporarily blocked by the drown retry loop (tile is blocked when blockedStamp[idx] == blockedMark).
+    private int[] blockedStamp;
+    private int blockedGen = 0;
+    private int blockedMark = -1;
+
+    /** Binds the settings/log used by the following calls. 绑定后续调用使用的设置与日志。 */
+    void begin(PlanSettings settings, PlanLog log){
+        if(settings != null) this.settings = settings;
+        this.log = log;
+    }
+
+    PlanSettings settings(){
+        return settings;
+    }
+
+    private void ensurePathScratch(int size){
+        if(pathBest == null || pathBest.length != size){
+            pathBest = new float[size];
+            pathBestStamp = new int[size];
+            pathParent = new int[size];
+            pathClosedStamp = new int[size];
+            blockedStamp = new int[size];
+            corridorStamp = new int[size];
+            pathOpen.reset(size);
+            corridorGen = 0;
+            blockedGen = 0;
+        }
+    }
+
+    private int nextPathStamp(){
+        pathStamp++;
+        if(pathStamp == Integer.MAX_VALUE){
+            if(pathBestStamp != null) Arrays.fill(pathBestStamp, 0);
+            if(pathClosedStamp != null) Arrays.fill(pathClosedStamp, 0);
+            pathStamp = 1;
+        }
+        return pathStamp;
+    }
+
+    private int nextBlockedMark(){
+        blockedGen++;
+        if(blockedGen == Integer.MAX_VALUE){
+            Arrays.fill(blockedStamp, 0);
+            blockedGen = 1;
+        }
+        return blockedGen;
+    }
+
+    private int nextCorridorMark(){
+        corridorGen++;
+        if(corridorGen == Integer.MAX_VALUE){
+            Arrays.fill(corridorStamp, 0);
+            corridorGen = 1;
+        }
+        return corridorGen;
+    }
+
+    private boolean passable(ThreatMap map, int idx){
+        return map.passable[idx] && blockedStamp[idx] != blockedMark && (corridorMark == -1 || corridorStamp[idx] == corridorMark);
+    }
+
+    PathResult findPath(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, UnitCostGroup units, float speed){
+        long searchStarted = System.nanoTime();
+        ensurePathScratch(map.size);
+        UnitCostProfile costUnit = settings.useSlowestUnit ? units.slowest() : units.fallback;
+        if(costUnit == null) costUnit = units.fallback;
+        float costSpeed = settings.useSlowestUnit ? units.slowestSpeed() : Math.max(0.0001f, speed);
+        int retries = 0;
+        int blockedTilesTotal = 0;
+        goalFieldActive = settings.pathfinder != pathfinderDfs && prepareGoalField(map, goals);
+        if(settings.pathfinder == pathfinderHpa) hierarchy.update(map);
+
+        PathResult result = runPathSearch(map, startX, startY, goals, goalMask, mode, costUnit, costSpeed);
+        StealthPathPathEval eval = result != null && result.path != null && !result.path.isEmpty() && units.hasDrownable()
+            ? new StealthPathPathEval(map, result.path)
+            : null;
+        if(eval != null && eval.wouldDrownForUnits(units, costSpeed)){
+            int startIdx = startX + startY * map.width;
+            blockedMark = nextBlockedMark();
+
+            // Retry a few times, each time blocking the drowning-critical liquid strip(s).
+            for(int attempt = 0; attempt < 4; attempt++){
+                IntSeq blocked = eval.drownBlockingTilesForUnits(units, costSpeed);
+                retries++;
+                if(blocked.isEmpty()){
+                    result = null;
+                    break;
+                }
+
+                int added = 0;
+                for(int i = 0; i < blocked.size; i++){
+                    int idx = blocked.items[i];
+                    if(idx < 0 || idx >= map.size) continue;
+                    if(idx == startIdx) continue;
+                    if(!passable(map, idx)) continue;
+                    blockedStamp[idx] = blockedMark;
+                    added++;
+                }
+                blockedTilesTotal += added;
+
+                if(added == 0){
+                    result = null;
+                    break;
+                }
+
+                result = runPathSearch(map, startX, startY, goals, goalMask, mode, costUnit, costSpeed);
+                if(result == null || result.path == null || result.path.isEmpty()) break;
+                eval = new StealthPathPathEval(map, result.path);
+                if(!eval.wouldDrownForUnits(units, costSpeed)) break;
+            }
+
+            blockedMark = -1;
+
+            if(result == null || result.path == null || result.path.isEmpty()){
+                result = null;
+            }else if(eval.wouldDrownForUnits(units, costSpeed)){
+                result = null;
+            }
+        }
+
+        if(log != null){
+            int pathTiles = (result == null || result.path == null) ? 0 : result.path.size;
+            boolean ok = result != null && result.path != null && !result.path.isEmpty();
+            log.log("PLAN", "sp.log.plan.search",
+                mode,
+                startX,
+                startY,
+                goals == null ? 0 : goals.size,
+                Strings.autoFixed(costSpeed, 2),
+                retries,
+                blockedTilesTotal,
+                pathTiles,
+                ok,
+                elapsedMillis(searchStarted));
+
+            if(retries > 0 || blockedTilesTotal > 0){
+                log.log("DROWN", "sp.log.drown.check", mode, retries, blockedTilesTotal, pathTiles, ok);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds (or reuses) the per-goal-set distance field used by {@link #heuristic}.
+     * The field stores the exact octile distance to the nearest goal, so paths are unchanged; only the
+     * per-node cost drops from O(goals) to O(1).
+     *
+     * 为当前目标集合准备“到最近目标的八方向距离场”（两遍扫描传播最近目标格），结果与逐个目标取最小完全一致。
+     */
+    private boolean prepareGoalField(ThreatMap map, IntSeq goals){
+        if(goals == null || goals.size < goalFieldMinGoals) return false;
+
+        if(goalDist != null && goalFieldWidth == map.width && goalFieldHeight == map.height && goalFieldGoals.equals(goals)){
+            return true;
+        }
+
+        int w = map.width;
+        int h = map.height;
+        if(goalDist == null || goalDist.length != map.size){
+            goalDist = new float[map.size];
+            goalSeed = new int[map.size];
+        }
+        Arrays.fill(goalDist, Float.POSITIVE_INFINITY);
+        Arrays.fill(goalSeed, -1);
+        for(int i = 0; i < goals.size; i++){
+            int idx = goals.items[i];
+            if(idx < 0 || idx >= map.size) continue;
+            goalDist[idx] = 0f;
+            goalSeed[idx] = idx;
+        }
+
+        // Forward pass pulls from W / NW / N / NE, backward pass from E / SE / S / SW (two-pass chamfer, exact for octile).
+        for(int y = 0; y < h; y++){
+            for(int x = 0; x < w; x++){
+                int idx = x + y * w;
+                if(x > 0) relaxGoalSeed(idx, x, y, idx - 1, w);
+                if(y > 0){
+                    if(x > 0) relaxGoalSeed(idx, x, y, idx - w - 1, w);
+                    relaxGoalSeed(idx, x, y, idx - w, w);
+                    if(x < w - 1) relaxGoalSeed(idx, x, y, idx - w + 1, w);
+                }
+            }
+        }
+        for(int y = h - 1; y >= 0; y--){
+            for(int x = w - 1; x >= 0; x--){
+                int idx = x + y * w;
+                if(x < w - 1) relaxGoalSeed(idx, x, y, idx + 1, w);
+                if(y < h - 1){
+                    if(x < w - 1) relaxGoalSeed(idx, x, y, idx + w + 1, w);
+                    relaxGoalSeed(idx, x, y, idx + w, w);
+                    if(x > 0) relaxGoalSeed(idx, x, y, idx + w - 1, w);
+                }
+            }
+        }
+
+        goalFieldGoals.clear();
+        goalFieldGoals.addAll(goals);
+        goalFieldWidth = w;
+        goalFieldHeight = h;
+        return true;
+    }
+
+    private void relaxGoalSeed(int idx, int x, int y, int from, int w){
+        int seed = goalSeed[from];
+        if(seed < 0 || seed == goalSeed[idx]) return;
+        float dst = octileDistance(x, y, seed % w, seed / w);
+        if(dst < goalDist[idx]){
+            goalDist[idx] = dst;
+            goalSeed[idx] = seed;
+        }
+    }
+
+    private PathResult runPathSearch(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, UnitCostProfile unit, float speed){
+        if(settings.pathfinder == pathfinderDfs){
+            return findPathDfs(map, startX, startY, goals, goalMask, mode, unit, speed);
+        }
+        if(settings.pathfinder == pathfinderHpa){
+            PathResult refined = findPathHierarchical(map, startX, startY, goals, goalMask, mode, unit, speed);
+            if(refined != null) return refined;
+            // The corridor can miss a route (drown-blocked tiles, safe-only mode through risky chunks): search the full grid.
+        }
+        return findPathAStar(map, startX, startY, goals, goalMask, mode, unit, speed);
+    }
+
+    /**
+     * HPA*: solve the coarse portal route, then run the regular A* restricted to the route's chunk corridor.
+     * 先在入口图上求粗路线，再把常规 A* 限制在走廊块内细化。
+     */
+    private PathResult findPathHierarchical(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, UnitCostProfile unit, float speed){
+        int startIdx = startX + startY * map.width;
+        IntSeq corridor = hierarchy.route(map, startIdx, goals, goalMask);
+        if(corridor == null) return null;
+
+        corridorMark = nextCorridorMark();
+        int cs = StealthPathHierarchy.chunkSize;
+        for(int i = 0; i < corridor.size; i++){
+            int c = corridor.items[i];
+            int x0 = hierarchy.chunkMinX(c);
+            int y0 = hierarchy.chunkMinY(c);
+            int x1 = Math.min(map.width, x0 + cs);
+            int y1 = Math.min(map.height, y0 + cs);
+            for(int y = y0; y < y1; y++){
+                for(int x = x0; x < x1; x++){
+                    corridorStamp[x + y * map.width] = corridorMark;
+                }
+            }
+        }
+
+        try{
+            return findPathAStar(map, startX, startY, goals, goalMask, mode, unit, speed);
+        }finally{
+            corridorMark = -1;
+        }
+    }
+
+    private PathResult findPathAStar(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, UnitCostProfile unit, float speed){
+        int startIdx = startX + startY * map.width;
+        if(!passable(map, startIdx)) return null;
+        boolean safeOnly = mode == PathMode.safeOnly;
+        boolean nearest = mode == PathMode.nearest;
+        if(safeOnly && !isZeroDamageTile(map, startIdx)) return null;
+
+        int stamp = nextPathStamp();
+        float corridorBias = settings.safeCorridorBias;
+
+        pathOpen.clear();
+
+        pathBestStamp[startIdx] = stamp;
+        pathBest[startIdx] = 0f;
+        pathParent[startIdx] = -1;
+        pathOpen.push(startIdx, heuristic(map, startX, startY, goals, mode));
+
+        while(!pathOpen.isEmpty()){
+            // Decrease-key keeps one entry per tile, so every polled tile is current and not yet closed.
+            int idx = pathOpen.poll();
+            pathClosedStamp[idx] = stamp;
+
+            if(goalMask[idx]){
+                return new PathResult(reconstruct(pathParent, idx));
+            }
+
+            int x = idx % map.width;
+            int y = idx / map.width;
+
+            for(int dy = -1; dy <= 1; dy++){
+                for(int dx = -1; dx <= 1; dx++){
+                    if(dx == 0 && dy == 0) continue;
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if(nx < 0 || ny < 0 || nx >= map.width || ny >= map.height) continue;
+
+                    int nidx = nx + ny * map.width;
+                    if(pathClosedStamp[nidx] == stamp) continue;
+                    if(!passable(map, nidx)) continue;
+                    if(safeOnly && !isZeroDamageTile(map, nidx)) continue;
+
+                    // No cutting corners through blocked tiles.
+                    if(dx != 0 && dy != 0){
+                        int aidx = (x + dx) + y * map.width;
+                        int bidx = x + (y + dy) * map.width;
+                        if(!passable(map, aidx) || !passable(map, bidx)) continue;
+                        if(safeOnly && (!isZeroDamageTile(map, aidx) || !isZeroDamageTile(map, bidx))) continue;
+                    }
+
+                    float step = (dx == 0 || dy == 0) ? 1f : Mathf.sqrt2;
+
+                    float ng;
+                    if(safeOnly || nearest){
+                        float tie = step * 0.0001f;
+                        ng = pathBest[idx] + step + tie;
+
+                        // Prefer the center of safe corridors (farther from risk zones) when multiple safe paths exist.
+                        if(safeOnly && map.safeDist != null && map.safeBias > 0.0001f){
+                            int sd = map.safeDist[nidx];
+                            // Larger safeDist => smaller penalty; bias scales with formation size.
+                            float centerBias = map.safeBias * corridorBias;
+                            ng += centerBias / (Math.max(0f, sd) + 1f);
+                        }
+                    }else{
+                        float distWorld = tilesize * step;
+                        float dmg = edgeDamage(map, idx, nidx, distWorld, unit, speed, true);
+                        float distBias = step * minDamageDistanceBias;
+                        float turnBias = turnSeverity(pathParent[idx], idx, nidx, map.width) * minDamageTurnBias;
+                        float tie = step * 0.00001f;
+                        ng = pathBest[idx] + dmg + distBias + turnBias + tie;
+                    }
+
+                    float prev = (pathBestStamp[nidx] == stamp) ? pathBest[nidx] : Float.POSITIVE_INFINITY;
+                    if(ng >= prev) continue;
+
+                    pathBestStamp[nidx] = stamp;
+                    pathBest[nidx] = ng;
+                    pathParent[nidx] = idx;
+
+                    float h = heuristic(map, nx, ny, goals, mode);
+                    pathOpen.push(nidx, ng + h);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private PathResult findPathDfs(ThreatMap map, int startX, int startY, IntSeq goals, boolean[] goalMask, PathMode mode, UnitCostProfile unit, float speed){
+        int startIdx = startX + startY * map.width;
+        if(!passable(map, startIdx)) return null;
+
+        boolean safeOnly = mode == PathMode.safeOnly;
+        boolean nearest = mode == PathMode.nearest;
+        if(safeOnly && !isZeroDamageTile(map, startIdx)) return null;
+
+        int stamp = nextPathStamp();
+        float corridorBias = settings.safeCorridorBias;
+
+        pathStack.clear();
+        pathStack.add(startIdx);
+
+        pathBestStamp[startIdx] = stamp;
+        pathBest[startIdx] = 0f;
+        pathParent[startIdx] = -1;
+
+        float bestGoal = Float.POSITIVE_INFINITY;
+        int bestGoalIdx = -1;
+
+        while(pathStack.size > 0){
+            int idx = pathStack.pop();
+            if(pathBestStamp[idx] != stamp) continue;
+
+            float g = pathBest[idx];
+            if(g >= bestGoal) continue;
+
+            if(goalMask[idx]){
+                bestGoal = g;
+                bestGoalIdx = idx;
+                continue;
+            }
+
+            int x = idx % map.width;
+            int y = idx / map.width;
+
+            for(int dy = -1; dy <= 1; dy++){
+                for(int dx = -1; dx <= 1; dx++){
+                    if(dx == 0 && dy == 0) continue;
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if(nx < 0 || ny < 0 || nx >= map.width || ny >= map.height) continue;
+
+                    int nidx = nx + ny * map.width;
+                    if(!passable(map, nidx)) continue;
+                    if(safeOnly && !isZeroDamageTile(map, nidx)) continue;
+
+                    // No cutting corners through blocked tiles.
+                    if(dx != 0 && dy != 0){
+                        int aidx = (x + dx) + y * map.width;
+                        int bidx = x + (y + dy) * map.width;
+                        if(!passable(map, aidx) || !passable(map, bidx)) continue;
+                        if(safeOnly && (!isZeroDamageTile(map, aidx) || !isZeroDamageTile(map, bidx))) continue;
+                    }
+
+                    float step = (dx == 0 || dy == 0) ? 1f : Mathf.sqrt2;
+
+                    float ng;
+                    if(safeOnly || nearest){
+                        float tie = step * 0.0001f;
+                        ng = g + step + tie;
+
+                        if(safeOnly && map.safeDist != null && map.safeBias > 0.0001f){
+                            int sd = map.safeDist[nidx];
+                            float centerBias = map.safeBias * corridorBias;
+                            ng += centerBias / (Math.max(0f, sd) + 1f);
+                        }
+                    }else{
+                        float distWorld = tilesize * step;
+                        float dmg = edgeDamage(map, idx, nidx, distWorld, unit, speed, true);
+                        float distBias = step * minDamageDistanceBias;
+                        float turnBias = turnSeverity(pathParent[idx], idx, nidx, map.width) * minDamageTurnBias;
+                        float tie = step * 0.00001f;
+                        ng = g + dmg + distBias + turnBias + tie;
+                    }
+
+                    if(ng >= bestGoal) continue;
+
+                    float prev = (pathBestStamp[nidx] == stamp) ? pathBest[nidx] : Float.POSITIVE_INFINITY;
+                    if(ng >= prev) continue;
+
+                    pathBestStamp[nidx] = stamp;
+                    pathBest[nidx] = ng;
+                    pathParent[nidx] = idx;
+                    pathStack.add(nidx);
+                }
+            }
+        }
+
+        if(bestGoalIdx == -1) return null;
+        return new PathResult(reconstruct(pathParent, bestGoalIdx));
+    }
+
+    ShiftedPath findBestShiftedClusterPath(ControlledCluster cluster, ThreatMap map, int goalX, int goalY, UnitCostGroup units){
+        if(cluster == null || map == null) return null;
+
+        goalX = clamp(goalX, 0, map.width - 1);
+        goalY = clamp(goalY, 0, map.height - 1);
+
+        int goalRadius = settings.goalCandidateRadius;
+        IntSeq goalsAll = buildNearestGoalCandidates(map, goalX, goalY, goalRadius, false);
+        if(goalsAll.isEmpty()) return null;
+        IntSeq goalsSafe = buildNearestGoalCandidates(map, goalX, goalY, goalRadius, true);
+        boolean[] goalMaskAll = buildGoalMask(map, goalsAll);
+        boolean[] goalMaskSafe = goalsSafe.isEmpty() ? null : buildGoalMask(map, goalsSafe);
+
+        int startX = clamp(worldToTile(cluster.x), 0, map.width - 1);
+        int startY = clamp(worldToTile(cluster.y), 0, map.height - 1);
+        if(!inBounds(map, startX, startY)) return null;
+        if(!map.passable[startX + startY * map.width]){
+            int startIdx = findNearestPassable(map, startX, startY, 10);
+            if(startIdx == -1) return null;
+            startX = startIdx % map.width;
+            startY = startIdx / map.width;
+        }
+
+        float speed = settings.useSlowestUnit
+            ? units.slowestSpeed()
+            : Math.max(0.0001f, cluster.speed);
+
+        boolean nearestPlan = settings.nearestPlan;
+        PathResult base = findClusterPathFromStart(map, startX, startY, goalsAll, goalMaskAll, goalsSafe, goalMaskSafe, units, speed, nearestPlan);
+        if(base == null || base.path == null || base.path.isEmpty()) return null;
+
+        // Plan from center first, then try small offsets to keep the whole formation's collision volume safe.
+        float offset = Mathf.clamp(cluster.maxHitRadiusWorld, tilesize * 0.5f, tilesize * 3f);
+        float[] dxs = new float[]{0f, -offset, offset, 0f, 0f};
+        float[] dys = new float[]{0f, 0f, 0f, offset, -offset};
+
+        ShiftedPath[] candidates = new ShiftedPath[dxs.length];
+        if(base.path.size >= parallelCandidateMinPath && StealthPathPlanTask.workers() > 1){
+            evaluateShiftedCandidatesParallel(candidates, cluster, map, base, dxs, dys, goalsAll, goalMaskAll, goalsSafe, goalMaskSafe, units, speed, nearestPlan);
+        }else{
+            for(int i = 0; i < dxs.length; i++){
+                candidates[i] = evaluateShiftedCandidate(cluster, map, base, dxs[i], dys[i], goalsAll, goalMaskAll, goalsSafe, goalMaskSafe, units, speed, nearestPlan);
+            }
+        }
+
+        // Pick in candidate order, so the result does not depend on which worker finished first.
+        ShiftedPath best = null;
+        for(ShiftedPath c : candidates){
+            if(c == null) continue;
+            if(nearestPlan){
+                if(best == null
+                    || c.path.size < best.path.size
+                    || (c.path.size == best.path.size && (c.minSafeDist > best.minSafeDist || (c.minSafeDist == best.minSafeDist && c.maxDmg + 0.0001f < best.maxDmg)))){
+                    best = c;
+                }
+            }else{
+                if(best == null
+                    || c.maxDmg + 0.0001f < best.maxDmg
+                    || (Math.abs(c.maxDmg - best.maxDmg) <= 0.0001f && (c.minSafeDist > best.minSafeDist || (c.minSafeDist == best.minSafeDist && c.path.size < best.path.size)))){
+                    best = c;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Evaluates the offset candidates together with helper jobs on the planner pool ({@link StealthPathPlanTask#execute}).
+     * Candidates are claimed one at a time: the caller claims with its own scratch, each helper with the planner of its
+     * pool thread, so no extra scratch is allocated. The caller only waits for candidates a running helper has claimed;
+     * helpers that start late find nothing left and return, so a busy pool never blocks the caller.
+     * Debug lines are buffered per candidate and replayed in candidate order.
+     *
+     * 与规划线程池上的辅助任务一起评估偏移候选：逐个认领，调用方用自己的临时数组，辅助任务借用所在线程的寻路实例；
+     * 调用方只等待已被认领的候选，排队中的辅助任务启动时若已无候选则直接返回，不会互相阻塞。日志按候选顺序回放。
+     */
+    private void evaluateShiftedCandidatesParallel(ShiftedPath[] out, ControlledCluster cluster, ThreatMap map, PathResult base, float[] dxs, float[] dys,
+                                                   IntSeq goalsAll, boolean[] goalMaskAll, IntSeq goalsSafe, boolean[] goalMaskSafe,
+                                                   UnitCostGroup units, float speed, boolean nearestPlan){
+        PlanLog ownLog = log;
+        CandidateBatch batch = new CandidateBatch(out, settings, ownLog != null, cluster, map, base, dxs, dys, goalsAll, goalMaskAll, goalsSafe, goalMaskSafe, units, speed, nearestPlan);
+        int helpers = Math.min(StealthPathPlanTask.workers(), dxs.length - 1);
+        for(int i = 0; i < helpers; i++){
+            StealthPathPlanTask.execute(batch);
+        }
+
+        try{
+            while(batch.runNext(this)){
+            }
+        }finally{
+            begin(batch.settings, ownLog);
+        }
+        batch.await();
+        for(int i = 0; i < dxs.length; i++){
+            if(batch.logs[i] != null) batch.logs[i].replay(ownLog);
+        }
+    }
+
+    /** Offset candidates of one cluster plan, shared by the caller and its helper jobs. 一次集群规划的偏移候选（调用方与辅助任务共享）。 */
+    private static final class CandidateBatch implements Runnable{
+        final ShiftedPath[] out;
+        final DeferredLog[] logs;
+        final PlanSettings settings;
+        final ControlledCluster cluster;
+        final ThreatMap map;
+        final PathResult base;
+        final float[] dxs, dys;
+        final IntSeq goalsAll, goalsSafe;
+        final boolean[] goalMaskAll, goalMaskSafe;
+        final UnitCostGroup units;
+        final float speed;
+        final boolean nearestPlan;
+        final AtomicInteger next = new AtomicInteger();
+        private int finished;
+        private Throwable error;
+
+        CandidateBatch(ShiftedPath[] out, PlanSettings settings, boolean logged, ControlledCluster cluster, ThreatMap map, PathResult base, float[] dxs, float[] dys,
+                       IntSeq goalsAll, boolean[] goalMaskAll, IntSeq goalsSafe, boolean[] goalMaskSafe, UnitCostGroup units, float speed, boolean nearestPlan){
+            this.out = out;
+            this.settings = settings;
+            this.cluster = cluster;
+            this.map = map;
+            this.base = base;
+            this.dxs = dxs;
+            this.dys = dys;
+            this.goalsAll = goalsAll;
+            this.goalMaskAll = goalMaskAll;
+            this.goalsSafe = goalsSafe;
+            this.goalMaskSafe = goalMaskSafe;
+            this.units = units;
+            this.speed = speed;
+            this.nearestPlan = nearestPlan;
+            logs = new DeferredLog[dxs.length];
+            if(logged){
+                for(int i = 0; i < logs.length; i++){
+                    logs[i] = new DeferredLog();
+                }
+            }
+        }
+
+        /** Helper job: evaluates candidates with the pool thread's planner until none are left. 辅助任务。 */
+        @Override
+        public void run(){
+            StealthPathPlanner planner = StealthPathPlanTask.workerPlanner();
+            if(planner == null) return;
+            while(runNext(planner)){
+            }
+        }
+
+        /** Claims and evaluates one candidate; false once every candidate is claimed. 认领并评估一个候选。 */
+        boolean runNext(StealthPathPlanner planner){
+            int i = next.getAndIncrement();
+            if(i >= out.length) return false;
+            ShiftedPath result = null;
+            Throwable failure = null;
+            try{
+                planner.begin(settings, logs[i]);
+                result = planner.evaluateShiftedCandidate(cluster, map, base, dxs[i], dys[i], goalsAll, goalMaskAll, goalsSafe, goalMaskSafe, units, speed, nearestPlan);
+            }catch(Throwable t){
+                failure = t;
+            }
+            synchronized(this){
+                out[i] = result;
+                if(failure != null && error == null) error = failure;
+                finished++;
+                notifyAll();
+            }
+            return true;
+        }
+
+        /** Waits for candidates still running on helpers and rethrows the first failure. 等待辅助任务完成，并抛出首个异常。 */
+        synchronized void await(){
+            boolean interrupted = false;
+            while(finished < out.length){
+                try{
+                    wait();
+                }catch(InterruptedException e){
+                    interrupted = true;
+                }
+            }
+            if(interrupted) Thread.currentThread().interrupt();
+            if(error instanceof RuntimeException) throw (RuntimeException)error;
+            if(error instanceof Error) throw (Error)error;
+            if(error != null) throw new RuntimeException(error);
+        }
+    }
+
+    private ShiftedPath evaluateShiftedCandidate(ControlledCluster cluster, ThreatMap map, PathResult base, float dx, float dy,
+                                                 IntSeq goalsAll, boolean[] goalMaskAll, IntSeq goalsSafe, boolean[] goalMaskSafe,
+                                                 UnitCostGroup units, float speed, boolean nearestPlan){
+        IntSeq shifted = shiftTilePath(map, base.path, dx, dy);
+        if(shifted == null || shifted.isEmpty()) return null;
+
+        IntSeq candidatePath = shifted;
+        StealthPathPathEval eval = new StealthPathPathEval(map, shifted);
+        if(eval.wouldDrownForUnits(units, speed)){
+            int offsetStartX = clamp(worldToTile(cluster.x + dx), 0, map.width - 1);
+            int offsetStartY = clamp(worldToTile(cluster.y + dy), 0, map.height - 1);
+
+            if(!map.passable[offsetStartX + offsetStartY * map.width]){
+                int offsetStartIdx = findNearestPassable(map, offsetStartX, offsetStartY, 10);
+                if(offsetStartIdx == -1) return null;
+                offsetStartX = offsetStartIdx % map.width;
+                offsetStartY = offsetStartIdx / map.width;
+            }
+
+            PathResult rerouted = findClusterPathFromStart(map, offsetStartX, offsetStartY, goalsAll, goalMaskAll, goalsSafe, goalMaskSafe, units, speed, nearestPlan);
+            if(rerouted == null || rerouted.path == null || rerouted.path.isEmpty()) return null;
+            eval = new StealthPathPathEval(map, rerouted.path);
+            if(eval.wouldDrownForUnits(units, speed)) return null;
+
+            if(log != null){
+                log.log("DROWN", "sp.log.drown.replan", cluster.key, Strings.autoFixed(dx, 1), Strings.autoFixed(dy, 1), rerouted.path.size);
+            }
+            candidatePath = rerouted.path;
+        }
+
+        float dmgGround = cluster.hasGround ? eval.damageForUnitsByFlight(units, false, settings.useSlowestUnit) : Float.NaN;
+        float dmgAir = cluster.hasAir ? eval.damageForUnitsByFlight(units, true, settings.useSlowestUnit) : Float.NaN;
+
+        float maxDmg = 0f;
+        if(cluster.hasGround && Float.isFinite(dmgGround)) maxDmg = Math.max(maxDmg, dmgGround);
+        if(cluster.hasAir && Float.isFinite(dmgAir)) maxDmg = Math.max(maxDmg, dmgAir);
+
+        short minSafeDist = 0;
+        if(map.safeDist != null){
+            short min = Short.MAX_VALUE;
+            for(int s = 0; s < candidatePath.size; s++){
+                int tidx = candidatePath.items[s];
+                short d = map.safeDist[tidx];
+                if(d < min) min = d;
+            }
+            minSafeDist = min == Short.MAX_VALUE ? 0 : min;
+        }
+
+        return new ShiftedPath(candidatePath, dx, dy, dmgGround, dmgAir, maxDmg, minSafeDist);
+    }
+
+    private PathResult findClusterPathFromStart(
+        ThreatMap map,
+        int startX,
+        int startY,
+        IntSeq goalsAll,
+        boolean[] goalMaskAll,
+        IntSeq goalsSafe,
+        boolean[] goalMaskSafe,
+        UnitCostGroup units,
+        float speed,
+        boolean nearestPlan
+    ){
+        if(map == null) return null;
+        if(!inBounds(map, startX, startY)) return null;
+
+        if(nearestPlan){
+            return findPath(map, startX, startY, goalsAll, goalMaskAll, PathMode.nearest, units, speed);
+        }
+
+        PathResult safe = goalsSafe != null && !goalsSafe.isEmpty() && goalMaskSafe != null
+            ? findPath(map, startX, startY, goalsSafe, goalMaskSafe, PathMode.safeOnly, units, speed)
+            : null;
+        if(safe != null && safe.path != null && !safe.path.isEmpty()) return safe;
+
+        return findPath(map, startX, startY, goalsAll, goalMaskAll, PathMode.minDamage, units, speed);
+    }
+
+    static IntSeq shiftTilePath(ThreatMap map, IntSeq base, float dx, float dy){
+        if(map == null || base == null || base.isEmpty()) return null;
+
+        IntSeq out = new IntSeq(base.size);
+        int last = Integer.MIN_VALUE;
+
+        for(int i = 0; i < base.size; i++){
+            int idx = base.items[i];
+            int tx = idx % map.width;
+            int ty = idx / map.width;
+
+            float wx = tileToWorld(tx) + tilesize / 2f + dx;
+            float wy = tileToWorld(ty) + tilesize / 2f + dy;
+
+            int ntx = clamp(worldToTile(wx), 0, map.width - 1);
+            int nty = clamp(worldToTile(wy), 0, map.height - 1);
+            int nidx = ntx + nty * map.width;
+
+            if(!map.passable[nidx]) return null;
+
+            if(nidx != last){
+                out.add(nidx);
+                last = nidx;
+            }
+        }
+
+        return out;
+    }
+
+    static int findNearestPassable(ThreatMap map, int x, int y, int radius){
+        if(inBounds(map, x, y)){
+            int idx = x + y * map.width;
+            if(map.passable[idx]) return idx;
+        }
+
+        int best = -1;
+        float bestDst2 = Float.POSITIVE_INFINITY;
+
+        for(int dy = -radius; dy <= radius; dy++){
+            for(int dx = -radius; dx <= radius; dx++){
+                int nx = x + dx;
+                int ny = y + dy;
+                if(!inBounds(map, nx, ny)) continue;
+                int nidx = nx + ny * map.width;
+                if(!map.passable[nidx]) continue;
+
+                float d2 = dx * dx + dy * dy;
+                if(d2 < bestDst2){
+                    bestDst2 = d2;
+                    best = nidx;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    static IntSeq buildNearestGoalCandidates(ThreatMap map, int x, int y, int radius, boolean safeOnly){
+        IntSeq out = new IntSeq();
+        if(map == null) return out;
+
+        radius = Math.max(1, radius);
+        int radiusSq = radius * radius;
+        IntSeq[] buckets = new IntSeq[radiusSq + 1];
+
+        for(int dy = -radius; dy <= radius; dy++){
+            for(int dx = -radius; dx <= radius; dx++){
+                int d2 = dx * dx + dy * dy;
+                if(d2 > radiusSq) continue;
+
+                int nx = x + dx;
+                int ny = y + dy;
+                if(!inBounds(map, nx, ny)) continue;
+
+                int nidx = nx + ny * map.width;
+                if(!map.passable[nidx]) continue;
+                if(safeOnly && !isZeroDamageTile(map, nidx)) continue;
+
+                IntSeq bucket = buckets[d2];
+                if(bucket == null){
+                    bucket = new IntSeq();
+                    buckets[d2] = bucket;
+                }
+                bucket.add(nidx);
+            }
+        }
+
+        int limit = 256;
+        for(int d2 = 0; d2 < buckets.length && out.size < limit; d2++){
+            IntSeq bucket = buckets[d2];
+            if(bucket == null || bucket.isEmpty()) continue;
+            for(int i = 0; i < bucket.size && out.size < limit; i++){
+                out.add(bucket.items[i]);
+            }
+        }
+
+        return out;
+    }
+
+    static boolean isZeroDamageTile(ThreatMap map, int idx){
+        if(map == null || idx < 0 || idx >= map.size) return false;
+        float threat = map.risk == null ? 0f : map.risk[idx];
+        float floor = map.floorRisk == null ? 0f : map.floorRisk[idx];
+        return threat <= safeRiskEps && floor <= safeRiskEps;
+    }
+
+    static boolean[] buildGoalMask(ThreatMap map, IntSeq goals){
+        boolean[] mask = new boolean[map.size];
+        for(int i = 0; i < goals.size; i++){
+            int idx = goals.items[i];
+            if(idx >= 0 && idx < map.size){
+                mask[idx] = true;
+            }
+        }
+        return mask;
+    }
+
+    static float segmentDistanceWorld(ThreatMap map, int a, int b){
+        int ax = a % map.width;
+        int ay = a / map.width;
+        int bx = b % map.width;
+        int by = b / map.width;
+
+        int dx = Math.abs(bx - ax);
+        int dy = Math.abs(by - ay);
+        float step = (dx + dy == 1) ? 1f : Mathf.sqrt2;
+        return tilesize * step;
+    }
+
+    private static float segmentSpeed(ThreatMap map, int a, int b, UnitCostProfile unit, float fallbackSpeed){
+        float base = unit.nominalSpeed(fallbackSpeed);
+        if(!unit.floorSpeed) return base;
+
+        float segMul = (unit.floorSpeedMul(map, a) + unit.floorSpeedMul(map, b)) * 0.5f;
+        return Math.max(0.0001f, base * segMul);
+    }
+
+    static float segmentTicks(ThreatMap map, int a, int b, UnitCostProfile unit, float fallbackSpeed){
+        float speed = segmentSpeed(map, a, b, unit, fallbackSpeed);
+        return segmentDistanceWorld(map, a, b) / Math.max(0.0001f, speed);
+    }
+
+    static float avgDrownRate(ThreatMap map, int a, int b, UnitCostProfile unit){
+        return (unit.drownRateAt(map, a) + unit.drownRateAt(map, b)) * 0.5f;
+    }
+
+    private static float turnSeverity(int prevIdx, int curIdx, int nextIdx, int width){
+        if(prevIdx < 0 || curIdx < 0 || nextIdx < 0 || width <= 0) return 0f;
+
+        int px = prevIdx % width;
+        int py = prevIdx / width;
+        int cx = curIdx % width;
+        int cy = curIdx / width;
+        int nx = nextIdx % width;
+        int ny = nextIdx / width;
+
+        int inDx = Integer.compare(cx, px);
+        int inDy = Integer.compare(cy, py);
+        int outDx = Integer.compare(nx, cx);
+        int outDy = Integer.compare(ny, cy);
+
+        if((inDx == 0 && inDy == 0) || (outDx == 0 && outDy == 0)) return 0f;
+
+        float inLen = Mathf.len(inDx, inDy);
+        float outLen = Mathf.len(outDx, outDy);
+        if(inLen <= 0.0001f || outLen <= 0.0001f) return 0f;
+
+        float cos = (inDx * outDx + inDy * outDy) / (inLen * outLen);
+        cos = Mathf.clamp(cos, -1f, 1f);
+        return 1f - cos;
+    }
+
+    private float heuristic(ThreatMap map, int x, int y, IntSeq goals, PathMode mode){
+        if(goalFieldActive){
+            float dst = goalDist[x + y * map.width];
+            if(!Float.isFinite(dst)) return 0f;
+            return mode == PathMode.minDamage ? dst * minDamageDistanceBias : dst;
+        }
+
+        float best = Float.POSITIVE_INFINITY;
+        for(int i = 0; i < goals.size; i++){
+            int idx = goals.items[i];
+            int gx = idx % map.width;
+            int gy = idx / map.width;
+            float dst = octileDistance(x, y, gx, gy);
+            if(dst < best) best = dst;
+        }
+
+        if(!Float.isFinite(best)) return 0f;
+        return mode == PathMode.minDamage ? best * minDamageDistanceBias : best;
+    }
+
+    private static float octileDistance(int x1, int y1, int x2, int y2){
+        int dx = Math.abs(x2 - x1);
+        int dy = Math.abs(y2 - y1);
+        int diag = Math.min(dx, dy);
+        int straight = Math.max(dx, dy) - diag;
+        return diag * Mathf.sqrt2 + straight;
+    }
+
+    private static IntSeq reconstruct(int[] parent, int endIdx){
+        IntSeq out = new IntSeq();
+        int cur = endIdx;
+        while(cur != -1){
+            out.add(cur);
+            cur = parent[cur];
+        }
+        out.reverse();
+        return out;
+    }
+
+    private static float edgeDamage(ThreatMap map, int a, int b, float distWorld, float speed, boolean includeThreat){
+        if(map == null || distWorld <= 0.0001f) return 0f;
+
+        float v = Math.max(0.0001f, speed);
+        float seconds = distWorld / (v * 60f);
+
+        float dps = 0f;
+        if(includeThreat && map.risk != null){
+            dps += (map.risk[a] + map.risk[b]) * 0.5f;
+        }
+        if(map.floorRisk != null){
+            dps += (map.floorRisk[a] + map.floorRisk[b]) * 0.5f;
+        }
+
+        return dps * seconds;
+    }
+
+    static float edgeDamage(ThreatMap map, int a, int b, float distWorld, UnitCostProfile unit, float fallbackSpeed, boolean includeThreat){
+        if(map == null || distWorld <= 0.0001f) return 0f;
+
+        float segSpeed = segmentSpeed(map, a, b, unit, fallbackSpeed);
+        float seconds = distWorld / (Math.max(0.0001f, segSpeed) * 60f);
+
+        float dps = 0f;
+        if(includeThreat && map.risk != null){
+            dps += (map.risk[a] + map.risk[b]) * 0.5f;
+        }
+
+        float floorPerTick = (unit.floorDamagePerTick(map, a) + unit.floorDamagePerTick(map, b)) * 0.5f;
+        dps += floorPerTick * 60f;
+
+        return dps * seconds;
+    }
+
+    static float estimateDamage(ThreatMap map, IntSeq tilePath, UnitCostProfile unit){
+        if(tilePath == null || tilePath.size <= 1) return 0f;
+        if(unit == null || !unit.present) return 0f;
+
+        float fallbackSpeed = unit.speed;
+        float dmg = 0f;
+
+        for(int i = 0; i < tilePath.size - 1; i++){
+            int a = tilePath.items[i];
+            int b = tilePath.items[i + 1];
+            float distWorld = segmentDistanceWorld(map, a, b);
+            dmg += edgeDamage(map, a, b, distWorld, unit, fallbackSpeed, true);
+        }
+
+        return dmg;
+    }
+
+    static float estimateDamage(ThreatMap map, IntSeq tilePath, float speed){
+        if(tilePath == null || tilePath.size <= 1) return 0f;
+
+        speed = Math.max(0.0001f, speed);
+        float dmg = 0f;
+
+        for(int i = 0; i < tilePath.size - 1; i++){
+            int a = tilePath.items[i];
+            int b = tilePath.items[i + 1];
+
+            int ax = a % map.width;
+            int ay = a / map.width;
+            int bx = b % map.width;
+            int by = b / map.width;
+
+            int dx = Math.abs(bx - ax);
+            int dy = Math.abs(by - ay);
+            float step = (dx + dy == 1) ? 1f : Mathf.sqrt2;
+
+            float distWorld = tilesize * step;
+            dmg += edgeDamage(map, a, b, distWorld, speed, true);
+        }
+
+        return dmg;
+    }
+
+    static float estimateDamageForUnits(ThreatMap map, IntSeq tilePath, UnitCostGroup units, float fallbackSpeed, boolean useSlowestUnit){
+        if(tilePath == null || tilePath.size <= 1) return 0f;
+        return new StealthPathPathEval(map, tilePath).damageForUnits(units, fallbackSpeed, useSlowestUnit);
+    }
+
+    private static long elapsedMillis(long startedNano){
+        return (System.nanoTime() - startedNano) / 1_000_000L;
+    }
+}
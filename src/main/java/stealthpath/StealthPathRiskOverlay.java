@@ -0,0 +1,168 @@
+package stealthpath;
+
+import arc.graphics.Color;
+import arc.graphics.Pixmap;
+import arc.graphics.Texture;
+import arc.graphics.g2d.Draw;
+import arc.graphics.g2d.TextureRegion;
+import arc.math.Mathf;
+
+import static mindustry.Vars.tilesize;
+
+/**
+ * Cached heatmap texture for the risk debug overlay.
+ *
+ * 风险调试覆盖层的缓存纹理：
+ * - 每次刷新把 ThreatMap.risk 归一化（全图 min / max）后写入一张 Pixmap，并上传到复用的 Texture
+ * - 绘制时只画一个覆盖全图的纹理四边形；数字标签读取缓存的归一化值，不再每帧重建 ThreatMap
+ * - 记录上次刷新的威胁过滤参数，规划时若生成了相同参数的 ThreatMap 可直接复用（见 {@link #matches}）
+ */
+final class StealthPathRiskOverlay{
+    private static final float fillAlpha = 0.45f;
+    private static final String[] labels = new String[101];
+
+    private Pixmap pixmap;
+    private Texture texture;
+    private TextureRegion region;
+    private float[] normalized = new float[0];
+    private int width, height;
+    private final Color color = new Color();
+
+    private boolean keyed;
+    private boolean threatsAir, threatsGround, includeUnits;
+    private float threatInflate;
+    private float uploadedAt = Float.NEGATIVE_INFINITY;
+
+    static{
+        for(int i = 0; i < labels.length; i++){
+            labels[i] = String.valueOf(i);
+        }
+    }
+
+    /** Remembers the threat filter the overlay shows. 记录覆盖层使用的威胁过滤参数。 */
+    void setKey(boolean threatsAir, boolean threatsGround, boolean includeUnits, float threatInflate){
+        keyed = true;
+        this.threatsAir = threatsAir;
+        this.threatsGround = threatsGround;
+        this.includeUnits = includeUnits;
+        this.threatInflate = threatInflate;
+    }
+
+    /** Whether a ThreatMap built with these parameters can feed the overlay. 参数相同的 ThreatMap 可直接用于覆盖层。 */
+    boolean matches(boolean threatsAir, boolean threatsGround, boolean includeUnits, float threatInflate){
+        return keyed && this.threatsAir == threatsAir && this.threatsGround == threatsGround && this.includeUnits == includeUnits
+            && Float.floatToIntBits(this.threatInflate) == Float.floatToIntBits(threatInflate);
+    }
+
+    /** True when nothing was uploaded within the last {@code interval} ticks. 距上次上传超过 interval 帧时返回 true。 */
+    boolean due(float now, float interval){
+        return texture == null || now - uploadedAt >= interval || now < uploadedAt;
+    }
+
+    /**
+     * Normalizes {@code map.risk} and uploads it as the overlay texture.
+     * 归一化风险并上传纹理。
+     */
+    void upload(ThreatMap map, float now){
+        if(map == null || map.risk == null) return;
+        ensureBuffers(map.width, map.height);
+
+        int size = width * height;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for(int i = 0; i < size; i++){
+            float risk = Math.max(0f, map.risk[i]);
+            if(risk < min) min = risk;
+            if(risk > max) max = risk;
+        }
+        float invRange = 1f / Math.max(0.0001f, max - min);
+
+        for(int y = 0; y < height; y++){
+            int row = y * width;
+            // Pixmap rows run top-down; world tiles run bottom-up.
+            int py = height - 1 - y;
+            for(int x = 0; x < width; x++){
+                float risk = Math.max(0f, map.risk[row + x]);
+                float n = Mathf.clamp((risk - min) * invRange);
+                normalized[row + x] = n;
+                pixmap.set(x, py, risk <= 0.0001f ? 0 : heatColor(n, fillAlpha).rgba8888());
+            }
+        }
+        texture.draw(pixmap);
+        uploadedAt = now;
+    }
+
+    /** Draws the cached heatmap as one quad over the whole map. 以一个四边形绘制整张热度图。 */
+    void drawHeat(){
+        if(region == null) return;
+        Draw.color();
+        Draw.rect(region, width * tilesize / 2f - tilesize / 2f, height * tilesize / 2f - tilesize / 2f, width * tilesize, height * tilesize);
+    }
+
+    int width(){
+        return width;
+    }
+
+    int height(){
+        return height;
+    }
+
+    /** Normalized risk of one tile from the last upload, in [0, 1]. 上次上传时该格的归一化风险。 */
+    float normalized(int x, int y){
+        return normalized[x + y * width];
+    }
+
+    static String label(float normalized){
+        return labels[Mathf.clamp(Math.round(normalized * 100f), 0, 100)];
+    }
+
+    /** Green → yellow → red, like the old per-tile labels. 绿 → 黄 → 红渐变。 */
+    Color heatColor(float normalized, float alpha){
+        if(normalized <= 0.5f){
+            color.set(0.2f, 0.95f, 0.25f, alpha);
+            color.lerp(Color.yellow, normalized * 2f);
+        }else{
+            color.set(Color.yellow);
+            color.lerp(Color.red, (normalized - 0.5f) * 2f);
+        }
+        color.a = alpha;
+        return color;
+    }
+
+    /** Forces the next {@link #due} to be true (world changed). 下次检查时强制刷新。 */
+    void invalidate(){
+        uploadedAt = Float.NEGATIVE_INFINITY;
+        keyed = false;
+    }
+
+    void dispose(){
+        release();
+        invalidate();
+    }
+
+    private void release(){
+        if(pixmap != null){
+            pixmap.dispose();
+            pixmap = null;
+        }
+        if(texture != null){
+            texture.dispose();
+            texture = null;
+        }
+        region = null;
+        width = height = 0;
+    }
+
+    private void ensureBuffers(int w, int h){
+        if(pixmap != null && (pixmap.width != w || pixmap.height != h)) release();
+        if(pixmap == null){
+            pixmap = new Pixmap(w, h);
+            texture = new Texture(pixmap);
+            texture.setFilter(Texture.TextureFilter.nearest);
+            region = new TextureRegion(texture);
+            normalized = new float[w * h];
+        }
+        width = w;
+        height = h;
+    }
+}
@@ -0,0 +1,96 @@
+package stealthpath;
+
+import arc.struct.Seq;
+
+import static mindustry.Vars.tilesize;
+import static stealthpath.StealthPathMathUtil.clamp;
+
+/**
+ * Adds one threat disc / annulus to a risk raster, row by row.
+ *
+ * 风险圆（或圆环）栅格化：
+ * - 逐行处理；每行的判定与累加交给 {@link RowKernel}
+ * - 运行时检测 jdk.incubator.vector：可用时使用 SIMD 行内核（src/vector/java，按掩码累加），否则使用标量循环
+ * - 两种内核的浮点运算顺序完全相同（同样的 dx*dx + dy*dy、同样的比较与加法），结果逐位一致
+ * Android 与未加 {@code --add-modules jdk.incubator.vector} 的桌面 JVM 会自动回退到标量实现。
+ */
+final class StealthPathRiskRaster{
+    static final String vectorKernelClass = "stealthpath.StealthPathRiskRasterVector";
+
+    /** Accumulates {@code dps} into every tile of one row whose center lies in the annulus. 行内核。 */
+    interface RowKernel{
+        /**
+         * @param rowStart index of tile (0, y) in {@code risk}
+         * @param dy2 squared vertical distance from the row's tile centers to the threat
+         */
+        void row(float[] risk, int rowStart, int minX, int maxX, float cx, float dy2, float r2, float mr2, float dps);
+    }
+
+    static final RowKernel scalar = (risk, rowStart, minX, maxX, cx, dy2, r2, mr2, dps) -> {
+        for(int tx = minX; tx <= maxX; tx++){
+            float dx = (float)(tx * tilesize) + tilesize / 2f - cx;
+            float d2 = dx * dx + dy2;
+            if(d2 <= r2 && d2 >= mr2){
+                risk[rowStart + tx] += dps;
+            }
+        }
+    };
+
+    private static final RowKernel vector = loadVectorKernel();
+
+    private StealthPathRiskRaster(){
+    }
+
+    /** The SIMD kernel, or null when the Vector API is unavailable. SIMD 内核；不可用时为 null。 */
+    static RowKernel vectorKernel(){
+        return vector;
+    }
+
+    static RowKernel preferredKernel(){
+        return vector != null ? vector : scalar;
+    }
+
+    /**
+     * Adds {@code dps} to every tile in [minX..maxX] x [minY..maxY] whose center is within [mr, r] of (x, y).
+     * 对包围盒内、格子中心到 (x, y) 距离在 [mr, r] 内的格子累加 dps。
+     */
+    static void addAnnulus(RowKernel kernel, float[] risk, int width, int minX, int maxX, int minY, int maxY, float x, float y, float r2, float mr2, float dps){
+        for(int ty = minY; ty <= maxY; ty++){
+            float dy = (float)(ty * tilesize) + tilesize / 2f - y;
+            kernel.row(risk, ty * width, minX, maxX, x, dy * dy, r2, mr2, dps);
+        }
+    }
+
+    /**
+     * Adds every threat's coverage (range inflated by {@code threatInflate}, minus its min range) to {@code map.risk}.
+     * 将每个威胁的覆盖圆环（射程外扩 threatInflate）累加到 map.risk。
+     */
+    static void applyThreats(RowKernel kernel, ThreatMap map, Seq<Threat> threats, float threatInflate){
+        for(int i = 0; i < threats.size; i++){
+            Threat t = threats.get(i);
+            if(t == null || t.dps <= 0.0001f || t.range <= 0.0001f) continue;
+
+            float r = t.range + threatInflate;
+            float r2 = r * r;
+            float mr = Math.max(0f, t.minRange);
+            float mr2 = mr * mr;
+
+            // Distance is checked at tile centers; pad bounds so center candidates are never missed.
+            int minX = clamp((int)Math.floor((t.x - r) / tilesize) - 1, 0, map.width - 1);
+            int maxX = clamp((int)Math.ceil((t.x + r) / tilesize) + 1, 0, map.width - 1);
+            int minY = clamp((int)Math.floor((t.y - r) / tilesize) - 1, 0, map.height - 1);
+            int maxY = clamp((int)Math.ceil((t.y + r) / tilesize) + 1, 0, map.height - 1);
+
+            addAnnulus(kernel, map.risk, map.width, minX, maxX, minY, maxY, t.x, t.y, r2, mr2, t.dps);
+        }
+    }
+
+    private static RowKernel loadVectorKernel(){
+        try{
+            return (RowKernel)Class.forName(vectorKernelClass).getDeclaredConstructor().newInstance();
+        }catch(Throwable ignored){
+            // Missing class (Android), missing module (no --add-modules), or an unusable species.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package stealthpath;
+
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+
+import java.util.Arrays;
+
+/**
+ * Cached 4-neighbour (city-block) distance from every tile to the nearest risk tile.
+ *
+ * 安全距离场（到最近风险格子的曼哈顿距离，short[]）：
+ * - 首次或变化很大时用两遍扫描（chamfer）整图重算，不再需要 BFS 队列
+ * - 之后只比较风险种子的增减，用 raise/lower 波前只更新受影响的区域（动态 brushfire），结果与整图重算一致
+ * - 每格记录最近的种子格子，用于判断种子被移除后哪些格子需要重新计算
+ * 只在主线程使用；返回的数组会在下次 {@link #update} 时被改写（快照由 ThreatMap.copyFrom 复制）。
+ */
+final class StealthPathSafeDistance{
+    static final float seedRisk = 0.0001f;
+    private static final short far = Short.MAX_VALUE;
+    // Above this share of changed seeds, a full two-pass sweep is cheaper than the wavefronts.
+    private static final int fullRebuildDivisor = 32;
+
+    private int width = -1, height = -1;
+    private short[] dist;
+    private int[] nearest;
+    private boolean[] seed;
+    private boolean[] raising;
+    private int seedCount;
+    private boolean valid;
+
+    private final IntSeq added = new IntSeq();
+    private final IntSeq removed = new IntSeq();
+    private final Seq<IntSeq> buckets = new Seq<>();
+    private int bucketCursor;
+    private int queued;
+
+    /**
+     * Brings the field in line with {@code risk} and returns it, or null when no tile carries risk.
+     * 根据 risk 更新距离场；没有任何风险格子时返回 null。
+     */
+    short[] update(float[] risk, int width, int height){
+        int size = width * height;
+        if(this.width != width || this.height != height || dist == null){
+            this.width = width;
+            this.height = height;
+            dist = new short[size];
+            nearest = new int[size];
+            seed = new boolean[size];
+            raising = new boolean[size];
+            valid = false;
+        }
+
+        added.clear();
+        removed.clear();
+        int count = 0;
+        for(int i = 0; i < size; i++){
+            boolean s = risk[i] > seedRisk;
+            if(s) count++;
+            if(s != seed[i]){
+                if(s){
+                    added.add(i);
+                }else{
+                    removed.add(i);
+                }
+                seed[i] = s;
+            }
+        }
+        seedCount = count;
+
+        if(seedCount == 0){
+            valid = false;
+            return null;
+        }
+        if(!valid || (added.size + removed.size) * fullRebuildDivisor > size){
+            rebuild();
+            valid = true;
+        }else if(added.size + removed.size > 0){
+            patch();
+        }
+        return dist;
+    }
+
+    /** Drops the cached field (world change). 丢弃缓存。 */
+    void reset(){
+        width = -1;
+        height = -1;
+        dist = null;
+        nearest = null;
+        seed = null;
+        raising = null;
+        valid = false;
+        buckets.clear();
+    }
+
+    private void rebuild(){
+        int w = width, h = height;
+        for(int i = 0; i < dist.length; i++){
+            if(seed[i]){
+                dist[i] = 0;
+                nearest[i] = i;
+            }else{
+                dist[i] = far;
+                nearest[i] = -1;
+            }
+        }
+
+        // Two-pass chamfer with the 4-neighbour mask: exact city-block distance.
+        for(int y = 0; y < h; y++){
+            for(int x = 0; x < w; x++){
+                int idx = x + y * w;
+                if(x > 0) pull(idx, idx - 1);
+                if(y > 0) pull(idx, idx - w);
+            }
+        }
+        for(int y = h - 1; y >= 0; y--){
+            for(int x = w - 1; x >= 0; x--){
+                int idx = x + y * w;
+                if(x < w - 1) pull(idx, idx + 1);
+                if(y < h - 1) pull(idx, idx + w);
+            }
+        }
+    }
+
+    private void pull(int idx, int from){
+        int d = dist[from];
+        if(d == far) return;
+        if(d + 1 < dist[idx]){
+            dist[idx] = (short)Math.min(far, d + 1);
+            nearest[idx] = nearest[from];
+        }
+    }
+
+    private void patch(){
+        for(int i = 0; i < removed.size; i++){
+            int idx = removed.items[i];
+            dist[idx] = far;
+            nearest[idx] = -1;
+            raising[idx] = true;
+            push(idx, 0);
+        }
+        for(int i = 0; i < added.size; i++){
+            int idx = added.items[i];
+            dist[idx] = 0;
+            nearest[idx] = idx;
+            raising[idx] = false;
+            push(idx, 0);
+        }
+
+        while(queued > 0){
+            IntSeq bucket = buckets.get(bucketCursor);
+            if(bucket.isEmpty()){
+                bucketCursor++;
+                continue;
+            }
+            int idx = bucket.pop();
+            queued--;
+            if(raising[idx]){
+                raise(idx);
+            }else if(nearest[idx] >= 0 && seed[nearest[idx]]){
+                lower(idx);
+            }
+        }
+        bucketCursor = 0;
+    }
+
+    /** Clears neighbours that pointed at a removed seed, and re-queues the valid ones so they can refill the hole. */
+    private void raise(int idx){
+        int x = idx % width, y = idx / width;
+        if(x > 0) raiseNeighbour(idx - 1);
+        if(x < width - 1) raiseNeighbour(idx + 1);
+        if(y > 0) raiseNeighbour(idx - width);
+        if(y < height - 1) raiseNeighbour(idx + width);
+        raising[idx] = false;
+    }
+
+    private void raiseNeighbour(int n){
+        if(nearest[n] < 0 || raising[n]) return;
+        if(!seed[nearest[n]]){
+            push(n, dist[n]);
+            dist[n] = far;
+            nearest[n] = -1;
+            raising[n] = true;
+        }else{
+            push(n, dist[n]);
+        }
+    }
+
+    private void lower(int idx){
+        int x = idx % width, y = idx / width;
+        int s = nearest[idx];
+        if(x > 0) lowerNeighbour(idx - 1, s);
+        if(x < width - 1) lowerNeighbour(idx + 1, s);
+        if(y > 0) lowerNeighbour(idx - width, s);
+        if(y < height - 1) lowerNeighbour(idx + width, s);
+    }
+
+    private void lowerNeighbour(int n, int s){
+        if(raising[n]) return;
+        int d = Math.abs(n % width - s % width) + Math.abs(n / width - s / width);
+        if(d < dist[n]){
+            dist[n] = (short)Math.min(far, d);
+            nearest[n] = s;
+            push(n, d);
+        }
+    }
+
+    private void push(int idx, int key){
+        while(buckets.size <= key){
+            buckets.add(new IntSeq());
+        }
+        buckets.get(key).add(idx);
+        if(key < bucketCursor) bucketCursor = key;
+        queued++;
+    }
+}
@@ -0,0 +1,109 @@
+package stealthpath;
+
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid of point threats (world coordinates) with a reach radius, for bounding-box gathering.
+ *
+ * 威胁点的均匀网格（世界坐标）：
+ * - 每个条目带一个作用半径（射程），查询时只遍历与“矩形外扩最大半径”相交的格子
+ * - 用单链表串起同一格子内的条目（head / next 数组），重建只需 O(条目数)，不分配对象
+ * - 查询结果再按“圆与矩形相交”精确过滤，并按插入顺序输出，因此结果（含浮点累加顺序）与逐个检查全部条目一致
+ */
+final class StealthPathThreatGrid<T>{
+    private final float cellSize;
+    private int cols, rows;
+    private int[] head = new int[0];
+    private int[] next = new int[16];
+    private float[] xs = new float[16], ys = new float[16], reach = new float[16];
+    private Object[] items = new Object[16];
+    private int count;
+    private float maxReach;
+    private final IntSeq hits = new IntSeq();
+
+    StealthPathThreatGrid(float cellSize){
+        this.cellSize = Math.max(1f, cellSize);
+    }
+
+    /** Clears the grid and resizes it to cover {@code worldWidth x worldHeight}. 清空并按地图尺寸重设网格。 */
+    void reset(float worldWidth, float worldHeight){
+        cols = Math.max(1, (int)Math.ceil(worldWidth / cellSize));
+        rows = Math.max(1, (int)Math.ceil(worldHeight / cellSize));
+        if(head.length < cols * rows) head = new int[cols * rows];
+        Arrays.fill(head, 0, cols * rows, -1);
+        Arrays.fill(items, 0, count, null);
+        count = 0;
+        maxReach = 0f;
+    }
+
+    void add(float x, float y, float reach, T item){
+        if(count == next.length){
+            int cap = count * 2;
+            next = Arrays.copyOf(next, cap);
+            xs = Arrays.copyOf(xs, cap);
+            ys = Arrays.copyOf(ys, cap);
+            this.reach = Arrays.copyOf(this.reach, cap);
+            items = Arrays.copyOf(items, cap);
+        }
+        int cell = cellX(x) + cellY(y) * cols;
+        xs[count] = x;
+        ys[count] = y;
+        this.reach[count] = reach;
+        items[count] = item;
+        next[count] = head[cell];
+        head[cell] = count;
+        count++;
+        maxReach = Math.max(maxReach, reach);
+    }
+
+    int size(){
+        return count;
+    }
+
+    /** Adds every item in insertion order. 按插入顺序输出全部条目。 */
+    @SuppressWarnings("unchecked")
+    void all(Seq<T> out){
+        for(int i = 0; i < count; i++){
+            out.add((T)items[i]);
+        }
+    }
+
+    /**
+     * Adds every item whose reach circle (plus {@code pad}) touches the rectangle, in insertion order.
+     * 按插入顺序输出作用圆（外扩 pad）与矩形相交的所有条目。
+     */
+    @SuppressWarnings("unchecked")
+    void query(float minX, float minY, float maxX, float maxY, float pad, Seq<T> out){
+        if(count == 0) return;
+        float m = maxReach + Math.max(0f, pad);
+        int cx0 = cellX(minX - m), cx1 = cellX(maxX + m);
+        int cy0 = cellY(minY - m), cy1 = cellY(maxY + m);
+
+        hits.clear();
+        for(int cy = cy0; cy <= cy1; cy++){
+            for(int cx = cx0; cx <= cx1; cx++){
+                for(int i = head[cx + cy * cols]; i != -1; i = next[i]){
+                    float dx = Math.max(0f, Math.max(minX - xs[i], xs[i] - maxX));
+                    float dy = Math.max(0f, Math.max(minY - ys[i], ys[i] - maxY));
+                    float r = reach[i] + Math.max(0f, pad);
+                    if(dx * dx + dy * dy <= r * r) hits.add(i);
+                }
+            }
+        }
+        hits.sort();
+        for(int i = 0; i < hits.size; i++){
+            out.add((T)items[hits.items[i]]);
+        }
+    }
+
+    private int cellX(float x){
+        return Math.max(0, Math.min(cols - 1, (int)Math.floor(x / cellSize)));
+    }
+
+    private int cellY(float y){
+        return Math.max(0, Math.min(rows - 1, (int)Math.floor(y / cellSize)));
+    }
+}
@@ -0,0 +1,99 @@
+package stealthpath;
+
+import arc.struct.IntMap;
+import bektools.profiler.NeonProfiler;
+import mindustry.gen.Building;
+
+/**
+ * Memoized per-turret threat DPS, keyed by building pos.
+ *
+ * 炮塔 DPS 估算缓存：
+ * - 缓存的是估算函数本身的结果；未命中时由调用方重新估算并写回
+ * - 键：建筑及其存活状态、弹药、当前液体、液体量分桶、效率、时间倍率、热量效率、规则伤害倍率；任一变化即视为未命中（惰性刷新）
+ * - 液体量按冷却液单次消耗量的 1/16 分桶，避免每帧的微小波动导致缓存失效；
+ *   因此命中时的结果是该分桶内首次估算的值，与即时估算最多相差不到 1/16 次冷却液的加成
+ * - 命中 / 未命中次数按批写入 Neon 性能分析器（SP / DpsCache）
+ */
+final class StealthPathTurretDpsCache{
+    private static final float coolantBucketsPerUse = 16f;
+    private static final int coolantBucketMax = 64;
+
+    private final IntMap<Entry> entries = new IntMap<>();
+    private long hits, misses;
+
+    /** Cached DPS, or NaN when the key changed. 返回缓存的 DPS；键变化时返回 NaN。 */
+    float get(Building b, Object ammo, float coolantUse, float efficiency, float timeScale, float heat, float ruleScale){
+        Entry e = entries.get(b.pos());
+        if(e == null || !e.matches(b, ammo, coolantBucket(b, coolantUse), efficiency, timeScale, heat, ruleScale)){
+            misses++;
+            return Float.NaN;
+        }
+        hits++;
+        return e.dps;
+    }
+
+    void put(Building b, Object ammo, float coolantUse, float efficiency, float timeScale, float heat, float ruleScale, float dps){
+        Entry e = entries.get(b.pos());
+        if(e == null){
+            e = new Entry();
+            entries.put(b.pos(), e);
+        }
+        e.build = b;
+        e.live = live(b);
+        e.ammo = ammo;
+        e.liquid = b.liquids == null ? null : b.liquids.current();
+        e.coolantBucket = coolantBucket(b, coolantUse);
+        e.efficiency = efficiency;
+        e.timeScale = timeScale;
+        e.heat = heat;
+        e.ruleScale = ruleScale;
+        e.dps = dps;
+    }
+
+    void remove(int pos){
+        entries.remove(pos);
+    }
+
+    void clear(){
+        entries.clear();
+    }
+
+    /** Adds the hit / miss counts gathered since the last flush to the profiler. 将命中统计写入性能分析器。 */
+    void flushProfiler(){
+        if(hits > 0L) NeonProfiler.count("SP", "DpsCache", "hit", NeonProfiler.threadMain, hits);
+        if(misses > 0L) NeonProfiler.count("SP", "DpsCache", "miss", NeonProfiler.threadMain, misses);
+        hits = 0L;
+        misses = 0L;
+    }
+
+    /** Current liquid amount in 1/16ths of one coolant use (0 without a coolant consumer). */
+    private static int coolantBucket(Building b, float coolantUse){
+        if(coolantUse <= 0.0001f || b.liquids == null || b.liquids.current() == null) return 0;
+        float uses = b.liquids.currentAmount() / coolantUse;
+        return (int)Math.min(coolantBucketMax, uses * coolantBucketsPerUse);
+    }
+
+    private static boolean live(Building b){
+        return b.isAdded() && !b.dead();
+    }
+
+    private static final class Entry{
+        Building build;
+        boolean live;
+        Object ammo, liquid;
+        int coolantBucket;
+        float efficiency, timeScale, heat, ruleScale, dps;
+
+        boolean matches(Building b, Object ammo, int coolantBucket, float efficiency, float timeScale, float heat, float ruleScale){
+            return build == b
+                && live == live(b)
+                && this.ammo == ammo
+                && liquid == (b.liquids == null ? null : b.liquids.current())
+                && this.coolantBucket == coolantBucket
+                && this.efficiency == efficiency
+                && this.timeScale == timeScale
+                && this.heat == heat
+                && this.ruleScale == ruleScale;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package stealthpath;
+
+import arc.struct.IntMap;
+import arc.struct.IntSeq;
+
+import java.util.Arrays;
+
+import static mindustry.Vars.tilesize;
+import static stealthpath.StealthPathMathUtil.clamp;
+import static stealthpath.StealthPathMathUtil.tileToWorld;
+
+/**
+ * Persistent turret risk raster for one (viewer team, air/ground filter, clearance) combination.
+ *
+ * 持久化的炮塔风险层：
+ * - 每个炮塔只在新增 / 移除 / 数值变化（弹药、冷却液、效率）时增量叠加或扣除自己的覆盖圆
+ * - 规划时只需 {@link #copyRiskTo(float[])}，不再每次全图重新栅格化
+ * - 叠加与整层重建走 {@link StealthPathRiskRaster#addAnnulus}（与单位威胁同一个栅格化器，可用时为 SIMD 行内核）
+ * - 每格记录覆盖数量（float 计数，同样由 addAnnulus 累加 1）；扣除时逐格递减，
+ *   覆盖数归零时风险直接写回 0，避免浮点减法残留影响 safeRiskEps 判断
+ * - 更新次数累计过多时整层重建一次，限制浮点误差
+ * - {@link #version()} 在栅格每次变化时更新（所有层共用一个计数器），供寻路缓存判断风险层是否相同
+ */
+final class StealthPathTurretRiskLayer{
+    private static final int rebuildAfterUpdates = 4096;
+
+    //shared by all layers, so a layer rebuilt after eviction never repeats an old version
+    private static long lastVersion;
+
+    final int width, height;
+    final int team;
+    final boolean threatsAir, threatsGround;
+    final float inflate;
+
+    private final float[] enemyRisk, derelictRisk;
+    private final float[] enemyCover, derelictCover;
+    private final IntMap<Entry> entries = new IntMap<>();
+    private final IntSeq removeScratch = new IntSeq();
+    private int enemyTurrets, derelictTurrets;
+    private int updatesSinceRebuild;
+    private int syncStamp;
+    private long version = ++lastVersion;
+
+    StealthPathTurretRiskLayer(int width, int height, int team, boolean threatsAir, boolean threatsGround, float inflate){
+        this.width = width;
+        this.height = height;
+        this.team = team;
+        this.threatsAir = threatsAir;
+        this.threatsGround = threatsGround;
+        this.inflate = Math.max(0f, inflate);
+        int size = width * height;
+        enemyRisk = new float[size];
+        derelictRisk = new float[size];
+        enemyCover = new float[size];
+        derelictCover = new float[size];
+    }
+
+    boolean matches(int width, int height, int team, boolean threatsAir, boolean threatsGround, float inflate){
+        return this.width == width && this.height == height && this.team == team
+            && this.threatsAir == threatsAir && this.threatsGround == threatsGround
+            && Float.floatToIntBits(this.inflate) == Float.floatToIntBits(Math.max(0f, inflate));
+    }
+
+    /** Starts a reconcile pass; turrets not synced before {@link #endSync()} are removed. 开始一轮对账。 */
+    void beginSync(){
+        syncStamp++;
+    }
+
+    /**
+     * Adds or updates one turret. Unchanged turrets cost a lookup and a compare.
+     * 新增或更新一个炮塔；数值未变化时不触碰栅格。
+     */
+    void sync(int pos, float x, float y, float range, float minRange, float dps, boolean derelict){
+        Entry e = entries.get(pos);
+        if(e != null){
+            e.stamp = syncStamp;
+            if(e.same(x, y, range, minRange, dps, derelict)) return;
+            rasterize(e, false);
+        }else{
+            e = new Entry();
+            e.stamp = syncStamp;
+            entries.put(pos, e);
+        }
+        e.set(x, y, range, minRange, dps, derelict);
+        rasterize(e, true);
+        updatesSinceRebuild++;
+    }
+
+    /**
+     * Marks an existing turret as seen without re-evaluating it (outside the gather region); false when it is not cached yet.
+     * 区域外的炮塔：保留现有数值并标记为已出现；尚未缓存时返回 false。
+     */
+    boolean keep(int pos){
+        Entry e = entries.get(pos);
+        if(e == null) return false;
+        e.stamp = syncStamp;
+        return true;
+    }
+
+    void remove(int pos){
+        Entry e = entries.remove(pos);
+        if(e == null) return;
+        rasterize(e, false);
+        updatesSinceRebuild++;
+    }
+
+    /** Drops turrets that were not seen this pass. 移除本轮未出现的炮塔。 */
+    void endSync(){
+        removeScratch.clear();
+        for(IntMap.Entry<Entry> entry : entries.entries()){
+            if(entry.value.stamp != syncStamp) removeScratch.add(entry.key);
+        }
+        for(int i = 0; i < removeScratch.size; i++){
+            remove(removeScratch.get(i));
+        }
+        if(updatesSinceRebuild >= rebuildAfterUpdates){
+            rebuild();
+        }
+    }
+
+    /**
+     * Writes the turret risk into {@code dst}. Derelict turrets only count when no enemy turret is present,
+     * matching the full-scan fallback.
+     * 写入炮塔风险；与全量扫描一致：没有敌方炮塔时才使用废墟炮塔。
+     */
+    void copyRiskTo(float[] dst){
+        if(dst == null || dst.length != enemyRisk.length) return;
+        if(enemyTurrets > 0){
+            System.arraycopy(enemyRisk, 0, dst, 0, dst.length);
+        }else if(derelictTurrets > 0){
+            System.arraycopy(derelictRisk, 0, dst, 0, dst.length);
+        }else{
+            Arrays.fill(dst, 0f);
+        }
+    }
+
+    /** Changes whenever {@link #copyRiskTo} may write something different. Main thread only. 栅格内容版本。 */
+    long version(){
+        return version;
+    }
+
+    int turretCount(){
+        return entries.size;
+    }
+
+    private void rebuild(){
+        version = ++lastVersion;
+        Arrays.fill(enemyRisk, 0f);
+        Arrays.fill(derelictRisk, 0f);
+        Arrays.fill(enemyCover, 0f);
+        Arrays.fill(derelictCover, 0f);
+        enemyTurrets = 0;
+        derelictTurrets = 0;
+        for(Entry e : entries.values()){
+            rasterize(e, true);
+        }
+        updatesSinceRebuild = 0;
+    }
+
+    private void rasterize(Entry e, boolean add){
+        version = ++lastVersion;
+        if(e.derelict){
+            derelictTurrets += add ? 1 : -1;
+        }else{
+            enemyTurrets += add ? 1 : -1;
+        }
+
+        float[] risk = e.derelict ? derelictRisk : enemyRisk;
+        float[] cover = e.derelict ? derelictCover : enemyCover;
+
+        float r = e.range + inflate;
+        float r2 = r * r;
+        float mr = Math.max(0f, e.minRange);
+        float mr2 = mr * mr;
+
+        // Same padded bounds as StealthPathRiskRaster.applyThreats.
+        int minX = clamp((int)Math.floor((e.x - r) / tilesize) - 1, 0, width - 1);
+        int maxX = clamp((int)Math.ceil((e.x + r) / tilesize) + 1, 0, width - 1);
+        int minY = clamp((int)Math.floor((e.y - r) / tilesize) - 1, 0, height - 1);
+        int maxY = clamp((int)Math.ceil((e.y + r) / tilesize) + 1, 0, height - 1);
+
+        if(add){
+            StealthPathRiskRaster.RowKernel kernel = StealthPathRiskRaster.preferredKernel();
+            StealthPathRiskRaster.addAnnulus(kernel, risk, width, minX, maxX, minY, maxY, e.x, e.y, r2, mr2, e.dps);
+            StealthPathRiskRaster.addAnnulus(kernel, cover, width, minX, maxX, minY, maxY, e.x, e.y, r2, mr2, 1f);
+            return;
+        }
+
+        // Subtraction walks the same tile-center test as the row kernels, so it visits exactly the tiles the add covered.
+        for(int ty = minY; ty <= maxY; ty++){
+            float wy = tileToWorld(ty) + tilesize / 2f;
+            for(int tx = minX; tx <= maxX; tx++){
+                float wx = tileToWorld(tx) + tilesize / 2f;
+                float dx = wx - e.x;
+                float dy = wy - e.y;
+                float d2 = dx * dx + dy * dy;
+                if(d2 > r2 || d2 < mr2) continue;
+
+                int idx = tx + ty * width;
+                if(--cover[idx] <= 0f){
+                    cover[idx] = 0f;
+                    risk[idx] = 0f;
+                }else{
+                    risk[idx] -= e.dps;
+                }
+            }
+        }
+    }
+
+    private static final class Entry{
+        float x, y, range, minRange, dps;
+        boolean derelict;
+        int stamp;
+
+        boolean same(float x, float y, float range, float minRange, float dps, boolean derelict){
+            return this.x == x && this.y == y && this.range == range && this.minRange == minRange && this.dps == dps && this.derelict == derelict;
+        }
+
+        void set(float x, float y, float range, float minRange, float dps, boolean derelict){
+            this.x = x;
+            this.y = y;
+            this.range = range;
+            this.minRange = minRange;
+            this.dps = dps;
+            this.derelict = derelict;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package powergridminimap;
+
+import java.util.Random;
+
+/** The monotonic-deque ring must report the same window, min and max as a naive array of the last values. */
+public final class PgmmBalanceHistoryTest{
+    private PgmmBalanceHistoryTest(){
+    }
+
+    public static void main(String[] args){
+        Random rand = new Random(0xba1aL);
+        int adds = 0;
+        for(int layout = 0; layout < 300; layout++){
+            int capacity = 1 + rand.nextInt(layout % 3 == 0 ? 4 : 80);
+            PgmmBalanceHistory.Ring ring = new PgmmBalanceHistory.Ring(capacity);
+            check(ring.min() == 0f && ring.max() == 0f && ring.last() == 0f, "empty ring, layout " + layout);
+
+            float[] all = new float[capacity * 6 + rand.nextInt(50)];
+            int count = 0;
+            for(int step = 0; step < all.length; step++){
+                //small value ranges produce runs of equal values, which the deques must keep or drop consistently
+                float v = rand.nextInt(4) == 0 ? rand.nextInt(5) : (rand.nextFloat() - 0.5f) * 20000f;
+                ring.add(v);
+                all[count++] = v;
+                adds++;
+                checkWindow(ring, all, count, capacity, "layout " + layout + ", step " + step);
+
+                if(rand.nextInt(200) == 0){
+                    ring.clear();
+                    count = 0;
+                    check(ring.size() == 0 && ring.min() == 0f && ring.max() == 0f, "cleared ring, layout " + layout);
+                }
+            }
+        }
+
+        //trend buckets are means of samplesPerBucket consecutive samples
+        PgmmBalanceHistory history = new PgmmBalanceHistory(3, 4, 5);
+        for(int i = 0; i < 23; i++){
+            history.add(i);
+        }
+        check(history.recent.size() == 3 && history.recent.min() == 20f && history.recent.max() == 22f, "recent window");
+        check(history.trend.size() == 4 && history.trend.get(0) == 2f && history.trend.last() == 17f, "trend buckets");
+        check(history.matches(3, 4, 5) && !history.matches(3, 4, 6), "matches samples per bucket");
+
+        System.out.println("PgmmBalanceHistoryTest passed (" + adds + " adds).");
+    }
+
+    private static void checkWindow(PgmmBalanceHistory.Ring ring, float[] all, int count, int capacity, String name){
+        int size = Math.min(count, capacity);
+        check(ring.size() == size, "size, " + name);
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        for(int i = 0; i < size; i++){
+            float v = all[count - size + i];
+            check(ring.get(i) == v, "get(" + i + "), " + name);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        check(ring.min() == min, "min, " + name);
+        check(ring.max() == max, "max, " + name);
+        check(ring.last() == all[count - 1], "last, " + name);
+    }
+
+    private static void check(boolean condition, String name){
+        if(!condition) throw new AssertionError(name);
+    }
+}
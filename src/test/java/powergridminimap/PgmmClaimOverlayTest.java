@@ -0,0 +1,255 @@
+package powergridminimap;
+
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** Incremental claim overlay updates must match a reset followed by a full update after every step. */
+public final class PgmmClaimOverlayTest{
+    private static final int claimDistance = 5;
+
+    private PgmmClaimOverlayTest(){
+    }
+
+    public static void main(String[] args){
+        Random rand = new Random(0x0c1a1dL);
+        int steps = 0;
+        for(int layout = 0; layout < 60; layout++){
+            World world = new World(20 + rand.nextInt(70), 20 + rand.nextInt(70));
+            PgmmClaimOverlay overlay = new PgmmClaimOverlay();
+            overlay.reset(world.width, world.height);
+            update(overlay, world);
+
+            for(int step = 0; step < 80; step++){
+                int ops = 1 + rand.nextInt(3);
+                for(int op = 0; op < ops; op++){
+                    mutate(overlay, world, rand);
+                }
+                update(overlay, world);
+                checkSame(overlay, rebuild(world), "layout " + layout + ", step " + step);
+                steps++;
+            }
+        }
+
+        System.out.println("PgmmClaimOverlayTest passed (" + steps + " steps).");
+    }
+
+    private static void mutate(PgmmClaimOverlay overlay, World world, Random rand){
+        int roll = rand.nextInt(100);
+        if(roll < 35){
+            IntSeq tiles = world.placeGrid(rand);
+            if(tiles.isEmpty()) return;
+            Grid grid = new Grid(rand.nextInt(5) == 0 ? 2 : 1, rand.nextInt() | 0xff, rand.nextInt() | 0xff, rand.nextInt() | 0xff, tiles);
+            int id = overlay.addSlot(grid.team, grid.base, grid.dark, grid.light, tiles);
+            world.setGrid(id, grid);
+        }else if(roll < 55){
+            int id = world.randomGrid(rand);
+            if(id == -1) return;
+            overlay.removeSlot(id);
+            world.removeGrid(id);
+        }else if(roll < 85){
+            //a single block or a short conveyor line, which links claims into long components
+            int size = 1 + rand.nextInt(2);
+            int length = rand.nextBoolean() ? 1 : 2 + rand.nextInt(10);
+            int dx = rand.nextBoolean() ? 1 : 0, dy = 1 - dx;
+            int x = rand.nextInt(world.width - size + 1), y = rand.nextInt(world.height - size + 1);
+            int team = rand.nextInt(5) == 0 ? 2 : 1;
+            for(int i = 0; i < length; i++, x += dx * size, y += dy * size){
+                if(x + size > world.width || y + size > world.height || !world.free(x, y, size)) break;
+                world.addBuilding(x, y, size, team);
+                overlay.markDirty(x, y, x + size - 1, y + size - 1);
+            }
+        }else{
+            int b = world.randomBuilding(rand);
+            if(b == -1) return;
+            int x = world.buildX.get(b), y = world.buildY.get(b), size = world.buildSize.get(b);
+            world.removeBuilding(b);
+            overlay.markDirty(x, y, x + size - 1, y + size - 1);
+        }
+    }
+
+    private static void update(PgmmClaimOverlay overlay, World world){
+        PgmmClaimOverlay.Buildings snapshot = new PgmmClaimOverlay.Buildings();
+        int[] region = new int[4];
+        if(overlay.claimRegion(claimDistance, region)){
+            world.collect(region[0], region[1], region[2], region[3], snapshot);
+        }
+        overlay.update(claimDistance, snapshot);
+    }
+
+    /** Fresh overlay with the same slot ids: live grids in id order, empty placeholders for freed ids. */
+    private static PgmmClaimOverlay rebuild(World world){
+        PgmmClaimOverlay full = new PgmmClaimOverlay();
+        full.reset(world.width, world.height);
+        IntSeq empty = new IntSeq();
+        for(int id = 0; id < world.grids.size; id++){
+            Grid grid = world.grids.get(id);
+            if(grid == null){
+                check(full.addSlot(1, 0, 0, 0, empty) == id, "placeholder slot id");
+                full.removeSlot(id);
+            }else{
+                check(full.addSlot(grid.team, grid.base, grid.dark, grid.light, grid.tiles) == id, "rebuilt slot id");
+            }
+        }
+        update(full, world);
+        return full;
+    }
+
+    private static void checkSame(PgmmClaimOverlay actual, PgmmClaimOverlay expected, String name){
+        int tiles = expected.width() * expected.height();
+        for(int i = 0; i < tiles; i++){
+            check(actual.rgba(i) == expected.rgba(i), "rgba, " + name + " at tile " + i);
+            check(actual.claimOwner(i) == expected.claimOwner(i), "claim owner, " + name + " at tile " + i);
+            check(actual.paintOwner(i) == expected.paintOwner(i), "paint owner, " + name + " at tile " + i);
+        }
+    }
+
+    private static void check(boolean condition, String name){
+        if(!condition) throw new AssertionError(name);
+    }
+
+    private static final class Grid{
+        final int team, base, dark, light;
+        final IntSeq tiles;
+
+        Grid(int team, int base, int dark, int light, IntSeq tiles){
+            this.team = team;
+            this.base = base;
+            this.dark = dark;
+            this.light = light;
+            this.tiles = tiles;
+        }
+    }
+
+    /** Power grids by slot id and square non-power buildings, at most one per tile. */
+    private static final class World{
+        final int width, height;
+        final Seq<Grid> grids = new Seq<>();
+        final int[] buildAt;
+        final IntSeq buildX = new IntSeq(), buildY = new IntSeq(), buildSize = new IntSeq(), buildTeam = new IntSeq();
+        final boolean[] power;
+
+        World(int width, int height){
+            this.width = width;
+            this.height = height;
+            buildAt = new int[width * height];
+            Arrays.fill(buildAt, -1);
+            power = new boolean[width * height];
+        }
+
+        boolean free(int x, int y, int size){
+            for(int dy = 0; dy < size; dy++){
+                for(int dx = 0; dx < size; dx++){
+                    int idx = x + dx + (y + dy) * width;
+                    if(power[idx] || buildAt[idx] != -1) return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * One to twelve blocks of one to three tiles along a random walk. Most steps keep the blocks touching, so grids
+         * form long components; a few jump up to eight tiles.
+         */
+        IntSeq placeGrid(Random rand){
+            IntSeq tiles = new IntSeq();
+            int cx = rand.nextInt(width), cy = rand.nextInt(height);
+            int blocks = 1 + rand.nextInt(12);
+            for(int b = 0; b < blocks; b++){
+                int size = 1 + rand.nextInt(3);
+                int step = rand.nextInt(4) == 0 ? 8 : size;
+                if(rand.nextBoolean()){
+                    cx += rand.nextBoolean() ? step : -step;
+                }else{
+                    cy += rand.nextBoolean() ? step : -step;
+                }
+                cx = Math.max(0, Math.min(width - 1, cx));
+                cy = Math.max(0, Math.min(height - 1, cy));
+                int x = Math.min(width - size, cx), y = Math.min(height - size, cy);
+                if(!free(x, y, size)) continue;
+                for(int dy = 0; dy < size; dy++){
+                    for(int dx = 0; dx < size; dx++){
+                        int idx = x + dx + (y + dy) * width;
+                        power[idx] = true;
+                        tiles.add(idx);
+                    }
+                }
+            }
+            return tiles;
+        }
+
+        void setGrid(int id, Grid grid){
+            while(grids.size <= id) grids.add((Grid)null);
+            grids.set(id, grid);
+        }
+
+        void removeGrid(int id){
+            Grid grid = grids.get(id);
+            for(int i = 0; i < grid.tiles.size; i++){
+                power[grid.tiles.get(i)] = false;
+            }
+            grids.set(id, null);
+        }
+
+        int randomGrid(Random rand){
+            IntSeq live = new IntSeq();
+            for(int id = 0; id < grids.size; id++){
+                if(grids.get(id) != null) live.add(id);
+            }
+            return live.isEmpty() ? -1 : live.get(rand.nextInt(live.size));
+        }
+
+        void addBuilding(int x, int y, int size, int team){
+            int b = buildX.size;
+            buildX.add(x);
+            buildY.add(y);
+            buildSize.add(size);
+            buildTeam.add(team);
+            for(int dy = 0; dy < size; dy++){
+                for(int dx = 0; dx < size; dx++){
+                    buildAt[x + dx + (y + dy) * width] = b;
+                }
+            }
+        }
+
+        void removeBuilding(int b){
+            int x = buildX.get(b), y = buildY.get(b), size = buildSize.get(b);
+            for(int dy = 0; dy < size; dy++){
+                for(int dx = 0; dx < size; dx++){
+                    buildAt[x + dx + (y + dy) * width] = -1;
+                }
+            }
+            buildSize.set(b, 0);
+        }
+
+        int randomBuilding(Random rand){
+            IntSeq live = new IntSeq();
+            for(int b = 0; b < buildSize.size; b++){
+                if(buildSize.get(b) > 0) live.add(b);
+            }
+            return live.isEmpty() ? -1 : live.get(rand.nextInt(live.size));
+        }
+
+        /** Same snapshot as PowerGridCache.collectOverlayBuildings: every building with a tile in the rectangle. */
+        void collect(int x0, int y0, int x1, int y1, PgmmClaimOverlay.Buildings out){
+            out.clear();
+            boolean[] seen = new boolean[buildSize.size];
+            for(int y = y0; y <= y1; y++){
+                for(int x = x0; x <= x1; x++){
+                    int b = buildAt[x + y * width];
+                    if(b == -1 || seen[b]) continue;
+                    seen[b] = true;
+                    int bx = buildX.get(b), by = buildY.get(b), size = buildSize.get(b);
+                    out.begin(buildTeam.get(b), bx + by * width);
+                    for(int dy = 0; dy < size; dy++){
+                        for(int dx = 0; dx < size; dx++){
+                            out.tile(bx + dx + (by + dy) * width);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
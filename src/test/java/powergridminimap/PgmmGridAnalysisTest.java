@@ -0,0 +1,161 @@
+package powergridminimap;
+
+import arc.math.geom.Point2;
+import arc.struct.IntSeq;
+import arc.struct.Seq;
+
+import static mindustry.Vars.tilesize;
+
+/** Cluster rectangles and rescue cuts of small hand-built grids, pinned to known answers. */
+public final class PgmmGridAnalysisTest{
+    private PgmmGridAnalysisTest(){
+    }
+
+    public static void main(String[] args){
+        PgmmGridAnalysis analysis = new PgmmGridAnalysis();
+        checkPartition(analysis);
+        checkRescueCuts(analysis);
+        System.out.println("PgmmGridAnalysisTest passed.");
+    }
+
+    /**
+     * Five tile clusters of grid 0 (A..E) with bounding-box gaps A-B 2, C-D 2, B-E sqrt(34) and B-C 12;
+     * a grid 1 building touches A and must not join it.
+     */
+    private static void checkPartition(PgmmGridAnalysis analysis){
+        PgmmGridAnalysis.Network net = new PgmmGridAnalysis.Network();
+        net.clear(40, 20);
+        net.add(Point2.pack(1, 1), 1, 0, 0f, 0f); //A
+        net.add(Point2.pack(3, 1), 1, 1, 0f, 0f); //other grid, next to A
+        net.add(Point2.pack(2, 1), 1, 0, 0f, 0f); //A
+        net.add(Point2.pack(6, 2), 3, 0, 0f, 0f); //B: 5..7 x 1..3
+        net.add(Point2.pack(20, 1), 1, 0, 0f, 0f); //C
+        net.add(Point2.pack(23, 1), 2, 0, 0f, 0f); //D: 23..24 x 1..2
+        net.add(Point2.pack(0, 10), 3, 0, 0f, 0f); //E: clipped to 0..1 x 9..11
+
+        IntSeq members = new IntSeq();
+        net.members(0, members);
+        check(members.size == 6, "grid 0 members");
+
+        PgmmGridAnalysis.Partition out = new PgmmGridAnalysis.Partition();
+
+        //no threshold: the whole grid is one rectangle
+        analysis.partition(net, members, 0, out);
+        checkRects(out, "threshold 0", 0, 1, 24, 11);
+        check(out.hasTiles && out.minPos == Point2.pack(0, 9), "smallest tile position");
+        //22 tiles; tile-center sums are 185 (x) and 98 (y) tiles
+        check(out.hasCenter && Math.abs(out.centerX - 185f * tilesize / 22f) < 0.001f && Math.abs(out.centerY - 98f * tilesize / 22f) < 0.001f, "tile-weighted center");
+
+        //gaps equal to the threshold are kept, longer MST edges are cut
+        analysis.partition(net, members, 2, out);
+        checkRects(out, "threshold 2", 1, 1, 7, 3, 20, 1, 24, 2, 0, 9, 1, 11);
+        analysis.partition(net, members, 5, out);
+        checkRects(out, "threshold 5", 1, 1, 7, 3, 20, 1, 24, 2, 0, 9, 1, 11);
+        analysis.partition(net, members, 6, out);
+        checkRects(out, "threshold 6", 0, 1, 7, 11, 20, 1, 24, 2);
+        analysis.partition(net, members, 12, out);
+        checkRects(out, "threshold 12", 0, 1, 24, 11);
+
+        //every cluster on its own
+        analysis.partition(net, members, 1, out);
+        checkRects(out, "threshold 1", 1, 1, 2, 1, 5, 1, 7, 3, 20, 1, 20, 1, 23, 1, 24, 2, 0, 9, 1, 11);
+
+        members.clear();
+        analysis.partition(net, members, 5, out);
+        check(!out.hasTiles && !out.hasCenter && out.rectCount() == 0, "empty grid");
+    }
+
+    /**
+     * Grid 0: generator G1 - N1 =bridge= N2 - consumers C1, C2 (a loop through N3) - N3 =bridge= N4 - generator G2.
+     * Production 10 + 3 against demand 6 + 8 leaves the whole grid at -1 per tick; cutting N1-N2 rescues G1's side (+10),
+     * cutting N3-N4 rescues G2's side (+3), and cutting N2-N3 separates nothing.
+     */
+    private static void checkRescueCuts(PgmmGridAnalysis analysis){
+        int g1 = Point2.pack(2, 2), n1 = Point2.pack(4, 2), n2 = Point2.pack(18, 2), c1 = Point2.pack(20, 2);
+        int c2 = Point2.pack(22, 2), n3 = Point2.pack(20, 5), n4 = Point2.pack(28, 2), g2 = Point2.pack(30, 2);
+        int other = Point2.pack(32, 2);
+
+        PgmmGridAnalysis.Network net = new PgmmGridAnalysis.Network();
+        net.clear(40, 20);
+        net.add(g1, 1, 0, 10f, 0f);
+        net.connect(n1);
+        net.add(n1, 1, 0, 0f, 0f);
+        net.link(n2);
+        net.connect(g1);
+        net.connect(n2);
+        net.add(n2, 1, 0, 0f, 0f);
+        net.link(n1); //same link from the other end; must not be tried twice
+        net.link(n3);
+        net.connect(n1);
+        net.connect(n3);
+        net.connect(c1);
+        net.add(c1, 1, 0, 0f, 6f);
+        net.connect(n2);
+        net.connect(c2);
+        net.add(c2, 1, 0, 0f, 8f);
+        net.connect(c1);
+        net.connect(n3);
+        net.add(n3, 1, 0, 0f, 0f);
+        net.link(n2);
+        net.link(n3); //self link
+        net.link(n4);
+        net.connect(n2);
+        net.connect(c2);
+        net.connect(n4);
+        net.add(n4, 1, 0, 0f, 0f);
+        net.link(n3);
+        net.link(other); //link into another grid
+        net.connect(n3);
+        net.connect(g2);
+        net.connect(other); //connection into another grid; never followed
+        net.add(g2, 1, 0, 3f, 0f);
+        net.connect(n4);
+        net.add(other, 1, 1, 100f, 0f);
+
+        IntSeq members = new IntSeq();
+        net.members(0, members);
+
+        Seq<PgmmGridAnalysis.Cut> cuts = new Seq<>();
+        analysis.rescueCuts(net, members, false, 5, cuts);
+        check(cuts.size == 2, "two bridges rescue a side, got " + cuts.size);
+
+        PgmmGridAnalysis.Cut first = cuts.get(0);
+        check(first.aPos == n1 && first.bPos == n2 && first.islandStartPos == n1, "first cut is N1-N2, island at N1");
+        check(first.rescueNetPerTick == 10f, "first cut rescue net " + first.rescueNetPerTick);
+        //island tiles (2,2) and (4,2): corners span x 2..5, y 2..3
+        checkHull(first, 2, 2, 5, 3, "first cut");
+
+        PgmmGridAnalysis.Cut second = cuts.get(1);
+        check(second.aPos == n3 && second.bPos == n4 && second.islandStartPos == n4, "second cut is N3-N4, island at N4");
+        check(second.rescueNetPerTick == 3f, "second cut rescue net " + second.rescueNetPerTick);
+        checkHull(second, 28, 2, 31, 3, "second cut");
+
+        cuts.clear();
+        analysis.rescueCuts(net, members, false, 1, cuts);
+        check(cuts.size == 1 && cuts.first().aPos == n1 && cuts.first().bPos == n2, "top-1 keeps the best cut");
+
+        //a grid without laser links offers nothing
+        net.members(1, members);
+        cuts.clear();
+        analysis.rescueCuts(net, members, true, 5, cuts);
+        check(cuts.isEmpty(), "grid without links");
+    }
+
+    private static void checkRects(PgmmGridAnalysis.Partition out, String name, int... rects){
+        check(out.rects.size == rects.length, name + ": " + out.rectCount() + " rectangles instead of " + rects.length / 4);
+        for(int i = 0; i < rects.length; i++){
+            check(out.rects.get(i) == rects[i], name + ": rectangle " + i / 4);
+        }
+    }
+
+    /** Rectangular islands have a four-corner hull centered in their bounding box. */
+    private static void checkHull(PgmmGridAnalysis.Cut cut, int minx, int miny, int maxx, int maxy, String name){
+        check(cut.hull != null && cut.hull.length == 8, name + ": hull corners");
+        check(cut.minX == minx * tilesize && cut.minY == miny * tilesize && cut.maxX == maxx * tilesize && cut.maxY == maxy * tilesize, name + ": hull bounds");
+        check(Math.abs(cut.centerX - (minx + maxx) * tilesize / 2f) < 0.001f && Math.abs(cut.centerY - (miny + maxy) * tilesize / 2f) < 0.001f, name + ": hull center");
+    }
+
+    private static void check(boolean condition, String name){
+        if(!condition) throw new AssertionError(name);
+    }
+}
@@ -0,0 +1,140 @@
+package powergridminimap;
+
+import arc.math.geom.Point2;
+import arc.struct.IntSeq;
+import arc.struct.IntSet;
+
+import java.util.Random;
+
+/** The bucketed ring search must find a pair as close as a brute-force scan over all tile pairs. */
+public final class PgmmReconnectSearchTest{
+    private PgmmReconnectSearchTest(){
+    }
+
+    public static void main(String[] args){
+        Random rand = new Random(0x9a1dL);
+
+        IntSeq empty = new IntSeq();
+        IntSeq single = IntSeq.with(Point2.pack(3, 4));
+        check(PgmmReconnectSearch.nearestPair(empty, empty) == -1L, "empty / empty");
+        check(PgmmReconnectSearch.nearestPair(empty, single) == -1L, "empty / single");
+        check(PgmmReconnectSearch.nearestPair(single, empty) == -1L, "single / empty");
+        check(PgmmReconnectSearch.boundary(empty).isEmpty(), "empty boundary");
+        checkPair(single, IntSeq.with(Point2.pack(300, 1)), "single / single far apart");
+
+        for(int layout = 0; layout < 2000; layout++){
+            int shape = layout % 4;
+            IntSeq a, b;
+            if(shape == 0){
+                //scattered tiles overlapping one area
+                a = scatter(rand, 0, 0, 1 + rand.nextInt(60), 1 + rand.nextInt(40));
+                b = scatter(rand, 0, 0, 1 + rand.nextInt(60), 1 + rand.nextInt(40));
+            }else if(shape == 1){
+                //solid blobs; only their boundaries are searched
+                a = blob(rand, rand.nextInt(40), rand.nextInt(40));
+                b = blob(rand, rand.nextInt(40), rand.nextInt(40));
+            }else if(shape == 2){
+                //a few tiles far outside a wide sparse grid, so every ring up to the far edge is visited
+                int w = 100 + rand.nextInt(200), h = 100 + rand.nextInt(200);
+                a = scatter(rand, -50 - rand.nextInt(300), rand.nextInt(h), 1 + rand.nextInt(3), 1 + rand.nextInt(3));
+                b = corners(rand, w, h);
+            }else{
+                //single tiles against wide sets in both roles
+                a = IntSeq.with(Point2.pack(rand.nextInt(400), rand.nextInt(400)));
+                b = scatter(rand, rand.nextInt(200), rand.nextInt(200), 1 + rand.nextInt(200), 1 + rand.nextInt(200));
+                if(rand.nextBoolean()){
+                    IntSeq t = a;
+                    a = b;
+                    b = t;
+                }
+            }
+            if(a.isEmpty() || b.isEmpty()) continue;
+
+            checkBoundary(a, "boundary a, layout " + layout);
+            checkBoundary(b, "boundary b, layout " + layout);
+            checkPair(a, b, "raw tiles, layout " + layout);
+            checkPair(PgmmReconnectSearch.boundary(a), PgmmReconnectSearch.boundary(b), "boundaries, layout " + layout);
+        }
+
+        System.out.println("PgmmReconnectSearchTest passed.");
+    }
+
+    private static IntSeq scatter(Random rand, int x0, int y0, int w, int h){
+        IntSet seen = new IntSet();
+        IntSeq out = new IntSeq();
+        int count = rand.nextInt(1 + w * h / 4) + 1;
+        for(int i = 0; i < count; i++){
+            int pos = Point2.pack(x0 + rand.nextInt(w), y0 + rand.nextInt(h));
+            if(seen.add(pos)) out.add(pos);
+        }
+        return out;
+    }
+
+    private static IntSeq blob(Random rand, int x0, int y0){
+        IntSeq out = new IntSeq();
+        int w = 1 + rand.nextInt(20), h = 1 + rand.nextInt(20);
+        for(int y = 0; y < h; y++){
+            for(int x = 0; x < w; x++){
+                if(rand.nextInt(8) != 0) out.add(Point2.pack(x0 + x, y0 + y));
+            }
+        }
+        return out;
+    }
+
+    /** Tiles near the four corners of a w x h box, leaving most buckets between them empty. */
+    private static IntSeq corners(Random rand, int w, int h){
+        IntSet seen = new IntSet();
+        IntSeq out = new IntSeq();
+        for(int i = 0; i < 12; i++){
+            int x = (rand.nextBoolean() ? 0 : w - 3) + rand.nextInt(3);
+            int y = (rand.nextBoolean() ? 0 : h - 3) + rand.nextInt(3);
+            int pos = Point2.pack(x, y);
+            if(seen.add(pos)) out.add(pos);
+        }
+        return out;
+    }
+
+    private static void checkPair(IntSeq a, IntSeq b, String name){
+        long pair = PgmmReconnectSearch.nearestPair(a, b);
+        check(pair != -1L, name + ": no pair");
+        int pa = (int)(pair >>> 32), pb = (int)pair;
+        check(a.contains(pa), name + ": first tile not in a");
+        check(b.contains(pb), name + ": second tile not in b");
+
+        int best = Integer.MAX_VALUE;
+        for(int i = 0; i < a.size; i++){
+            for(int j = 0; j < b.size; j++){
+                best = Math.min(best, distance(a.get(i), b.get(j)));
+            }
+        }
+        check(distance(pa, pb) == best, name + ": distance " + distance(pa, pb) + " instead of " + best);
+    }
+
+    private static void checkBoundary(IntSeq tiles, String name){
+        IntSet set = new IntSet();
+        for(int i = 0; i < tiles.size; i++){
+            set.add(tiles.get(i));
+        }
+        IntSeq boundary = PgmmReconnectSearch.boundary(tiles);
+        int expected = 0;
+        for(int i = 0; i < tiles.size; i++){
+            int pos = tiles.get(i);
+            int x = Point2.x(pos), y = Point2.y(pos);
+            boolean edge = !set.contains(Point2.pack(x + 1, y)) || !set.contains(Point2.pack(x - 1, y))
+                || !set.contains(Point2.pack(x, y + 1)) || !set.contains(Point2.pack(x, y - 1));
+            if(edge){
+                expected++;
+                check(boundary.contains(pos), name + ": missing edge tile");
+            }
+        }
+        check(boundary.size == expected, name + ": boundary has interior tiles");
+    }
+
+    private static int distance(int a, int b){
+        return Math.abs(Point2.x(a) - Point2.x(b)) + Math.abs(Point2.y(a) - Point2.y(b));
+    }
+
+    private static void check(boolean condition, String name){
+        if(!condition) throw new AssertionError(name);
+    }
+}
@@ -0,0 +1,280 @@
+package stealthpath;
+
+import arc.struct.IntSeq;
+import arc.struct.IntSet;
+
+import java.util.Random;
+
+/** The per-profile path evaluator must match the old per-unit loops bit for bit. */
+public final class StealthPathPathEvalTest{
+    private StealthPathPathEvalTest(){
+    }
+
+    public static void main(String[] args){
+        Random rand = new Random(0xe7a1L);
+        int paths = 0, drowned = 0, blocked = 0;
+        for(int layout = 0; layout < 3000; layout++){
+            int width = 20 + rand.nextInt(40), height = 20 + rand.nextInt(40);
+            int slots = 1 + rand.nextInt(5);
+            ThreatMap map = new ThreatMap(width, height);
+            map.floorSlot = new short[map.size];
+            for(int i = 0; i < map.size; i++){
+                map.floorSlot[i] = (short)(rand.nextInt(10) == 0 ? -1 : rand.nextInt(slots));
+                map.risk[i] = rand.nextInt(3) == 0 ? rand.nextFloat() * 50f : 0f;
+            }
+
+            UnitCostGroup units = randomGroup(rand, slots);
+            IntSeq path = randomPath(rand, width, height);
+            float fallbackSpeed = 0.1f + rand.nextFloat();
+            String name = "layout " + layout;
+
+            StealthPathPathEval eval = new StealthPathPathEval(map, path);
+            boolean drown = wouldDrownForUnits(map, path, units, fallbackSpeed);
+            check(eval.wouldDrownForUnits(units, fallbackSpeed) == drown, "wouldDrownForUnits, " + name);
+
+            IntSeq expected = drownBlockingTilesForUnits(map, path, units, fallbackSpeed);
+            check(eval.drownBlockingTilesForUnits(units, fallbackSpeed).equals(expected), "drownBlockingTilesForUnits, " + name);
+
+            for(int s = 0; s < 2; s++){
+                boolean slowest = s == 1;
+                check(same(eval.damageForUnits(units, fallbackSpeed, slowest), damageForUnits(map, path, units, fallbackSpeed, slowest)),
+                    "damageForUnits slowest=" + slowest + ", " + name);
+                for(int f = 0; f < 2; f++){
+                    boolean flying = f == 1;
+                    check(same(eval.damageForUnitsByFlight(units, flying, slowest), damageForUnitsByFlight(map, path, units, flying, slowest)),
+                        "damageForUnitsByFlight flying=" + flying + " slowest=" + slowest + ", " + name);
+                }
+            }
+
+            paths++;
+            if(drown) drowned++;
+            if(!expected.isEmpty()) blocked++;
+        }
+
+        System.out.println("StealthPathPathEvalTest passed (" + paths + " paths, " + drowned + " drowning, " + blocked + " with blocking tiles).");
+    }
+
+    /** A few unit types with random floor tables; most members copy their type exactly so profiles are shared. */
+    private static UnitCostGroup randomGroup(Random rand, int slots){
+        UnitCostProfile[] types = new UnitCostProfile[1 + rand.nextInt(3)];
+        for(int t = 0; t < types.length; t++){
+            types[t] = randomProfile(rand, slots);
+        }
+
+        UnitCostProfile[] members = new UnitCostProfile[rand.nextInt(20) == 0 ? 0 : 1 + rand.nextInt(50)];
+        for(int i = 0; i < members.length; i++){
+            UnitCostProfile t = types[rand.nextInt(types.length)];
+            boolean same = rand.nextInt(4) != 0;
+            members[i] = new UnitCostProfile(t.present, rand.nextInt(10) != 0, t.flying, t.typed, t.floorSpeed, t.drownCandidate,
+                same ? t.speed : t.speed * (0.5f + rand.nextFloat()), same ? t.nominalSpeed : t.nominalSpeed * 1.1f,
+                t.floorSpeedMul.clone(), t.floorDamage.clone(), t.drownRate.clone());
+        }
+        UnitCostProfile fallback = members.length > 0 && rand.nextBoolean() ? members[0] : randomProfile(rand, slots);
+        return new UnitCostGroup(fallback, members);
+    }
+
+    private static UnitCostProfile randomProfile(Random rand, int slots){
+        float[] speedMul = new float[slots], damage = new float[slots], drown = new float[slots];
+        boolean drownCandidate = rand.nextInt(3) != 0;
+        for(int i = 0; i < slots; i++){
+            speedMul[i] = rand.nextInt(3) == 0 ? 0.2f + rand.nextFloat() : 1f;
+            damage[i] = rand.nextInt(4) == 0 ? rand.nextFloat() : 0f;
+            drown[i] = drownCandidate && rand.nextBoolean() ? rand.nextFloat() * 0.02f : 0f;
+        }
+        boolean flying = rand.nextInt(4) == 0;
+        float speed = 0.2f + rand.nextFloat();
+        return new UnitCostProfile(rand.nextInt(10) != 0, true, flying, rand.nextBoolean(), !flying, drownCandidate,
+            speed, speed * 1.2f, speedMul, damage, drown);
+    }
+
+    /** A random 8-neighbour walk, clamped to the map, that may revisit tiles. */
+    private static IntSeq randomPath(Random rand, int width, int height){
+        IntSeq path = new IntSeq();
+        int x = rand.nextInt(width), y = rand.nextInt(height);
+        int length = rand.nextInt(12) == 0 ? rand.nextInt(2) : 2 + rand.nextInt(300);
+        for(int i = 0; i < length; i++){
+            path.add(x + y * width);
+            x = Math.max(0, Math.min(width - 1, x + rand.nextInt(3) - 1));
+            y = Math.max(0, Math.min(height - 1, y + rand.nextInt(3) - 1));
+        }
+        return path;
+    }
+
+    private static boolean same(float a, float b){
+        return Float.floatToIntBits(a) == Float.floatToIntBits(b);
+    }
+
+    // Baseline: the per-unit loops StealthPathPlanner used before StealthPathPathEval.
+
+    private static boolean wouldDrown(ThreatMap map, IntSeq tilePath, UnitCostProfile unit, float fallbackSpeed){
+        if(map == null || tilePath == null || tilePath.size <= 1) return false;
+        if(unit == null || !unit.drownCandidate) return false;
+
+        float progress = 0f;
+        for(int i = 0; i < tilePath.size - 1; i++){
+            int a = tilePath.items[i];
+            int b = tilePath.items[i + 1];
+            float ticks = StealthPathPlanner.segmentTicks(map, a, b, unit, fallbackSpeed);
+            float rate = StealthPathPlanner.avgDrownRate(map, a, b, unit);
+
+            if(rate > 0.000001f){
+                progress += rate * ticks;
+                if(progress >= 0.999f) return true;
+                progress = Math.min(progress, 1f);
+            }else{
+                progress = Math.max(0f, progress - ticks / 50f);
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean wouldDrownForUnits(ThreatMap map, IntSeq tilePath, UnitCostGroup units, float fallbackSpeed){
+        if(map == null || tilePath == null || tilePath.size <= 1) return false;
+
+        boolean checkedAny = false;
+        for(UnitCostProfile u : units.units){
+            if(!u.drownCandidate) continue;
+            checkedAny = true;
+            float speed = u.nominalSpeed(fallbackSpeed);
+            if(wouldDrown(map, tilePath, u, speed)) return true;
+        }
+
+        if(checkedAny) return false;
+        return wouldDrown(map, tilePath, units.fallback, fallbackSpeed);
+    }
+
+    private static IntSeq drownBlockingTiles(ThreatMap map, IntSeq tilePath, UnitCostProfile unit, float fallbackSpeed){
+        IntSeq blocked = new IntSeq();
+        if(map == null || tilePath == null || tilePath.size <= 1) return blocked;
+        if(unit == null || !unit.drownCandidate) return blocked;
+
+        boolean[] marked = new boolean[map.size];
+        boolean[] inRun = new boolean[map.size];
+        IntSeq run = new IntSeq();
+        boolean runFatal = false;
+        float progress = 0f;
+
+        for(int i = 0; i < tilePath.size - 1; i++){
+            int a = tilePath.items[i];
+            int b = tilePath.items[i + 1];
+            float ticks = StealthPathPlanner.segmentTicks(map, a, b, unit, fallbackSpeed);
+            float rate = StealthPathPlanner.avgDrownRate(map, a, b, unit);
+
+            if(rate > 0.000001f){
+                if(a >= 0 && a < map.size && !inRun[a]){
+                    inRun[a] = true;
+                    run.add(a);
+                }
+                if(b >= 0 && b < map.size && !inRun[b]){
+                    inRun[b] = true;
+                    run.add(b);
+                }
+
+                progress += rate * ticks;
+                if(progress >= 0.999f){
+                    runFatal = true;
+                    progress = 1f;
+                }
+            }else{
+                if(runFatal) flushRun(run, marked, blocked, map.size);
+
+                for(int r = 0; r < run.size; r++){
+                    int idx = run.items[r];
+                    if(idx >= 0 && idx < map.size) inRun[idx] = false;
+                }
+                run.clear();
+                runFatal = false;
+                progress = Math.max(0f, progress - ticks / 50f);
+            }
+        }
+
+        if(runFatal) flushRun(run, marked, blocked, map.size);
+        return blocked;
+    }
+
+    private static void flushRun(IntSeq run, boolean[] marked, IntSeq blocked, int size){
+        for(int r = 0; r < run.size; r++){
+            int idx = run.items[r];
+            if(idx < 0 || idx >= size || marked[idx]) continue;
+            marked[idx] = true;
+            blocked.add(idx);
+        }
+    }
+
+    private static IntSeq drownBlockingTilesForUnits(ThreatMap map, IntSeq tilePath, UnitCostGroup units, float fallbackSpeed){
+        IntSeq out = new IntSeq();
+        if(map == null || tilePath == null || tilePath.size <= 1) return out;
+
+        boolean checkedAny = false;
+        for(UnitCostProfile u : units.units){
+            if(!u.drownCandidate) continue;
+            checkedAny = true;
+            float speed = u.nominalSpeed(fallbackSpeed);
+            if(!wouldDrown(map, tilePath, u, speed)) continue;
+            mergeUniqueInts(out, drownBlockingTiles(map, tilePath, u, speed));
+        }
+
+        if(!checkedAny && wouldDrown(map, tilePath, units.fallback, fallbackSpeed)){
+            mergeUniqueInts(out, drownBlockingTiles(map, tilePath, units.fallback, fallbackSpeed));
+        }
+
+        return out;
+    }
+
+    private static void mergeUniqueInts(IntSeq dst, IntSeq src){
+        if(dst == null || src == null || src.isEmpty()) return;
+        IntSet existing = new IntSet(dst.size + src.size);
+        for(int i = 0; i < dst.size; i++) existing.add(dst.items[i]);
+        for(int i = 0; i < src.size; i++){
+            int v = src.items[i];
+            if(existing.add(v)) dst.add(v);
+        }
+    }
+
+    private static float damageForUnits(ThreatMap map, IntSeq tilePath, UnitCostGroup units, float fallbackSpeed, boolean useSlowestUnit){
+        if(tilePath == null || tilePath.size <= 1) return 0f;
+
+        if(useSlowestUnit){
+            UnitCostProfile slowest = units.slowest();
+            if(slowest != null) return StealthPathPlanner.estimateDamage(map, tilePath, slowest);
+            return StealthPathPlanner.estimateDamage(map, tilePath, fallbackSpeed);
+        }
+
+        float max = 0f;
+        boolean hasAny = false;
+        for(UnitCostProfile u : units.units){
+            if(!u.alive) continue;
+            hasAny = true;
+            max = Math.max(max, StealthPathPlanner.estimateDamage(map, tilePath, u));
+        }
+        if(hasAny) return max;
+        if(units.fallback.present) return StealthPathPlanner.estimateDamage(map, tilePath, units.fallback);
+        return StealthPathPlanner.estimateDamage(map, tilePath, fallbackSpeed);
+    }
+
+    private static float damageForUnitsByFlight(ThreatMap map, IntSeq tilePath, UnitCostGroup units, boolean wantFlying, boolean useSlowestUnit){
+        if(tilePath == null || tilePath.size <= 1) return Float.NaN;
+
+        if(useSlowestUnit){
+            UnitCostProfile slowest = units.slowestByFlight(wantFlying);
+            if(slowest == null) return Float.NaN;
+            return StealthPathPlanner.estimateDamage(map, tilePath, slowest);
+        }
+
+        float max = Float.NaN;
+        for(UnitCostProfile u : units.units){
+            if(!u.alive || u.flying != wantFlying) continue;
+            float d = StealthPathPlanner.estimateDamage(map, tilePath, u);
+            max = Float.isNaN(max) ? d : Math.max(max, d);
+        }
+
+        if(!Float.isNaN(max)) return max;
+        if(units.fallback.present && units.fallback.flying == wantFlying) return StealthPathPlanner.estimateDamage(map, tilePath, units.fallback);
+        return Float.NaN;
+    }
+
+    private static void check(boolean condition, String name){
+        if(!condition) throw new AssertionError(name);
+    }
+}
@@ -0,0 +1,83 @@
+package stealthpath;
+
+import java.util.Random;
+
+import static mindustry.Vars.tilesize;
+
+public final class StealthPathRiskRasterTest{
+    private StealthPathRiskRasterTest(){
+    }
+
+    public static void main(String[] args){
+        boolean requireVector = args.length > 0 && "--require-vector".equals(args[0]);
+        StealthPathRiskRaster.RowKernel vector = StealthPathRiskRaster.vectorKernel();
+        check(!requireVector || vector != null, "vector kernel available");
+
+        Random rand = new Random(0x5eedL);
+        for(int layout = 0; layout < 200; layout++){
+            int width = 8 + rand.nextInt(180);
+            int height = 8 + rand.nextInt(180);
+            float[] expected = new float[width * height];
+            float[] scalar = new float[width * height];
+            float[] simd = new float[width * height];
+
+            int threats = 1 + rand.nextInt(40);
+            for(int i = 0; i < threats; i++){
+                float x = (rand.nextFloat() * 1.2f - 0.1f) * width * tilesize;
+                float y = (rand.nextFloat() * 1.2f - 0.1f) * height * tilesize;
+                float range = rand.nextFloat() * 30f * tilesize;
+                // Every third threat is an annulus, like ripple / foreshadow minRange.
+                float minRange = i % 3 == 0 ? rand.nextFloat() * range : 0f;
+                float inflate = rand.nextFloat() * 2f * tilesize;
+                float dps = rand.nextFloat() * 500f + 0.01f;
+
+                float r = range + inflate;
+                int minX = clamp((int)Math.floor((x - r) / tilesize) - 1, 0, width - 1);
+                int maxX = clamp((int)Math.ceil((x + r) / tilesize) + 1, 0, width - 1);
+                int minY = clamp((int)Math.floor((y - r) / tilesize) - 1, 0, height - 1);
+                int maxY = clamp((int)Math.ceil((y + r) / tilesize) + 1, 0, height - 1);
+
+                reference(expected, width, minX, maxX, minY, maxY, x, y, r * r, minRange * minRange, dps);
+                StealthPathRiskRaster.addAnnulus(StealthPathRiskRaster.scalar, scalar, width, minX, maxX, minY, maxY, x, y, r * r, minRange * minRange, dps);
+                if(vector != null){
+                    StealthPathRiskRaster.addAnnulus(vector, simd, width, minX, maxX, minY, maxY, x, y, r * r, minRange * minRange, dps);
+                }
+            }
+
+            checkSame(expected, scalar, "scalar raster, layout " + layout);
+            if(vector != null) checkSame(expected, simd, "vector raster, layout " + layout);
+        }
+
+        System.out.println("StealthPathRiskRasterTest passed (" + (vector == null ? "scalar only" : "scalar + vector") + ").");
+    }
+
+    /** The original per-tile loop from applyThreatsToRisk. */
+    private static void reference(float[] risk, int width, int minX, int maxX, int minY, int maxY, float x, float y, float r2, float mr2, float dps){
+        for(int ty = minY; ty <= maxY; ty++){
+            float wy = StealthPathMathUtil.tileToWorld(ty) + tilesize / 2f;
+            for(int tx = minX; tx <= maxX; tx++){
+                float wx = StealthPathMathUtil.tileToWorld(tx) + tilesize / 2f;
+                float dx = wx - x;
+                float dy = wy - y;
+                float d2 = dx * dx + dy * dy;
+                if(d2 <= r2 && d2 >= mr2){
+                    risk[tx + ty * width] += dps;
+                }
+            }
+        }
+    }
+
+    private static void checkSame(float[] expected, float[] actual, String name){
+        for(int i = 0; i < expected.length; i++){
+            check(Float.floatToRawIntBits(expected[i]) == Float.floatToRawIntBits(actual[i]), name + " at tile " + i);
+        }
+    }
+
+    private static int clamp(int value, int min, int max){
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static void check(boolean condition, String name){
+        if(!condition) throw new AssertionError(name);
+    }
+}
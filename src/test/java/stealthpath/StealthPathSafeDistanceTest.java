@@ -0,0 +1,91 @@
+package stealthpath;
+
+import arc.struct.IntQueue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public final class StealthPathSafeDistanceTest{
+    private StealthPathSafeDistanceTest(){
+    }
+
+    public static void main(String[] args){
+        Random rand = new Random(0x5afeL);
+        int updates = 0, patched = 0;
+        for(int layout = 0; layout < 120; layout++){
+            int width = 1 + rand.nextInt(70);
+            int height = 1 + rand.nextInt(70);
+            float[] risk = new float[width * height];
+            StealthPathSafeDistance field = new StealthPathSafeDistance();
+
+            for(int step = 0; step < 40; step++){
+                int roll = rand.nextInt(20);
+                if(roll == 0){
+                    // Emptying every seed returns null and drops the field; the next update starts over.
+                    Arrays.fill(risk, 0f);
+                }else if(roll == 1){
+                    for(int i = 0; i < risk.length; i++){
+                        risk[i] = rand.nextInt(6) == 0 ? 1f : 0f;
+                    }
+                }else{
+                    // A handful of seed edits stays under the full-rebuild threshold, so these go through patch().
+                    int edits = 1 + rand.nextInt(4);
+                    for(int e = 0; e < edits; e++){
+                        int idx = rand.nextInt(risk.length);
+                        risk[idx] = risk[idx] > StealthPathSafeDistance.seedRisk ? (rand.nextBoolean() ? 0f : StealthPathSafeDistance.seedRisk) : 1f + rand.nextFloat();
+                    }
+                    patched++;
+                }
+
+                short[] actual = field.update(risk, width, height);
+                short[] expected = reference(risk, width, height);
+                String name = "layout " + layout + ", step " + step;
+                if(expected == null){
+                    check(actual == null, "null field without seeds, " + name);
+                }else{
+                    check(actual != null, "field with seeds, " + name);
+                    for(int i = 0; i < expected.length; i++){
+                        check(actual[i] == expected[i], "distance at tile " + i + ", " + name);
+                    }
+                }
+                updates++;
+            }
+        }
+
+        System.out.println("StealthPathSafeDistanceTest passed (" + updates + " updates, " + patched + " seed edits).");
+    }
+
+    /** Plain multi-source BFS over 4-neighbours from every tile above {@link StealthPathSafeDistance#seedRisk}. */
+    private static short[] reference(float[] risk, int width, int height){
+        short[] dist = new short[width * height];
+        Arrays.fill(dist, (short)-1);
+        IntQueue queue = new IntQueue();
+        for(int i = 0; i < risk.length; i++){
+            if(risk[i] > StealthPathSafeDistance.seedRisk){
+                dist[i] = 0;
+                queue.addLast(i);
+            }
+        }
+        if(queue.size == 0) return null;
+
+        while(queue.size > 0){
+            int idx = queue.removeFirst();
+            int x = idx % width, y = idx / width;
+            if(x > 0) visit(dist, queue, idx - 1, dist[idx]);
+            if(x < width - 1) visit(dist, queue, idx + 1, dist[idx]);
+            if(y > 0) visit(dist, queue, idx - width, dist[idx]);
+            if(y < height - 1) visit(dist, queue, idx + width, dist[idx]);
+        }
+        return dist;
+    }
+
+    private static void visit(short[] dist, IntQueue queue, int n, short d){
+        if(dist[n] != -1) return;
+        dist[n] = (short)(d + 1);
+        queue.addLast(n);
+    }
+
+    private static void check(boolean condition, String name){
+        if(!condition) throw new AssertionError(name);
+    }
+}
@@ -0,0 +1,58 @@
+package stealthpath;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static mindustry.Vars.tilesize;
+
+/**
+ * SIMD row kernel for {@link StealthPathRiskRaster} (JDK Vector API, loaded reflectively).
+ *
+ * SIMD 行内核：
+ * - 一次处理 SPECIES_PREFERRED 个格子：dx = 格子中心 - cx，d2 = dx*dx + dy2，与标量版运算顺序相同
+ * - 圆环（minRange）用 d2 <= r2 且 d2 >= mr2 的掩码累加；行尾不足一组的格子走标量循环
+ * 只在桌面 JVM 带 --add-modules jdk.incubator.vector 时可用，不参与 Android dex。
+ */
+final class StealthPathRiskRasterVector implements StealthPathRiskRaster.RowKernel{
+    private static final VectorSpecies<Float> species = FloatVector.SPECIES_PREFERRED;
+    // Tile-center offsets of the lanes from the first lane: 0, tilesize, 2 * tilesize, ...
+    private static final FloatVector laneOffsets;
+
+    static{
+        float[] offsets = new float[species.length()];
+        for(int i = 0; i < offsets.length; i++){
+            offsets[i] = i * tilesize;
+        }
+        laneOffsets = FloatVector.fromArray(species, offsets, 0);
+    }
+
+    StealthPathRiskRasterVector(){
+        if(species.length() < 2) throw new IllegalStateException("No SIMD lanes.");
+    }
+
+    @Override
+    public void row(float[] risk, int rowStart, int minX, int maxX, float cx, float dy2, float r2, float mr2, float dps){
+        int lanes = species.length();
+        int tx = minX;
+        for(; tx + lanes - 1 <= maxX; tx += lanes){
+            // Tile centers are small integers + 0.5 * tilesize, so the lane offsets add exactly.
+            FloatVector wx = laneOffsets.add((float)(tx * tilesize) + tilesize / 2f);
+            FloatVector dx = wx.sub(cx);
+            FloatVector d2 = dx.mul(dx).add(dy2);
+            VectorMask<Float> inside = d2.compare(VectorOperators.LE, r2).and(d2.compare(VectorOperators.GE, mr2));
+            if(!inside.anyTrue()) continue;
+
+            int idx = rowStart + tx;
+            FloatVector.fromArray(species, risk, idx).add(dps, inside).intoArray(risk, idx);
+        }
+        for(; tx <= maxX; tx++){
+            float dx = (float)(tx * tilesize) + tilesize / 2f - cx;
+            float d2 = dx * dx + dy2;
+            if(d2 <= r2 && d2 >= mr2){
+                risk[rowStart + tx] += dps;
+            }
+        }
+    }
+}